@@ -0,0 +1,730 @@
+package com.zs.future_callback_promise;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A result that will be available later, to which continuations are attached
+ * instead of blocking a thread in {@link #get()}.
+ *
+ * <p>
+ * A promise is completed once, with a value by {@link #complete}, with a
+ * failure by {@link #fail}, or by {@link #cancel}. {@link #async} runs a task
+ * on any {@link Executor}, such as a {@code com.zs.juc.pool.ThreadPoolExecutor}
+ * or a {@code ForkJoinPool}, and completes the promise with its outcome.
+ *
+ * <p>
+ * {@link #map}, {@link #flatMap}, {@link #allOf}, {@link #anyOf} and
+ * {@link #withTimeout} derive new promises. Continuations run in the thread
+ * that completes the source, or in the caller if it is already complete,
+ * unless an executor is given. Failures flow downstream unchanged: a derived
+ * promise fails with the same exception as its source, and is cancelled if
+ * the source is. Cancellation also flows upstream: cancelling a derived
+ * promise cancels the promises it is still waiting for, and through them the
+ * tasks started by {@link #async}, so abandoning a pipeline frees the threads
+ * it was using.
+ *
+ * <pre>
+ * Promise.async(loadUser, pool)
+ *         .flatMap(user -&gt; Promise.async(() -&gt; loadOrders(user), pool))
+ *         .map(orders -&gt; orders.size())
+ *         .withTimeout(200, TimeUnit.MILLISECONDS)
+ *         .onComplete((count, failure) -&gt; reply(count, failure));
+ * </pre>
+ *
+ * 异步Promise：通过map/flatMap/allOf/anyOf组合结果，支持超时和取消传播，回调代替阻塞get()。
+ *
+ * @param <T> the type of the result
+ */
+public class Promise<T> implements Future<T> {
+
+    /*
+     * The outcome is a single volatile field, CASed once from null: the value
+     * itself, NIL for a null value, or a Failure. Continuations wait in a
+     * Treiber stack that is swapped for FIRED when the outcome is set, then
+     * run in registration order. A blocked get() pushes a waiter node, which
+     * unparks its thread; a get() that times out or is interrupted clears the
+     * node and unlinks it, as FutureTask.removeWaiter does.
+     */
+
+    /** Outcome of a failed or cancelled promise. */
+    static final class Failure {
+        final Throwable ex;
+
+        /** For cancellation: whether to interrupt running tasks upstream. */
+        final boolean interrupt;
+
+        Failure(Throwable ex, boolean interrupt) {
+            this.ex = ex;
+            this.interrupt = interrupt;
+        }
+    }
+
+    private static final Object NIL = new Object();
+
+    /**
+     * A continuation waiting for the outcome: an action, or a thread blocked in
+     * get(). A waiter node whose thread was cleared is dead and may be
+     * unlinked.
+     */
+    static final class Node {
+        final Runnable action;
+
+        volatile Thread thread;
+
+        volatile Node next;
+
+        Node(Runnable action) {
+            this.action = action;
+        }
+
+        Node(Thread thread) {
+            this.action = null;
+            this.thread = thread;
+        }
+
+        boolean isDead() {
+            return action == null && thread == null;
+        }
+
+        void run() {
+            if (action != null)
+                runQuietly(action);
+            else {
+                Thread t = thread;
+                if (t != null)
+                    LockSupport.unpark(t);
+            }
+        }
+    }
+
+    private static final Node FIRED = new Node((Runnable) null);
+
+    private volatile Object result;
+
+    private volatile Node stack;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Promise, Object> RESULT =
+            AtomicReferenceFieldUpdater.newUpdater(Promise.class, Object.class, "result");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Promise, Node> STACK =
+            AtomicReferenceFieldUpdater.newUpdater(Promise.class, Node.class, "stack");
+
+    /** Creates a promise to be completed by the caller. */
+    public Promise() {
+    }
+
+    /** Returns a promise already completed with {@code value}. */
+    public static <T> Promise<T> completed(T value) {
+        Promise<T> p = new Promise<T>();
+        p.result = (value == null) ? NIL : value;
+        p.stack = FIRED;
+        return p;
+    }
+
+    /** Returns a promise already failed with {@code ex}. */
+    public static <T> Promise<T> failed(Throwable ex) {
+        Promise<T> p = new Promise<T>();
+        p.fail(ex);
+        return p;
+    }
+
+    /**
+     * Runs {@code task} with {@code executor} and returns a promise of its
+     * result. Cancelling the promise before the task starts keeps it from
+     * running; cancelling it with {@code mayInterruptIfRunning} while it runs
+     * interrupts it. If the executor rejects the task, the promise fails with
+     * the rejection.
+     *
+     * @param task the task to run
+     * @param executor the executor to run it with
+     * @return a promise of the task's result
+     */
+    public static <T> Promise<T> async(Callable<? extends T> task, Executor executor) {
+        if (task == null || executor == null)
+            throw new NullPointerException();
+        Promise<T> p = new Promise<T>();
+        AsyncTask<T> t = new AsyncTask<T>(p, task);
+        p.whenDone(t);
+        try {
+            executor.execute(t);
+        } catch (RuntimeException e) {
+            p.fail(e);
+        }
+        return p;
+    }
+
+    /**
+     * Runs a task for {@link #async} and, when its promise is cancelled with
+     * interruption, interrupts it. The runner is held in the inherited
+     * reference: null before and after the run, the running thread during it,
+     * and INTERRUPTING while a canceller delivers the interrupt, so that an
+     * interrupt never leaks into the next task the thread runs.
+     */
+    @SuppressWarnings("serial")
+    static final class AsyncTask<T> extends AtomicReference<Object> implements Runnable {
+        private static final Object INTERRUPTING = new Object();
+
+        private final Promise<T> promise;
+
+        private Callable<? extends T> task;
+
+        AsyncTask(Promise<T> promise, Callable<? extends T> task) {
+            this.promise = promise;
+            this.task = task;
+        }
+
+        public void run() {
+            if (promise.result != null) { // this is also the promise's continuation
+                Object r = promise.result;
+                if (r instanceof Failure && ((Failure) r).interrupt) {
+                    Object t = get();
+                    if (t instanceof Thread && compareAndSet(t, INTERRUPTING)) {
+                        ((Thread) t).interrupt();
+                        set(null);
+                    }
+                }
+                return;
+            }
+            Thread me = Thread.currentThread();
+            if (!compareAndSet(null, me))
+                return;
+            T value = null;
+            Throwable failure = null;
+            try {
+                if (promise.result == null)
+                    value = task.call();
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                if (!compareAndSet(me, null)) {
+                    while (get() == INTERRUPTING)
+                        Thread.yield(); // wait out the pending interrupt
+                    Thread.interrupted();
+                }
+                task = null;
+            }
+            if (failure != null)
+                promise.fail(failure);
+            else
+                promise.complete(value);
+        }
+    }
+
+    /**
+     * Completes this promise with {@code value}.
+     *
+     * @return true if this call completed the promise
+     */
+    public boolean complete(T value) {
+        return settle((value == null) ? NIL : value);
+    }
+
+    /**
+     * Fails this promise with {@code ex}.
+     *
+     * @return true if this call completed the promise
+     * @throws NullPointerException if {@code ex} is null
+     */
+    public boolean fail(Throwable ex) {
+        if (ex == null)
+            throw new NullPointerException();
+        return settle(new Failure(ex, false));
+    }
+
+    /**
+     * Cancels this promise, which fails with a {@link CancellationException},
+     * and the upstream promises and tasks it is waiting for.
+     *
+     * @param mayInterruptIfRunning whether a task started by {@link #async}
+     *            upstream should be interrupted
+     * @return true if this call cancelled the promise
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return settle(new Failure(new CancellationException(), mayInterruptIfRunning));
+    }
+
+    private boolean settle(Object r) {
+        if (!RESULT.compareAndSet(this, null, r))
+            return false;
+        fire();
+        return true;
+    }
+
+    private void fire() {
+        Node h = STACK.getAndSet(this, FIRED);
+        if (h == null)
+            return;
+        if (h.next == null) {
+            h.run();
+            return;
+        }
+        // not reversed in place: a timed-out get() may still be unlinking its
+        // node from this list
+        List<Node> nodes = new ArrayList<Node>();
+        for (Node n = h; n != null; n = n.next)
+            nodes.add(n);
+        for (int i = nodes.size() - 1; i >= 0; i--) // in registration order
+            nodes.get(i).run();
+    }
+
+    private static void runQuietly(Runnable action) {
+        try {
+            action.run();
+        } catch (Throwable e) { // a faulty callback must not stop the others
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+        }
+    }
+
+    /** Runs {@code action} once this promise is complete. */
+    private void whenDone(Runnable action) {
+        if (!push(new Node(action)))
+            runQuietly(action);
+    }
+
+    /**
+     * Pushes {@code node} onto the stack.
+     *
+     * @return false if the outcome was already set, so that the node will not
+     *         be run
+     */
+    private boolean push(Node node) {
+        for (Node h; (h = stack) != FIRED;) {
+            node.next = h;
+            if (STACK.compareAndSet(this, h, node))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Clears a waiter node of a get() that returns without the outcome, and
+     * unlinks every dead waiter node from the stack, unless it has been fired.
+     */
+    private void removeWaiter(Node node) {
+        node.thread = null;
+        retry: for (;;) {
+            Node h = stack;
+            if (h == FIRED)
+                return;
+            for (Node pred = null, q = h, s; q != null; q = s) {
+                s = q.next;
+                if (!q.isDead())
+                    pred = q;
+                else if (pred != null) {
+                    pred.next = s;
+                    if (pred.isDead()) // check for race
+                        continue retry;
+                } else if (!STACK.compareAndSet(this, q, s))
+                    continue retry;
+            }
+            return;
+        }
+    }
+
+    public boolean isDone() {
+        return result != null;
+    }
+
+    public boolean isCancelled() {
+        Object r = result;
+        return r instanceof Failure && ((Failure) r).ex instanceof CancellationException;
+    }
+
+    /** Returns true if this promise failed or was cancelled. */
+    public boolean isFailed() {
+        return result instanceof Failure;
+    }
+
+    /**
+     * Registers a callback receiving the value, or null and the failure, once
+     * this promise completes. It runs in the completing thread, or in the
+     * caller if this promise is already complete.
+     *
+     * @return this promise
+     */
+    public Promise<T> onComplete(final BiConsumer<? super T, ? super Throwable> callback) {
+        if (callback == null)
+            throw new NullPointerException();
+        whenDone(new Runnable() {
+            public void run() {
+                Object r = result;
+                if (r instanceof Failure)
+                    callback.accept(null, ((Failure) r).ex);
+                else
+                    callback.accept(value(r), null);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Like {@link #onComplete(BiConsumer)}, but runs the callback with
+     * {@code executor}.
+     *
+     * @return this promise
+     */
+    public Promise<T> onComplete(final BiConsumer<? super T, ? super Throwable> callback, final Executor executor) {
+        if (callback == null || executor == null)
+            throw new NullPointerException();
+        whenDone(new Runnable() {
+            public void run() {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        Object r = result;
+                        if (r instanceof Failure)
+                            callback.accept(null, ((Failure) r).ex);
+                        else
+                            callback.accept(value(r), null);
+                    }
+                });
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Returns a promise of {@code fn} applied to the value of this one.
+     * {@code fn} runs in the completing thread, or in the caller if this
+     * promise is already complete.
+     *
+     * @param fn the function computing the derived value
+     * @return a promise failing with this one's failure or the exception
+     *         thrown by {@code fn}
+     */
+    public <U> Promise<U> map(final Function<? super T, ? extends U> fn) {
+        if (fn == null)
+            throw new NullPointerException();
+        final Promise<U> d = new Promise<U>();
+        d.cancelsUpstream(this);
+        whenDone(new Runnable() {
+            public void run() {
+                if (d.result == null && !d.propagateFailure(result))
+                    d.applyTo(fn, Promise.this.<T> value(result));
+            }
+        });
+        return d;
+    }
+
+    /**
+     * Like {@link #map(Function)}, but runs {@code fn} with {@code executor};
+     * if the executor rejects it, the derived promise fails with the
+     * rejection.
+     */
+    public <U> Promise<U> map(final Function<? super T, ? extends U> fn, final Executor executor) {
+        if (fn == null || executor == null)
+            throw new NullPointerException();
+        final Promise<U> d = new Promise<U>();
+        d.cancelsUpstream(this);
+        whenDone(new Runnable() {
+            public void run() {
+                if (d.result != null || d.propagateFailure(result))
+                    return;
+                try {
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            if (d.result == null)
+                                d.applyTo(fn, Promise.this.<T> value(result));
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    d.fail(e);
+                }
+            }
+        });
+        return d;
+    }
+
+    /**
+     * Returns a promise of the outcome of the promise {@code fn} returns for
+     * the value of this one.
+     *
+     * @param fn the function starting the dependent computation
+     * @return a promise failing with this one's failure, the exception thrown
+     *         by {@code fn}, or the failure of the promise it returned
+     */
+    public <U> Promise<U> flatMap(final Function<? super T, ? extends Promise<U>> fn) {
+        if (fn == null)
+            throw new NullPointerException();
+        final Promise<U> d = new Promise<U>();
+        d.cancelsUpstream(this);
+        whenDone(new Runnable() {
+            public void run() {
+                if (d.result != null || d.propagateFailure(result))
+                    return;
+                final Promise<U> next;
+                try {
+                    next = fn.apply(Promise.this.<T> value(result));
+                    if (next == null)
+                        throw new NullPointerException("flatMap function returned null");
+                } catch (Throwable e) {
+                    d.fail(e);
+                    return;
+                }
+                d.cancelsUpstream(next);
+                next.whenDone(new Runnable() {
+                    public void run() {
+                        d.settleFrom(next.result);
+                    }
+                });
+            }
+        });
+        return d;
+    }
+
+    /**
+     * Returns a promise completed with the value of this one, or failed with a
+     * {@link TimeoutException} if this one is not complete within the given
+     * time, in which case this one is cancelled with interruption.
+     *
+     * @param timeout how long to wait
+     * @param unit the unit of {@code timeout}
+     * @return a promise of this one's value
+     */
+    public Promise<T> withTimeout(long timeout, TimeUnit unit) {
+        if (unit == null)
+            throw new NullPointerException();
+        final Promise<T> d = new Promise<T>();
+        if (result != null) {
+            d.settleFrom(result);
+            return d;
+        }
+        d.cancelsUpstream(this);
+        final ScheduledFuture<?> timer = Delayer.DELAYER.schedule(new Runnable() {
+            public void run() {
+                // claim d first so the cancellation does not complete it, and
+                // fire its continuations after the source is cancelled
+                if (RESULT.compareAndSet(d, null, new Failure(new TimeoutException(), false))) {
+                    cancel(true);
+                    d.fire();
+                }
+            }
+        }, timeout, unit);
+        whenDone(new Runnable() {
+            public void run() {
+                if (d.settleFrom(result))
+                    timer.cancel(false);
+            }
+        });
+        return d;
+    }
+
+    /**
+     * Returns a promise of the values of all the given promises, in order. It
+     * fails as soon as one of them fails, with that failure, and is cancelled
+     * if one of them is; cancelling it cancels all of them.
+     *
+     * @param promises the promises to wait for
+     * @return a promise of their values
+     */
+    public static <T> Promise<List<T>> allOf(Collection<? extends Promise<? extends T>> promises) {
+        @SuppressWarnings("unchecked")
+        final Promise<? extends T>[] ps = (Promise<? extends T>[]) promises.toArray(new Promise<?>[0]);
+        final Promise<List<T>> d = new Promise<List<T>>();
+        if (ps.length == 0) {
+            d.complete(Collections.<T> emptyList());
+            return d;
+        }
+        final AtomicInteger remaining = new AtomicInteger(ps.length);
+        for (final Promise<? extends T> p : ps) {
+            d.cancelsUpstream(p);
+            p.whenDone(new Runnable() {
+                public void run() {
+                    if (d.result != null || d.propagateFailure(p.result))
+                        return;
+                    if (remaining.decrementAndGet() == 0) {
+                        List<T> values = new ArrayList<T>(ps.length);
+                        for (Promise<? extends T> q : ps)
+                            values.add(q.<T> value(q.result));
+                        d.complete(values);
+                    }
+                }
+            });
+        }
+        return d;
+    }
+
+    /** @see #allOf(Collection) */
+    @SafeVarargs
+    public static <T> Promise<List<T>> allOf(Promise<? extends T>... promises) {
+        List<Promise<? extends T>> list = new ArrayList<Promise<? extends T>>(promises.length);
+        for (Promise<? extends T> p : promises) // copied, not passed on, so the array never escapes
+            list.add(p);
+        return allOf(list);
+    }
+
+    /**
+     * Returns a promise completed like the first of the given promises to
+     * complete, whether with a value or a failure; cancelling it cancels all
+     * of them. The others are left running.
+     *
+     * @param promises the promises to wait for
+     * @return a promise of the first outcome
+     * @throws IllegalArgumentException if {@code promises} is empty
+     */
+    public static <T> Promise<T> anyOf(Collection<? extends Promise<? extends T>> promises) {
+        if (promises.isEmpty())
+            throw new IllegalArgumentException();
+        final Promise<T> d = new Promise<T>();
+        for (final Promise<? extends T> p : promises) {
+            d.cancelsUpstream(p);
+            p.whenDone(new Runnable() {
+                public void run() {
+                    d.settleFrom(p.result);
+                }
+            });
+        }
+        return d;
+    }
+
+    /** @see #anyOf(Collection) */
+    @SafeVarargs
+    public static <T> Promise<T> anyOf(Promise<? extends T>... promises) {
+        List<Promise<? extends T>> list = new ArrayList<Promise<? extends T>>(promises.length);
+        for (Promise<? extends T> p : promises)
+            list.add(p);
+        return anyOf(list);
+    }
+
+    /** Cancels {@code upstream} if this promise is cancelled first. */
+    private void cancelsUpstream(final Promise<?> upstream) {
+        whenDone(new Runnable() {
+            public void run() {
+                Object r = result;
+                if (r instanceof Failure && ((Failure) r).ex instanceof CancellationException)
+                    upstream.cancel(((Failure) r).interrupt);
+            }
+        });
+    }
+
+    /**
+     * If {@code r} is a failure, completes this promise with it and returns
+     * true.
+     */
+    private boolean propagateFailure(Object r) {
+        if (!(r instanceof Failure))
+            return false;
+        settleFrom(r);
+        return true;
+    }
+
+    private boolean settleFrom(Object r) {
+        if (r instanceof Failure) {
+            Failure f = (Failure) r;
+            // a cancelled source cancels, without interrupting anything further
+            return (f.ex instanceof CancellationException) ? cancel(false) : fail(f.ex);
+        }
+        return settle(r);
+    }
+
+    private <V> void applyTo(Function<? super V, ? extends T> fn, V v) {
+        T u;
+        try {
+            u = fn.apply(v);
+        } catch (Throwable e) {
+            fail(e);
+            return;
+        }
+        complete(u);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <V> V value(Object r) {
+        return (r == NIL) ? null : (V) r;
+    }
+
+    private T report(Object r) throws ExecutionException {
+        if (r instanceof Failure) {
+            Throwable ex = ((Failure) r).ex;
+            if (ex instanceof CancellationException)
+                throw (CancellationException) ex;
+            throw new ExecutionException(ex);
+        }
+        return value(r);
+    }
+
+    /**
+     * Waits for the outcome. Prefer continuations; this is for the edges of
+     * a program, such as tests and {@code main}.
+     */
+    public T get() throws InterruptedException, ExecutionException {
+        Object r = result;
+        if (r == null)
+            r = await(false, 0L);
+        return report(r);
+    }
+
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        Object r = result;
+        if (r == null && (r = await(true, unit.toNanos(timeout))) == null)
+            throw new TimeoutException();
+        return report(r);
+    }
+
+    private Object await(boolean timed, long nanos) throws InterruptedException {
+        Node node = new Node(Thread.currentThread());
+        if (!push(node))
+            return result;
+        final long deadline = timed ? System.nanoTime() + nanos : 0L;
+        Object r;
+        while ((r = result) == null) {
+            if (Thread.interrupted()) {
+                removeWaiter(node);
+                throw new InterruptedException();
+            }
+            if (!timed)
+                LockSupport.park(this);
+            else if ((nanos = deadline - System.nanoTime()) > 0L)
+                LockSupport.parkNanos(this, nanos);
+            else {
+                removeWaiter(node);
+                return null;
+            }
+        }
+        return r;
+    }
+
+    public String toString() {
+        Object r = result;
+        String status = (r == null) ? "[Incomplete]"
+                : (r instanceof Failure) ? "[Failed: " + ((Failure) r).ex + "]" : "[Completed normally]";
+        return super.toString() + status;
+    }
+
+    /** Fires the timeouts of {@link #withTimeout}. */
+    static final class Delayer {
+        static final ScheduledThreadPoolExecutor DELAYER;
+
+        static {
+            DELAYER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "PromiseDelayScheduler");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            DELAYER.setRemoveOnCancelPolicy(true);
+        }
+    }
+}
@@ -1,34 +1,35 @@
 package com.zs.future_callback_promise;
 
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import com.zs.juc.pool.ThreadPoolExecutor;
+
+/**
+ * 主线程不再sleep后阻塞在get()上：任务结果通过回调交给后续处理，主线程只在程序结束前等待一次。
+ */
 public class Test {
-    public static void main(String[] args) {
-        ExecutorService executor = Executors.newCachedThreadPool();
-        Task1 task = new Task1();
-        Future<Integer> result = executor.submit(task);
-        executor.shutdown();
+    public static void main(String[] args) throws InterruptedException {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        final CountDownLatch finished = new CountDownLatch(1);
 
-        try {
-            Thread.sleep(1000);
-        } catch (InterruptedException e1) {
-            e1.printStackTrace();
-        }
+        Promise.async(new Task1(), executor)
+                .map(sum -> "task运行结果" + sum)
+                .onComplete((message, failure) -> {
+                    if (failure != null)
+                        failure.printStackTrace();
+                    else
+                        System.out.println(message);
+                    finished.countDown();
+                });
 
         System.out.println("主线程在执行任务");
 
-        try {
-            System.out.println("task运行结果" + result.get());
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } catch (ExecutionException e) {
-            e.printStackTrace();
-        }
-
+        finished.await();
+        executor.shutdown();
         System.out.println("所有任务执行完毕");
     }
 }
@@ -43,4 +44,4 @@ class Task1 implements Callable<Integer> {
             sum += i;
         return sum;
     }
-}
\ No newline at end of file
+}
@@ -1,55 +1,63 @@
 package com.zs.future_callback_promise;
 
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Promise组合：allOf等待全部结果，anyOf取最先完成的结果，withTimeout超时后取消上游任务。
+ */
 public class Test2 {
-    public static void main(String[] args) {
-        // 第一种方式
-        ExecutorService executor = Executors.newCachedThreadPool();
-        Task2 task = new Task2();
-        FutureTask<Integer> futureTask = new FutureTask<Integer>(task);
-        executor.submit(futureTask);
-        executor.shutdown();
-
-        // 第二种方式，注意这种方式和第一种方式效果是类似的，只不过一个使用的是ExecutorService，一个使用的是Thread
-        /*
-         * Task task = new Task(); FutureTask<Integer> futureTask = new
-         * FutureTask<Integer>(task); Thread thread = new Thread(futureTask);
-         * thread.start();
-         */
+    public static void main(String[] args) throws InterruptedException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
 
-        try {
-            Thread.sleep(1000);
-        } catch (InterruptedException e1) {
-            e1.printStackTrace();
-        }
+        Promise<Integer> a = Promise.async(new Task2(100, 1000), pool);
+        Promise<Integer> b = Promise.async(new Task2(200, 500), pool);
+
+        // 两个任务都完成后求和
+        Promise<Integer> total = Promise.allOf(a, b).map((List<Integer> sums) -> sums.get(0) + sums.get(1));
+        // 先完成的那个
+        Promise<Integer> first = Promise.anyOf(a, b);
+        // 3秒的任务只等1秒，超时后任务被中断
+        final Promise<Integer> slow = Promise.async(new Task2(100, 3000), pool);
+        Promise<Integer> limited = slow.withTimeout(1, TimeUnit.SECONDS);
+
+        first.onComplete((sum, failure) -> System.out.println("最先完成的结果" + sum));
+        total.onComplete((sum, failure) -> System.out.println("两个任务的结果之和" + sum));
+        limited.onComplete((sum, failure) -> System.out.println("超时任务: " + failure + ", 上游已取消: " + slow.isCancelled()));
 
         System.out.println("主线程在执行任务");
 
+        // 只在程序出口处等待
         try {
-            System.out.println("task运行结果" + futureTask.get());
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            total.get();
+            limited.get();
         } catch (ExecutionException e) {
-            e.printStackTrace();
+            // the timeout reported above
         }
-
         System.out.println("所有任务执行完毕");
     }
 }
 
 class Task2 implements Callable<Integer> {
+    private final int n;
+
+    private final long millis;
+
+    Task2(int n, long millis) {
+        this.n = n;
+        this.millis = millis;
+    }
+
     @Override
     public Integer call() throws Exception {
         System.out.println("子线程在进行计算");
-        Thread.sleep(3000);
+        Thread.sleep(millis);
         int sum = 0;
-        for (int i = 0; i < 100; i++)
+        for (int i = 0; i < n; i++)
             sum += i;
         return sum;
     }
-}
\ No newline at end of file
+}
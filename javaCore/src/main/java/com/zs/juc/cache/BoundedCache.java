@@ -0,0 +1,888 @@
+package com.zs.juc.cache;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import com.zs.juc.collection.ConcurrentHashMap8;
+
+/**
+ * A concurrent cache holding at most a fixed number of entries, with optional
+ * expiration after write and after access.
+ *
+ * <p>
+ * <b>Structure.</b> Entries are indexed by a {@link ConcurrentHashMap8}, so
+ * lookups and updates scale exactly like the map. The eviction policy keeps its
+ * own linked lists of the entries and is only ever touched under a single
+ * eviction lock; instead of updating the policy directly, operations record
+ * what they did:
+ * <ul>
+ * <li>reads go into a {@link StripedReadBuffer}, which is lossy and never
+ * blocks, so {@code get} takes no lock;</li>
+ * <li>writes go into an unbounded write queue, because dropping an insertion or
+ * removal would corrupt the policy.</li>
+ * </ul>
+ * The buffers are replayed against the policy ("maintenance") by a task handed
+ * to the {@linkplain Builder#executor executor}, once a read ring fills up or
+ * after any write. If writes outpace maintenance, writers run it themselves
+ * while holding the lock, which bounds the write queue.
+ *
+ * <p>
+ * <b>Policy.</b> Eviction follows W-TinyLFU. New entries enter a small LRU
+ * <i>window</i> (1% of the capacity). Entries leaving the window become
+ * candidates for the <i>main</i> space, a segmented LRU whose
+ * <i>probation</i> segment holds entries seen once and whose <i>protected</i>
+ * segment (80% of main) holds entries read again while on probation. When the
+ * cache is over capacity, each candidate is compared with the LRU entry of
+ * probation (the victim) and the one the {@link FrequencySketch} reports as
+ * less popular is evicted. The window lets bursts of new keys in, and the
+ * frequency filter keeps one-hit wonders and scans from flushing entries that
+ * are used over and over. The window size is fixed; there is no hill climbing.
+ *
+ * <p>
+ * <b>Expiration.</b> An entry that has expired is treated as absent by every
+ * operation from the moment it expires, and is physically removed by the next
+ * maintenance run. Expired entries count as evictions in {@link #stats()}.
+ *
+ * <p>
+ * Neither keys nor values may be {@code null}.
+ *
+ * <pre>
+ * BoundedCache&lt;String, User&gt; users = BoundedCache.newBuilder()
+ *         .maximumSize(10000)
+ *         .expireAfterWrite(5, TimeUnit.MINUTES)
+ *         .recordStats()
+ *         .build();
+ * User u = users.get(id, this::loadUser);
+ * </pre>
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ */
+public class BoundedCache<K, V> {
+
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /** Share of the capacity given to the main space; the rest is the window. */
+    static final double PERCENT_MAIN = 0.99d;
+
+    /** Share of the main space given to the protected segment. */
+    static final double PERCENT_MAIN_PROTECTED = 0.80d;
+
+    /** Number of pending writes above which writers run maintenance inline. */
+    static final int WRITE_BUFFER_MAX = 128 * NCPU;
+
+    // queue types of Node.queueType
+    static final int UNLINKED = 0;
+
+    static final int WINDOW = 1;
+
+    static final int PROBATION = 2;
+
+    static final int PROTECTED = 3;
+
+    // drain states
+    static final int IDLE = 0;
+
+    static final int REQUIRED = 1;
+
+    static final int PROCESSING_TO_IDLE = 2;
+
+    static final int PROCESSING_TO_REQUIRED = 3;
+
+    final ConcurrentHashMap8<K, Node<K, V>> data;
+
+    final long maximum;
+
+    final long windowMaximum;
+
+    final long protectedMaximum;
+
+    final long expireAfterWriteNanos;
+
+    final long expireAfterAccessNanos;
+
+    final LongSupplier ticker;
+
+    final Executor executor;
+
+    final ReentrantLock evictionLock = new ReentrantLock();
+
+    final FrequencySketch sketch;
+
+    final StripedReadBuffer<Node<K, V>> readBuffer = new StripedReadBuffer<Node<K, V>>();
+
+    final ConcurrentLinkedQueue<Runnable> writeBuffer = new ConcurrentLinkedQueue<Runnable>();
+
+    final AtomicInteger pendingWrites = new AtomicInteger();
+
+    final AtomicInteger drainStatus = new AtomicInteger();
+
+    final Runnable drainBuffersTask = new Runnable() {
+        public void run() {
+            performCleanUp();
+        }
+    };
+
+    // policy state, guarded by evictionLock
+    final AccessOrderDeque<K, V> window = new AccessOrderDeque<K, V>();
+
+    final AccessOrderDeque<K, V> probation = new AccessOrderDeque<K, V>();
+
+    final AccessOrderDeque<K, V> protectedQueue = new AccessOrderDeque<K, V>();
+
+    final WriteOrderDeque<K, V> writeOrder = new WriteOrderDeque<K, V>();
+
+    long weightedSize;
+
+    long windowSize;
+
+    long protectedSize;
+
+    // statistics, null unless recording
+    final LongAdder hitCount;
+
+    final LongAdder missCount;
+
+    final LongAdder evictionCount;
+
+    BoundedCache(Builder<? super K, ? super V> builder) {
+        this.maximum = builder.maximumSize;
+        this.windowMaximum = maximum - (long) (PERCENT_MAIN * maximum);
+        this.protectedMaximum = (long) (PERCENT_MAIN_PROTECTED * (maximum - windowMaximum));
+        this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        this.expireAfterAccessNanos = builder.expireAfterAccessNanos;
+        this.ticker = builder.ticker;
+        this.executor = builder.executor;
+        this.sketch = new FrequencySketch(maximum);
+        this.data = new ConcurrentHashMap8<K, Node<K, V>>(
+                builder.initialCapacity >= 0 ? builder.initialCapacity : (int) Math.min(maximum, 1 << 16));
+        boolean stats = builder.recordStats;
+        this.hitCount = stats ? new LongAdder() : null;
+        this.missCount = stats ? new LongAdder() : null;
+        this.evictionCount = stats ? new LongAdder() : null;
+    }
+
+    public static Builder<Object, Object> newBuilder() {
+        return new Builder<Object, Object>();
+    }
+
+    /* ---------------- Nodes -------------- */
+
+    /**
+     * A cache entry. Its value and timestamps are read without locking; value
+     * updates and lifecycle changes synchronize on the node. The links are
+     * only used under the eviction lock.
+     */
+    static final class Node<K, V> {
+        final K key;
+
+        volatile V value;
+
+        volatile long writeTime;
+
+        volatile long accessTime;
+
+        /** ALIVE, then RETIRED once removed from the map, then DEAD. */
+        volatile int state;
+
+        Node<K, V> accessPrev, accessNext;
+
+        Node<K, V> writePrev, writeNext;
+
+        int queueType;
+
+        boolean inWriteOrder;
+
+        static final int ALIVE = 0;
+
+        static final int RETIRED = 1;
+
+        static final int DEAD = 2;
+
+        Node(K key, V value, long now) {
+            this.key = key;
+            this.value = value;
+            this.writeTime = now;
+            this.accessTime = now;
+        }
+
+        boolean isAlive() {
+            return state == ALIVE;
+        }
+    }
+
+    /**
+     * A doubly-linked list of nodes in access order, threaded through
+     * {@code accessPrev}/{@code accessNext}.
+     */
+    static final class AccessOrderDeque<K, V> {
+        Node<K, V> first, last;
+
+        void linkLast(Node<K, V> e) {
+            Node<K, V> l = last;
+            e.accessPrev = l;
+            e.accessNext = null;
+            last = e;
+            if (l == null)
+                first = e;
+            else
+                l.accessNext = e;
+        }
+
+        void unlink(Node<K, V> e) {
+            Node<K, V> p = e.accessPrev, n = e.accessNext;
+            if (p == null)
+                first = n;
+            else
+                p.accessNext = n;
+            if (n == null)
+                last = p;
+            else
+                n.accessPrev = p;
+            e.accessPrev = e.accessNext = null;
+        }
+
+        void moveToLast(Node<K, V> e) {
+            if (e != last) {
+                unlink(e);
+                linkLast(e);
+            }
+        }
+    }
+
+    /**
+     * A doubly-linked list of nodes in write order, threaded through
+     * {@code writePrev}/{@code writeNext}; only kept when entries expire after
+     * write.
+     */
+    static final class WriteOrderDeque<K, V> {
+        Node<K, V> first, last;
+
+        void linkLast(Node<K, V> e) {
+            Node<K, V> l = last;
+            e.writePrev = l;
+            e.writeNext = null;
+            last = e;
+            if (l == null)
+                first = e;
+            else
+                l.writeNext = e;
+        }
+
+        void unlink(Node<K, V> e) {
+            Node<K, V> p = e.writePrev, n = e.writeNext;
+            if (p == null)
+                first = n;
+            else
+                p.writeNext = n;
+            if (n == null)
+                last = p;
+            else
+                n.writePrev = p;
+            e.writePrev = e.writeNext = null;
+        }
+
+        void moveToLast(Node<K, V> e) {
+            if (e != last) {
+                unlink(e);
+                linkLast(e);
+            }
+        }
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * Returns the value associated with {@code key}, or {@code null} if there
+     * is no live entry for it. Never blocks.
+     */
+    public V get(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            recordMiss();
+            return null;
+        }
+        long now = ticker.getAsLong();
+        V value = node.value;
+        if (hasExpired(node, now)) {
+            recordMiss();
+            scheduleDrain();
+            return null;
+        }
+        afterRead(node, now);
+        recordHit();
+        return value;
+    }
+
+    /**
+     * Returns the value associated with {@code key}, computing it with
+     * {@code loader} if there is no live entry. Concurrent callers for the same
+     * key wait for a single load; a loader returning {@code null} leaves the
+     * cache unchanged.
+     */
+    public V get(K key, final Function<? super K, ? extends V> loader) {
+        if (loader == null)
+            throw new NullPointerException();
+        V value = get(key);
+        if (value != null)
+            return value;
+        final long now = ticker.getAsLong();
+        @SuppressWarnings("unchecked")
+        final Node<K, V>[] replaced = (Node<K, V>[]) new Node<?, ?>[1];
+        final boolean[] loaded = new boolean[1];
+        Node<K, V> node = data.compute(key, (k, prior) -> {
+            if (prior != null) {
+                synchronized (prior) {
+                    if (!hasExpired(prior, now))
+                        return prior; // loaded by someone else meanwhile
+                    prior.state = Node.RETIRED;
+                }
+                replaced[0] = prior;
+            }
+            V v = loader.apply(k);
+            if (v == null)
+                return null;
+            loaded[0] = true;
+            return new Node<K, V>(k, v, now);
+        });
+        if (replaced[0] != null)
+            afterRemoval(replaced[0]);
+        if (node == null)
+            return null;
+        if (loaded[0])
+            afterWrite(new AddTask(node));
+        else
+            afterRead(node, now);
+        return node.value;
+    }
+
+    /**
+     * Associates {@code value} with {@code key}.
+     *
+     * @return the previous live value, or {@code null}
+     */
+    public V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    /**
+     * Associates {@code value} with {@code key} unless a live entry exists.
+     *
+     * @return the existing live value, or {@code null} if the value was added
+     */
+    public V putIfAbsent(K key, V value) {
+        return put(key, value, true);
+    }
+
+    final V put(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        long now = ticker.getAsLong();
+        Node<K, V> node = null;
+        for (;;) {
+            Node<K, V> prior = data.get(key);
+            if (prior == null) {
+                if (node == null)
+                    node = new Node<K, V>(key, value, now);
+                if ((prior = data.putIfAbsent(key, node)) == null) {
+                    afterWrite(new AddTask(node));
+                    return null;
+                }
+            }
+            V oldValue;
+            boolean expired;
+            synchronized (prior) {
+                if (!prior.isAlive())
+                    continue; // being removed; retry against the map
+                oldValue = prior.value;
+                expired = hasExpired(prior, now);
+                if (onlyIfAbsent && !expired) {
+                    afterRead(prior, now);
+                    return oldValue;
+                }
+                prior.value = value;
+                prior.writeTime = now;
+                prior.accessTime = now;
+            }
+            afterWrite(new UpdateTask(prior));
+            return expired ? null : oldValue;
+        }
+    }
+
+    /**
+     * Removes the entry for {@code key}.
+     *
+     * @return the removed live value, or {@code null}
+     */
+    public V remove(K key) {
+        @SuppressWarnings("unchecked")
+        final Node<K, V>[] removed = (Node<K, V>[]) new Node<?, ?>[1];
+        data.computeIfPresent(key, (k, n) -> {
+            synchronized (n) {
+                n.state = Node.RETIRED;
+            }
+            removed[0] = n;
+            return null;
+        });
+        Node<K, V> node = removed[0];
+        if (node == null)
+            return null;
+        afterRemoval(node);
+        return hasExpired(node, ticker.getAsLong()) ? null : node.value;
+    }
+
+    /** Removes every entry. */
+    public void invalidateAll() {
+        for (K key : data.keySet())
+            remove(key);
+    }
+
+    /**
+     * Returns the number of entries in the index, which may include entries
+     * that have expired or are about to be evicted.
+     */
+    public long estimatedSize() {
+        return data.mappingCount();
+    }
+
+    /** Runs any pending maintenance on the calling thread. */
+    public void cleanUp() {
+        performCleanUp();
+    }
+
+    public CacheStats stats() {
+        if (hitCount == null)
+            return new CacheStats(0L, 0L, 0L);
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum());
+    }
+
+    /* ---------------- Recording -------------- */
+
+    final boolean hasExpired(Node<K, V> node, long now) {
+        return (expireAfterWriteNanos >= 0L && now - node.writeTime >= expireAfterWriteNanos)
+                || (expireAfterAccessNanos >= 0L && now - node.accessTime >= expireAfterAccessNanos);
+    }
+
+    private void recordHit() {
+        if (hitCount != null)
+            hitCount.increment();
+    }
+
+    private void recordMiss() {
+        if (missCount != null)
+            missCount.increment();
+    }
+
+    final void afterRead(Node<K, V> node, long now) {
+        if (expireAfterAccessNanos >= 0L)
+            node.accessTime = now;
+        boolean full = readBuffer.offer(node) == StripedReadBuffer.FULL;
+        if (full || drainStatus.get() == REQUIRED)
+            scheduleDrain();
+    }
+
+    final void afterRemoval(Node<K, V> node) {
+        afterWrite(new RemovalTask(node));
+    }
+
+    final void afterWrite(Runnable task) {
+        writeBuffer.add(task);
+        if (pendingWrites.incrementAndGet() > WRITE_BUFFER_MAX) {
+            // back-pressure: maintenance is falling behind the writers
+            performCleanUp();
+        } else
+            scheduleDrain();
+    }
+
+    /**
+     * Makes sure a maintenance run will happen after the caller's buffered
+     * event, submitting one unless it is already queued or running.
+     */
+    final void scheduleDrain() {
+        for (;;) {
+            int status = drainStatus.get();
+            if (status == PROCESSING_TO_REQUIRED)
+                return;
+            if (status == PROCESSING_TO_IDLE) {
+                if (drainStatus.compareAndSet(status, PROCESSING_TO_REQUIRED))
+                    return;
+            } else if (drainStatus.compareAndSet(status, PROCESSING_TO_IDLE)) {
+                try {
+                    executor.execute(drainBuffersTask);
+                } catch (Throwable t) {
+                    // the executor refused; do the work here rather than lose it
+                    drainStatus.set(REQUIRED);
+                    performCleanUp();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replays the buffers against the policy, repeating while other threads
+     * asked for another run in the meantime.
+     */
+    final void performCleanUp() {
+        evictionLock.lock();
+        try {
+            do {
+                drainStatus.lazySet(PROCESSING_TO_IDLE);
+                maintenance();
+            } while (!drainStatus.compareAndSet(PROCESSING_TO_IDLE, IDLE));
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /* ---------------- Policy, all under evictionLock -------------- */
+
+    void maintenance() {
+        readBuffer.drainTo(this::onAccess);
+        Runnable task;
+        while ((task = writeBuffer.poll()) != null) {
+            pendingWrites.decrementAndGet();
+            task.run();
+        }
+        long now = ticker.getAsLong();
+        expireEntries(now);
+        evictEntries(now);
+    }
+
+    final class AddTask implements Runnable {
+        final Node<K, V> node;
+
+        AddTask(Node<K, V> node) {
+            this.node = node;
+        }
+
+        public void run() {
+            if (!node.isAlive() || node.queueType != UNLINKED)
+                return; // removed before it was ever linked
+            sketch.increment(node.key);
+            window.linkLast(node);
+            node.queueType = WINDOW;
+            windowSize++;
+            weightedSize++;
+            if (expireAfterWriteNanos >= 0L) {
+                writeOrder.linkLast(node);
+                node.inWriteOrder = true;
+            }
+        }
+    }
+
+    final class UpdateTask implements Runnable {
+        final Node<K, V> node;
+
+        UpdateTask(Node<K, V> node) {
+            this.node = node;
+        }
+
+        public void run() {
+            if (node.queueType == UNLINKED)
+                return;
+            onAccess(node);
+            if (node.inWriteOrder)
+                writeOrder.moveToLast(node);
+        }
+    }
+
+    final class RemovalTask implements Runnable {
+        final Node<K, V> node;
+
+        RemovalTask(Node<K, V> node) {
+            this.node = node;
+        }
+
+        public void run() {
+            unlinkNode(node);
+            synchronized (node) {
+                node.state = Node.DEAD;
+            }
+        }
+    }
+
+    /** Records a read: bumps the key's frequency and its recency. */
+    void onAccess(Node<K, V> node) {
+        if (node.queueType == UNLINKED)
+            return;
+        sketch.increment(node.key);
+        if (node.queueType == WINDOW)
+            window.moveToLast(node);
+        else if (node.queueType == PROBATION) {
+            // seen again while on probation: promote
+            probation.unlink(node);
+            protectedQueue.linkLast(node);
+            node.queueType = PROTECTED;
+            protectedSize++;
+            while (protectedSize > protectedMaximum) {
+                Node<K, V> demoted = protectedQueue.first;
+                protectedQueue.unlink(demoted);
+                probation.linkLast(demoted);
+                demoted.queueType = PROBATION;
+                protectedSize--;
+            }
+        } else
+            protectedQueue.moveToLast(node);
+    }
+
+    void unlinkNode(Node<K, V> node) {
+        switch (node.queueType) {
+        case WINDOW:
+            window.unlink(node);
+            windowSize--;
+            break;
+        case PROBATION:
+            probation.unlink(node);
+            break;
+        case PROTECTED:
+            protectedQueue.unlink(node);
+            protectedSize--;
+            break;
+        default:
+            return;
+        }
+        node.queueType = UNLINKED;
+        weightedSize--;
+        if (node.inWriteOrder) {
+            writeOrder.unlink(node);
+            node.inWriteOrder = false;
+        }
+    }
+
+    void expireEntries(long now) {
+        if (expireAfterAccessNanos >= 0L) {
+            expireAccessOrder(window, now);
+            expireAccessOrder(probation, now);
+            expireAccessOrder(protectedQueue, now);
+        }
+        if (expireAfterWriteNanos >= 0L) {
+            Node<K, V> node;
+            while ((node = writeOrder.first) != null && now - node.writeTime >= expireAfterWriteNanos) {
+                if (!evictEntry(node, true, now))
+                    break;
+            }
+        }
+    }
+
+    private void expireAccessOrder(AccessOrderDeque<K, V> deque, long now) {
+        Node<K, V> node;
+        while ((node = deque.first) != null && now - node.accessTime >= expireAfterAccessNanos) {
+            if (!evictEntry(node, true, now))
+                break;
+        }
+    }
+
+    /**
+     * Moves entries that overflow the window to the tail of probation and then
+     * evicts until the cache is back within its bound.
+     */
+    void evictEntries(long now) {
+        Node<K, V> candidate = null;
+        Node<K, V> node = window.first;
+        while (windowSize > windowMaximum && node != null) {
+            Node<K, V> next = node.accessNext;
+            window.unlink(node);
+            probation.linkLast(node);
+            node.queueType = PROBATION;
+            windowSize--;
+            if (candidate == null)
+                candidate = node;
+            node = next;
+        }
+        evictFromMain(candidate, now);
+    }
+
+    /**
+     * Evicts entries from the main space until the size bound holds, each time
+     * dropping the less frequent of the oldest probation entry (the victim) and
+     * the oldest remaining window candidate. Falls back to the protected
+     * segment and the window once probation is exhausted.
+     */
+    void evictFromMain(Node<K, V> candidate, long now) {
+        int victimQueue = PROBATION;
+        Node<K, V> victim = probation.first;
+        while (weightedSize > maximum) {
+            if (victim == null && candidate == null) {
+                if (victimQueue == PROBATION) {
+                    victim = protectedQueue.first;
+                    victimQueue = PROTECTED;
+                    continue;
+                } else if (victimQueue == PROTECTED) {
+                    victim = window.first;
+                    victimQueue = WINDOW;
+                    continue;
+                }
+                break;
+            }
+            Node<K, V> evict;
+            if (victim == null) {
+                evict = candidate;
+                candidate = candidate.accessNext;
+            } else if (candidate == null || candidate == victim) {
+                evict = victim;
+                victim = victim.accessNext;
+                if (candidate != null)
+                    candidate = victim;
+            } else if (admit(candidate.key, victim.key)) {
+                evict = victim;
+                victim = victim.accessNext;
+                candidate = candidate.accessNext;
+            } else {
+                evict = candidate;
+                candidate = candidate.accessNext;
+            }
+            evictEntry(evict, false, now);
+        }
+    }
+
+    /**
+     * Decides whether {@code candidate} should replace {@code victim}. A little
+     * randomness for warm candidates keeps an attacker from pinning a victim by
+     * inflating its sketch counters.
+     */
+    boolean admit(K candidateKey, K victimKey) {
+        int victimFreq = sketch.frequency(victimKey);
+        int candidateFreq = sketch.frequency(candidateKey);
+        if (candidateFreq > victimFreq)
+            return true;
+        else if (candidateFreq <= 5)
+            return false;
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    /**
+     * Removes {@code node} from the map (if it still maps its key and, for
+     * expiration, is still expired) and from the policy.
+     *
+     * @return false if the node was revived by a concurrent write and stays
+     */
+    boolean evictEntry(final Node<K, V> node, final boolean expired, final long now) {
+        final boolean[] removed = new boolean[1];
+        final boolean[] resurrected = new boolean[1];
+        data.computeIfPresent(node.key, (k, n) -> {
+            if (n != node)
+                return n;
+            synchronized (n) {
+                if (expired && !hasExpired(n, now)) {
+                    resurrected[0] = true;
+                    return n;
+                }
+                n.state = Node.DEAD;
+            }
+            removed[0] = true;
+            return null;
+        });
+        if (resurrected[0])
+            return false;
+        unlinkNode(node);
+        if (removed[0]) {
+            if (evictionCount != null)
+                evictionCount.increment();
+        } else {
+            synchronized (node) {
+                node.state = Node.DEAD; // already removed; its RemovalTask is a no-op
+            }
+        }
+        return true;
+    }
+
+    /* ---------------- Builder -------------- */
+
+    /**
+     * Configures a {@link BoundedCache}. {@link #maximumSize} is required.
+     */
+    public static final class Builder<K, V> {
+        long maximumSize = -1L;
+
+        int initialCapacity = -1;
+
+        long expireAfterWriteNanos = -1L;
+
+        long expireAfterAccessNanos = -1L;
+
+        boolean recordStats;
+
+        LongSupplier ticker = System::nanoTime;
+
+        Executor executor = ForkJoinPool.commonPool();
+
+        Builder() {
+        }
+
+        /** The maximum number of entries the cache may hold. */
+        public Builder<K, V> maximumSize(long maximumSize) {
+            if (maximumSize < 0L)
+                throw new IllegalArgumentException("maximumSize: " + maximumSize);
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /** Presizes the index; defaults to the maximum size, capped at 65536. */
+        public Builder<K, V> initialCapacity(int initialCapacity) {
+            if (initialCapacity < 0)
+                throw new IllegalArgumentException("initialCapacity: " + initialCapacity);
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        /** Entries expire once this long has passed since they were written. */
+        public Builder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+            if (duration < 0L)
+                throw new IllegalArgumentException("duration: " + duration);
+            this.expireAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Entries expire once this long has passed since they were last read or
+         * written.
+         */
+        public Builder<K, V> expireAfterAccess(long duration, TimeUnit unit) {
+            if (duration < 0L)
+                throw new IllegalArgumentException("duration: " + duration);
+            this.expireAfterAccessNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /** Enables the hit, miss and eviction counters of {@link BoundedCache#stats()}. */
+        public Builder<K, V> recordStats() {
+            this.recordStats = true;
+            return this;
+        }
+
+        /** The nanosecond time source used for expiration; for tests. */
+        public Builder<K, V> ticker(LongSupplier ticker) {
+            if (ticker == null)
+                throw new NullPointerException();
+            this.ticker = ticker;
+            return this;
+        }
+
+        /**
+         * The executor that runs maintenance; defaults to the common pool. With
+         * {@code Runnable::run} maintenance runs on the calling thread, under
+         * the eviction lock.
+         */
+        public Builder<K, V> executor(Executor executor) {
+            if (executor == null)
+                throw new NullPointerException();
+            this.executor = executor;
+            return this;
+        }
+
+        public <K1 extends K, V1 extends V> BoundedCache<K1, V1> build() {
+            if (maximumSize < 0L)
+                throw new IllegalStateException("maximumSize was not set");
+            return new BoundedCache<K1, V1>(this);
+        }
+    }
+}
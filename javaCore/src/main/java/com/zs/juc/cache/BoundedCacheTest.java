@@ -0,0 +1,36 @@
+package com.zs.juc.cache;
+
+import java.util.concurrent.TimeUnit;
+
+public class BoundedCacheTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        BoundedCache<Integer, String> cache = BoundedCache.newBuilder().maximumSize(1000)
+                .expireAfterWrite(2, TimeUnit.SECONDS).recordStats().build();
+
+        // 热点数据: 500个key反复读取
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 500; i++) {
+                cache.get(i, k -> "value_" + k);
+            }
+        }
+        // 一次性扫描大量冷数据, W-TinyLFU会拒绝大部分冷数据进入main区
+        for (int i = 10000; i < 60000; i++) {
+            cache.put(i, "value_" + i);
+        }
+        cache.cleanUp();
+
+        int hot = 0;
+        for (int i = 0; i < 500; i++) {
+            if (cache.get(i) != null)
+                hot++;
+        }
+        System.out.println("size: " + cache.estimatedSize() + ", hot keys retained: " + hot);
+        System.out.println(cache.stats());
+
+        TimeUnit.SECONDS.sleep(3);
+        System.out.println("after expiry: " + cache.get(1));
+        cache.cleanUp();
+        System.out.println("size: " + cache.estimatedSize() + ", " + cache.stats());
+    }
+}
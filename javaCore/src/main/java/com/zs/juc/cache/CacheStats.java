@@ -0,0 +1,65 @@
+package com.zs.juc.cache;
+
+/**
+ * An immutable snapshot of a {@link BoundedCache}'s counters, taken by
+ * {@link BoundedCache#stats()}. All counters are zero unless the cache was
+ * built with {@link BoundedCache.Builder#recordStats()}.
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+
+    private final long missCount;
+
+    private final long evictionCount;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+    }
+
+    /** Number of lookups that found a live entry. */
+    public long hitCount() {
+        return hitCount;
+    }
+
+    /** Number of lookups that found no entry, or an expired one. */
+    public long missCount() {
+        return missCount;
+    }
+
+    /** Number of entries removed because of the size bound or expiration. */
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    /** Ratio of hits to requests, or {@code 1.0} if there were no requests. */
+    public double hitRate() {
+        long requests = requestCount();
+        return requests == 0L ? 1.0 : (double) hitCount / requests;
+    }
+
+    /** Ratio of misses to requests, or {@code 0.0} if there were no requests. */
+    public double missRate() {
+        long requests = requestCount();
+        return requests == 0L ? 0.0 : (double) missCount / requests;
+    }
+
+    /**
+     * Returns the counters accumulated since {@code other} was taken.
+     */
+    public CacheStats minus(CacheStats other) {
+        return new CacheStats(Math.max(0L, hitCount - other.hitCount), Math.max(0L, missCount - other.missCount),
+                Math.max(0L, evictionCount - other.evictionCount));
+    }
+
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount
+                + ", hitRate=" + String.format("%.4f", hitRate()) + "}";
+    }
+}
@@ -0,0 +1,110 @@
+package com.zs.juc.cache;
+
+/**
+ * A probabilistic estimate of how often each key has been used recently, the
+ * "TinyLFU" half of {@link BoundedCache}'s admission policy.
+ *
+ * <p>
+ * This is a count-min sketch with four hash functions and 4-bit counters, so
+ * one {@code long} holds sixteen counters and the whole table costs eight bytes
+ * per cache entry. Once the number of increments reaches ten times the cache
+ * size, every counter is halved, which lets the estimate follow a changing
+ * workload instead of favouring keys that were popular long ago.
+ *
+ * <p>
+ * Not thread-safe: it is only touched by the thread holding the cache's
+ * eviction lock.
+ */
+final class FrequencySketch {
+
+    static final long[] SEED = { // a mix of 64-bit primes
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    static final long RESET_MASK = 0x7777777777777777L;
+
+    static final long ONE_MASK = 0x1111111111111111L;
+
+    final long[] table;
+
+    final int tableMask;
+
+    final int sampleSize;
+
+    int size;
+
+    FrequencySketch(long maximumSize) {
+        int max = (int) Math.min(Math.max(maximumSize, 1L), 1 << 30);
+        table = new long[max <= 1 ? 1 : Integer.highestOneBit(max - 1) << 1];
+        tableMask = table.length - 1;
+        sampleSize = 10 * max > 0 ? 10 * max : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the estimated number of occurrences of {@code e}, at most 15.
+     */
+    int frequency(Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Increments the popularity of {@code e} unless it is already at the
+     * maximum, and ages the whole sketch when the sample period is over.
+     */
+    void increment(Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++)
+            added |= incrementAt(indexOf(hash, i), start + i);
+        if (added && ++size == sampleSize)
+            reset();
+    }
+
+    /**
+     * Increments counter {@code j} of {@code table[i]} if it is not saturated.
+     */
+    boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = (0xfL << offset);
+        if ((table[i] & mask) != mask) {
+            table[i] += (1L << offset);
+            return true;
+        }
+        return false;
+    }
+
+    /** Halves every counter; odd counters lose their remainder. */
+    void reset() {
+        int count = 0;
+        for (int i = 0; i < table.length; i++) {
+            count += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (count >>> 2);
+    }
+
+    /** Returns the table index of the {@code i}-th hash function. */
+    int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & tableMask;
+    }
+
+    /**
+     * Applies a supplemental hash so that keys with poor {@code hashCode}s
+     * still spread over the whole table.
+     */
+    static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,105 @@
+package com.zs.juc.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Records cache reads so that the eviction policy can replay them later under
+ * its lock, without readers ever blocking.
+ *
+ * <p>
+ * Reads are spread over a power-of-two number of small ring buffers, picked by
+ * a hash of the reading thread, so concurrent readers rarely compete for the
+ * same tail counter. The buffer is lossy: an offer that loses a CAS race or
+ * finds its ring full is simply dropped. Losing some reads only makes the
+ * recency order and the frequency sketch slightly less precise, which is the
+ * price of keeping {@code get} wait-free.
+ *
+ * <p>
+ * Any number of threads may call {@link #offer}; {@link #drainTo} must be
+ * called by one thread at a time.
+ */
+final class StripedReadBuffer<E> {
+
+    static final int SUCCESS = 0;
+
+    static final int FAILED = 1;
+
+    static final int FULL = 2;
+
+    /** Slots per ring; a power of two. */
+    static final int RING_SIZE = 16;
+
+    static final int RING_MASK = RING_SIZE - 1;
+
+    static final class Ring<E> {
+        final AtomicReferenceArray<E> slots = new AtomicReferenceArray<E>(RING_SIZE);
+
+        /** Next slot to claim; advanced by producers with CAS. */
+        final AtomicLong writeCounter = new AtomicLong();
+
+        /** Next slot to drain; only written by the draining thread. */
+        volatile long readCounter;
+    }
+
+    final Ring<E>[] rings;
+
+    final int mask;
+
+    @SuppressWarnings("unchecked")
+    StripedReadBuffer() {
+        int n = Runtime.getRuntime().availableProcessors() << 2;
+        n = Integer.highestOneBit(n - 1) << 1;
+        rings = (Ring<E>[]) new Ring<?>[n];
+        for (int i = 0; i < n; i++)
+            rings[i] = new Ring<E>();
+        mask = n - 1;
+    }
+
+    /**
+     * Tries to add {@code e} to the current thread's ring.
+     *
+     * @return {@link #SUCCESS}, {@link #FAILED} if another reader won the slot,
+     *         or {@link #FULL} if the ring needs draining
+     */
+    int offer(E e) {
+        Ring<E> ring = rings[probe() & mask];
+        long head = ring.readCounter;
+        long tail = ring.writeCounter.get();
+        if (tail - head >= RING_SIZE)
+            return FULL;
+        if (ring.writeCounter.compareAndSet(tail, tail + 1)) {
+            ring.slots.lazySet((int) (tail & RING_MASK), e);
+            return SUCCESS;
+        }
+        return FAILED;
+    }
+
+    /**
+     * Hands every recorded element to {@code consumer} and empties the rings.
+     * A slot that has been claimed but not yet filled ends that ring's drain;
+     * it is picked up next time.
+     */
+    void drainTo(Consumer<E> consumer) {
+        for (Ring<E> ring : rings) {
+            long head = ring.readCounter;
+            long tail = ring.writeCounter.get();
+            for (; head != tail; head++) {
+                int index = (int) (head & RING_MASK);
+                E e = ring.slots.get(index);
+                if (e == null)
+                    break;
+                ring.slots.lazySet(index, null);
+                consumer.accept(e);
+            }
+            ring.readCounter = head;
+        }
+    }
+
+    /** A per-thread hash, stable for the life of the thread. */
+    static int probe() {
+        int h = System.identityHashCode(Thread.currentThread()) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -40,12 +40,14 @@ import java.io.Serializable;
 import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -187,6 +189,26 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
      */
     static final int RETRIES_BEFORE_LOCK = 2;
 
+    /**
+     * Number of contended lock acquisitions of a segment between
+     * checks of its contention rate. Must be a power of two.
+     */
+    static final int CONTENTION_CHECK_INTERVAL = 64;
+
+    /**
+     * A segment asks for the segments array to grow when more than
+     * one in this many of its locked updates since the last check
+     * found the lock held.
+     */
+    static final int CONTENTION_GROW_RATIO = 4;
+
+    /**
+     * Returned by the Segment update methods when the segment was
+     * retired by growSegments while the caller waited for its lock;
+     * the caller rereads the segments array and tries again.
+     */
+    static final Object RETRY = new Object();
+
     /* ---------------- Fields -------------- */
 
     /**
@@ -248,19 +270,44 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
 
     /**
      * Mask value for indexing into segments. The upper bits of a
-     * key's hash code are used to choose the segment.
+     * key's hash code are used to choose the segment. Kept in step
+     * with segments for serialization compatibility; lookups derive
+     * it from the length of the segments array they read (see
+     * segmentIndex), since the array may be replaced by growSegments.
      */
-    final int segmentMask;
+    volatile int segmentMask;
 
     /**
-     * Shift value for indexing within segments.
+     * Shift value for indexing within segments. Maintained like
+     * segmentMask.
      */
-    final int segmentShift;
+    volatile int segmentShift;
 
     /**
      * The segments, each of which is a specialized hash table.
+     * Replaced by a twice as long array when growSegments splits
+     * every segment in two.
+     */
+    volatile Segment<K,V>[] segments;
+
+    /**
+     * The length the segments array may grow to, at least its
+     * initial length. Equal to it unless the map was created with a
+     * larger maxConcurrencyLevel.
+     */
+    final int maxSegments;
+
+    /**
+     * Nonzero while a thread is growing the segments array.
      */
-    final Segment<K,V>[] segments;
+    private transient volatile int growing;
+
+    /**
+     * If true, putIfAbsent, replace and remove first look for the key
+     * without locking and only lock the segment when the scan shows
+     * that the map actually has to change.
+     */
+    final boolean optimisticUpdates;
 
     transient Set<K> keySet;
     transient Set<Map.Entry<K,V>> entrySet;
@@ -433,17 +480,50 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
          */
         final float loadFactor;
 
+        /*
+         * Contention counters, reported by segmentStats(). Like
+         * modCount they are only written while holding the lock:
+         * lockCount counts every locked update, contendedCount those
+         * whose first tryLock failed (and so went through
+         * scanAndLock/scanAndLockForPut), and blockedCount those that
+         * gave up spinning and blocked in lock().
+         */
+        transient long lockCount;
+        transient long contendedCount;
+        transient long blockedCount;
+
+        /**
+         * lockCount at the last contention check; when
+         * CONTENTION_CHECK_INTERVAL contended acquisitions took fewer
+         * than CONTENTION_GROW_RATIO times as many locked updates,
+         * growRequested is set and the next update through the map
+         * tries to grow the segments array.
+         */
+        transient long lastCheckLockCount;
+        transient boolean growRequested;
+
+        /**
+         * Set, under the lock, when growSegments has copied this
+         * segment's entries into two new segments. Updates that then
+         * acquire the lock return RETRY instead of modifying it.
+         */
+        transient boolean retired;
+
         Segment(float lf, int threshold, HashEntry<K,V>[] tab) {
             this.loadFactor = lf;
             this.threshold = threshold;
             this.table = tab;
         }
 
+        @SuppressWarnings("unchecked")
         final V put(K key, int hash, V value, boolean onlyIfAbsent) {
             HashEntry<K,V> node = tryLock() ? null :
                 scanAndLockForPut(key, hash, value);
             V oldValue;
             try {
+                if (retired)
+                    return (V) RETRY;
+                ++lockCount;
                 HashEntry<K,V>[] tab = table;
                 int index = (tab.length - 1) & hash;
                 HashEntry<K,V> first = entryAt(tab, index);
@@ -579,6 +659,7 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
                 }
                 else if (++retries > MAX_SCAN_RETRIES) {
                     lock();
+                    ++blockedCount;
                     break;
                 }
                 else if ((retries & 1) == 0 &&
@@ -587,6 +668,8 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
                     retries = -1;
                 }
             }
+            if ((++contendedCount & (CONTENTION_CHECK_INTERVAL - 1)) == 0)
+                checkContention();
             return node;
         }
 
@@ -612,6 +695,7 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
                 }
                 else if (++retries > MAX_SCAN_RETRIES) {
                     lock();
+                    ++blockedCount;
                     break;
                 }
                 else if ((retries & 1) == 0 &&
@@ -620,16 +704,33 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
                     retries = -1;
                 }
             }
+            if ((++contendedCount & (CONTENTION_CHECK_INTERVAL - 1)) == 0)
+                checkContention();
+        }
+
+        /**
+         * Called with the lock held after every
+         * CONTENTION_CHECK_INTERVAL contended acquisitions.
+         */
+        private void checkContention() {
+            long locks = lockCount - lastCheckLockCount;
+            lastCheckLockCount = lockCount;
+            if (locks < (long)CONTENTION_CHECK_INTERVAL * CONTENTION_GROW_RATIO)
+                growRequested = true;
         }
 
         /**
          * Remove; match on key only if value null, else match both.
          */
+        @SuppressWarnings("unchecked")
         final V remove(Object key, int hash, Object value) {
             if (!tryLock())
                 scanAndLock(key, hash);
             V oldValue = null;
             try {
+                if (retired)
+                    return (V) RETRY;
+                ++lockCount;
                 HashEntry<K,V>[] tab = table;
                 int index = (tab.length - 1) & hash;
                 HashEntry<K,V> e = entryAt(tab, index);
@@ -660,11 +761,20 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
             return oldValue;
         }
 
-        final boolean replace(K key, int hash, V oldValue, V newValue) {
+        /**
+         * Replaces only if mapped to oldValue. Returns newValue if
+         * replaced, else null (or RETRY), so that it can report
+         * retirement like the other update methods.
+         */
+        @SuppressWarnings("unchecked")
+        final V replace(K key, int hash, V oldValue, V newValue) {
             if (!tryLock())
                 scanAndLock(key, hash);
-            boolean replaced = false;
+            V replaced = null;
             try {
+                if (retired)
+                    return (V) RETRY;
+                ++lockCount;
                 HashEntry<K,V> e;
                 for (e = entryForHash(this, hash); e != null; e = e.next) {
                     K k;
@@ -673,7 +783,7 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
                         if (oldValue.equals(e.value)) {
                             e.value = newValue;
                             ++modCount;
-                            replaced = true;
+                            replaced = newValue;
                         }
                         break;
                     }
@@ -684,11 +794,15 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
             return replaced;
         }
 
+        @SuppressWarnings("unchecked")
         final V replace(K key, int hash, V value) {
             if (!tryLock())
                 scanAndLock(key, hash);
             V oldValue = null;
             try {
+                if (retired)
+                    return (V) RETRY;
+                ++lockCount;
                 HashEntry<K,V> e;
                 for (e = entryForHash(this, hash); e != null; e = e.next) {
                     K k;
@@ -709,6 +823,9 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
         final void clear() {
             lock();
             try {
+                if (retired)
+                    return;
+                ++lockCount;
                 HashEntry<K,V>[] tab = table;
                 for (int i = 0; i < tab.length ; i++)
                     setEntryAt(tab, i, null);
@@ -718,6 +835,23 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
                 unlock();
             }
         }
+
+        /**
+         * Unlocked lookup used by the optimistic update mode; the same
+         * traversal as get(). A non-null result was current at some
+         * point during the call, and so was a null one, which is all
+         * the optimistic paths need: they only skip the lock when the
+         * update would not change the map.
+         */
+        final HashEntry<K,V> findEntry(Object key, int hash) {
+            for (HashEntry<K,V> e = entryForHash(this, hash); e != null;
+                 e = e.next) {
+                K k;
+                if ((k = e.key) == key || (e.hash == hash && key.equals(k)))
+                    return e;
+            }
+            return null;
+        }
     }
 
     // Accessing segments
@@ -727,8 +861,9 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
      * volatile element access semantics via Unsafe. (The null check
      * can trigger harmlessly only during deserialization.) Note:
      * because each element of segments array is set only once (using
-     * fully ordered writes), some performance-sensitive methods rely
-     * on this method only as a recheck upon null reads.
+     * fully ordered writes, or before the array is published by
+     * growSegments), some performance-sensitive methods rely on this
+     * method only as a recheck upon null reads.
      */
     @SuppressWarnings("unchecked")
     static final <K,V> Segment<K,V> segmentAt(Segment<K,V>[] ss, int j) {
@@ -740,13 +875,15 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
     /**
      * Returns the segment for the given index, creating it and
      * recording in segment table (via CAS) if not already present.
+     * The caller passes the segments array it computed the index
+     * for, which need not be the current one.
      *
+     * @param ss the segments array
      * @param k the index
      * @return the segment
      */
     @SuppressWarnings("unchecked")
-    private Segment<K,V> ensureSegment(int k) {
-        final Segment<K,V>[] ss = this.segments;
+    private Segment<K,V> ensureSegment(Segment<K,V>[] ss, int k) {
         long u = (k << SSHIFT) + SBASE; // raw offset
         Segment<K,V> seg;
         if ((seg = (Segment<K,V>)UNSAFE.getObjectVolatile(ss, u)) == null) {
@@ -770,13 +907,130 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
 
     // Hash-based segment and entry accesses
 
+    /**
+     * Index of the segment for the given hash in the given segments
+     * array: the top log2(ss.length) bits of the hash. Doubling the
+     * array therefore sends the keys of segment j to segments 2j and
+     * 2j+1. For a single segment the shift is 32, which Java reduces
+     * to 0, and the mask clears everything, as for segmentShift.
+     */
+    static final int segmentIndex(Segment<?,?>[] ss, int h) {
+        int n = ss.length;
+        return (h >>> (Integer.numberOfLeadingZeros(n) + 1)) & (n - 1);
+    }
+
     /**
      * Get the segment for the given hash
      */
     @SuppressWarnings("unchecked")
-    private Segment<K,V> segmentForHash(int h) {
-        long u = (((h >>> segmentShift) & segmentMask) << SSHIFT) + SBASE;
-        return (Segment<K,V>) UNSAFE.getObjectVolatile(segments, u);
+    private static <K,V> Segment<K,V> segmentForHash(Segment<K,V>[] ss,
+                                                     int h) {
+        long u = (segmentIndex(ss, h) << SSHIFT) + SBASE;
+        return (Segment<K,V>) UNSAFE.getObjectVolatile(ss, u);
+    }
+
+    /**
+     * Tries to double the segments array if ss is still current and
+     * may grow. Called by updates, without holding any segment lock,
+     * after the segment they used asked for growth; if another thread
+     * is already growing, returns at once.
+     *
+     * All segments of ss are created if needed and locked in index
+     * order (as size() does), so no update can run while each is
+     * split into two new segments. The entries are cloned rather than
+     * relinked, leaving the old tables intact for readers that still
+     * hold the old array. Emptied halves other than segment 0 are
+     * left null, to be created lazily by ensureSegment. The new array
+     * is published with a volatile write, and the old segments are
+     * marked retired before they are unlocked, so writers that were
+     * blocked on them retry against the new array.
+     */
+    @SuppressWarnings("unchecked")
+    final void growSegments(Segment<K,V>[] ss) {
+        if (segments != ss || ss.length >= maxSegments ||
+            !UNSAFE.compareAndSwapInt(this, GROWING_OFFSET, 0, 1))
+            return;
+        try {
+            if (segments != ss)
+                return;
+            int n = ss.length;
+            for (int j = 0; j < n; ++j)
+                ensureSegment(ss, j).lock();
+            try {
+                Segment<K,V>[] ns = (Segment<K,V>[])new Segment[n << 1];
+                int shift = Integer.numberOfLeadingZeros(n << 1) + 1;
+                for (int j = 0; j < n; ++j) {
+                    Segment<K,V> seg = ss[j];
+                    splitSegment(seg, shift, ns, j << 1);
+                    seg.retired = true;
+                }
+                if (ns[0] == null) {
+                    int cap = ss[0].table.length;
+                    float lf = ss[0].loadFactor;
+                    HashEntry<K,V>[] tab =
+                        (HashEntry<K,V>[])new HashEntry[cap];
+                    ns[0] = new Segment<K,V>(lf, (int)(cap * lf), tab);
+                }
+                segmentShift = shift;
+                segmentMask = (n << 1) - 1;
+                segments = ns;
+            } finally {
+                for (int j = 0; j < n; ++j)
+                    ss[j].unlock();
+            }
+        } finally {
+            growing = 0;
+        }
+    }
+
+    /**
+     * Copies the entries of seg, whose lock is held, into new
+     * segments ns[lo] and ns[lo + 1], choosing by the hash bit below
+     * the ones that selected seg. Each half gets the smallest table
+     * holding its entries within the load factor, and is left null if
+     * empty.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K,V> void splitSegment(Segment<K,V> seg, int shift,
+                                           Segment<K,V>[] ns, int lo) {
+        HashEntry<K,V>[] tab = seg.table;
+        float lf = seg.loadFactor;
+        int hiCount = 0;
+        for (int i = 0; i < tab.length; i++)
+            for (HashEntry<K,V> e = tab[i]; e != null; e = e.next)
+                hiCount += (e.hash >>> shift) & 1;
+        int loCount = seg.count - hiCount;
+        HashEntry<K,V>[] loTab = loCount == 0 ? null :
+            (HashEntry<K,V>[])new HashEntry[tableSizeFor(loCount, lf)];
+        HashEntry<K,V>[] hiTab = hiCount == 0 ? null :
+            (HashEntry<K,V>[])new HashEntry[tableSizeFor(hiCount, lf)];
+        for (int i = 0; i < tab.length; i++) {
+            for (HashEntry<K,V> e = tab[i]; e != null; e = e.next) {
+                int h = e.hash;
+                HashEntry<K,V>[] t = ((h >>> shift) & 1) == 0 ? loTab : hiTab;
+                int k = h & (t.length - 1);
+                t[k] = new HashEntry<K,V>(h, e.key, e.value, t[k]);
+            }
+        }
+        if (loTab != null) {
+            ns[lo] = new Segment<K,V>(lf, (int)(loTab.length * lf), loTab);
+            ns[lo].count = loCount;
+        }
+        if (hiTab != null) {
+            ns[lo + 1] = new Segment<K,V>(lf, (int)(hiTab.length * lf), hiTab);
+            ns[lo + 1].count = hiCount;
+        }
+    }
+
+    /**
+     * Smallest power-of-two segment table capacity holding c entries
+     * without exceeding the load factor.
+     */
+    private static int tableSizeFor(int c, float lf) {
+        int cap = MIN_SEGMENT_TABLE_CAPACITY;
+        while (cap < MAXIMUM_CAPACITY && c > (int)(cap * lf))
+            cap <<= 1;
+        return cap;
     }
 
     /**
@@ -808,13 +1062,77 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
      * negative or the load factor or concurrencyLevel are
      * nonpositive.
      */
-    @SuppressWarnings("unchecked")
     public ConcurrentHashMap7(int initialCapacity,
                              float loadFactor, int concurrencyLevel) {
+        this(initialCapacity, loadFactor, concurrencyLevel, false);
+    }
+
+    /**
+     * Creates a new, empty map with the specified initial capacity,
+     * load factor and concurrency level, optionally using optimistic
+     * updates.
+     *
+     * <p>With <tt>optimisticUpdates</tt>, <tt>putIfAbsent</tt>,
+     * <tt>replace</tt> and <tt>remove</tt> first scan the key's bin
+     * without locking, the way <tt>get</tt> does, and return at once
+     * if the scan shows there is nothing to do: the key is already
+     * present for <tt>putIfAbsent</tt>, absent for <tt>replace</tt>
+     * and <tt>remove</tt>, or mapped to a different value for the
+     * conditional forms. Only real mutations take the segment lock,
+     * which helps workloads dominated by such no-op updates.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor  the load factor threshold
+     * @param concurrencyLevel the estimated number of concurrently
+     * updating threads
+     * @param optimisticUpdates whether conditional updates scan
+     * before locking
+     * @throws IllegalArgumentException if the initial capacity is
+     * negative or the load factor or concurrencyLevel are
+     * nonpositive.
+     */
+    public ConcurrentHashMap7(int initialCapacity, float loadFactor,
+                             int concurrencyLevel, boolean optimisticUpdates) {
+        this(initialCapacity, loadFactor, concurrencyLevel, concurrencyLevel,
+             optimisticUpdates);
+    }
+
+    /**
+     * Creates a new, empty map whose number of segments starts at
+     * <tt>concurrencyLevel</tt> and may grow up to
+     * <tt>maxConcurrencyLevel</tt> (both rounded up to powers of two).
+     *
+     * <p>Whenever more than a quarter of the recent locked updates of
+     * some segment had to wait for its lock, the next update doubles
+     * the number of segments, splitting each in two. Growth locks all
+     * segments for as long as it takes to copy their entries, much
+     * like a table resize; reads are not blocked. The segments never
+     * shrink. This lets one configuration start small and scale with
+     * the number of writers the host actually runs.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor  the load factor threshold
+     * @param concurrencyLevel the initial estimate of the number of
+     * concurrently updating threads
+     * @param maxConcurrencyLevel the most concurrently updating
+     * threads to grow for; values below <tt>concurrencyLevel</tt>
+     * disable growth
+     * @param optimisticUpdates whether conditional updates scan
+     * before locking
+     * @throws IllegalArgumentException if the initial capacity is
+     * negative or the load factor or concurrencyLevel are
+     * nonpositive.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentHashMap7(int initialCapacity, float loadFactor,
+                             int concurrencyLevel, int maxConcurrencyLevel,
+                             boolean optimisticUpdates) {
         if (!(loadFactor > 0) || initialCapacity < 0 || concurrencyLevel <= 0)
             throw new IllegalArgumentException();
         if (concurrencyLevel > MAX_SEGMENTS)
             concurrencyLevel = MAX_SEGMENTS;
+        if (maxConcurrencyLevel > MAX_SEGMENTS)
+            maxConcurrencyLevel = MAX_SEGMENTS;
         // Find power-of-two sizes best matching arguments
         int sshift = 0;
         int ssize = 1;
@@ -839,6 +1157,11 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
         Segment<K,V>[] ss = (Segment<K,V>[])new Segment[ssize];
         UNSAFE.putOrderedObject(ss, SBASE, s0); // ordered write of segments[0]
         this.segments = ss;
+        int maxSize = ssize;
+        while (maxSize < maxConcurrencyLevel)
+            maxSize <<= 1;
+        this.maxSegments = maxSize;
+        this.optimisticUpdates = optimisticUpdates;
     }
 
     /**
@@ -932,7 +1255,9 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
             if (sum != 0L)
                 return false;
         }
-        return true;
+        // an empty array retired by growSegments says nothing about
+        // the one that replaced it
+        return segments == this.segments || isEmpty();
     }
 
     /**
@@ -945,40 +1270,45 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
     public int size() {
         // Try a few times to get accurate count. On failure due to
         // continuous async changes in table, resort to locking.
-        final Segment<K,V>[] segments = this.segments;
+        // Start over if growSegments replaced the array meanwhile:
+        // the counts of retired segments stop at the time of growth.
+        Segment<K,V>[] segments;
         int size;
         boolean overflow; // true if size overflows 32 bits
-        long sum;         // sum of modCounts
-        long last = 0L;   // previous sum
-        int retries = -1; // first iteration isn't retry
-        try {
-            for (;;) {
-                if (retries++ == RETRIES_BEFORE_LOCK) {
-                    for (int j = 0; j < segments.length; ++j)
-                        ensureSegment(j).lock(); // force creation
-                }
-                sum = 0L;
-                size = 0;
-                overflow = false;
-                for (int j = 0; j < segments.length; ++j) {
-                    Segment<K,V> seg = segmentAt(segments, j);
-                    if (seg != null) {
-                        sum += seg.modCount;
-                        int c = seg.count;
-                        if (c < 0 || (size += c) < 0)
-                            overflow = true;
+        do {
+            segments = this.segments;
+            long sum;         // sum of modCounts
+            long last = 0L;   // previous sum
+            int retries = -1; // first iteration isn't retry
+            try {
+                for (;;) {
+                    if (retries++ == RETRIES_BEFORE_LOCK) {
+                        for (int j = 0; j < segments.length; ++j)
+                            ensureSegment(segments, j).lock(); // create
                     }
+                    sum = 0L;
+                    size = 0;
+                    overflow = false;
+                    for (int j = 0; j < segments.length; ++j) {
+                        Segment<K,V> seg = segmentAt(segments, j);
+                        if (seg != null) {
+                            sum += seg.modCount;
+                            int c = seg.count;
+                            if (c < 0 || (size += c) < 0)
+                                overflow = true;
+                        }
+                    }
+                    if (sum == last)
+                        break;
+                    last = sum;
+                }
+            } finally {
+                if (retries > RETRIES_BEFORE_LOCK) {
+                    for (int j = 0; j < segments.length; ++j)
+                        segmentAt(segments, j).unlock();
                 }
-                if (sum == last)
-                    break;
-                last = sum;
-            }
-        } finally {
-            if (retries > RETRIES_BEFORE_LOCK) {
-                for (int j = 0; j < segments.length; ++j)
-                    segmentAt(segments, j).unlock();
             }
-        }
+        } while (segments != this.segments);
         return overflow ? Integer.MAX_VALUE : size;
     }
 
@@ -997,8 +1327,9 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
         Segment<K,V> s; // manually integrate access methods to reduce overhead
         HashEntry<K,V>[] tab;
         int h = hash(key);
-        long u = (((h >>> segmentShift) & segmentMask) << SSHIFT) + SBASE;
-        if ((s = (Segment<K,V>)UNSAFE.getObjectVolatile(segments, u)) != null &&
+        Segment<K,V>[] ss = segments;
+        long u = (segmentIndex(ss, h) << SSHIFT) + SBASE;
+        if ((s = (Segment<K,V>)UNSAFE.getObjectVolatile(ss, u)) != null &&
             (tab = s.table) != null) {
             for (HashEntry<K,V> e = (HashEntry<K,V>) UNSAFE.getObjectVolatile
                      (tab, ((long)(((tab.length - 1) & h)) << TSHIFT) + TBASE);
@@ -1025,8 +1356,9 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
         Segment<K,V> s; // same as get() except no need for volatile value read
         HashEntry<K,V>[] tab;
         int h = hash(key);
-        long u = (((h >>> segmentShift) & segmentMask) << SSHIFT) + SBASE;
-        if ((s = (Segment<K,V>)UNSAFE.getObjectVolatile(segments, u)) != null &&
+        Segment<K,V>[] ss = segments;
+        long u = (segmentIndex(ss, h) << SSHIFT) + SBASE;
+        if ((s = (Segment<K,V>)UNSAFE.getObjectVolatile(ss, u)) != null &&
             (tab = s.table) != null) {
             for (HashEntry<K,V> e = (HashEntry<K,V>) UNSAFE.getObjectVolatile
                      (tab, ((long)(((tab.length - 1) & h)) << TSHIFT) + TBASE);
@@ -1054,45 +1386,49 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
         // Same idea as size()
         if (value == null)
             throw new NullPointerException();
-        final Segment<K,V>[] segments = this.segments;
+        Segment<K,V>[] segments;
         boolean found = false;
-        long last = 0;
-        int retries = -1;
-        try {
-            outer: for (;;) {
-                if (retries++ == RETRIES_BEFORE_LOCK) {
-                    for (int j = 0; j < segments.length; ++j)
-                        ensureSegment(j).lock(); // force creation
-                }
-                long hashSum = 0L;
-                int sum = 0;
-                for (int j = 0; j < segments.length; ++j) {
-                    HashEntry<K,V>[] tab;
-                    Segment<K,V> seg = segmentAt(segments, j);
-                    if (seg != null && (tab = seg.table) != null) {
-                        for (int i = 0 ; i < tab.length; i++) {
-                            HashEntry<K,V> e;
-                            for (e = entryAt(tab, i); e != null; e = e.next) {
-                                V v = e.value;
-                                if (v != null && value.equals(v)) {
-                                    found = true;
-                                    break outer;
+        do { // start over if growSegments replaced the array meanwhile
+            segments = this.segments;
+            long last = 0;
+            int retries = -1;
+            try {
+                outer: for (;;) {
+                    if (retries++ == RETRIES_BEFORE_LOCK) {
+                        for (int j = 0; j < segments.length; ++j)
+                            ensureSegment(segments, j).lock(); // create
+                    }
+                    long hashSum = 0L;
+                    int sum = 0;
+                    for (int j = 0; j < segments.length; ++j) {
+                        HashEntry<K,V>[] tab;
+                        Segment<K,V> seg = segmentAt(segments, j);
+                        if (seg != null && (tab = seg.table) != null) {
+                            for (int i = 0 ; i < tab.length; i++) {
+                                HashEntry<K,V> e;
+                                for (e = entryAt(tab, i); e != null;
+                                     e = e.next) {
+                                    V v = e.value;
+                                    if (v != null && value.equals(v)) {
+                                        found = true;
+                                        break outer;
+                                    }
                                 }
                             }
+                            sum += seg.modCount;
                         }
-                        sum += seg.modCount;
                     }
+                    if (retries > 0 && sum == last)
+                        break;
+                    last = sum;
+                }
+            } finally {
+                if (retries > RETRIES_BEFORE_LOCK) {
+                    for (int j = 0; j < segments.length; ++j)
+                        segmentAt(segments, j).unlock();
                 }
-                if (retries > 0 && sum == last)
-                    break;
-                last = sum;
-            }
-        } finally {
-            if (retries > RETRIES_BEFORE_LOCK) {
-                for (int j = 0; j < segments.length; ++j)
-                    segmentAt(segments, j).unlock();
             }
-        }
+        } while (!found && segments != this.segments);
         return found;
     }
 
@@ -1134,11 +1470,18 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
         if (value == null)
             throw new NullPointerException();
         int hash = hash(key);
-        int j = (hash >>> segmentShift) & segmentMask;
-        if ((s = (Segment<K,V>)UNSAFE.getObject          // nonvolatile; recheck
-             (segments, (j << SSHIFT) + SBASE)) == null) //  in ensureSegment
-            s = ensureSegment(j);
-        return s.put(key, hash, value, false);
+        for (Segment<K,V>[] ss = segments;; ss = segments) {
+            int j = segmentIndex(ss, hash);
+            if ((s = (Segment<K,V>)UNSAFE.getObject   // nonvolatile; recheck
+                 (ss, (j << SSHIFT) + SBASE)) == null) //  in ensureSegment
+                s = ensureSegment(ss, j);
+            V v = s.put(key, hash, value, false);
+            if (v != RETRY) {
+                if (s.growRequested)
+                    growSegments(ss);
+                return v;
+            }
+        }
     }
 
     /**
@@ -1154,11 +1497,21 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
         if (value == null)
             throw new NullPointerException();
         int hash = hash(key);
-        int j = (hash >>> segmentShift) & segmentMask;
-        if ((s = (Segment<K,V>)UNSAFE.getObject
-             (segments, (j << SSHIFT) + SBASE)) == null)
-            s = ensureSegment(j);
-        return s.put(key, hash, value, true);
+        for (Segment<K,V>[] ss = segments;; ss = segments) {
+            int j = segmentIndex(ss, hash);
+            if ((s = (Segment<K,V>)UNSAFE.getObject
+                 (ss, (j << SSHIFT) + SBASE)) == null)
+                s = ensureSegment(ss, j);
+            HashEntry<K,V> e;
+            if (optimisticUpdates && (e = s.findEntry(key, hash)) != null)
+                return e.value; // already present; nothing to lock for
+            V v = s.put(key, hash, value, true);
+            if (v != RETRY) {
+                if (s.growRequested)
+                    growSegments(ss);
+                return v;
+            }
+        }
     }
 
     /**
@@ -1184,8 +1537,18 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
      */
     public V remove(Object key) {
         int hash = hash(key);
-        Segment<K,V> s = segmentForHash(hash);
-        return s == null ? null : s.remove(key, hash, null);
+        for (Segment<K,V>[] ss = segments;; ss = segments) {
+            Segment<K,V> s = segmentForHash(ss, hash);
+            if (s == null ||
+                (optimisticUpdates && s.findEntry(key, hash) == null))
+                return null;
+            V v = s.remove(key, hash, null);
+            if (v != RETRY) {
+                if (s.growRequested)
+                    growSegments(ss);
+                return v;
+            }
+        }
     }
 
     /**
@@ -1195,9 +1558,26 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
      */
     public boolean remove(Object key, Object value) {
         int hash = hash(key);
-        Segment<K,V> s;
-        return value != null && (s = segmentForHash(hash)) != null &&
-            s.remove(key, hash, value) != null;
+        if (value == null)
+            return false;
+        for (Segment<K,V>[] ss = segments;; ss = segments) {
+            Segment<K,V> s = segmentForHash(ss, hash);
+            if (s == null)
+                return false;
+            if (optimisticUpdates) {
+                HashEntry<K,V> e = s.findEntry(key, hash);
+                V v;
+                if (e == null ||
+                    ((v = e.value) != value && !value.equals(v)))
+                    return false;
+            }
+            V v = s.remove(key, hash, value);
+            if (v != RETRY) {
+                if (s.growRequested)
+                    growSegments(ss);
+                return v != null;
+            }
+        }
     }
 
     /**
@@ -1209,8 +1589,22 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
         int hash = hash(key);
         if (oldValue == null || newValue == null)
             throw new NullPointerException();
-        Segment<K,V> s = segmentForHash(hash);
-        return s != null && s.replace(key, hash, oldValue, newValue);
+        for (Segment<K,V>[] ss = segments;; ss = segments) {
+            Segment<K,V> s = segmentForHash(ss, hash);
+            if (s == null)
+                return false;
+            if (optimisticUpdates) {
+                HashEntry<K,V> e = s.findEntry(key, hash);
+                if (e == null || !oldValue.equals(e.value))
+                    return false;
+            }
+            V v = s.replace(key, hash, oldValue, newValue);
+            if (v != RETRY) {
+                if (s.growRequested)
+                    growSegments(ss);
+                return v != null;
+            }
+        }
     }
 
     /**
@@ -1224,20 +1618,33 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
         int hash = hash(key);
         if (value == null)
             throw new NullPointerException();
-        Segment<K,V> s = segmentForHash(hash);
-        return s == null ? null : s.replace(key, hash, value);
+        for (Segment<K,V>[] ss = segments;; ss = segments) {
+            Segment<K,V> s = segmentForHash(ss, hash);
+            if (s == null ||
+                (optimisticUpdates && s.findEntry(key, hash) == null))
+                return null;
+            V v = s.replace(key, hash, value);
+            if (v != RETRY) {
+                if (s.growRequested)
+                    growSegments(ss);
+                return v;
+            }
+        }
     }
 
     /**
      * Removes all of the mappings from this map.
      */
     public void clear() {
-        final Segment<K,V>[] segments = this.segments;
-        for (int j = 0; j < segments.length; ++j) {
-            Segment<K,V> s = segmentAt(segments, j);
-            if (s != null)
-                s.clear();
-        }
+        Segment<K,V>[] segments;
+        do { // again if growSegments copied uncleared segments
+            segments = this.segments;
+            for (int j = 0; j < segments.length; ++j) {
+                Segment<K,V> s = segmentAt(segments, j);
+                if (s != null)
+                    s.clear();
+            }
+        } while (segments != this.segments);
     }
 
     /**
@@ -1323,9 +1730,76 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
         return new ValueIterator();
     }
 
+    /**
+     * Point-in-time contention counters of one segment, see
+     * {@link #segmentStats}.
+     */
+    public static final class SegmentStats {
+        /** Index of the segment in the segments array. */
+        public final int index;
+        /** Number of mappings in the segment. */
+        public final int count;
+        /** Length of the segment's table. */
+        public final int tableLength;
+        /** Updates that took the segment lock. */
+        public final long lockCount;
+        /** Locked updates whose first tryLock failed. */
+        public final long contendedCount;
+        /** Contended updates that stopped spinning and blocked. */
+        public final long blockedCount;
+
+        SegmentStats(int index, int count, int tableLength, long lockCount,
+                     long contendedCount, long blockedCount) {
+            this.index = index;
+            this.count = count;
+            this.tableLength = tableLength;
+            this.lockCount = lockCount;
+            this.contendedCount = contendedCount;
+            this.blockedCount = blockedCount;
+        }
+
+        /** Fraction of locked updates that found the lock held. */
+        public double contentionRate() {
+            return lockCount == 0L ? 0.0 : (double) contendedCount / lockCount;
+        }
+
+        public String toString() {
+            return "Segment[" + index + "]{count=" + count +
+                ", tableLength=" + tableLength + ", locks=" + lockCount +
+                ", contended=" + contendedCount +
+                ", blocked=" + blockedCount + "}";
+        }
+    }
+
+    /**
+     * Returns the lock contention counters of every segment created so
+     * far; segments that were never used are omitted. The counters are
+     * read without locking, so they are only approximately consistent
+     * with each other while updates are running. A segment with a high
+     * contention rate next to idle ones points at hot keys; uniformly
+     * high rates mean the concurrency level is too low for the number
+     * of writers.
+     */
+    public List<SegmentStats> segmentStats() {
+        final Segment<K,V>[] segments = this.segments;
+        List<SegmentStats> stats = new ArrayList<SegmentStats>();
+        for (int j = 0; j < segments.length; ++j) {
+            Segment<K,V> seg = segmentAt(segments, j);
+            if (seg != null) {
+                HashEntry<K,V>[] tab = seg.table;
+                stats.add(new SegmentStats(j, seg.count,
+                                           tab == null ? 0 : tab.length,
+                                           seg.lockCount, seg.contendedCount,
+                                           seg.blockedCount));
+            }
+        }
+        return stats;
+    }
+
     /* ---------------- Iterator Support -------------- */
 
     abstract class HashIterator {
+        final Segment<K,V>[] segments = ConcurrentHashMap7.this.segments;
         int nextSegmentIndex;
         int nextTableIndex;
         HashEntry<K,V>[] currentTable;
@@ -1514,11 +1988,11 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
      */
     private void writeObject(java.io.ObjectOutputStream s) throws IOException {
         // force all segments for serialization compatibility
+        final Segment<K,V>[] segments = this.segments;
         for (int k = 0; k < segments.length; ++k)
-            ensureSegment(k);
+            ensureSegment(segments, k);
         s.defaultWriteObject();
 
-        final Segment<K,V>[] segments = this.segments;
         for (int k = 0; k < segments.length; ++k) {
             Segment<K,V> seg = segmentAt(segments, k);
             seg.lock();
@@ -1564,6 +2038,12 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
         UNSAFE.putIntVolatile(this, SEGSHIFT_OFFSET, 32 - sshift);
         UNSAFE.putIntVolatile(this, SEGMASK_OFFSET, ssize - 1);
         UNSAFE.putObjectVolatile(this, SEGMENTS_OFFSET, oisSegments);
+        // absent from streams written before segments could grow
+        int maxSegments = oisFields.get("maxSegments", ssize);
+        UNSAFE.putIntVolatile(this, MAXSEGMENTS_OFFSET,
+                              Math.max(ssize, maxSegments));
+        UNSAFE.putBooleanVolatile(this, OPTIMISTIC_OFFSET,
+                                  oisFields.get("optimisticUpdates", false));
 
         // set hashMask
         UNSAFE.putIntVolatile(this, HASHSEED_OFFSET, randomHashSeed(this));
@@ -1599,6 +2079,9 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
     private static final long SEGSHIFT_OFFSET;
     private static final long SEGMASK_OFFSET;
     private static final long SEGMENTS_OFFSET;
+    private static final long MAXSEGMENTS_OFFSET;
+    private static final long OPTIMISTIC_OFFSET;
+    private static final long GROWING_OFFSET;
 
     static {
         int ss, ts;
@@ -1618,6 +2101,12 @@ public class ConcurrentHashMap7<K, V> extends AbstractMap<K, V>
                 ConcurrentHashMap.class.getDeclaredField("segmentMask"));
             SEGMENTS_OFFSET = UNSAFE.objectFieldOffset(
                 ConcurrentHashMap.class.getDeclaredField("segments"));
+            MAXSEGMENTS_OFFSET = UNSAFE.objectFieldOffset(
+                ConcurrentHashMap7.class.getDeclaredField("maxSegments"));
+            OPTIMISTIC_OFFSET = UNSAFE.objectFieldOffset(
+                ConcurrentHashMap7.class.getDeclaredField("optimisticUpdates"));
+            GROWING_OFFSET = UNSAFE.objectFieldOffset(
+                ConcurrentHashMap7.class.getDeclaredField("growing"));
         } catch (Exception e) {
             throw new Error(e);
         }
@@ -27,8 +27,12 @@ import java.util.Spliterator;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountedCompleter;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
@@ -171,7 +175,11 @@ import java.util.stream.Stream;
  * given threshold. Using a value of {@code Long.MAX_VALUE} suppresses all
  * parallelism. Using a value of {@code 1} results in maximal parallelism by
  * partitioning into enough subtasks to fully utilize the
- * {@link ForkJoinPool#commonPool()} that is used for all parallel computations.
+ * {@link ForkJoinPool#commonPool()} that is used for all parallel computations,
+ * or the pool given to {@link #setBulkPool} if there is one. The primitive
+ * reductions ({@code reduceValuesToLong} and friends) accumulate in primitive
+ * fields of their tasks and read the final result from the root task's field,
+ * so they never box.
  * Normally, you would initially choose one of these extreme values, and then
  * measure performance of using in-between values that trade off overhead versus
  * throughput.
@@ -758,6 +766,12 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
 
     private transient EntrySetView<K, V> entrySet;
 
+    /** Pool for parallel bulk operations; null means the common pool. */
+    private transient volatile ForkJoinPool bulkPool;
+
+    /** Resize and treeification counters; null until {@link #enableStats}. */
+    private transient volatile ResizeStats resizeStats;
+
     /* ---------------- Public operations -------------- */
 
     /**
@@ -1995,6 +2009,59 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
         return (n < 0L) ? 0L : n; // ignore transient negative values
     }
 
+    /**
+     * Starts recording resize durations, the number of threads helping each
+     * resize and treeification events, as reported by {@link #mapStats()}.
+     * While disabled the hooks in {@code transfer} and {@code treeifyBin} cost
+     * one volatile read per call.
+     */
+    public void enableStats() {
+        if (resizeStats == null) {
+            synchronized (this) {
+                if (resizeStats == null)
+                    resizeStats = new ResizeStats();
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the table: the collision-chain length histogram is
+     * measured now, by walking every bin without locking, and the resize and
+     * treeification counters are included if {@link #enableStats()} was
+     * called. The walk is O(table length), so this is meant for diagnostics,
+     * not hot paths.
+     */
+    public MapStats mapStats() {
+        long[] chains = new long[TREEIFY_THRESHOLD + 1];
+        int treeBins = 0, moved = 0, maxChain = 0;
+        Node<K, V>[] tab = table;
+        int n = (tab == null) ? 0 : tab.length;
+        for (int i = 0; i < n; ++i) {
+            Node<K, V> f = tabAt(tab, i);
+            if (f == null)
+                ++chains[0];
+            else if (f instanceof TreeBin)
+                ++treeBins;
+            else if (f.hash == MOVED)
+                ++moved;
+            else if (f.hash >= 0) {
+                int len = 0;
+                for (Node<K, V> e = f; e != null; e = e.next)
+                    ++len;
+                if (len > maxChain)
+                    maxChain = len;
+                ++chains[len < TREEIFY_THRESHOLD ? len : TREEIFY_THRESHOLD];
+            }
+        }
+        ResizeStats stats = resizeStats;
+        if (stats == null)
+            return new MapStats(mappingCount(), n, chains, treeBins, moved, maxChain, false, 0L, 0L, 0L, 0L, 0, 0L,
+                    0L, 0L, 0L);
+        return new MapStats(mappingCount(), n, chains, treeBins, moved, maxChain, true, stats.resizeCount,
+                stats.totalNanos, stats.maxNanos, stats.lastNanos, stats.maxThreads, stats.totalThreads,
+                stats.peakSize, stats.treeifications.sum(), stats.treeifyPresizes.sum());
+    }
+
     /**
      * Creates a new {@link Set} backed by a ConcurrentHashMap from the given
      * type to {@code Boolean.TRUE}.
@@ -2249,6 +2316,7 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
      * explanation.
      */
     private final void transfer(Node<K, V>[] tab, Node<K, V>[] nextTab) {
+        ResizeStats stats = resizeStats;
         int n = tab.length, stride;
         /**
          * stride = (NCPU > 1) ? (n >>> 3) / NCPU : n
@@ -2268,9 +2336,13 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
                 sizeCtl = Integer.MAX_VALUE;
                 return;
             }
+            if (stats != null)
+                stats.begin(sumCount()); // before nextTable is published to helpers
             nextTable = nextTab;
             transferIndex = n;//原有数组长度
         }
+        if (stats != null)
+            stats.threads.incrementAndGet();
         int nextn = nextTab.length;
         ForwardingNode<K, V> fwd = new ForwardingNode<K, V>(nextTab);//初始化ForwardingNode。forwardingNode中包含新数组table
         boolean advance = true;
@@ -2298,6 +2370,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
                     nextTable = null;
                     table = nextTab;
                     sizeCtl = (n << 1) - (n >>> 1);
+                    if (stats != null)
+                        stats.end();
                     return;
                 }
                 if (U.compareAndSwapInt(this, SIZECTL, sc = sizeCtl, sc - 1)) {
@@ -2396,6 +2470,61 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
         }
     }
 
+    /**
+     * Counters behind {@link MapStats}. Resizes never overlap (a new one can
+     * only start after {@code sizeCtl} is reset by the commit of the previous
+     * one), so the per-resize fields are written by one thread at a time and
+     * only the thread count needs to be atomic.
+     */
+    static final class ResizeStats {
+        final AtomicInteger threads = new AtomicInteger();
+
+        final LongAdder treeifications = new LongAdder();
+
+        final LongAdder treeifyPresizes = new LongAdder();
+
+        volatile long startNanos; // 0 when no resize is being timed
+
+        volatile long resizeCount;
+
+        volatile long totalNanos;
+
+        volatile long maxNanos;
+
+        volatile long lastNanos;
+
+        volatile int maxThreads;
+
+        volatile long totalThreads;
+
+        volatile long peakSize;
+
+        void begin(long size) {
+            threads.set(0);
+            if (size > peakSize)
+                peakSize = size;
+            long now = System.nanoTime();
+            startNanos = now == 0L ? 1L : now;
+        }
+
+        void end() {
+            long start = startNanos;
+            if (start == 0L)
+                return; // stats were enabled while this resize was running
+            startNanos = 0L;
+            long d = System.nanoTime() - start;
+            int t = threads.get();
+            resizeCount = resizeCount + 1;
+            totalNanos = totalNanos + d;
+            lastNanos = d;
+            if (d > maxNanos)
+                maxNanos = d;
+            totalThreads = totalThreads + t;
+            if (t > maxThreads)
+                maxThreads = t;
+        }
+    }
+
     final long sumCount() {
         CounterCell[] as = counterCells;
         CounterCell a;
@@ -2497,9 +2626,12 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
         Node<K, V> b;
         int n, sc;
         if (tab != null) {
-            if ((n = tab.length) < MIN_TREEIFY_CAPACITY)
+            ResizeStats stats = resizeStats;
+            if ((n = tab.length) < MIN_TREEIFY_CAPACITY) {
+                if (stats != null)
+                    stats.treeifyPresizes.increment();
                 tryPresize(n << 1);
-            else if ((b = tabAt(tab, index)) != null && b.hash >= 0) {
+            } else if ((b = tabAt(tab, index)) != null && b.hash >= 0) {
                 synchronized (b) {
                     if (tabAt(tab, index) == b) {
                         TreeNode<K, V> hd = null, tl = null;
@@ -2512,6 +2644,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
                             tl = p;
                         }
                         setTabAt(tab, index, new TreeBin<K, V>(hd));
+                        if (stats != null)
+                            stats.treeifications.increment();
                     }
                 }
             }
@@ -3525,10 +3659,69 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
         long n;
         if (b == Long.MAX_VALUE || (n = sumCount()) <= 1L || n < b)
             return 0;
-        int sp = ForkJoinPool.getCommonPoolParallelism() << 2; // slack of 4
+        ForkJoinPool p = bulkPool;
+        int sp = (p == null ? ForkJoinPool.getCommonPoolParallelism() : p.getParallelism()) << 2; // slack of 4
         return (b <= 0L || (n /= b) >= sp) ? sp : (int) n;
     }
 
+    /**
+     * Sets the pool that runs the parallel bulk operations of this map, or
+     * {@code null} for the {@link ForkJoinPool#commonPool()}. Batch sizes follow
+     * the parallelism of this pool. Operations already running are not
+     * affected.
+     *
+     * <p>
+     * A dedicated pool keeps long aggregations over a large map from
+     * saturating the common pool that parallel streams and
+     * {@code CompletableFuture}s of the rest of the application share.
+     *
+     * @param pool the pool, or {@code null}
+     */
+    public void setBulkPool(ForkJoinPool pool) {
+        bulkPool = pool;
+    }
+
+    /**
+     * Returns the pool set by {@link #setBulkPool}, or {@code null} if bulk
+     * operations run in the common pool.
+     */
+    public ForkJoinPool getBulkPool() {
+        return bulkPool;
+    }
+
+    /**
+     * Runs a root bulk task in {@link #bulkPool}, or in the common pool (or the
+     * caller's own pool) if none is set, and returns its result.
+     */
+    final <T> T invokeBulk(ForkJoinTask<T> task) {
+        ForkJoinPool p = bulkPool;
+        Thread t;
+        if (p == null || ((t = Thread.currentThread()) instanceof ForkJoinWorkerThread
+                && ((ForkJoinWorkerThread) t).getPool() == p))
+            return task.invoke();
+        return p.invoke(task);
+    }
+
+    /**
+     * Like {@link #invokeBulk}, but does not fetch the task's result, so the
+     * primitive reductions can read it from the task's {@code result} field
+     * without {@code getRawResult} boxing it. Exceptions are rethrown by
+     * {@code join}, which only returns normally on successful completion.
+     */
+    final void runBulk(ForkJoinTask<?> task) {
+        ForkJoinPool p = bulkPool;
+        Thread t;
+        if (p == null || ((t = Thread.currentThread()) instanceof ForkJoinWorkerThread
+                && ((ForkJoinWorkerThread) t).getPool() == p))
+            task.quietlyInvoke();
+        else {
+            p.execute(task);
+            task.quietlyJoin();
+        }
+        if (task.isCompletedAbnormally())
+            task.join();
+    }
+
     /**
      * Performs the given action for each (key, value).
      *
@@ -3540,7 +3733,7 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
     public void forEach(long parallelismThreshold, BiConsumer<? super K, ? super V> action) {
         if (action == null)
             throw new NullPointerException();
-        new ForEachMappingTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, action).invoke();
+        invokeBulk(new ForEachMappingTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, action));
     }
 
     /**
@@ -3560,8 +3753,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             Consumer<? super U> action) {
         if (transformer == null || action == null)
             throw new NullPointerException();
-        new ForEachTransformedMappingTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, transformer,
-                action).invoke();
+        invokeBulk(new ForEachTransformedMappingTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table,
+                transformer, action));
     }
 
     /**
@@ -3582,8 +3775,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
     public <U> U search(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> searchFunction) {
         if (searchFunction == null)
             throw new NullPointerException();
-        return new SearchMappingsTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, searchFunction,
-                new AtomicReference<U>()).invoke();
+        return invokeBulk(new SearchMappingsTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table,
+                searchFunction, new AtomicReference<U>()));
     }
 
     /**
@@ -3605,8 +3798,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             BiFunction<? super U, ? super U, ? extends U> reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceMappingsTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, null, transformer,
-                reducer).invoke();
+        return invokeBulk(new MapReduceMappingsTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, null,
+                transformer, reducer));
     }
 
     /**
@@ -3627,8 +3820,10 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             double basis, DoubleBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceMappingsToDoubleTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null,
-                transformer, basis, reducer).invoke();
+        MapReduceMappingsToDoubleTask<K, V> task = new MapReduceMappingsToDoubleTask<K, V>(null,
+                batchFor(parallelismThreshold), 0, 0, table, null, transformer, basis, reducer);
+        runBulk(task);
+        return task.result;
     }
 
     /**
@@ -3649,8 +3844,10 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             LongBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceMappingsToLongTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null,
-                transformer, basis, reducer).invoke();
+        MapReduceMappingsToLongTask<K, V> task = new MapReduceMappingsToLongTask<K, V>(null,
+                batchFor(parallelismThreshold), 0, 0, table, null, transformer, basis, reducer);
+        runBulk(task);
+        return task.result;
     }
 
     /**
@@ -3671,8 +3868,10 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             IntBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceMappingsToIntTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null,
-                transformer, basis, reducer).invoke();
+        MapReduceMappingsToIntTask<K, V> task = new MapReduceMappingsToIntTask<K, V>(null,
+                batchFor(parallelismThreshold), 0, 0, table, null, transformer, basis, reducer);
+        runBulk(task);
+        return task.result;
     }
 
     /**
@@ -3686,7 +3885,7 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
     public void forEachKey(long parallelismThreshold, Consumer<? super K> action) {
         if (action == null)
             throw new NullPointerException();
-        new ForEachKeyTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, action).invoke();
+        invokeBulk(new ForEachKeyTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, action));
     }
 
     /**
@@ -3705,8 +3904,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             Consumer<? super U> action) {
         if (transformer == null || action == null)
             throw new NullPointerException();
-        new ForEachTransformedKeyTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, transformer, action)
-                .invoke();
+        invokeBulk(new ForEachTransformedKeyTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table,
+                transformer, action));
     }
 
     /**
@@ -3727,8 +3926,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
     public <U> U searchKeys(long parallelismThreshold, Function<? super K, ? extends U> searchFunction) {
         if (searchFunction == null)
             throw new NullPointerException();
-        return new SearchKeysTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, searchFunction,
-                new AtomicReference<U>()).invoke();
+        return invokeBulk(new SearchKeysTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, searchFunction,
+                new AtomicReference<U>()));
     }
 
     /**
@@ -3745,7 +3944,7 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
     public K reduceKeys(long parallelismThreshold, BiFunction<? super K, ? super K, ? extends K> reducer) {
         if (reducer == null)
             throw new NullPointerException();
-        return new ReduceKeysTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null, reducer).invoke();
+        return invokeBulk(new ReduceKeysTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null, reducer));
     }
 
     /**
@@ -3766,8 +3965,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             BiFunction<? super U, ? super U, ? extends U> reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceKeysTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, null, transformer,
-                reducer).invoke();
+        return invokeBulk(new MapReduceKeysTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, null,
+                transformer, reducer));
     }
 
     /**
@@ -3787,8 +3986,10 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             DoubleBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceKeysToDoubleTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null, transformer,
-                basis, reducer).invoke();
+        MapReduceKeysToDoubleTask<K, V> task = new MapReduceKeysToDoubleTask<K, V>(null, batchFor(parallelismThreshold),
+                0, 0, table, null, transformer, basis, reducer);
+        runBulk(task);
+        return task.result;
     }
 
     /**
@@ -3808,8 +4009,10 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             LongBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceKeysToLongTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null, transformer,
-                basis, reducer).invoke();
+        MapReduceKeysToLongTask<K, V> task = new MapReduceKeysToLongTask<K, V>(null, batchFor(parallelismThreshold), 0,
+                0, table, null, transformer, basis, reducer);
+        runBulk(task);
+        return task.result;
     }
 
     /**
@@ -3829,8 +4032,10 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             IntBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceKeysToIntTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null, transformer,
-                basis, reducer).invoke();
+        MapReduceKeysToIntTask<K, V> task = new MapReduceKeysToIntTask<K, V>(null, batchFor(parallelismThreshold), 0, 0,
+                table, null, transformer, basis, reducer);
+        runBulk(task);
+        return task.result;
     }
 
     /**
@@ -3844,7 +4049,7 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
     public void forEachValue(long parallelismThreshold, Consumer<? super V> action) {
         if (action == null)
             throw new NullPointerException();
-        new ForEachValueTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, action).invoke();
+        invokeBulk(new ForEachValueTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, action));
     }
 
     /**
@@ -3863,8 +4068,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             Consumer<? super U> action) {
         if (transformer == null || action == null)
             throw new NullPointerException();
-        new ForEachTransformedValueTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, transformer, action)
-                .invoke();
+        invokeBulk(new ForEachTransformedValueTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table,
+                transformer, action));
     }
 
     /**
@@ -3885,8 +4090,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
     public <U> U searchValues(long parallelismThreshold, Function<? super V, ? extends U> searchFunction) {
         if (searchFunction == null)
             throw new NullPointerException();
-        return new SearchValuesTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, searchFunction,
-                new AtomicReference<U>()).invoke();
+        return invokeBulk(new SearchValuesTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table,
+                searchFunction, new AtomicReference<U>()));
     }
 
     /**
@@ -3902,7 +4107,7 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
     public V reduceValues(long parallelismThreshold, BiFunction<? super V, ? super V, ? extends V> reducer) {
         if (reducer == null)
             throw new NullPointerException();
-        return new ReduceValuesTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null, reducer).invoke();
+        return invokeBulk(new ReduceValuesTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null, reducer));
     }
 
     /**
@@ -3923,8 +4128,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             BiFunction<? super U, ? super U, ? extends U> reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceValuesTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, null, transformer,
-                reducer).invoke();
+        return invokeBulk(new MapReduceValuesTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, null,
+                transformer, reducer));
     }
 
     /**
@@ -3944,8 +4149,10 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             DoubleBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceValuesToDoubleTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null,
-                transformer, basis, reducer).invoke();
+        MapReduceValuesToDoubleTask<K, V> task = new MapReduceValuesToDoubleTask<K, V>(null,
+                batchFor(parallelismThreshold), 0, 0, table, null, transformer, basis, reducer);
+        runBulk(task);
+        return task.result;
     }
 
     /**
@@ -3965,8 +4172,10 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             LongBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceValuesToLongTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null, transformer,
-                basis, reducer).invoke();
+        MapReduceValuesToLongTask<K, V> task = new MapReduceValuesToLongTask<K, V>(null, batchFor(parallelismThreshold),
+                0, 0, table, null, transformer, basis, reducer);
+        runBulk(task);
+        return task.result;
     }
 
     /**
@@ -3986,8 +4195,10 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             IntBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceValuesToIntTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null, transformer,
-                basis, reducer).invoke();
+        MapReduceValuesToIntTask<K, V> task = new MapReduceValuesToIntTask<K, V>(null, batchFor(parallelismThreshold),
+                0, 0, table, null, transformer, basis, reducer);
+        runBulk(task);
+        return task.result;
     }
 
     /**
@@ -4001,7 +4212,7 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
     public void forEachEntry(long parallelismThreshold, Consumer<? super Map.Entry<K, V>> action) {
         if (action == null)
             throw new NullPointerException();
-        new ForEachEntryTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, action).invoke();
+        invokeBulk(new ForEachEntryTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, action));
     }
 
     /**
@@ -4020,8 +4231,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             Consumer<? super U> action) {
         if (transformer == null || action == null)
             throw new NullPointerException();
-        new ForEachTransformedEntryTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, transformer, action)
-                .invoke();
+        invokeBulk(new ForEachTransformedEntryTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table,
+                transformer, action));
     }
 
     /**
@@ -4042,8 +4253,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
     public <U> U searchEntries(long parallelismThreshold, Function<Map.Entry<K, V>, ? extends U> searchFunction) {
         if (searchFunction == null)
             throw new NullPointerException();
-        return new SearchEntriesTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, searchFunction,
-                new AtomicReference<U>()).invoke();
+        return invokeBulk(new SearchEntriesTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table,
+                searchFunction, new AtomicReference<U>()));
     }
 
     /**
@@ -4060,7 +4271,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             BiFunction<Map.Entry<K, V>, Map.Entry<K, V>, ? extends Map.Entry<K, V>> reducer) {
         if (reducer == null)
             throw new NullPointerException();
-        return new ReduceEntriesTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null, reducer).invoke();
+        return invokeBulk(new ReduceEntriesTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null,
+                reducer));
     }
 
     /**
@@ -4082,8 +4294,8 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             BiFunction<? super U, ? super U, ? extends U> reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceEntriesTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, null, transformer,
-                reducer).invoke();
+        return invokeBulk(new MapReduceEntriesTask<K, V, U>(null, batchFor(parallelismThreshold), 0, 0, table, null,
+                transformer, reducer));
     }
 
     /**
@@ -4104,8 +4316,10 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             double basis, DoubleBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceEntriesToDoubleTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null,
-                transformer, basis, reducer).invoke();
+        MapReduceEntriesToDoubleTask<K, V> task = new MapReduceEntriesToDoubleTask<K, V>(null,
+                batchFor(parallelismThreshold), 0, 0, table, null, transformer, basis, reducer);
+        runBulk(task);
+        return task.result;
     }
 
     /**
@@ -4126,8 +4340,10 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             LongBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceEntriesToLongTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null,
-                transformer, basis, reducer).invoke();
+        MapReduceEntriesToLongTask<K, V> task = new MapReduceEntriesToLongTask<K, V>(null,
+                batchFor(parallelismThreshold), 0, 0, table, null, transformer, basis, reducer);
+        runBulk(task);
+        return task.result;
     }
 
     /**
@@ -4148,8 +4364,10 @@ public class ConcurrentHashMap8<K, V> extends AbstractMap<K, V> implements Concu
             IntBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceEntriesToIntTask<K, V>(null, batchFor(parallelismThreshold), 0, 0, table, null, transformer,
-                basis, reducer).invoke();
+        MapReduceEntriesToIntTask<K, V> task = new MapReduceEntriesToIntTask<K, V>(null, batchFor(parallelismThreshold),
+                0, 0, table, null, transformer, basis, reducer);
+        runBulk(task);
+        return task.result;
     }
 
     /* ----------------Views -------------- */
@@ -252,6 +252,14 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
      */
     static final int MIN_TREEIFY_CAPACITY = 64;
 
+    /**
+     * The number of old-table bins an incremental resize moves on each put or
+     * remove. Inserting threshold / 2 more mappings with the default
+     * load factor takes at least threshold * 4 / 3 bin moves, so a migration
+     * always completes before the table fills up again.
+     */
+    static final int RESIZE_STEP_BINS = 8;
+
     /**
      * Basic hash bin node, used for most entries. (See below for TreeNode
      * subclass, and in LinkedHashMap for its Entry subclass.)
@@ -427,6 +435,26 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
      */
     final float loadFactor;
 
+    /**
+     * Whether resize() leaves the bins in the old table to be moved a few at
+     * a time by later operations instead of rehashing them all at once.
+     *
+     * @serial
+     */
+    final boolean incrementalResize;
+
+    /**
+     * While an incremental resize is in progress, the previous table; its bins
+     * below migrateIndex have been moved to table and are empty. Null
+     * otherwise.
+     */
+    transient Node<K, V>[] oldTable;
+
+    /**
+     * The next old-table bin an incremental resize will move.
+     */
+    transient int migrateIndex;
+
     /* ---------------- Public operations -------------- */
 
     /**
@@ -439,6 +467,39 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
      *             the load factor is nonpositive
      */
     public HashMap8(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, false);
+    }
+
+    /**
+     * Constructs an empty <tt>HashMap</tt> with the specified initial capacity
+     * and load factor, optionally resizing incrementally.
+     *
+     * <p>
+     * An incremental resize allocates the doubled table and then moves
+     * {@link #RESIZE_STEP_BINS} bins of the old table per <tt>put</tt>,
+     * <tt>remove</tt> or <tt>compute</tt>-style call, like Redis dict
+     * rehashing, so no single call rehashes the whole map. Until the migration
+     * finishes both tables are kept; bins are moved in index order, so each
+     * key is looked up in exactly one of them. Lookups (<tt>get</tt>,
+     * <tt>containsKey</tt>, <tt>getOrDefault</tt>) never move bins.
+     *
+     * <p>
+     * Operations that traverse the whole map (iteration, <tt>forEach</tt>,
+     * <tt>containsValue</tt>, serialization) finish the pending migration
+     * first, so while one is pending they modify the map structurally even
+     * though they only read its mappings. A map that is shared between threads
+     * without synchronization and only read must therefore be traversed once,
+     * for example with <tt>forEach</tt>, before it is shared, or be
+     * constructed without incremental resizing.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor the load factor
+     * @param incrementalResize whether to spread each resize over later
+     *            operations
+     * @throws IllegalArgumentException if the initial capacity is negative or
+     *             the load factor is nonpositive
+     */
+    public HashMap8(int initialCapacity, float loadFactor, boolean incrementalResize) {
         if (initialCapacity < 0)
             throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
         if (initialCapacity > MAXIMUM_CAPACITY)
@@ -447,6 +508,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
             throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
         this.loadFactor = loadFactor;
         this.threshold = tableSizeFor(initialCapacity);
+        this.incrementalResize = incrementalResize;
     }
 
     /**
@@ -466,6 +528,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
      */
     public HashMap8() {
         this.loadFactor = DEFAULT_LOAD_FACTOR; // all other fields defaulted
+        this.incrementalResize = false;
     }
 
     /**
@@ -479,6 +542,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
      */
     public HashMap8(Map<? extends K, ? extends V> m) {
         this.loadFactor = DEFAULT_LOAD_FACTOR;
+        this.incrementalResize = false;
         putMapEntries(m, false);
     }
 
@@ -565,7 +629,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
         // 3.通过索引获取 数组元素(bucket[x]),优先尝试获取链表中的第一个结点
         // 4.遍历单向链表 或者 从红黑树获取
         
-        if ((tab = table) != null && (n = tab.length) > 0 && (first = tab[(n - 1) & hash]) != null) {
+        if ((tab = lookupTable(hash)) != null && (n = tab.length) > 0 && (first = tab[(n - 1) & hash]) != null) {
             if (first.hash == hash && // always check first node
                     ((k = first.key) == key || (key != null && key.equals(k))))
                 return first;
@@ -623,7 +687,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
         Node<K, V>[] tab;
         Node<K, V> p;//对应的链表
         int n, i;
-        if ((tab = table) == null || (n = tab.length) == 0)
+        if ((tab = tableFor(hash)) == null || (n = tab.length) == 0)
             n = (tab = resize()).length;//初始化
         if ((p = tab[i = (n - 1) & hash]) == null)//这个bucket数组中对应位置的链表是否存在
             tab[i] = newNode(hash, key, value, null);//table数组对应index未初始化，插入首条
@@ -673,6 +737,8 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
      * @return the table
      */
     final Node<K, V>[] resize() {
+        if (oldTable != null) // finish the previous incremental resize first
+            migrate(Integer.MAX_VALUE);
         Node<K, V>[] oldTab = table;
         int oldCap = (oldTab == null) ? 0 : oldTab.length;//oldCap是原有hashtable的数组length
         int oldThr = threshold;//oldThr是原有threshold
@@ -700,47 +766,107 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
         Node<K, V>[] newTab = (Node<K, V>[]) new Node[newCap];//构造bucket桶数组,使用最新的newCap
         table = newTab;
         if (oldTab != null) {
-            for (int j = 0; j < oldCap; ++j) {//将原有数组中的原有链表  各个结点遍历后放入新的扩容数组
-                Node<K, V> e;
-                if ((e = oldTab[j]) != null) {
-                    oldTab[j] = null;//for GC
-                    if (e.next == null)//只有一个结点,未形成链表
-                        newTab[e.hash & (newCap - 1)] = e;//e.hash & (newCap - 1) 
-                    else if (e instanceof TreeNode)
-                        ((TreeNode<K, V>) e).split(this, newTab, j, oldCap);
-                    else { // preserve order
-                        Node<K, V> loHead = null, loTail = null;
-                        Node<K, V> hiHead = null, hiTail = null;
-                        Node<K, V> next;
-                        do {
-                            next = e.next;
-                            if ((e.hash & oldCap) == 0) {
-                                if (loTail == null)
-                                    loHead = e;
-                                else
-                                    loTail.next = e;
-                                loTail = e;
-                            } else {
-                                if (hiTail == null)
-                                    hiHead = e;
-                                else
-                                    hiTail.next = e;
-                                hiTail = e;
-                            }
-                        } while ((e = next) != null);//链表继续
-                        if (loTail != null) {
-                            loTail.next = null;
-                            newTab[j] = loHead;
-                        }
-                        if (hiTail != null) {
-                            hiTail.next = null;
-                            newTab[j + oldCap] = hiHead;
-                        }
+            if (incrementalResize) { // bins are moved later by migrate
+                oldTable = oldTab;
+                migrateIndex = 0;
+                return newTab;
+            }
+            for (int j = 0; j < oldCap; ++j)//将原有数组中的原有链表  各个结点遍历后放入新的扩容数组
+                transferBin(oldTab, j, newTab);
+        }
+        return newTab;
+    }
+
+    /**
+     * Moves bin j of oldTab, which is half the length of newTab, to bins j and
+     * j + oldTab.length of newTab, preserving order within each.
+     */
+    final void transferBin(Node<K, V>[] oldTab, int j, Node<K, V>[] newTab) {
+        int oldCap = oldTab.length, newCap = newTab.length;
+        Node<K, V> e;
+        if ((e = oldTab[j]) != null) {
+            oldTab[j] = null;//for GC
+            if (e.next == null)//只有一个结点,未形成链表
+                newTab[e.hash & (newCap - 1)] = e;//e.hash & (newCap - 1) 
+            else if (e instanceof TreeNode)
+                ((TreeNode<K, V>) e).split(this, newTab, j, oldCap);
+            else { // preserve order
+                Node<K, V> loHead = null, loTail = null;
+                Node<K, V> hiHead = null, hiTail = null;
+                Node<K, V> next;
+                do {
+                    next = e.next;
+                    if ((e.hash & oldCap) == 0) {
+                        if (loTail == null)
+                            loHead = e;
+                        else
+                            loTail.next = e;
+                        loTail = e;
+                    } else {
+                        if (hiTail == null)
+                            hiHead = e;
+                        else
+                            hiTail.next = e;
+                        hiTail = e;
                     }
+                } while ((e = next) != null);//链表继续
+                if (loTail != null) {
+                    loTail.next = null;
+                    newTab[j] = loHead;
+                }
+                if (hiTail != null) {
+                    hiTail.next = null;
+                    newTab[j + oldCap] = hiHead;
                 }
             }
         }
-        return newTab;
+    }
+
+    /**
+     * Moves up to the given number of bins of the old table during an
+     * incremental resize, and drops the old table once all are moved.
+     */
+    final void migrate(int bins) {
+        Node<K, V>[] oldTab = oldTable, newTab = table;
+        int oldCap = oldTab.length, j = migrateIndex;
+        int end = (bins < oldCap - j) ? j + bins : oldCap;
+        for (; j < end; ++j)
+            transferBin(oldTab, j, newTab);
+        if ((migrateIndex = j) >= oldCap)
+            oldTable = null;
+    }
+
+    /**
+     * Finishes a pending incremental resize. Called before traversals of the
+     * whole table, which expect every mapping in table.
+     */
+    final void completeResize() {
+        if (oldTable != null)
+            migrate(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the table whose bin holds the given hash, advancing a pending
+     * incremental resize by RESIZE_STEP_BINS bins first. Only called by
+     * operations that may modify the map.
+     */
+    final Node<K, V>[] tableFor(int hash) {
+        if (oldTable != null)
+            migrate(RESIZE_STEP_BINS);
+        return lookupTable(hash);
+    }
+
+    /**
+     * Returns the table whose bin holds the given hash, without moving any
+     * bins, so that lookups leave the map unchanged. Old-table bins are moved
+     * in index order, so the hash is still in oldTable exactly when its old
+     * bin index is at or past migrateIndex.
+     */
+    final Node<K, V>[] lookupTable(int hash) {
+        Node<K, V>[] oldTab;
+        if ((oldTab = oldTable) != null && (hash & (oldTab.length - 1)) >= migrateIndex)
+            return oldTab;
+        return table;
     }
 
     /**
@@ -809,7 +935,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
         Node<K, V>[] tab;
         Node<K, V> p;
         int n, index;
-        if ((tab = table) != null && (n = tab.length) > 0 && (p = tab[index = (n - 1) & hash]) != null) {
+        if ((tab = tableFor(hash)) != null && (n = tab.length) > 0 && (p = tab[index = (n - 1) & hash]) != null) {
             Node<K, V> node = null, e;
             K k;
             V v;
@@ -851,6 +977,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
     public void clear() {
         Node<K, V>[] tab;
         modCount++;
+        oldTable = null;
         if ((tab = table) != null && size > 0) {
             size = 0;
             for (int i = 0; i < tab.length; ++i)
@@ -869,6 +996,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
     public boolean containsValue(Object value) {
         Node<K, V>[] tab;
         V v;
+        completeResize();
         if ((tab = table) != null && size > 0) {
             for (int i = 0; i < tab.length; ++i) {
                 for (Node<K, V> e = tab[i]; e != null; e = e.next) {
@@ -927,6 +1055,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
             Node<K, V>[] tab;
             if (action == null)
                 throw new NullPointerException();
+            completeResize();
             if (size > 0 && (tab = table) != null) {
                 int mc = modCount;
                 for (int i = 0; i < tab.length; ++i) {
@@ -983,6 +1112,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
             Node<K, V>[] tab;
             if (action == null)
                 throw new NullPointerException();
+            completeResize();
             if (size > 0 && (tab = table) != null) {
                 int mc = modCount;
                 for (int i = 0; i < tab.length; ++i) {
@@ -1054,6 +1184,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
             Node<K, V>[] tab;
             if (action == null)
                 throw new NullPointerException();
+            completeResize();
             if (size > 0 && (tab = table) != null) {
                 int mc = modCount;
                 for (int i = 0; i < tab.length; ++i) {
@@ -1119,8 +1250,9 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
         int binCount = 0;
         TreeNode<K, V> t = null;
         Node<K, V> old = null;
-        if (size > threshold || (tab = table) == null || (n = tab.length) == 0)
-            n = (tab = resize()).length;
+        if (size > threshold || (tab = table) == null || tab.length == 0)
+            resize();
+        n = (tab = tableFor(hash)).length;
         if ((first = tab[i = (n - 1) & hash]) != null) {
             if (first instanceof TreeNode)
                 old = (t = (TreeNode<K, V>) first).getTreeNode(hash, key);
@@ -1190,8 +1322,9 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
         int binCount = 0;
         TreeNode<K, V> t = null;
         Node<K, V> old = null;
-        if (size > threshold || (tab = table) == null || (n = tab.length) == 0)
-            n = (tab = resize()).length;
+        if (size > threshold || (tab = table) == null || tab.length == 0)
+            resize();
+        n = (tab = tableFor(hash)).length;
         if ((first = tab[i = (n - 1) & hash]) != null) {
             if (first instanceof TreeNode)
                 old = (t = (TreeNode<K, V>) first).getTreeNode(hash, key);
@@ -1243,8 +1376,9 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
         int binCount = 0;
         TreeNode<K, V> t = null;
         Node<K, V> old = null;
-        if (size > threshold || (tab = table) == null || (n = tab.length) == 0)
-            n = (tab = resize()).length;
+        if (size > threshold || (tab = table) == null || tab.length == 0)
+            resize();
+        n = (tab = tableFor(hash)).length;
         if ((first = tab[i = (n - 1) & hash]) != null) {
             if (first instanceof TreeNode)
                 old = (t = (TreeNode<K, V>) first).getTreeNode(hash, key);
@@ -1293,6 +1427,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
         Node<K, V>[] tab;
         if (action == null)
             throw new NullPointerException();
+        completeResize();
         if (size > 0 && (tab = table) != null) {
             int mc = modCount;
             for (int i = 0; i < tab.length; ++i) {
@@ -1309,6 +1444,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
         Node<K, V>[] tab;
         if (function == null)
             throw new NullPointerException();
+        completeResize();
         if (size > 0 && (tab = table) != null) {
             int mc = modCount;
             for (int i = 0; i < tab.length; ++i) {
@@ -1424,6 +1560,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
         int index; // current slot
 
         HashIterator() {
+            completeResize();
             expectedModCount = modCount;
             Node<K, V>[] t = table;
             current = next = null;
@@ -1511,6 +1648,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
             int hi;
             if ((hi = fence) < 0) {
                 HashMap8<K, V> m = map;
+                m.completeResize();
                 est = m.size;
                 expectedModCount = m.modCount;
                 Node<K, V>[] tab = m.table;
@@ -1543,6 +1681,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
             HashMap8<K, V> m = map;
             Node<K, V>[] tab = m.table;
             if ((hi = fence) < 0) {
+                m.completeResize(); // fills tab, the current table
                 mc = expectedModCount = m.modCount;
                 hi = fence = (tab == null) ? 0 : tab.length;
             } else
@@ -1608,6 +1747,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
             HashMap8<K, V> m = map;
             Node<K, V>[] tab = m.table;
             if ((hi = fence) < 0) {
+                m.completeResize(); // fills tab, the current table
                 mc = expectedModCount = m.modCount;
                 hi = fence = (tab == null) ? 0 : tab.length;
             } else
@@ -1673,6 +1813,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
             HashMap8<K, V> m = map;
             Node<K, V>[] tab = m.table;
             if ((hi = fence) < 0) {
+                m.completeResize(); // fills tab, the current table
                 mc = expectedModCount = m.modCount;
                 hi = fence = (tab == null) ? 0 : tab.length;
             } else
@@ -1755,6 +1896,8 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
      */
     void reinitialize() {
         table = null;
+        oldTable = null;
+        migrateIndex = 0;
         entrySet = null;
         keySet = null;
         values = null;
@@ -1776,6 +1919,7 @@ public class HashMap8<K, V> extends AbstractMap<K, V> implements Map<K, V>, Clon
     // Called only from writeObject, to ensure compatible ordering.
     void internalWriteEntries(java.io.ObjectOutputStream s) throws IOException {
         Node<K, V>[] tab;
+        completeResize();
         if (size > 0 && (tab = table) != null) {
             for (int i = 0; i < tab.length; ++i) {
                 for (Node<K, V> e = tab[i]; e != null; e = e.next) {
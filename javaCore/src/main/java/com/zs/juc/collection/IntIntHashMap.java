@@ -0,0 +1,454 @@
+package com.zs.juc.collection;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from <tt>int</tt> keys to <tt>int</tt> values,
+ * the primitive counterpart of {@link HashMap8} for single-threaded hot loops.
+ *
+ * <p>
+ * Keys and values live in two parallel <tt>int</tt> arrays, so a lookup
+ * touches one or two cache lines instead of chasing <tt>Node</tt> pointers,
+ * and no operation allocates once the table is large enough. Collisions are
+ * resolved by linear probing with Robin Hood insertion: an entry being
+ * inserted takes the slot of any resident that is closer to its home slot,
+ * which keeps probe sequences short and lets a failed lookup stop as soon as
+ * it meets an entry closer to home than the key would be. Removal shifts the
+ * following entries back instead of leaving tombstones.
+ *
+ * <p>
+ * Capacity and load factor mean the same as for <tt>HashMap8</tt>: the table
+ * is allocated on first insertion with <tt>tableSizeFor(initialCapacity)</tt>
+ * slots and doubles whenever the number of mappings exceeds capacity times
+ * load factor. As every entry occupies a slot, the load factor must be below
+ * 1.
+ *
+ * <p>
+ * Slot value 0 marks an empty slot, so the mapping for key 0 is held outside
+ * the table. Absent keys read as the <i>missing value</i> given at
+ * construction (0 by default); use {@link #containsKey} where a stored value
+ * may equal it.
+ *
+ * <p>
+ * <strong>Note that this implementation is not synchronized.</strong>
+ *
+ * @see LongLongHashMap
+ */
+public class IntIntHashMap {
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * The maximum capacity, as in HashMap8.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * Receives the mappings passed to {@link IntIntHashMap#forEach}.
+     */
+    public interface EntryConsumer {
+        void accept(int key, int value);
+    }
+
+    /* ---------------- Static utilities -------------- */
+
+    /**
+     * Scrambles the key with the golden-ratio multiplier and folds the high
+     * bits down, so that keys that differ only in their upper bits, or are
+     * strided by a power of two, still spread over the low index bits.
+     */
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns a power of two size for the given target capacity.
+     */
+    static int tableSizeFor(int cap) {
+        int n = cap - 1;
+        n |= n >>> 1;
+        n |= n >>> 2;
+        n |= n >>> 4;
+        n |= n >>> 8;
+        n |= n >>> 16;
+        return (n < 0) ? 1 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    /* ---------------- Fields -------------- */
+
+    /**
+     * The keys, initialized on first use and resized as necessary; 0 marks an
+     * empty slot. When allocated, length is always a power of two.
+     */
+    int[] keys;
+
+    /**
+     * The values, parallel to keys.
+     */
+    int[] values;
+
+    /**
+     * The number of key-value mappings, the one for key 0 included.
+     */
+    int size;
+
+    /**
+     * Whether key 0 is mapped, to zeroValue.
+     */
+    boolean hasZeroKey;
+
+    int zeroValue;
+
+    /**
+     * The next size value at which to resize (capacity * load factor). While
+     * the table is not allocated, holds the initial capacity, or zero
+     * signifying DEFAULT_INITIAL_CAPACITY.
+     */
+    int threshold;
+
+    final float loadFactor;
+
+    final int missingValue;
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * Constructs an empty map with the specified initial capacity, load factor
+     * and missing value.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor the load factor, less than 1
+     * @param missingValue the value returned for absent keys
+     * @throws IllegalArgumentException if the initial capacity is negative or
+     *             the load factor is not in (0, 1)
+     */
+    public IntIntHashMap(int initialCapacity, float loadFactor, int missingValue) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        this.loadFactor = loadFactor;
+        this.threshold = tableSizeFor(initialCapacity);
+        this.missingValue = missingValue;
+    }
+
+    /**
+     * Constructs an empty map with the specified initial capacity and load
+     * factor, and 0 as missing value.
+     *
+     * @throws IllegalArgumentException if the initial capacity is negative or
+     *             the load factor is not in (0, 1)
+     */
+    public IntIntHashMap(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, 0);
+    }
+
+    /**
+     * Constructs an empty map with the specified initial capacity and the
+     * default load factor (0.75).
+     *
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public IntIntHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, 0);
+    }
+
+    /**
+     * Constructs an empty map with the default initial capacity (16) and the
+     * default load factor (0.75).
+     */
+    public IntIntHashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+        this.missingValue = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * The value returned by {@link #get}, {@link #put} and {@link #remove} when
+     * the key is absent.
+     */
+    public int missingValue() {
+        return missingValue;
+    }
+
+    /**
+     * Returns the value mapped to the key, or the missing value.
+     */
+    public int get(int key) {
+        return getOrDefault(key, missingValue);
+    }
+
+    /**
+     * Returns the value mapped to the key, or <tt>defaultValue</tt>.
+     */
+    public int getOrDefault(int key, int defaultValue) {
+        if (key == 0)
+            return hasZeroKey ? zeroValue : defaultValue;
+        int i = indexOf(key);
+        return i < 0 ? defaultValue : values[i];
+    }
+
+    public boolean containsKey(int key) {
+        return key == 0 ? hasZeroKey : indexOf(key) >= 0;
+    }
+
+    /**
+     * Maps the key to the value.
+     *
+     * @return the previous value, or the missing value if there was none
+     */
+    public int put(int key, int value) {
+        if (key == 0) {
+            int old = hasZeroKey ? zeroValue : missingValue;
+            zeroValue = value;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                afterInsertion();
+            }
+            return old;
+        }
+        int i = indexOf(key);
+        if (i >= 0) {
+            int old = values[i];
+            values[i] = value;
+            return old;
+        }
+        insert(key, value);
+        return missingValue;
+    }
+
+    /**
+     * Maps the key to the value unless it is already mapped.
+     *
+     * @return the current value, or the missing value if the key was absent
+     */
+    public int putIfAbsent(int key, int value) {
+        if (key == 0) {
+            if (hasZeroKey)
+                return zeroValue;
+        } else {
+            int i = indexOf(key);
+            if (i >= 0)
+                return values[i];
+        }
+        put(key, value);
+        return missingValue;
+    }
+
+    /**
+     * Adds <tt>delta</tt> to the value of the key, an absent key counting as
+     * mapped to 0, and returns the new value. The usual way to aggregate
+     * counters or sums by key in one probe.
+     */
+    public int addTo(int key, int delta) {
+        if (key == 0) {
+            if (hasZeroKey)
+                return zeroValue += delta;
+            put(0, delta);
+            return delta;
+        }
+        int i = indexOf(key);
+        if (i >= 0)
+            return values[i] += delta;
+        insert(key, delta);
+        return delta;
+    }
+
+    /**
+     * Removes the mapping for the key.
+     *
+     * @return the removed value, or the missing value if there was none
+     */
+    public int remove(int key) {
+        if (key == 0) {
+            if (!hasZeroKey)
+                return missingValue;
+            hasZeroKey = false;
+            --size;
+            return zeroValue;
+        }
+        int i = indexOf(key);
+        if (i < 0)
+            return missingValue;
+        int old = values[i];
+        shiftBack(i);
+        --size;
+        return old;
+    }
+
+    /**
+     * Removes all mappings, keeping the table.
+     */
+    public void clear() {
+        if (size > 0) {
+            if (keys != null)
+                Arrays.fill(keys, 0);
+            hasZeroKey = false;
+            size = 0;
+        }
+    }
+
+    /**
+     * Passes each mapping to the action, in no particular order. The action
+     * must not modify the map.
+     */
+    public void forEach(EntryConsumer action) {
+        if (hasZeroKey)
+            action.accept(0, zeroValue);
+        int[] ks = keys, vs = values;
+        if (ks != null) {
+            for (int i = 0; i < ks.length; i++) {
+                int k = ks[i];
+                if (k != 0)
+                    action.accept(k, vs[i]);
+            }
+        }
+    }
+
+    public String toString() {
+        final StringBuilder sb = new StringBuilder().append('{');
+        forEach(new EntryConsumer() {
+            public void accept(int key, int value) {
+                if (sb.length() > 1)
+                    sb.append(", ");
+                sb.append(key).append('=').append(value);
+            }
+        });
+        return sb.append('}').toString();
+    }
+
+    /* ---------------- Table mechanics -------------- */
+
+    /**
+     * Returns the slot holding the nonzero key, or -1. Stops at an empty slot
+     * or at a resident closer to its home slot than the key would be, since
+     * Robin Hood insertion would have placed the key before it.
+     */
+    final int indexOf(int key) {
+        int[] ks = keys;
+        if (ks == null)
+            return -1;
+        int mask = ks.length - 1;
+        for (int i = hash(key) & mask, dist = 0;; i = (i + 1) & mask, ++dist) {
+            int k = ks[i];
+            if (k == key)
+                return i;
+            if (k == 0 || ((i - hash(k)) & mask) < dist)
+                return -1;
+        }
+    }
+
+    /**
+     * Inserts a nonzero key known to be absent.
+     */
+    final void insert(int key, int value) {
+        if (keys == null)
+            resize();
+        else if (size >= MAXIMUM_CAPACITY - 1)
+            throw new IllegalStateException("Map is full");
+        place(keys, values, key, value);
+        afterInsertion();
+    }
+
+    final void afterInsertion() {
+        if (++size > threshold)
+            resize();
+    }
+
+    /**
+     * Robin Hood placement of an absent nonzero key into a table with at least
+     * one empty slot: whenever the entry being placed is farther from home
+     * than the resident, they swap and placement continues with the resident.
+     */
+    static void place(int[] ks, int[] vs, int key, int value) {
+        int mask = ks.length - 1;
+        for (int i = hash(key) & mask, dist = 0;; i = (i + 1) & mask, ++dist) {
+            int k = ks[i];
+            if (k == 0) {
+                ks[i] = key;
+                vs[i] = value;
+                return;
+            }
+            int d = (i - hash(k)) & mask;
+            if (d < dist) {
+                int v = vs[i];
+                ks[i] = key;
+                vs[i] = value;
+                key = k;
+                value = v;
+                dist = d;
+            }
+        }
+    }
+
+    /**
+     * Empties slot i by moving each following entry that is not in its home
+     * slot back by one, up to the next empty slot or home-slot entry.
+     */
+    final void shiftBack(int i) {
+        int[] ks = keys, vs = values;
+        int mask = ks.length - 1;
+        for (int j = (i + 1) & mask;; i = j, j = (j + 1) & mask) {
+            int k = ks[j];
+            if (k == 0 || ((j - hash(k)) & mask) == 0) {
+                ks[i] = 0;
+                return;
+            }
+            ks[i] = k;
+            vs[i] = vs[j];
+        }
+    }
+
+    /**
+     * Initializes or doubles the table, with the capacity and threshold rules
+     * of HashMap8.resize. The threshold never exceeds capacity - 1, so
+     * the table always keeps an empty slot to end probes.
+     */
+    final void resize() {
+        int[] oldKeys = keys, oldValues = values;
+        int oldCap = (oldKeys == null) ? 0 : oldKeys.length;
+        int oldThr = threshold;
+        int newCap;
+        if (oldCap > 0) {
+            if (oldCap >= MAXIMUM_CAPACITY) {
+                threshold = MAXIMUM_CAPACITY - 1;
+                return;
+            }
+            newCap = oldCap << 1;
+        } else if (oldThr > 0) // initial capacity was placed in threshold
+            newCap = oldThr;
+        else
+            newCap = DEFAULT_INITIAL_CAPACITY;
+        if (newCap < 2)
+            newCap = 2;
+        threshold = Math.min((int) (newCap * loadFactor), newCap - 1);
+        int[] newKeys = new int[newCap], newValues = new int[newCap];
+        keys = newKeys;
+        values = newValues;
+        if (oldKeys != null) {
+            for (int j = 0; j < oldCap; ++j) {
+                int k = oldKeys[j];
+                if (k != 0)
+                    place(newKeys, newValues, k, oldValues[j]);
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.zs.juc.collection;
+
+import java.util.Arrays;
+
+/**
+ * A point-in-time view of the table of a {@link ConcurrentHashMap8}, returned
+ * by {@link ConcurrentHashMap8#mapStats()}.
+ *
+ * <p>
+ * The table shape (length, chain-length histogram, tree bins) is measured when
+ * the snapshot is taken and is always available. The resize and
+ * treeification counters are only recorded after
+ * {@link ConcurrentHashMap8#enableStats()} and are zero otherwise.
+ *
+ * <p>
+ * Each resize is timed from the moment a thread allocates the new table until
+ * the thread that commits it returns; {@code threads} counts every call into
+ * {@code transfer} for that resize, the initiating thread included.
+ */
+public final class MapStats {
+
+    private final long size;
+
+    private final int tableLength;
+
+    private final long[] chainLengths;
+
+    private final int treeBins;
+
+    private final int movedBins;
+
+    private final int maxChainLength;
+
+    private final boolean recording;
+
+    private final long resizeCount;
+
+    private final long totalResizeNanos;
+
+    private final long maxResizeNanos;
+
+    private final long lastResizeNanos;
+
+    private final int maxResizeThreads;
+
+    private final long totalResizeThreads;
+
+    private final long peakSizeAtResize;
+
+    private final long treeifyCount;
+
+    private final long treeifyPresizeCount;
+
+    MapStats(long size, int tableLength, long[] chainLengths, int treeBins, int movedBins, int maxChainLength,
+            boolean recording, long resizeCount, long totalResizeNanos, long maxResizeNanos, long lastResizeNanos,
+            int maxResizeThreads, long totalResizeThreads, long peakSizeAtResize, long treeifyCount,
+            long treeifyPresizeCount) {
+        this.size = size;
+        this.tableLength = tableLength;
+        this.chainLengths = chainLengths;
+        this.treeBins = treeBins;
+        this.movedBins = movedBins;
+        this.maxChainLength = maxChainLength;
+        this.recording = recording;
+        this.resizeCount = resizeCount;
+        this.totalResizeNanos = totalResizeNanos;
+        this.maxResizeNanos = maxResizeNanos;
+        this.lastResizeNanos = lastResizeNanos;
+        this.maxResizeThreads = maxResizeThreads;
+        this.totalResizeThreads = totalResizeThreads;
+        this.peakSizeAtResize = peakSizeAtResize;
+        this.treeifyCount = treeifyCount;
+        this.treeifyPresizeCount = treeifyPresizeCount;
+    }
+
+    /** The number of mappings when the snapshot was taken. */
+    public long size() {
+        return size;
+    }
+
+    /** The number of bins of the table, 0 if it was not yet allocated. */
+    public int tableLength() {
+        return tableLength;
+    }
+
+    /**
+     * The number of list bins holding each number of nodes: element {@code i}
+     * counts bins with exactly {@code i} nodes, and the last element counts bins
+     * with {@code TREEIFY_THRESHOLD} (8) or more. Empty bins are in element 0;
+     * tree bins are not included.
+     */
+    public long[] chainLengthHistogram() {
+        return chainLengths.clone();
+    }
+
+    /** The number of bins that have been converted to red-black trees. */
+    public int treeBinCount() {
+        return treeBins;
+    }
+
+    /**
+     * The number of bins already moved by a resize that was in progress while
+     * the snapshot was taken; they are not in the histogram.
+     */
+    public int movedBinCount() {
+        return movedBins;
+    }
+
+    /** The longest list bin seen. */
+    public int maxChainLength() {
+        return maxChainLength;
+    }
+
+    /** The mean length of the non-empty list bins. */
+    public double averageChainLength() {
+        long bins = 0L, nodes = 0L;
+        for (int i = 1; i < chainLengths.length; i++) {
+            bins += chainLengths[i];
+            nodes += i * chainLengths[i];
+        }
+        return bins == 0L ? 0.0 : (double) nodes / bins;
+    }
+
+    /** Whether resize and treeification counters were being recorded. */
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /** Number of completed resizes. */
+    public long resizeCount() {
+        return resizeCount;
+    }
+
+    public long totalResizeNanos() {
+        return totalResizeNanos;
+    }
+
+    public long maxResizeNanos() {
+        return maxResizeNanos;
+    }
+
+    public long lastResizeNanos() {
+        return lastResizeNanos;
+    }
+
+    /** Most threads that took part in a single resize. */
+    public int maxResizeThreads() {
+        return maxResizeThreads;
+    }
+
+    /** Mean number of threads per resize. */
+    public double averageResizeThreads() {
+        return resizeCount == 0L ? 0.0 : (double) totalResizeThreads / resizeCount;
+    }
+
+    /** Bins converted to trees. */
+    public long treeifyCount() {
+        return treeifyCount;
+    }
+
+    /**
+     * Long bins that triggered a resize instead of a treeification because
+     * the table was still smaller than {@code MIN_TREEIFY_CAPACITY}.
+     */
+    public long treeifyPresizeCount() {
+        return treeifyPresizeCount;
+    }
+
+    /**
+     * Suggests an {@code initialCapacity} for a new map expected to see the
+     * same load: the largest of the current size and the largest size at
+     * which any recorded resize started. A map constructed with it would have
+     * made none of the resizes counted here.
+     */
+    public long suggestedInitialCapacity() {
+        return Math.max(size, peakSizeAtResize);
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("MapStats{size=").append(size).append(", tableLength=")
+                .append(tableLength).append(", chainLengths=").append(Arrays.toString(chainLengths))
+                .append(", treeBins=").append(treeBins).append(", maxChainLength=").append(maxChainLength);
+        if (recording)
+            sb.append(", resizes=").append(resizeCount).append(", totalResizeMillis=")
+                    .append(totalResizeNanos / 1000000L).append(", maxResizeMillis=")
+                    .append(maxResizeNanos / 1000000L).append(", maxResizeThreads=").append(maxResizeThreads)
+                    .append(", treeifications=").append(treeifyCount).append(", suggestedInitialCapacity=")
+                    .append(suggestedInitialCapacity());
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,66 @@
+package com.zs.juc.collection;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts keys or values of an {@link OffHeapConcurrentHashMap} to and from a
+ * fixed number of bytes.
+ *
+ * <p>
+ * Every encoded form must be exactly {@link #size()} bytes long, because the
+ * map stores records in fixed-size off-heap slots. Two keys are considered
+ * equal by the map if and only if their encoded bytes are equal, so a key codec
+ * must be consistent with {@code equals} (and the key's {@code hashCode} must
+ * be consistent with both).
+ *
+ * @param <T> the type of the encoded objects
+ */
+public interface OffHeapCodec<T> {
+
+    /**
+     * Returns the number of bytes of every encoded value.
+     */
+    int size();
+
+    /**
+     * Writes {@code value} into {@code out}, starting at its current position.
+     * Exactly {@link #size()} bytes must be written.
+     */
+    void encode(T value, ByteBuffer out);
+
+    /**
+     * Reads a value from {@code in}, starting at its current position, that was
+     * written by {@link #encode}.
+     */
+    T decode(ByteBuffer in);
+
+    /** Codec for {@code Long}s, 8 bytes. */
+    OffHeapCodec<Long> LONG = new OffHeapCodec<Long>() {
+        public int size() {
+            return 8;
+        }
+
+        public void encode(Long value, ByteBuffer out) {
+            out.putLong(value);
+        }
+
+        public Long decode(ByteBuffer in) {
+            return in.getLong();
+        }
+    };
+
+    /** Codec for {@code Integer}s, 4 bytes. */
+    OffHeapCodec<Integer> INTEGER = new OffHeapCodec<Integer>() {
+        public int size() {
+            return 4;
+        }
+
+        public void encode(Integer value, ByteBuffer out) {
+            out.putInt(value);
+        }
+
+        public Integer decode(ByteBuffer in) {
+            return in.getInt();
+        }
+    };
+}
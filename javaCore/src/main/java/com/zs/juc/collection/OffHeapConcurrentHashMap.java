@@ -0,0 +1,987 @@
+package com.zs.juc.collection;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * A concurrent hash map whose entries live outside the Java heap.
+ *
+ * <p>
+ * Keys and values are serialized by an {@link OffHeapCodec} into fixed-size
+ * records carved out of {@code Unsafe}-allocated slabs, so a map holding tens
+ * of millions of small entries adds only its bin table (one {@code long} per
+ * bin) to the GC's live set. Each record is laid out as
+ *
+ * <pre>
+ * | stamp (4) | hash (4) | next (8) | key (keySize) | value (valueSize) |
+ * </pre>
+ *
+ * <p>
+ * Hashing and the update protocol follow {@link ConcurrentHashMap8}: the key's
+ * {@code hashCode} goes through the same {@link #spread} function, empty bins
+ * are filled by CAS, non-empty bins are updated under a lock, and resizing is
+ * shared between threads with the same {@code sizeCtl}/{@code transferIndex}
+ * handshake, using a {@link #MOVED} marker in place of a
+ * {@code ForwardingNode}. Two things differ because there are no node objects:
+ * <ul>
+ * <li>Bins are locked through a fixed array of lock stripes rather than by
+ * synchronizing on the first node.</li>
+ * <li>Readers do not lock; they validate every record they read against its
+ * stamp (an even/odd sequence counter bumped by writers) and restart from the
+ * bin head when a record was rewritten or freed under them.</li>
+ * </ul>
+ * Bins are always plain lists; there is no tree-bin fallback, so keys with a
+ * poor {@code hashCode} degrade to linear probing of a chain.
+ *
+ * <p>
+ * Every read decodes a fresh value object, and {@code null} keys and values
+ * are not allowed. The map owns native memory: {@link #close()} releases it,
+ * after which any further use fails with {@link IllegalStateException}.
+ * {@code close} must not race with other operations on the map.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+public class OffHeapConcurrentHashMap<K, V> implements Closeable {
+
+    /* ---------------- Constants -------------- */
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private static final int MIN_TRANSFER_STRIDE = 16;
+
+    private static final int RESIZE_STAMP_BITS = 16;
+
+    private static final int MAX_RESIZERS = (1 << (32 - RESIZE_STAMP_BITS)) - 1;
+
+    private static final int RESIZE_STAMP_SHIFT = 32 - RESIZE_STAMP_BITS;
+
+    /** Bin value of a bin whose records have moved to the next table. */
+    static final long MOVED = -1L;
+
+    static final int HASH_BITS = 0x7fffffff; // usable bits of normal node hash
+
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /** Number of records per slab. */
+    static final int SLAB_RECORDS = 1 << 14;
+
+    /** Upper bound on the number of bin lock stripes. */
+    static final int MAX_LOCK_STRIPES = 1 << 12;
+
+    // record layout
+    static final int STAMP = 0;
+
+    static final int HASH = 4;
+
+    static final int NEXT = 8;
+
+    static final int KEY = 16;
+
+    /* ---------------- Fields -------------- */
+
+    final OffHeapCodec<K> keyCodec;
+
+    final OffHeapCodec<V> valueCodec;
+
+    final int keySize;
+
+    final int valueSize;
+
+    /** Offset of the value bytes within a record. */
+    final int valueOffset;
+
+    final Allocator allocator;
+
+    final Object[] locks;
+
+    /**
+     * Counts the additions whose CAS on {@link #baseCount} failed, playing the
+     * role of {@code ConcurrentHashMap8.counterCells}.
+     */
+    final LongAdder count = new LongAdder();
+
+    final ThreadLocal<Scratch> scratch;
+
+    transient volatile Table table;
+
+    private transient volatile Table nextTable;
+
+    /** Element count, updated by CAS while there is no contention. */
+    private transient volatile long baseCount;
+
+    private transient volatile int sizeCtl;
+
+    private transient volatile int transferIndex;
+
+    private volatile boolean closed;
+
+    /**
+     * A bin array and, once a resize has started, the table its bins are
+     * forwarded to. {@code next} plays the role of
+     * {@code ForwardingNode.nextTable}.
+     */
+    static final class Table {
+        final long[] bins;
+
+        volatile Table next;
+
+        Table(int n) {
+            bins = new long[n];
+        }
+    }
+
+    /**
+     * Per-thread heap buffers that keys and values are encoded into before they
+     * are compared with or copied to off-heap records, and decoded from after
+     * being copied back.
+     */
+    static final class Scratch {
+        final byte[] key;
+
+        final byte[] value;
+
+        final byte[] out;
+
+        final ByteBuffer keyBuf;
+
+        final ByteBuffer valueBuf;
+
+        final ByteBuffer outBuf;
+
+        Scratch(int keySize, int valueSize) {
+            keyBuf = ByteBuffer.wrap(key = new byte[keySize]);
+            valueBuf = ByteBuffer.wrap(value = new byte[valueSize]);
+            outBuf = ByteBuffer.wrap(out = new byte[Math.max(keySize, valueSize)]);
+        }
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * Creates a new, empty map with the default initial table size (16).
+     */
+    public OffHeapConcurrentHashMap(OffHeapCodec<K> keyCodec, OffHeapCodec<V> valueCodec) {
+        this(keyCodec, valueCodec, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new, empty map with an initial table size accommodating the
+     * specified number of elements without the need to dynamically resize.
+     *
+     * @throws IllegalArgumentException if the initial capacity is negative or
+     *             a codec reports a non-positive size
+     * @throws NullPointerException if a codec is null
+     */
+    public OffHeapConcurrentHashMap(OffHeapCodec<K> keyCodec, OffHeapCodec<V> valueCodec, int initialCapacity) {
+        if (keyCodec == null || valueCodec == null)
+            throw new NullPointerException();
+        if (initialCapacity < 0 || keyCodec.size() <= 0 || valueCodec.size() <= 0)
+            throw new IllegalArgumentException();
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        final int ks = this.keySize = keyCodec.size();
+        final int vs = this.valueSize = valueCodec.size();
+        this.valueOffset = KEY + ks;
+        this.allocator = new Allocator((KEY + ks + vs + 7) & ~7); // 8-byte aligned records
+        int stripes = tableSizeFor(NCPU << 4);
+        this.locks = new Object[stripes < MAX_LOCK_STRIPES ? stripes : MAX_LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new Object();
+        this.scratch = new ThreadLocal<Scratch>() {
+            protected Scratch initialValue() {
+                return new Scratch(ks, vs);
+            }
+        };
+        this.sizeCtl = ((initialCapacity >= (MAXIMUM_CAPACITY >>> 1)) ? MAXIMUM_CAPACITY
+                : tableSizeFor(initialCapacity + (initialCapacity >>> 1) + 1));
+    }
+
+    public int size() {
+        long n = sumCount();
+        return ((n < 0L) ? 0 : (n > (long) Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) n);
+    }
+
+    public boolean isEmpty() {
+        return sumCount() <= 0L;
+    }
+
+    /**
+     * Returns the number of bytes of native memory currently reserved by this
+     * map, including freed records kept for reuse.
+     */
+    public long offHeapBytes() {
+        return allocator.reservedBytes();
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or {@code null}
+     * if this map contains no mapping for the key.
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public V get(K key) {
+        ensureOpen();
+        Scratch s = scratch.get();
+        encodeKey(key, s);
+        int h = spread(key.hashCode());
+        outer: for (Table t = table;;) {
+            long[] tab;
+            int n, i, stamp;
+            long e;
+            if (t == null || (n = (tab = t.bins).length) == 0 || (e = tabAt(tab, i = (n - 1) & h)) == 0L)
+                return null;
+            if (e == MOVED) {
+                t = t.next;
+                continue;
+            }
+            // a record is only trusted once its stamp was read while it was
+            // still linked: the bin head, or a successor of a record whose
+            // stamp has not moved since (unlinking bumps the predecessor)
+            if (((stamp = U.getIntVolatile(null, e + STAMP)) & 1) != 0 || tabAt(tab, i) != e)
+                continue;
+            for (;;) {
+                long next = U.getLong(e + NEXT);
+                boolean match = U.getInt(e + HASH) == h && keyEquals(e, s.key);
+                if (match)
+                    U.copyMemory(null, e + valueOffset, s.out, BYTE_BASE, valueSize);
+                U.loadFence();
+                if (U.getInt(e + STAMP) != stamp)
+                    continue outer; // rewritten or freed while reading
+                if (match)
+                    return decode(valueCodec, valueSize, s);
+                if (next == 0L)
+                    return null;
+                int ns = U.getIntVolatile(null, next + STAMP);
+                if ((ns & 1) != 0 || U.getIntVolatile(null, e + STAMP) != stamp)
+                    continue outer;
+                e = next;
+                stamp = ns;
+            }
+        }
+    }
+
+    /**
+     * Tests if the specified object is a key in this map.
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps the specified key to the specified value in this map.
+     *
+     * @return the previous value associated with {@code key}, or {@code null}
+     *         if there was no mapping for {@code key}
+     * @throws NullPointerException if the specified key or value is null
+     * @throws IllegalArgumentException if a codec writes the wrong number of
+     *             bytes
+     */
+    public V put(K key, V value) {
+        return putVal(key, value, false);
+    }
+
+    /**
+     * If the specified key is not already associated with a value, associates
+     * it with the given value.
+     *
+     * @return the previous value associated with the specified key, or
+     *         {@code null} if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true);
+    }
+
+    final V putVal(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        ensureOpen();
+        Scratch s = scratch.get();
+        encodeKey(key, s);
+        s.valueBuf.clear();
+        valueCodec.encode(value, s.valueBuf);
+        if (s.valueBuf.position() != valueSize)
+            throw new IllegalArgumentException("value codec wrote " + s.valueBuf.position() + " bytes");
+        int hash = spread(key.hashCode());
+        int binCount = 0;
+        for (Table t = table;;) {
+            long[] tab;
+            long f;
+            int n, i;
+            if (t == null || (n = (tab = t.bins).length) == 0)
+                t = initTable();
+            else if ((f = tabAt(tab, i = (n - 1) & hash)) == 0L) {
+                long r = newRecord(hash, s);
+                if (casTabAt(tab, i, 0L, r))
+                    break; // no lock when adding to empty bin
+                allocator.release(r); // never published
+            } else if (f == MOVED)
+                t = helpTransfer(t);
+            else {
+                boolean found = false, moved = false;
+                synchronized (lockFor(i)) {
+                    if ((f = tabAt(tab, i)) == MOVED)
+                        moved = true;
+                    else if (f != 0L) {
+                        binCount = 1;
+                        for (long e = f;; ++binCount) {
+                            if (U.getInt(e + HASH) == hash && keyEquals(e, s.key)) {
+                                found = true;
+                                U.copyMemory(null, e + valueOffset, s.out, BYTE_BASE, valueSize);
+                                if (!onlyIfAbsent)
+                                    writeValue(e, s.value);
+                                break;
+                            }
+                            long next;
+                            if ((next = U.getLong(e + NEXT)) == 0L) {
+                                U.putLongVolatile(null, e + NEXT, newRecord(hash, s));
+                                break;
+                            }
+                            e = next;
+                        }
+                    }
+                }
+                if (found)
+                    return decode(valueCodec, valueSize, s);
+                if (moved)
+                    t = helpTransfer(t);
+                else if (binCount != 0)
+                    break;
+                // else the bin emptied before we locked it; retry
+            }
+        }
+        addCount(1L, binCount);
+        return null;
+    }
+
+    /**
+     * Removes the key (and its corresponding value) from this map.
+     *
+     * @return the previous value associated with {@code key}, or {@code null}
+     *         if there was no mapping for {@code key}
+     * @throws NullPointerException if the specified key is null
+     */
+    public V remove(K key) {
+        ensureOpen();
+        Scratch s = scratch.get();
+        encodeKey(key, s);
+        int hash = spread(key.hashCode());
+        for (Table t = table;;) {
+            long[] tab;
+            long f;
+            int n, i;
+            if (t == null || (n = (tab = t.bins).length) == 0 || (f = tabAt(tab, i = (n - 1) & hash)) == 0L)
+                return null;
+            else if (f == MOVED)
+                t = helpTransfer(t);
+            else {
+                boolean found = false, moved = false;
+                synchronized (lockFor(i)) {
+                    if ((f = tabAt(tab, i)) == MOVED)
+                        moved = true;
+                    else {
+                        for (long e = f, pred = 0L; e != 0L;) {
+                            long next = U.getLong(e + NEXT);
+                            if (U.getInt(e + HASH) == hash && keyEquals(e, s.key)) {
+                                found = true;
+                                U.copyMemory(null, e + valueOffset, s.out, BYTE_BASE, valueSize);
+                                if (pred != 0L)
+                                    unlinkNext(pred, next);
+                                else
+                                    setTabAt(tab, i, next);
+                                retire(e);
+                                break;
+                            }
+                            pred = e;
+                            e = next;
+                        }
+                    }
+                }
+                if (found) {
+                    addCount(-1L, -1);
+                    return decode(valueCodec, valueSize, s);
+                }
+                if (!moved)
+                    return null;
+                t = helpTransfer(t);
+            }
+        }
+    }
+
+    /**
+     * Removes all of the mappings from this map. The records are kept for
+     * reuse; use {@link #close()} to give the memory back.
+     */
+    public void clear() {
+        ensureOpen();
+        long delta = 0L; // negative number of deletions
+        int i = 0;
+        Table t = table;
+        while (t != null && i < t.bins.length) {
+            long[] tab = t.bins;
+            long f = tabAt(tab, i);
+            if (f == 0L)
+                ++i;
+            else if (f == MOVED) {
+                t = helpTransfer(t);
+                i = 0; // restart
+            } else {
+                synchronized (lockFor(i)) {
+                    if ((f = tabAt(tab, i)) != MOVED) {
+                        setTabAt(tab, i++, 0L);
+                        for (long e = f, next; e != 0L; e = next) {
+                            next = U.getLong(e + NEXT);
+                            retire(e);
+                            --delta;
+                        }
+                    }
+                }
+            }
+        }
+        if (delta != 0L)
+            addCount(delta, -1);
+    }
+
+    /**
+     * Performs the given action for each entry. Each bin is decoded under its
+     * lock and the action is run after the lock is released; entries added or
+     * removed concurrently may or may not be seen.
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        ensureOpen();
+        Table t = table;
+        if (t != null) {
+            ArrayList<Object> pairs = new ArrayList<Object>();
+            for (int i = 0, n = t.bins.length; i < n; ++i)
+                forEachInBin(t, i, action, pairs);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void forEachInBin(Table t, int i, BiConsumer<? super K, ? super V> action, ArrayList<Object> pairs) {
+        long[] tab = t.bins;
+        boolean moved = false;
+        Scratch s = scratch.get();
+        synchronized (lockFor(i)) {
+            long f = tabAt(tab, i);
+            if (f == MOVED)
+                moved = true;
+            else {
+                for (long e = f; e != 0L; e = U.getLong(e + NEXT)) {
+                    U.copyMemory(null, e + KEY, s.out, BYTE_BASE, keySize);
+                    pairs.add(decode(keyCodec, keySize, s));
+                    U.copyMemory(null, e + valueOffset, s.out, BYTE_BASE, valueSize);
+                    pairs.add(decode(valueCodec, valueSize, s));
+                }
+            }
+        }
+        if (moved) {
+            // a bin i of a table of length n maps to bins i, i + n, ... of the
+            // next one, as in ConcurrentHashMap8.Traverser
+            Table nt = t.next;
+            for (int j = i, n = tab.length, m = nt.bins.length; j < m; j += n)
+                forEachInBin(nt, j, action, pairs);
+            return;
+        }
+        for (int k = 0; k < pairs.size(); k += 2)
+            action.accept((K) pairs.get(k), (V) pairs.get(k + 1));
+        pairs.clear();
+    }
+
+    /**
+     * Releases all native memory held by this map. Subsequent operations throw
+     * {@link IllegalStateException}; closing twice has no effect.
+     */
+    public void close() {
+        if (!closed) {
+            closed = true;
+            table = null;
+            nextTable = null;
+            allocator.releaseAll();
+        }
+    }
+
+    /* ---------------- Records -------------- */
+
+    private void ensureOpen() {
+        if (closed)
+            throw new IllegalStateException("map is closed");
+    }
+
+    private Object lockFor(int i) {
+        return locks[i & (locks.length - 1)];
+    }
+
+    private void encodeKey(K key, Scratch s) {
+        s.keyBuf.clear();
+        keyCodec.encode(key, s.keyBuf);
+        if (s.keyBuf.position() != keySize)
+            throw new IllegalArgumentException("key codec wrote " + s.keyBuf.position() + " bytes");
+    }
+
+    private static <T> T decode(OffHeapCodec<T> codec, int size, Scratch s) {
+        s.outBuf.clear();
+        s.outBuf.limit(size);
+        return codec.decode(s.outBuf);
+    }
+
+    /**
+     * Compares the key bytes of record {@code e} with {@code k}, eight bytes
+     * at a time.
+     */
+    private boolean keyEquals(long e, byte[] k) {
+        long a = e + KEY;
+        int i = 0, n = keySize;
+        for (; i + 8 <= n; i += 8) {
+            if (U.getLong(a + i) != U.getLong(k, BYTE_BASE + i))
+                return false;
+        }
+        for (; i < n; ++i) {
+            if (U.getByte(a + i) != k[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Allocates a record holding the scratch key and value. The record is
+     * fully written (and its stamp even) before it is returned, so publishing
+     * its address with a volatile write makes it safe for readers.
+     */
+    private long newRecord(int hash, Scratch s) {
+        long r = allocator.allocate();
+        int stamp = U.getInt(r + STAMP);
+        U.putInt(r + STAMP, stamp + 1);
+        U.storeFence();
+        U.putInt(r + HASH, hash);
+        U.putLong(r + NEXT, 0L);
+        U.copyMemory(s.key, BYTE_BASE, null, r + KEY, keySize);
+        U.copyMemory(s.value, BYTE_BASE, null, r + valueOffset, valueSize);
+        U.putIntVolatile(null, r + STAMP, stamp + 2);
+        return r;
+    }
+
+    /**
+     * Overwrites the value of a published record; caller holds the bin lock.
+     */
+    private void writeValue(long e, byte[] value) {
+        int stamp = U.getInt(e + STAMP);
+        U.putInt(e + STAMP, stamp + 1);
+        U.storeFence();
+        U.copyMemory(value, BYTE_BASE, null, e + valueOffset, valueSize);
+        U.putIntVolatile(null, e + STAMP, stamp + 2);
+    }
+
+    /**
+     * Points {@code pred} past its removed successor. The write is stamped so
+     * that a reader about to step from {@code pred} onto the removed record
+     * notices and restarts; caller holds the bin lock.
+     */
+    private void unlinkNext(long pred, long next) {
+        int stamp = U.getInt(pred + STAMP);
+        U.putInt(pred + STAMP, stamp + 1);
+        U.storeFence();
+        U.putLong(pred + NEXT, next);
+        U.putIntVolatile(null, pred + STAMP, stamp + 2);
+    }
+
+    /**
+     * Frees an unlinked record. Bumping the stamp makes readers that are still
+     * looking at it restart; caller holds the bin lock.
+     */
+    private void retire(long e) {
+        U.putIntVolatile(null, e + STAMP, U.getInt(e + STAMP) + 2);
+        allocator.release(e);
+    }
+
+    /**
+     * Hands out fixed-size records from native slabs, reusing released ones
+     * first. Slabs are only returned to the OS by {@link #releaseAll}, so a
+     * stale record address always points at readable memory.
+     *
+     * <p>
+     * Nothing on the common path takes a shared lock. Released records go to
+     * one of several free lists picked by the calling thread's identity, so
+     * threads mostly lock a list of their own, and fresh records are carved
+     * from the newest slab by a CAS on its cursor. Only starting a new slab,
+     * once every {@link #SLAB_RECORDS} records, synchronizes on the allocator;
+     * before doing so it looks through the other threads' lists, so records
+     * freed by one thread and needed by another are still reused.
+     */
+    static final class Allocator {
+        final int recordSize;
+
+        final FreeList[] freeLists;
+
+        /** Slab records are currently bumped from; replaced under the allocator lock. */
+        volatile Slab current = new Slab(0L, 0L);
+
+        long[] slabs = new long[8]; // guarded by this
+
+        int slabCount; // guarded by this
+
+        Allocator(int recordSize) {
+            this.recordSize = recordSize;
+            int n = tableSizeFor(NCPU << 1);
+            this.freeLists = new FreeList[n < MAX_LOCK_STRIPES ? n : MAX_LOCK_STRIPES];
+            for (int i = 0; i < freeLists.length; i++)
+                freeLists[i] = new FreeList();
+        }
+
+        long allocate() {
+            FreeList own = freeList();
+            long r = own.poll();
+            if (r != 0L)
+                return r;
+            for (Slab s = current;;) {
+                long c = s.cursor;
+                if (c + recordSize <= s.limit) {
+                    if (U.compareAndSwapLong(s, CURSOR, c, c + recordSize))
+                        return c;
+                } else {
+                    for (FreeList l : freeLists) {
+                        if (l != own && (r = l.poll()) != 0L)
+                            return r;
+                    }
+                    s = nextSlab(s);
+                }
+            }
+        }
+
+        void release(long r) {
+            freeList().push(r);
+        }
+
+        private FreeList freeList() {
+            return freeLists[spread(System.identityHashCode(Thread.currentThread())) & (freeLists.length - 1)];
+        }
+
+        /**
+         * Replaces the used-up slab {@code s}, unless another thread already
+         * has, and returns the slab to bump from.
+         */
+        private synchronized Slab nextSlab(Slab s) {
+            Slab cur = current;
+            if (cur != s)
+                return cur;
+            long bytes = (long) recordSize * SLAB_RECORDS;
+            long slab = U.allocateMemory(bytes);
+            U.setMemory(slab, bytes, (byte) 0); // stamps start at 0
+            if (slabCount == slabs.length)
+                slabs = java.util.Arrays.copyOf(slabs, slabCount << 1);
+            slabs[slabCount++] = slab;
+            return current = new Slab(slab, slab + bytes);
+        }
+
+        synchronized long reservedBytes() {
+            return (long) slabCount * recordSize * SLAB_RECORDS;
+        }
+
+        synchronized void releaseAll() {
+            for (int i = 0; i < slabCount; i++)
+                U.freeMemory(slabs[i]);
+            slabCount = 0;
+            for (FreeList l : freeLists)
+                l.clear();
+            current = new Slab(0L, 0L);
+        }
+    }
+
+    /**
+     * The bump-pointer region of one slab. {@code cursor} only moves forward,
+     * by CAS, until it reaches {@code limit}.
+     */
+    static final class Slab {
+        final long limit;
+
+        volatile long cursor;
+
+        Slab(long base, long limit) {
+            this.cursor = base;
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * A stack of released record addresses. The lock is held only for a push
+     * or pop, and is normally only taken by the threads that hash to it.
+     */
+    static final class FreeList {
+        long[] free = new long[64];
+
+        int freeCount;
+
+        synchronized long poll() {
+            return (freeCount > 0) ? free[--freeCount] : 0L;
+        }
+
+        synchronized void push(long r) {
+            if (freeCount == free.length)
+                free = java.util.Arrays.copyOf(free, freeCount << 1);
+            free[freeCount++] = r;
+        }
+
+        synchronized void clear() {
+            freeCount = 0;
+        }
+    }
+
+    /* ---------------- Static utilities -------------- */
+
+    /**
+     * Same as {@code ConcurrentHashMap8.spread}.
+     */
+    static final int spread(int h) {
+        return (h ^ (h >>> 16)) & HASH_BITS;
+    }
+
+    private static final int tableSizeFor(int c) {
+        int n = c - 1;
+        n |= n >>> 1;
+        n |= n >>> 2;
+        n |= n >>> 4;
+        n |= n >>> 8;
+        n |= n >>> 16;
+        return (n < 0) ? 1 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    static final long tabAt(long[] tab, int i) {
+        return U.getLongVolatile(tab, ((long) i << 3) + LBASE);
+    }
+
+    static final boolean casTabAt(long[] tab, int i, long c, long v) {
+        return U.compareAndSwapLong(tab, ((long) i << 3) + LBASE, c, v);
+    }
+
+    static final void setTabAt(long[] tab, int i, long v) {
+        U.putLongVolatile(tab, ((long) i << 3) + LBASE, v);
+    }
+
+    /* ---------------- Table Initialization and Resizing -------------- */
+
+    static final int resizeStamp(int n) {
+        return Integer.numberOfLeadingZeros(n) | (1 << (RESIZE_STAMP_BITS - 1));
+    }
+
+    private final Table initTable() {
+        Table t;
+        int sc;
+        while ((t = table) == null) {
+            ensureOpen();
+            if ((sc = sizeCtl) < 0)
+                Thread.yield(); // lost initialization race; just spin
+            else if (U.compareAndSwapInt(this, SIZECTL, sc, -1)) {
+                try {
+                    if ((t = table) == null) {
+                        int n = (sc > 0) ? sc : DEFAULT_CAPACITY;
+                        table = t = new Table(n);
+                        sc = n - (n >>> 2);
+                    }
+                } finally {
+                    sizeCtl = sc;
+                }
+                break;
+            }
+        }
+        return t;
+    }
+
+    final long sumCount() {
+        return baseCount + count.sum();
+    }
+
+    /**
+     * Adds to count, and if table is too small and not already resizing,
+     * initiates transfer. As in {@code ConcurrentHashMap8.addCount}, the
+     * threshold is checked after every insertion ({@code check >= 0}), and the
+     * count is updated by a CAS on {@link #baseCount}. Only when that CAS fails
+     * does the addition go to the {@link LongAdder}, and the threshold check is
+     * then skipped unless {@code check > 1}, leaving it to an uncontended
+     * insertion or to one into a crowded bin.
+     */
+    private final void addCount(long x, int check) {
+        long b, s;
+        if (!U.compareAndSwapLong(this, BASECOUNT, b = baseCount, s = b + x)) {
+            count.add(x);
+            if (check <= 1)
+                return;
+            s = sumCount();
+        } else
+            s += count.sum();
+        if (check >= 0) {
+            Table t, nt;
+            int n, sc;
+            while (s >= (long) (sc = sizeCtl) && (t = table) != null && (n = t.bins.length) < MAXIMUM_CAPACITY) {
+                int rs = resizeStamp(n);
+                if (sc < 0) {
+                    if ((sc >>> RESIZE_STAMP_SHIFT) != rs || sc == rs + 1 || sc == rs + MAX_RESIZERS
+                            || (nt = nextTable) == null || transferIndex <= 0)
+                        break;
+                    if (U.compareAndSwapInt(this, SIZECTL, sc, sc + 1))
+                        transfer(t, nt);
+                } else if (U.compareAndSwapInt(this, SIZECTL, sc, (rs << RESIZE_STAMP_SHIFT) + 2))
+                    transfer(t, null);
+                s = sumCount();
+            }
+        }
+    }
+
+    /**
+     * Helps transfer if a resize is in progress; returns the table to retry
+     * against.
+     */
+    final Table helpTransfer(Table t) {
+        Table nextTab;
+        int sc;
+        if (t != null && (nextTab = t.next) != null) {
+            int rs = resizeStamp(t.bins.length);
+            while (nextTab == nextTable && table == t && (sc = sizeCtl) < 0) {
+                if ((sc >>> RESIZE_STAMP_SHIFT) != rs || sc == rs + 1 || sc == rs + MAX_RESIZERS || transferIndex <= 0)
+                    break;
+                if (U.compareAndSwapInt(this, SIZECTL, sc, sc + 1)) {
+                    transfer(t, nextTab);
+                    break;
+                }
+            }
+            return nextTab;
+        }
+        return table;
+    }
+
+    /**
+     * Copies the records of each bin into a table twice the size, with the
+     * same work splitting as {@code ConcurrentHashMap8.transfer}. Records are
+     * copied rather than relinked so that readers still walking an old chain
+     * never see it change; the old records are freed once the bin is marked
+     * {@link #MOVED}.
+     */
+    private final void transfer(Table t, Table nextTab) {
+        long[] tab = t.bins;
+        int n = tab.length, stride;
+        if ((stride = (NCPU > 1) ? (n >>> 3) / NCPU : n) < MIN_TRANSFER_STRIDE)
+            stride = MIN_TRANSFER_STRIDE; // subdivide range
+        if (nextTab == null) { // initiating
+            try {
+                nextTab = new Table(n << 1);
+            } catch (Throwable ex) { // try to cope with OOME
+                sizeCtl = Integer.MAX_VALUE;
+                return;
+            }
+            t.next = nextTab;
+            nextTable = nextTab;
+            transferIndex = n;
+        }
+        long[] nt = nextTab.bins;
+        int nextn = nt.length;
+        boolean advance = true;
+        boolean finishing = false; // to ensure sweep before committing nextTab
+        for (int i = 0, bound = 0;;) {
+            long f;
+            while (advance) {
+                int nextIndex, nextBound;
+                if (--i >= bound || finishing)
+                    advance = false;
+                else if ((nextIndex = transferIndex) <= 0) {
+                    i = -1;
+                    advance = false;
+                } else if (U.compareAndSwapInt(this, TRANSFERINDEX, nextIndex,
+                        nextBound = (nextIndex > stride ? nextIndex - stride : 0))) {
+                    bound = nextBound;
+                    i = nextIndex - 1;
+                    advance = false;
+                }
+            }
+            if (i < 0 || i >= n || i + n >= nextn) {
+                int sc;
+                if (finishing) {
+                    nextTable = null;
+                    table = nextTab;
+                    sizeCtl = (n << 1) - (n >>> 1);
+                    return;
+                }
+                if (U.compareAndSwapInt(this, SIZECTL, sc = sizeCtl, sc - 1)) {
+                    if ((sc - 2) != resizeStamp(n) << RESIZE_STAMP_SHIFT)
+                        return;
+                    finishing = advance = true;
+                    i = n; // recheck before commit
+                }
+            } else if ((f = tabAt(tab, i)) == 0L)
+                advance = casTabAt(tab, i, 0L, MOVED);
+            else if (f == MOVED)
+                advance = true; // already processed
+            else {
+                synchronized (lockFor(i)) {
+                    if ((f = tabAt(tab, i)) != MOVED) {
+                        long ln = 0L, hn = 0L;
+                        for (long e = f; e != 0L; e = U.getLong(e + NEXT)) {
+                            int h = U.getInt(e + HASH);
+                            long r = allocator.allocate();
+                            int stamp = U.getInt(r + STAMP);
+                            U.putInt(r + STAMP, stamp + 1);
+                            U.storeFence();
+                            U.copyMemory(e + HASH, r + HASH, allocator.recordSize - HASH);
+                            if ((h & n) == 0) {
+                                U.putLong(r + NEXT, ln);
+                                ln = r;
+                            } else {
+                                U.putLong(r + NEXT, hn);
+                                hn = r;
+                            }
+                            U.putIntVolatile(null, r + STAMP, stamp + 2);
+                        }
+                        setTabAt(nt, i, ln);
+                        setTabAt(nt, i + n, hn);
+                        setTabAt(tab, i, MOVED);
+                        for (long e = f, next; e != 0L; e = next) {
+                            next = U.getLong(e + NEXT);
+                            retire(e);
+                        }
+                    }
+                    advance = true;
+                }
+            }
+        }
+    }
+
+    // Unsafe mechanics
+    private static final sun.misc.Unsafe U;
+
+    private static final long SIZECTL;
+
+    private static final long BASECOUNT;
+
+    private static final long TRANSFERINDEX;
+
+    private static final long LBASE;
+
+    private static final long BYTE_BASE;
+
+    private static final long CURSOR;
+
+    static {
+        try {
+            U = sun.misc.Unsafe.getUnsafe();
+            Class<?> k = OffHeapConcurrentHashMap.class;
+            SIZECTL = U.objectFieldOffset(k.getDeclaredField("sizeCtl"));
+            BASECOUNT = U.objectFieldOffset(k.getDeclaredField("baseCount"));
+            TRANSFERINDEX = U.objectFieldOffset(k.getDeclaredField("transferIndex"));
+            LBASE = U.arrayBaseOffset(long[].class);
+            if (U.arrayIndexScale(long[].class) != 8)
+                throw new Error("unexpected long[] scale");
+            BYTE_BASE = U.arrayBaseOffset(byte[].class);
+            CURSOR = U.objectFieldOffset(Slab.class.getDeclaredField("cursor"));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
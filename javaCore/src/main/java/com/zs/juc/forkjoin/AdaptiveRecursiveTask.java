@@ -0,0 +1,466 @@
+package com.zs.juc.forkjoin;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongToDoubleFunction;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@link RecursiveTask} that decides by itself when to stop splitting, so
+ * that a divide-and-conquer computation needs no per-job threshold.
+ *
+ * <p>
+ * A fixed threshold is either too small, creating millions of tasks whose
+ * bookkeeping costs more than their work, or too large, leaving workers idle.
+ * Instead, {@link #compute} keeps splitting off and forking the upper part of
+ * its work only while the current worker has few queued tasks that no other
+ * worker has taken, as told by {@link #getSurplusQueuedTaskCount()}: when
+ * other workers are idle they steal the forked parts at once and the surplus
+ * stays low, so splitting goes on; when everybody is busy the surplus grows
+ * and the task computes the rest directly. This is the heuristic described in
+ * the documentation of {@code getSurplusQueuedTaskCount}, with the usual
+ * surplus of 3. The forked parts are joined in order, so {@link #combine} may
+ * be order-sensitive.
+ *
+ * <p>
+ * Subclasses implement {@link #split}, {@link #computeDirectly} and
+ * {@link #combine}. The static factories cover the common cases: reductions
+ * over a range of {@code long} indices, an array or a list, into a
+ * {@code long}, a {@code double} or any type. The {@code long} and
+ * {@code double} reductions ({@link LongRangeTask}, {@link DoubleRangeTask})
+ * keep every partial result in a primitive field, so only the result of the
+ * root task is boxed, and not even that one when it is read through
+ * {@link LongRangeTask#longResult} or {@link DoubleRangeTask#doubleResult}.
+ *
+ * <pre>
+ * long sum = pool.invoke(AdaptiveRecursiveTask.rangeToLong(1, n + 1, identity(), 0L, Long::sum));
+ * double total = pool.invoke(AdaptiveRecursiveTask.listToDouble(orders, Order::amount, 0.0, Double::sum));
+ * </pre>
+ *
+ * 自适应拆分的RecursiveTask：根据当前线程队列中未被窃取的任务数决定是否继续拆分，无需为每个任务手工调整阈值。
+ *
+ * @param <R> the type of the result
+ */
+public abstract class AdaptiveRecursiveTask<R> extends RecursiveTask<R> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Default surplus of queued tasks above which splitting stops. */
+    public static final int DEFAULT_SURPLUS = 3;
+
+    private final int surplus;
+
+    /** Next forked sibling, to the right of this one; set by the forking task. */
+    private AdaptiveRecursiveTask<R> nextForked;
+
+    protected AdaptiveRecursiveTask() {
+        this(DEFAULT_SURPLUS);
+    }
+
+    /**
+     * @param surplus the number of queued tasks not yet stolen above which
+     *            the task stops splitting; subtasks should be given the same
+     */
+    protected AdaptiveRecursiveTask(int surplus) {
+        if (surplus < 0)
+            throw new IllegalArgumentException();
+        this.surplus = surplus;
+    }
+
+    /** Returns the surplus this task was created with. */
+    protected final int getSurplus() {
+        return surplus;
+    }
+
+    /**
+     * Moves the upper part of the work of this task to a new task, keeping the
+     * lower part, and returns the new task; or returns null if the work cannot
+     * be split any more.
+     */
+    protected abstract AdaptiveRecursiveTask<R> split();
+
+    /** Computes the remaining work of this task sequentially. */
+    protected abstract R computeDirectly();
+
+    /**
+     * Combines the results of two adjacent parts, {@code left} covering the
+     * lower one.
+     */
+    protected abstract R combine(R left, R right);
+
+    @Override
+    protected final R compute() {
+        return computeParts();
+    }
+
+    /**
+     * Splits, computes and combines; overridden by the primitive reductions,
+     * which combine primitive fields instead of results.
+     */
+    R computeParts() {
+        AdaptiveRecursiveTask<R> t = forkParts();
+        R result = computeDirectly();
+        for (; t != null; t = nextPart(t))
+            result = combine(result, t.join()); // runs it here unless stolen
+        return result;
+    }
+
+    /**
+     * Splits off and forks upper parts for as long as that pays off, and
+     * returns the nearest one; the others follow through {@link #nextPart}.
+     */
+    final AdaptiveRecursiveTask<R> forkParts() {
+        AdaptiveRecursiveTask<R> forked = null, t;
+        while (getSurplusQueuedTaskCount() <= surplus && (t = split()) != null) {
+            t.nextForked = forked; // nearest upper part first
+            forked = t;
+            t.fork();
+        }
+        return forked;
+    }
+
+    /** Returns the part forked just above the joined part t, unlinking t. */
+    static <R> AdaptiveRecursiveTask<R> nextPart(AdaptiveRecursiveTask<R> t) {
+        AdaptiveRecursiveTask<R> next = t.nextForked;
+        t.nextForked = null;
+        return next;
+    }
+
+    // ------------------------------------------------------------ factories
+
+    /**
+     * Returns a task reducing {@code mapper(i)} for {@code from <= i < to}
+     * with {@code reducer}, an associative function of which
+     * {@code identity} is the identity.
+     */
+    public static LongRangeTask rangeToLong(long from, long to, LongUnaryOperator mapper, long identity,
+            LongBinaryOperator reducer) {
+        if (mapper == null || reducer == null)
+            throw new NullPointerException();
+        return new LongRangeTask(from, Math.max(from, to), mapper, identity, reducer, DEFAULT_SURPLUS, true);
+    }
+
+    /**
+     * Returns a task reducing {@code mapper(i)} for {@code from <= i < to}
+     * with {@code reducer}, see {@link #rangeToLong}.
+     */
+    public static DoubleRangeTask rangeToDouble(long from, long to, LongToDoubleFunction mapper, double identity,
+            DoubleBinaryOperator reducer) {
+        if (mapper == null || reducer == null)
+            throw new NullPointerException();
+        return new DoubleRangeTask(from, Math.max(from, to), mapper, identity, reducer, DEFAULT_SURPLUS, true);
+    }
+
+    /** Returns a task reducing the elements of the array. */
+    public static LongRangeTask arrayToLong(final long[] array, long identity, LongBinaryOperator reducer) {
+        if (array == null)
+            throw new NullPointerException();
+        return rangeToLong(0, array.length, new LongUnaryOperator() {
+            public long applyAsLong(long i) {
+                return array[(int) i];
+            }
+        }, identity, reducer);
+    }
+
+    /** Returns a task reducing the elements of the array. */
+    public static DoubleRangeTask arrayToDouble(final double[] array, double identity, DoubleBinaryOperator reducer) {
+        if (array == null)
+            throw new NullPointerException();
+        return rangeToDouble(0, array.length, new LongToDoubleFunction() {
+            public double applyAsDouble(long i) {
+                return array[(int) i];
+            }
+        }, identity, reducer);
+    }
+
+    /** Returns a task reducing {@code mapper} applied to the elements of the array. */
+    public static <T> LongRangeTask arrayToLong(final T[] array, final ToLongFunction<? super T> mapper,
+            long identity, LongBinaryOperator reducer) {
+        if (array == null || mapper == null)
+            throw new NullPointerException();
+        return rangeToLong(0, array.length, new LongUnaryOperator() {
+            public long applyAsLong(long i) {
+                return mapper.applyAsLong(array[(int) i]);
+            }
+        }, identity, reducer);
+    }
+
+    /** Returns a task reducing {@code mapper} applied to the elements of the array. */
+    public static <T> DoubleRangeTask arrayToDouble(final T[] array,
+            final ToDoubleFunction<? super T> mapper, double identity, DoubleBinaryOperator reducer) {
+        if (array == null || mapper == null)
+            throw new NullPointerException();
+        return rangeToDouble(0, array.length, new LongToDoubleFunction() {
+            public double applyAsDouble(long i) {
+                return mapper.applyAsDouble(array[(int) i]);
+            }
+        }, identity, reducer);
+    }
+
+    /**
+     * Returns a task reducing {@code mapper} applied to the elements of the
+     * list. A list without {@link RandomAccess} is copied to an array first.
+     */
+    public static <T> LongRangeTask listToLong(List<? extends T> list,
+            final ToLongFunction<? super T> mapper, long identity, LongBinaryOperator reducer) {
+        if (mapper == null)
+            throw new NullPointerException();
+        final List<? extends T> l = randomAccess(list);
+        return rangeToLong(0, l.size(), new LongUnaryOperator() {
+            public long applyAsLong(long i) {
+                return mapper.applyAsLong(l.get((int) i));
+            }
+        }, identity, reducer);
+    }
+
+    /**
+     * Returns a task reducing {@code mapper} applied to the elements of the
+     * list, see {@link #listToLong}.
+     */
+    public static <T> DoubleRangeTask listToDouble(List<? extends T> list,
+            final ToDoubleFunction<? super T> mapper, double identity, DoubleBinaryOperator reducer) {
+        if (mapper == null)
+            throw new NullPointerException();
+        final List<? extends T> l = randomAccess(list);
+        return rangeToDouble(0, l.size(), new LongToDoubleFunction() {
+            public double applyAsDouble(long i) {
+                return mapper.applyAsDouble(l.get((int) i));
+            }
+        }, identity, reducer);
+    }
+
+    /**
+     * Returns a task folding the elements of the list: each part starts from
+     * {@code identity} and folds its elements in with {@code accumulator}, and
+     * the results of adjacent parts are merged with {@code combiner}, as in
+     * {@link java.util.stream.Stream#reduce(Object, BiFunction, BinaryOperator)}.
+     */
+    public static <T, R> AdaptiveRecursiveTask<R> reduce(List<? extends T> list, R identity,
+            BiFunction<R, ? super T, R> accumulator, BinaryOperator<R> combiner) {
+        if (accumulator == null || combiner == null)
+            throw new NullPointerException();
+        List<? extends T> l = randomAccess(list);
+        return new ListTask<T, R>(l, 0, l.size(), identity, accumulator, combiner, DEFAULT_SURPLUS);
+    }
+
+    private static <T> List<? extends T> randomAccess(List<? extends T> list) {
+        if (list instanceof RandomAccess)
+            return list;
+        @SuppressWarnings("unchecked")
+        List<? extends T> copy = (List<? extends T>) Arrays.asList(list.toArray());
+        return copy;
+    }
+
+    /**
+     * A reduction of a range of {@code long} indices to a {@code long},
+     * returned by {@link #rangeToLong} and the other {@code ...ToLong}
+     * factories. Parts combine their {@code long} results directly; only the
+     * task the factory returned boxes its result for {@link #join} and
+     * {@link #invoke}.
+     */
+    public static final class LongRangeTask extends AdaptiveRecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        final LongUnaryOperator mapper;
+
+        final LongBinaryOperator reducer;
+
+        final long identity;
+
+        final long lo;
+
+        long hi;
+
+        /** Whether this is the task the factory returned, rather than a part of it. */
+        final boolean root;
+
+        long result;
+
+        LongRangeTask(long lo, long hi, LongUnaryOperator mapper, long identity, LongBinaryOperator reducer,
+                int surplus, boolean root) {
+            super(surplus);
+            this.lo = lo;
+            this.hi = hi;
+            this.mapper = mapper;
+            this.identity = identity;
+            this.reducer = reducer;
+            this.root = root;
+        }
+
+        /**
+         * Returns the result of this task without boxing it. Only meaningful
+         * once the task has completed normally.
+         */
+        public long longResult() {
+            return result;
+        }
+
+        protected LongRangeTask split() {
+            if (hi - lo < 2)
+                return null;
+            long mid = lo + ((hi - lo) >>> 1);
+            LongRangeTask upper = new LongRangeTask(mid, hi, mapper, identity, reducer, getSurplus(), false);
+            hi = mid;
+            return upper;
+        }
+
+        Long computeParts() {
+            AdaptiveRecursiveTask<Long> t = forkParts();
+            long r = reduceRange();
+            for (; t != null; t = nextPart(t)) {
+                t.join(); // null unless root
+                r = reducer.applyAsLong(r, ((LongRangeTask) t).result);
+            }
+            result = r;
+            return root ? Long.valueOf(r) : null;
+        }
+
+        private long reduceRange() {
+            long r = identity;
+            for (long i = lo; i < hi; i++)
+                r = reducer.applyAsLong(r, mapper.applyAsLong(i));
+            return r;
+        }
+
+        protected Long computeDirectly() {
+            return reduceRange();
+        }
+
+        protected Long combine(Long left, Long right) {
+            return reducer.applyAsLong(left, right);
+        }
+    }
+
+    /**
+     * A reduction of a range of {@code long} indices to a {@code double},
+     * returned by {@link #rangeToDouble} and the other {@code ...ToDouble}
+     * factories; see {@link LongRangeTask}.
+     */
+    public static final class DoubleRangeTask extends AdaptiveRecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        final LongToDoubleFunction mapper;
+
+        final DoubleBinaryOperator reducer;
+
+        final double identity;
+
+        final long lo;
+
+        long hi;
+
+        /** Whether this is the task the factory returned, rather than a part of it. */
+        final boolean root;
+
+        double result;
+
+        DoubleRangeTask(long lo, long hi, LongToDoubleFunction mapper, double identity,
+                DoubleBinaryOperator reducer, int surplus, boolean root) {
+            super(surplus);
+            this.lo = lo;
+            this.hi = hi;
+            this.mapper = mapper;
+            this.identity = identity;
+            this.reducer = reducer;
+            this.root = root;
+        }
+
+        /**
+         * Returns the result of this task without boxing it. Only meaningful
+         * once the task has completed normally.
+         */
+        public double doubleResult() {
+            return result;
+        }
+
+        protected DoubleRangeTask split() {
+            if (hi - lo < 2)
+                return null;
+            long mid = lo + ((hi - lo) >>> 1);
+            DoubleRangeTask upper = new DoubleRangeTask(mid, hi, mapper, identity, reducer, getSurplus(), false);
+            hi = mid;
+            return upper;
+        }
+
+        Double computeParts() {
+            AdaptiveRecursiveTask<Double> t = forkParts();
+            double r = reduceRange();
+            for (; t != null; t = nextPart(t)) {
+                t.join(); // null unless root
+                r = reducer.applyAsDouble(r, ((DoubleRangeTask) t).result);
+            }
+            result = r;
+            return root ? Double.valueOf(r) : null;
+        }
+
+        private double reduceRange() {
+            double r = identity;
+            for (long i = lo; i < hi; i++)
+                r = reducer.applyAsDouble(r, mapper.applyAsDouble(i));
+            return r;
+        }
+
+        protected Double computeDirectly() {
+            return reduceRange();
+        }
+
+        protected Double combine(Double left, Double right) {
+            return reducer.applyAsDouble(left, right);
+        }
+    }
+
+    static final class ListTask<T, R> extends AdaptiveRecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+
+        final List<? extends T> list;
+
+        final R identity;
+
+        final BiFunction<R, ? super T, R> accumulator;
+
+        final BinaryOperator<R> combiner;
+
+        final int lo;
+
+        int hi;
+
+        ListTask(List<? extends T> list, int lo, int hi, R identity, BiFunction<R, ? super T, R> accumulator,
+                BinaryOperator<R> combiner, int surplus) {
+            super(surplus);
+            this.list = list;
+            this.lo = lo;
+            this.hi = hi;
+            this.identity = identity;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        protected ListTask<T, R> split() {
+            if (hi - lo < 2)
+                return null;
+            int mid = lo + ((hi - lo) >>> 1);
+            ListTask<T, R> upper = new ListTask<T, R>(list, mid, hi, identity, accumulator, combiner, getSurplus());
+            hi = mid;
+            return upper;
+        }
+
+        protected R computeDirectly() {
+            R r = identity;
+            for (int i = lo; i < hi; i++)
+                r = accumulator.apply(r, list.get(i));
+            return r;
+        }
+
+        protected R combine(R left, R right) {
+            return combiner.apply(left, right);
+        }
+    }
+}
@@ -56,6 +56,7 @@ import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * An {@link ExecutorService} for running {@link ForkJoinTask}s.
@@ -803,6 +804,18 @@ public class ForkJoinPool extends AbstractExecutorService {
         volatile int scanState;    // versioned, <0: inactive; odd:scanning
         int stackPred;             // pool stack (ctl) predecessor
         int nsteals;               // number of steals
+        int node = -1;             // topology node of owner, or -1
+        int nlocalSteals;          // steals from queues of the same node
+        int nremoteSteals;         // steals from queues of other nodes
+        // Telemetry, see WorkQueueStats; written by owner or under qlock
+        long npushes;              // tasks pushed
+        long npops;                // own tasks taken back by owner
+        long nstealMisses;         // steals lost to a race
+        long nparks;               // parks in awaitWork
+        long nsignals;             // workers released or added by owner
+        long nspins;               // spin iterations in awaitWork
+        long nscans;               // calls to scan
+        long nscanProbes;          // queue slots visited by scan
         int hint;                  // randomization and stealer index hint
         int config;                // pool index and mode
         volatile int qlock;        // 1: locked, < 0: terminate; else 0
@@ -865,9 +878,11 @@ public class ForkJoinPool extends AbstractExecutorService {
                 int m = a.length - 1;     // fenced write for task visibility
                 U.putOrderedObject(a, ((m & s) << ASHIFT) + ABASE, task);
                 U.putOrderedInt(this, QTOP, s + 1);
+                ++npushes;
                 if ((n = s - b) <= 1) {
-                    if ((p = pool) != null)
-                        p.signalWork(p.workQueues, this);
+                    if ((p = pool) != null &&
+                        p.signalWork(p.workQueues, this))
+                        ++nsignals;
                 }
                 else if (n >= m)
                     growArray();
@@ -915,6 +930,7 @@ public class ForkJoinPool extends AbstractExecutorService {
                         break;
                     if (U.compareAndSwapObject(a, j, t, null)) {
                         U.putOrderedInt(this, QTOP, s);
+                        ++npops;
                         return t;
                     }
                 }
@@ -991,6 +1007,7 @@ public class ForkJoinPool extends AbstractExecutorService {
                 U.compareAndSwapObject
                 (a, (((a.length - 1) & --s) << ASHIFT) + ABASE, t, null)) {
                 U.putOrderedInt(this, QTOP, s);
+                ++npops;
                 return true;
             }
             return false;
@@ -1019,8 +1036,10 @@ public class ForkJoinPool extends AbstractExecutorService {
          * Polls and runs tasks until empty.
          */
         final void pollAndExecAll() {
-            for (ForkJoinTask<?> t; (t = poll()) != null;)
+            for (ForkJoinTask<?> t; (t = poll()) != null;) {
+                ++npops;
                 t.doExec();
+            }
         }
 
         /**
@@ -1039,6 +1058,7 @@ public class ForkJoinPool extends AbstractExecutorService {
                              (a, ((m & s) << ASHIFT) + ABASE, null)) == null)
                             break;
                         U.putOrderedInt(this, QTOP, s);
+                        ++npops;
                         t.doExec();
                         if (base - (s = top - 1) > 0)
                             break;
@@ -1077,6 +1097,26 @@ public class ForkJoinPool extends AbstractExecutorService {
                 nsteals = 0;            // if negative, correct for overflow
                 sc.getAndAdd((long)(s < 0 ? Integer.MAX_VALUE : s));
             }
+            AtomicLongArray ns;         // per-node counts never exceed nsteals
+            if (p != null && node >= 0 && (ns = p.nodeSteals) != null) {
+                ns.getAndAdd(node << 1, nlocalSteals);
+                ns.getAndAdd((node << 1) + 1, nremoteSteals);
+                nlocalSteals = nremoteSteals = 0;
+            }
+        }
+
+        /**
+         * Counts a steal from q as local or remote if both queues
+         * belong to workers of a node-aware pool.
+         */
+        final void countSteal(WorkQueue q) {
+            int n;
+            if (node >= 0 && q != null && (n = q.node) >= 0) {
+                if (n == node)
+                    ++nlocalSteals;
+                else
+                    ++nremoteSteals;
+            }
         }
 
         /**
@@ -1398,6 +1438,9 @@ public class ForkJoinPool extends AbstractExecutorService {
     final UncaughtExceptionHandler ueh;  // per-worker UEH
     final String workerNamePrefix;       // to create worker name string
     volatile AtomicLong stealCounter;    // also used as sync monitor
+    final WorkerTopology topology;       // null unless node-aware
+    final int[] nodeWorkers;             // workers per node; runState lock
+    final AtomicLongArray nodeSteals;    // local, remote steals per node
 
     /**
      * Acquires the runState lock; returns current (locked) runState.
@@ -1556,6 +1599,8 @@ public class ForkJoinPool extends AbstractExecutorService {
                         }
                     }
                 }
+                if (topology != null)                 // group by node
+                    nodeWorkers[w.node = topology.pickNode(nodeWorkers)]++;
                 w.hint = s;                           // use as random seed
                 w.config = i | mode;
                 w.scanState = i;                      // publication fence
@@ -1585,6 +1630,8 @@ public class ForkJoinPool extends AbstractExecutorService {
             int rs = lockRunState();
             if ((ws = workQueues) != null && ws.length > idx && ws[idx] == w)
                 ws[idx] = null;
+            if (w.node >= 0)
+                --nodeWorkers[w.node];
             unlockRunState(rs, rs & ~RSLOCK);
         }
         long c;                                       // decrement counts
@@ -1627,13 +1674,16 @@ public class ForkJoinPool extends AbstractExecutorService {
      *
      * @param ws the worker array to use to find signallees
      * @param q a WorkQueue --if non-null, don't retry if now empty
+     * @return true if a worker was released or an addition attempted
      */
-    final void signalWork(WorkQueue[] ws, WorkQueue q) {
+    final boolean signalWork(WorkQueue[] ws, WorkQueue q) {
         long c; int sp, i; WorkQueue v; Thread p;
         while ((c = ctl) < 0L) {                       // too few active
             if ((sp = (int)c) == 0) {                  // no idle workers
-                if ((c & ADD_WORKER) != 0L)            // too few workers
+                if ((c & ADD_WORKER) != 0L) {          // too few workers
                     tryAddWorker(c);
+                    return true;
+                }
                 break;
             }
             if (ws == null)                            // unstarted/terminated
@@ -1649,11 +1699,12 @@ public class ForkJoinPool extends AbstractExecutorService {
                 v.scanState = vs;                      // activate v
                 if ((p = v.parker) != null)
                     U.unpark(p);
-                break;
+                return true;
             }
             if (q != null && q.base == q.top)          // no more work
                 break;
         }
+        return false;
     }
 
     /**
@@ -1708,7 +1759,9 @@ public class ForkJoinPool extends AbstractExecutorService {
      * attempting to re-activate (itself or some other worker) if
      * finding a task; otherwise returning null to await work.  Scans
      * otherwise touch as little memory as possible, to reduce
-     * disruption on other scanning threads.
+     * disruption on other scanning threads. In a node-aware pool, an
+     * active worker first makes one pass over the workers of its own
+     * node (see scanNode).
      *
      * @param w the worker (via its WorkQueue)
      * @param r a random seed
@@ -1718,9 +1771,15 @@ public class ForkJoinPool extends AbstractExecutorService {
         WorkQueue[] ws; int m;
         if ((ws = workQueues) != null && (m = ws.length - 1) > 0 && w != null) {
             int ss = w.scanState;                     // initially non-negative
+            ++w.nscans;
+            ForkJoinTask<?> lt;
+            if (ss >= 0 && w.node >= 0 && (lt = scanNode(w, ws, m, r)) != null)
+                return lt;
+            int probes = 0;                           // for nscanProbes
             for (int origin = r & m, k = origin, oldSum = 0, checkSum = 0;;) {
                 WorkQueue q; ForkJoinTask<?>[] a; ForkJoinTask<?> t;
                 int b, n; long c;
+                ++probes;
                 if ((q = ws[k]) != null) {
                     if ((n = (b = q.base) - q.top) < 0 &&
                         (a = q.array) != null) {      // non-empty
@@ -1731,8 +1790,11 @@ public class ForkJoinPool extends AbstractExecutorService {
                             if (ss >= 0) {
                                 if (U.compareAndSwapObject(a, i, t, null)) {
                                     q.base = b + 1;
-                                    if (n < -1)       // signal others
-                                        signalWork(ws, q);
+                                    if (n < -1 &&     // signal others
+                                        signalWork(ws, q))
+                                        ++w.nsignals;
+                                    w.countSteal(q);
+                                    w.nscanProbes += probes;
                                     return t;
                                 }
                             }
@@ -1742,6 +1804,8 @@ public class ForkJoinPool extends AbstractExecutorService {
                         }
                         if (ss < 0)                   // refresh
                             ss = w.scanState;
+                        else                          // lost a race
+                            ++w.nstealMisses;
                         r ^= r << 1; r ^= r >>> 3; r ^= r << 10;
                         origin = k = r & m;           // move and rescan
                         oldSum = checkSum = 0;
@@ -1767,10 +1831,54 @@ public class ForkJoinPool extends AbstractExecutorService {
                     checkSum = 0;
                 }
             }
+            w.nscanProbes += probes;
         }
         return null;
     }
 
+    /**
+     * Tries to steal a top-level task from a worker of w's node, in
+     * one pass over the odd (worker) slots from a random origin.
+     * Unlike scan, moves on when losing a race instead of retrying,
+     * and never inactivates: on failure the caller falls back to the
+     * full scan, which steals from any node.
+     *
+     * @param w the worker, which has a node
+     * @param ws the workQueues array
+     * @param m its length less one, positive
+     * @param r a random seed
+     * @return a task, or null if none found
+     */
+    private ForkJoinTask<?> scanNode(WorkQueue w, WorkQueue[] ws, int m, int r) {
+        int node = w.node, probes = 0;
+        for (int origin = (r & m) | 1, k = origin;;) {
+            WorkQueue q; ForkJoinTask<?>[] a; ForkJoinTask<?> t; int b, n;
+            ++probes;
+            if ((q = ws[k]) != null && q.node == node &&
+                (n = (b = q.base) - q.top) < 0 &&
+                (a = q.array) != null) {              // non-empty
+                long i = (((a.length - 1) & b) << ASHIFT) + ABASE;
+                if ((t = ((ForkJoinTask<?>)
+                          U.getObjectVolatile(a, i))) != null &&
+                    q.base == b &&
+                    U.compareAndSwapObject(a, i, t, null)) {
+                    q.base = b + 1;
+                    if (n < -1 &&                     // signal others
+                        signalWork(ws, q))
+                        ++w.nsignals;
+                    ++w.nlocalSteals;
+                    w.nscanProbes += probes;
+                    return t;
+                }
+                ++w.nstealMisses;                     // lost a race
+            }
+            if ((k = (k + 2) & m) == origin)
+                break;
+        }
+        w.nscanProbes += probes;
+        return null;
+    }
+
     /**
      * Possibly blocks worker w waiting for a task to steal, or
      * returns false if the worker should terminate.  If inactivating
@@ -1787,10 +1895,12 @@ public class ForkJoinPool extends AbstractExecutorService {
     private boolean awaitWork(WorkQueue w, int r) {
         if (w == null || w.qlock < 0)                 // w is terminating
             return false;
-        for (int pred = w.stackPred, spins = SPINS, ss;;) {
+        for (int pred = w.stackPred, spins = SPINS, spun = 0, ss;;) {
             if ((ss = w.scanState) >= 0)
                 break;
             else if (spins > 0) {
+                ++spun;
+                ++w.nspins;
                 r ^= r << 6; r ^= r >>> 21; r ^= r << 7;
                 if (r >= 0 && --spins == 0) {         // randomize spins
                     WorkQueue v; WorkQueue[] ws; int s, j; AtomicLong sc;
@@ -1820,12 +1930,22 @@ public class ForkJoinPool extends AbstractExecutorService {
                 else
                     prevctl = parkTime = deadline = 0L;
                 Thread wt = Thread.currentThread();
+                WorkerParkEvent pe = new WorkerParkEvent();
+                pe.begin();
+                boolean parked = false;
                 U.putObject(wt, PARKBLOCKER, this);   // emulate LockSupport
                 w.parker = wt;
-                if (w.scanState < 0 && ctl == c)      // recheck before park
+                if (w.scanState < 0 && ctl == c) {    // recheck before park
+                    ++w.nparks;
+                    parked = true;
                     U.park(false, parkTime);
+                }
                 U.putOrderedObject(w, QPARKER, null);
                 U.putObject(wt, PARKBLOCKER, null);
+                if (parked && pe.shouldCommit())
+                    pe.record(workerNamePrefix, w.getPoolIndex(), w.node,
+                              spun, parkTime != 0L, w.scanState >= 0);
+                spun = 0;
                 if (w.scanState >= 0)
                     break;
                 if (parkTime != 0L && ctl == c &&
@@ -2361,6 +2481,7 @@ public class ForkJoinPool extends AbstractExecutorService {
                             int j = (((a.length - 1) & s) << ASHIFT) + ABASE;
                             U.putOrderedObject(a, j, task);
                             U.putOrderedInt(q, QTOP, s + 1);
+                            ++q.npushes;
                             submitted = true;
                         }
                     } finally {
@@ -2413,6 +2534,7 @@ public class ForkJoinPool extends AbstractExecutorService {
                 int j = ((am & s) << ASHIFT) + ABASE;
                 U.putOrderedObject(a, j, task);
                 U.putOrderedInt(q, QTOP, s + 1);
+                ++q.npushes;
                 U.putIntVolatile(q, QLOCK, 0);
                 if (n <= 1)
                     signalWork(ws, q);
@@ -2452,6 +2574,7 @@ public class ForkJoinPool extends AbstractExecutorService {
                     U.getObject(a, j) == task &&
                     U.compareAndSwapObject(a, j, task, null)) {
                     U.putOrderedInt(w, QTOP, s - 1);
+                    ++w.npops;
                     U.putOrderedInt(w, QLOCK, 0);
                     return true;
                 }
@@ -2549,7 +2672,44 @@ public class ForkJoinPool extends AbstractExecutorService {
              checkFactory(factory),//不允许null
              handler,
              asyncMode ? FIFO_QUEUE : LIFO_QUEUE,
-             "ForkJoinPool-" + nextPoolId() + "-worker-");
+             "ForkJoinPool-" + nextPoolId() + "-worker-",
+             null);
+        checkPermission();
+    }
+
+    /**
+     * Creates a {@code ForkJoinPool} with the given parameters whose
+     * workers are grouped by the nodes of the given topology: each
+     * worker belongs to a node, and looks for tasks to steal among
+     * the workers of its node before stealing from other nodes.
+     * 按节点分组worker，优先窃取同节点任务。
+     *
+     * @param parallelism the parallelism level
+     * @param factory the factory for creating new threads
+     * @param handler the handler for internal worker threads that
+     * terminate due to unrecoverable errors, or {@code null}
+     * @param asyncMode if true, local first-in-first-out scheduling
+     * @param topology the nodes to group the workers by, for example
+     * {@link WorkerTopology#detect()}; {@code null} for no grouping
+     * @throws IllegalArgumentException if parallelism less than or
+     *         equal to zero, or greater than implementation limit
+     * @throws NullPointerException if the factory is null
+     * @throws SecurityException if a security manager exists and
+     *         the caller is not permitted to modify threads
+     *         because it does not hold {@link
+     *         java.lang.RuntimePermission}{@code ("modifyThread")}
+     */
+    public ForkJoinPool(int parallelism,
+                        ForkJoinWorkerThreadFactory factory,
+                        UncaughtExceptionHandler handler,
+                        boolean asyncMode,
+                        WorkerTopology topology) {
+        this(checkParallelism(parallelism),
+             checkFactory(factory),
+             handler,
+             asyncMode ? FIFO_QUEUE : LIFO_QUEUE,
+             "ForkJoinPool-" + nextPoolId() + "-worker-",
+             topology);
         checkPermission();
     }
 
@@ -2575,10 +2735,15 @@ public class ForkJoinPool extends AbstractExecutorService {
                          ForkJoinWorkerThreadFactory factory,
                          UncaughtExceptionHandler handler,
                          int mode,
-                         String workerNamePrefix) {
+                         String workerNamePrefix,
+                         WorkerTopology topology) {
         this.workerNamePrefix = workerNamePrefix;
         this.factory = factory;
         this.ueh = handler;
+        this.topology = topology;
+        int nodes = (topology == null) ? 0 : topology.getNodeCount();
+        this.nodeWorkers = (topology == null) ? null : new int[nodes];
+        this.nodeSteals = (topology == null) ? null : new AtomicLongArray(nodes << 1);
         this.config = (parallelism & SMASK) | mode;
         long np = (long)(-parallelism); // offset ctl counts
         this.ctl = ((np << AC_SHIFT) & AC_MASK) | ((np << TC_SHIFT) & TC_MASK);
@@ -2876,6 +3041,112 @@ public class ForkJoinPool extends AbstractExecutorService {
         return count;
     }
 
+    /**
+     * Returns the topology the workers of this pool are grouped by.
+     *
+     * @return the topology, or {@code null} if the pool is not node-aware
+     */
+    public WorkerTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Returns the node of the given worker of this pool, for example
+     * to pin it to the CPUs of that node in {@code onStart}.
+     *
+     * @param thread a worker thread
+     * @return its node, or -1 if the pool is not node-aware or the
+     * thread is not one of its registered workers
+     */
+    public int getWorkerNode(ForkJoinWorkerThread thread) {
+        WorkQueue w;
+        return (thread != null && (w = thread.workQueue) != null &&
+                w.pool == this) ? w.node : -1;
+    }
+
+    /**
+     * Returns an estimate of the number of tasks the workers of the
+     * given node stole from workers of the same node. Like {@link
+     * #getStealCount}, it underestimates while the pool is not
+     * quiescent.
+     *
+     * @param node the node
+     * @return the number of local steals, or 0 if the pool is not
+     * node-aware
+     * @throws IndexOutOfBoundsException if there is no such node
+     */
+    public long getLocalStealCount(int node) {
+        return nodeStealCount(node, false);
+    }
+
+    /**
+     * Returns an estimate of the number of tasks the workers of the
+     * given node stole from workers of other nodes; see {@link
+     * #getLocalStealCount}. Tasks taken from submission queues are
+     * counted as neither.
+     *
+     * @param node the node
+     * @return the number of remote steals, or 0 if the pool is not
+     * node-aware
+     * @throws IndexOutOfBoundsException if there is no such node
+     */
+    public long getRemoteStealCount(int node) {
+        return nodeStealCount(node, true);
+    }
+
+    private long nodeStealCount(int node, boolean remote) {
+        AtomicLongArray ns = nodeSteals;
+        if (ns == null)
+            return 0L;
+        long count = ns.get((node << 1) + (remote ? 1 : 0));
+        WorkQueue[] ws; WorkQueue w;
+        if ((ws = workQueues) != null) {
+            for (int i = 1; i < ws.length; i += 2) {
+                if ((w = ws[i]) != null && w.node == node)
+                    count += remote ? w.nremoteSteals : w.nlocalSteals;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a snapshot of the activity counters of each worker and
+     * submission queue of this pool, for tuning task granularity and
+     * parallelism: how often workers find work locally, steal it,
+     * lose races for it, spin and park. The counters are plain fields
+     * updated by the queue owners without synchronization and read
+     * here without it, so the snapshot is cheap but only
+     * approximately consistent. Counts of workers that have
+     * terminated are not included. See also {@link
+     * ForkJoinTelemetry} to record them as JFR events.
+     * 每个工作队列的活动计数快照（push/pop/窃取/park等），用于调优任务粒度。
+     *
+     * @return one entry per existing queue, in index order
+     */
+    public List<WorkQueueStats> getWorkQueueStats() {
+        List<WorkQueueStats> stats = new ArrayList<>();
+        WorkQueue[] ws; WorkQueue w;
+        if ((ws = workQueues) != null) {
+            for (int i = 0; i < ws.length; ++i) {
+                if ((w = ws[i]) != null)
+                    stats.add(new WorkQueueStats(
+                        i, (i & 1) == 0, w.node, w.queueSize(),
+                        w.npushes, w.npops, w.nsteals, w.nstealMisses,
+                        w.nparks, w.nsignals, w.nspins,
+                        w.nscans, w.nscanProbes));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the prefix of the names of the worker threads of this
+     * pool, which identifies the pool in telemetry.
+     */
+    final String getWorkerNamePrefix() {
+        return workerNamePrefix;
+    }
+
     /**
      * Returns an estimate of the total number of tasks currently held
      * in queues by worker threads (but not including tasks submitted
@@ -3449,7 +3720,7 @@ public class ForkJoinPool extends AbstractExecutorService {
         if (parallelism > MAX_CAP)
             parallelism = MAX_CAP;
         return new ForkJoinPool(parallelism, factory, handler, LIFO_QUEUE,
-                                "ForkJoinPool.commonPool-worker-");
+                                "ForkJoinPool.commonPool-worker-", null);
     }
 
     /**
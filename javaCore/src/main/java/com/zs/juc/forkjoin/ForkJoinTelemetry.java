@@ -0,0 +1,84 @@
+package com.zs.juc.forkjoin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Publishes the {@link WorkQueueStats} of registered pools to JDK Flight
+ * Recorder. While a recording has the {@code com.zs.juc.forkjoin.WorkQueueStats}
+ * event enabled, every registered pool emits one event per queue each period,
+ * one second by default; outside recordings nothing is collected. Worker parks
+ * are recorded as {@code com.zs.juc.forkjoin.WorkerPark} events by every pool,
+ * registered or not, when that event is enabled.
+ *
+ * <pre>
+ * ForkJoinTelemetry.register(pool);
+ * // java -XX:StartFlightRecording:settings=profile,com.zs.juc.forkjoin.WorkerPark#enabled=true ...
+ * </pre>
+ *
+ * <p>
+ * Pools are held weakly and dropped once terminated.
+ *
+ * 将ForkJoinPool的队列计数发布为JFR周期事件。
+ */
+public final class ForkJoinTelemetry {
+
+    private static final Set<ForkJoinPool> POOLS = Collections
+            .newSetFromMap(new WeakHashMap<ForkJoinPool, Boolean>());
+
+    private static boolean hookAdded;
+
+    private ForkJoinTelemetry() {
+    }
+
+    /**
+     * Starts publishing the statistics of the given pool.
+     *
+     * @throws NullPointerException if the pool is null
+     */
+    public static void register(ForkJoinPool pool) {
+        if (pool == null)
+            throw new NullPointerException();
+        synchronized (POOLS) {
+            POOLS.add(pool);
+            if (!hookAdded) {
+                FlightRecorder.addPeriodicEvent(WorkQueueStatsEvent.class, new Runnable() {
+                    public void run() {
+                        emit();
+                    }
+                });
+                hookAdded = true;
+            }
+        }
+    }
+
+    /**
+     * Stops publishing the statistics of the given pool.
+     */
+    public static void unregister(ForkJoinPool pool) {
+        synchronized (POOLS) {
+            POOLS.remove(pool);
+        }
+    }
+
+    static void emit() {
+        List<ForkJoinPool> pools;
+        synchronized (POOLS) {
+            pools = new ArrayList<ForkJoinPool>(POOLS);
+        }
+        for (ForkJoinPool p : pools) {
+            if (p.isTerminated()) {
+                unregister(p);
+                continue;
+            }
+            String name = p.getWorkerNamePrefix();
+            for (WorkQueueStats s : p.getWorkQueueStats())
+                new WorkQueueStatsEvent().record(name, s);
+        }
+    }
+}
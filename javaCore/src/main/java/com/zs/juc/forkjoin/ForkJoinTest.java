@@ -54,6 +54,11 @@ public class ForkJoinTest {
 			} else {
 				System.out.println("Result:" + result.get());
 			}
+
+			// 不设阈值：按队列中剩余未被窃取的任务数自适应拆分
+			long n = 10000000L;
+			long sum = forkJoinPool.invoke(AdaptiveRecursiveTask.rangeToLong(1, n + 1, x -> x, 0L, Long::sum));
+			System.out.println("Adaptive result:" + sum);
 		}
 	}
 
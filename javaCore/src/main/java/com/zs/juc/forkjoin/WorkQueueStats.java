@@ -0,0 +1,137 @@
+package com.zs.juc.forkjoin;
+
+/**
+ * Activity counters of one queue of a {@link ForkJoinPool}, as returned by
+ * {@link ForkJoinPool#getWorkQueueStats()}. Worker queues sit at odd indices,
+ * submission queues, filled by threads outside the pool, at even ones.
+ *
+ * <p>
+ * For tuning the granularity of tasks: a worker that mostly pops its own
+ * tasks ({@link #getPops}) and rarely steals splits its work finely enough
+ * for the others to find some; many failed steals, spins and parks next to
+ * few pushes mean that tasks are split too coarsely, or that there are more
+ * workers than parallel work. Steals from submission queues count as
+ * steals, since workers take external tasks the same way.
+ *
+ * 单个ForkJoinPool队列的活动计数快照。
+ */
+public final class WorkQueueStats {
+
+    private final int index;
+
+    private final boolean shared;
+
+    private final int node;
+
+    private final int queueSize;
+
+    private final long pushes;
+
+    private final long pops;
+
+    private final long steals;
+
+    private final long failedSteals;
+
+    private final long parks;
+
+    private final long signals;
+
+    private final long spins;
+
+    private final long scans;
+
+    private final long scanProbes;
+
+    WorkQueueStats(int index, boolean shared, int node, int queueSize, long pushes, long pops, long steals,
+            long failedSteals, long parks, long signals, long spins, long scans, long scanProbes) {
+        this.index = index;
+        this.shared = shared;
+        this.node = node;
+        this.queueSize = queueSize;
+        this.pushes = pushes;
+        this.pops = pops;
+        this.steals = steals;
+        this.failedSteals = failedSteals;
+        this.parks = parks;
+        this.signals = signals;
+        this.spins = spins;
+        this.scans = scans;
+        this.scanProbes = scanProbes;
+    }
+
+    /** Returns the index of the queue in the pool. */
+    public int getIndex() {
+        return index;
+    }
+
+    /** Returns true for a submission queue, false for a worker queue. */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /** Returns the topology node of the worker, or -1. */
+    public int getNode() {
+        return node;
+    }
+
+    /** Returns the number of tasks in the queue when the snapshot was taken. */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /** Returns the number of tasks pushed: forked, or submitted to a submission queue. */
+    public long getPushes() {
+        return pushes;
+    }
+
+    /** Returns the number of tasks the owner took back from its own queue. */
+    public long getPops() {
+        return pops;
+    }
+
+    /**
+     * Returns the number of top-level tasks the worker took from other queues
+     * and ran; 0 for submission queues.
+     */
+    public long getSteals() {
+        return steals;
+    }
+
+    /** Returns the number of steals the worker lost to another thread. */
+    public long getFailedSteals() {
+        return failedSteals;
+    }
+
+    /** Returns the number of times the worker parked for lack of work. */
+    public long getParks() {
+        return parks;
+    }
+
+    /** Returns the number of times the worker woke or started another worker. */
+    public long getSignals() {
+        return signals;
+    }
+
+    /** Returns the number of iterations the worker spun before parking. */
+    public long getSpins() {
+        return spins;
+    }
+
+    /** Returns the number of scans for work to steal. */
+    public long getScans() {
+        return scans;
+    }
+
+    /** Returns the number of queue slots visited by those scans. */
+    public long getScanProbes() {
+        return scanProbes;
+    }
+
+    public String toString() {
+        return (shared ? "submission" : "worker") + "[" + index + (node >= 0 ? ", node = " + node : "")
+                + ", size = " + queueSize + ", pushes = " + pushes + ", pops = " + pops + ", steals = " + steals
+                + ", failedSteals = " + failedSteals + ", parks = " + parks + ", signals = " + signals
+                + ", spins = " + spins + ", scans = " + scans + ", scanProbes = " + scanProbes + "]";
+    }
+}
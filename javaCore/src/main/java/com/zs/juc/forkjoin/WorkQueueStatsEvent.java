@@ -0,0 +1,86 @@
+package com.zs.juc.forkjoin;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * Periodic JFR event carrying the {@link WorkQueueStats} of one queue of a
+ * pool registered with {@link ForkJoinTelemetry}. The counters are
+ * cumulative; a JFR consumer derives rates from consecutive events.
+ *
+ * ForkJoinPool队列活动计数的周期性JFR事件。
+ */
+@Name("com.zs.juc.forkjoin.WorkQueueStats")
+@Label("ForkJoinPool Work Queue Statistics")
+@Category({ "Java Application", "ForkJoinPool" })
+@Period("1 s")
+@StackTrace(false)
+final class WorkQueueStatsEvent extends Event {
+
+    @Label("Pool")
+    @Description("Worker name prefix of the pool")
+    String pool;
+
+    @Label("Queue Index")
+    int queueIndex;
+
+    @Label("Shared")
+    @Description("Submission queue rather than worker queue")
+    boolean shared;
+
+    @Label("Node")
+    int node;
+
+    @Label("Queue Size")
+    int queueSize;
+
+    @Label("Pushes")
+    long pushes;
+
+    @Label("Pops")
+    long pops;
+
+    @Label("Steals")
+    long steals;
+
+    @Label("Failed Steals")
+    long failedSteals;
+
+    @Label("Parks")
+    long parks;
+
+    @Label("Signals")
+    long signals;
+
+    @Label("Spins")
+    long spins;
+
+    @Label("Scans")
+    long scans;
+
+    @Label("Scan Probes")
+    long scanProbes;
+
+    void record(String pool, WorkQueueStats s) {
+        this.pool = pool;
+        this.queueIndex = s.getIndex();
+        this.shared = s.isShared();
+        this.node = s.getNode();
+        this.queueSize = s.getQueueSize();
+        this.pushes = s.getPushes();
+        this.pops = s.getPops();
+        this.steals = s.getSteals();
+        this.failedSteals = s.getFailedSteals();
+        this.parks = s.getParks();
+        this.signals = s.getSignals();
+        this.spins = s.getSpins();
+        this.scans = s.getScans();
+        this.scanProbes = s.getScanProbes();
+        commit();
+    }
+}
@@ -0,0 +1,59 @@
+package com.zs.juc.forkjoin;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event committed when a {@link ForkJoinPool} worker parks for lack of
+ * work; its duration is the time parked. Disabled by default since idle pools
+ * park often; enable it with a threshold to see which workers starve.
+ *
+ * ForkJoinPool工作线程因无任务而park的JFR事件。
+ */
+@Name("com.zs.juc.forkjoin.WorkerPark")
+@Label("ForkJoinPool Worker Park")
+@Category({ "Java Application", "ForkJoinPool" })
+@Description("A worker parked after finding no task to steal")
+@Enabled(false)
+@StackTrace(false)
+@Threshold("1 ms")
+final class WorkerParkEvent extends Event {
+
+    @Label("Pool")
+    @Description("Worker name prefix of the pool")
+    String pool;
+
+    @Label("Queue Index")
+    int queueIndex;
+
+    @Label("Node")
+    int node;
+
+    @Label("Spins")
+    @Description("Spin iterations before parking")
+    int spins;
+
+    @Label("Timed")
+    @Description("Parked as the last waiter, and may time out and exit")
+    boolean timed;
+
+    @Label("Signalled")
+    @Description("Woken up to work rather than by timeout or interrupt")
+    boolean signalled;
+
+    void record(String pool, int queueIndex, int node, int spins, boolean timed, boolean signalled) {
+        this.pool = pool;
+        this.queueIndex = queueIndex;
+        this.node = node;
+        this.spins = spins;
+        this.timed = timed;
+        this.signalled = signalled;
+        commit();
+    }
+}
@@ -0,0 +1,180 @@
+package com.zs.juc.forkjoin;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The NUMA nodes a {@link ForkJoinPool} groups its workers by. A pool given a
+ * topology assigns each new worker to a node, in proportion to the number of
+ * CPUs of each node, and its workers look for tasks to steal on their own node
+ * before they steal from another; steals are counted per node, see
+ * {@link ForkJoinPool#getLocalStealCount} and
+ * {@link ForkJoinPool#getRemoteStealCount}.
+ *
+ * <p>
+ * Java cannot bind a thread to a CPU, so the grouping only keeps stolen
+ * subtasks, and the data they touch, among workers that the operating system
+ * is likely to run close together. To make it exact, pin each worker to the
+ * CPUs of its node, for example from {@code ForkJoinWorkerThread.onStart}
+ * with an affinity library and {@link ForkJoinPool#getWorkerNode}, or run
+ * one pool per node under {@code numactl}.
+ *
+ * <pre>
+ * ForkJoinPool pool = new ForkJoinPool(parallelism, factory, null, false, WorkerTopology.detect());
+ * ForkJoinPool pinned = new ForkJoinPool(16, factory, null, false, WorkerTopology.parse("0-7;8-15"));
+ * </pre>
+ *
+ * 按NUMA节点对ForkJoinPool的worker分组：优先窃取同节点worker的任务，并按节点统计窃取次数。
+ */
+public final class WorkerTopology {
+
+    private static final String SYS_NODES = "/sys/devices/system/node";
+
+    /** CPU ids of each node. */
+    private final int[][] cpus;
+
+    private WorkerTopology(int[][] cpus) {
+        if (cpus.length == 0)
+            throw new IllegalArgumentException("no nodes");
+        for (int[] c : cpus)
+            if (c.length == 0)
+                throw new IllegalArgumentException("node without CPUs");
+        this.cpus = cpus;
+    }
+
+    /**
+     * Reads the topology of this machine from
+     * {@code /sys/devices/system/node}, or returns a single node holding
+     * every available processor where that is not available.
+     */
+    public static WorkerTopology detect() {
+        File[] dirs = new File(SYS_NODES).listFiles(new FileFilter() {
+            public boolean accept(File f) {
+                return f.getName().matches("node\\d+");
+            }
+        });
+        List<int[]> nodes = new ArrayList<int[]>();
+        if (dirs != null) {
+            // by node number, so that node10 comes after node9 and not after node1
+            Arrays.sort(dirs, new Comparator<File>() {
+                public int compare(File a, File b) {
+                    return Long.compare(nodeNumber(a), nodeNumber(b));
+                }
+            });
+            for (File d : dirs) {
+                try {
+                    String list = new String(Files.readAllBytes(new File(d, "cpulist").toPath()),
+                            StandardCharsets.US_ASCII).trim();
+                    if (!list.isEmpty())
+                        nodes.add(parseCpuList(list));
+                } catch (IOException | IllegalArgumentException e) {
+                    // unreadable node: leave it out
+                }
+            }
+        }
+        if (nodes.isEmpty())
+            return uniform(1, Runtime.getRuntime().availableProcessors());
+        return new WorkerTopology(nodes.toArray(new int[0][]));
+    }
+
+    /** The number in the name of a {@code nodeN} directory. */
+    private static long nodeNumber(File nodeDir) {
+        return Long.parseLong(nodeDir.getName().substring("node".length()));
+    }
+
+    /**
+     * Parses a topology given as the CPU lists of the nodes, separated by
+     * {@code ';'}, each in the format of {@code cpulist} in sysfs, for example
+     * {@code "0-7,16-23;8-15,24-31"}.
+     *
+     * @throws IllegalArgumentException if the spec is malformed or a node has
+     *             no CPU
+     */
+    public static WorkerTopology parse(String spec) {
+        String[] parts = spec.split(";");
+        int[][] cpus = new int[parts.length][];
+        for (int i = 0; i < parts.length; i++)
+            cpus[i] = parseCpuList(parts[i].trim());
+        return new WorkerTopology(cpus);
+    }
+
+    /**
+     * Returns {@code nodes} nodes of {@code cpusPerNode} consecutive CPUs.
+     *
+     * @throws IllegalArgumentException if either is not positive
+     */
+    public static WorkerTopology uniform(int nodes, int cpusPerNode) {
+        if (nodes <= 0 || cpusPerNode <= 0)
+            throw new IllegalArgumentException();
+        int[][] cpus = new int[nodes][cpusPerNode];
+        for (int n = 0, id = 0; n < nodes; n++)
+            for (int c = 0; c < cpusPerNode; c++)
+                cpus[n][c] = id++;
+        return new WorkerTopology(cpus);
+    }
+
+    static int[] parseCpuList(String list) {
+        if (list.isEmpty())
+            throw new IllegalArgumentException("empty CPU list");
+        List<Integer> ids = new ArrayList<Integer>();
+        try {
+            for (String range : list.split(",")) {
+                int dash = range.indexOf('-');
+                int lo = Integer.parseInt(range.substring(0, dash < 0 ? range.length() : dash).trim());
+                int hi = dash < 0 ? lo : Integer.parseInt(range.substring(dash + 1).trim());
+                if (lo < 0 || hi < lo)
+                    throw new IllegalArgumentException("bad CPU range: " + range);
+                for (int c = lo; c <= hi; c++)
+                    ids.add(c);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad CPU list: " + list, e);
+        }
+        int[] a = new int[ids.size()];
+        for (int i = 0; i < a.length; i++)
+            a[i] = ids.get(i);
+        return a;
+    }
+
+    public int getNodeCount() {
+        return cpus.length;
+    }
+
+    /**
+     * Returns the ids of the CPUs of the given node.
+     */
+    public int[] getCpus(int node) {
+        return cpus[node].clone();
+    }
+
+    /**
+     * Returns the node a new worker goes to given how many workers each node
+     * has: the one with the fewest workers per CPU, the lowest on ties.
+     */
+    int pickNode(int[] workers) {
+        int best = 0;
+        for (int n = 1; n < cpus.length; n++) {
+            // workers[n] / cpus[n] < workers[best] / cpus[best]
+            if ((long) workers[n] * cpus[best].length < (long) workers[best] * cpus[n].length)
+                best = n;
+        }
+        return best;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("WorkerTopology[");
+        for (int n = 0; n < cpus.length; n++) {
+            if (n > 0)
+                sb.append("; ");
+            sb.append("node").append(n).append(": ").append(cpus[n].length).append(" cpus");
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,106 @@
+package com.zs.juc.pool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The result of {@link ThreadPoolExecutor#submitAll}: one {@link Future} over
+ * the results of a batch of tasks, in submission order.
+ *
+ * <p>
+ * {@link #get()} waits for every task and fails with the exception of the
+ * first task, in submission order, that failed or was cancelled; the futures
+ * of the individual tasks remain available through {@link #futures()}.
+ * {@link #cancel} cancels every task that has not completed yet.
+ *
+ * 批量提交的组合Future：等待所有任务完成，按提交顺序返回结果。
+ *
+ * @param <T> the result type of the tasks
+ */
+public final class BatchFuture<T> implements Future<List<T>> {
+
+    private final List<? extends Future<T>> futures;
+
+    private volatile boolean cancelled;
+
+    BatchFuture(List<? extends Future<T>> futures) {
+        this.futures = futures;
+    }
+
+    /** The futures of the individual tasks, in submission order. */
+    public List<Future<T>> futures() {
+        return Collections.<Future<T>> unmodifiableList(futures);
+    }
+
+    /** Number of tasks of the batch that are done. */
+    public int completedCount() {
+        int n = 0;
+        for (Future<T> f : futures)
+            if (f.isDone())
+                ++n;
+        return n;
+    }
+
+    /**
+     * Cancels every task that has not completed.
+     *
+     * @return true if at least one task was cancelled
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean any = false;
+        for (Future<T> f : futures)
+            any |= f.cancel(mayInterruptIfRunning);
+        if (any)
+            cancelled = true;
+        return any;
+    }
+
+    /** Returns true if {@link #cancel} cancelled at least one task. */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Returns true once every task is done. */
+    public boolean isDone() {
+        for (Future<T> f : futures)
+            if (!f.isDone())
+                return false;
+        return true;
+    }
+
+    /**
+     * Waits for every task and returns their results in submission order.
+     *
+     * @throws CancellationException if a task was cancelled
+     * @throws ExecutionException if a task threw, with that task's exception as
+     *             the cause
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public List<T> get() throws InterruptedException, ExecutionException {
+        List<T> results = new ArrayList<T>(futures.size());
+        for (Future<T> f : futures)
+            results.add(f.get());
+        return results;
+    }
+
+    /**
+     * Waits at most the given time, in total, for every task and returns their
+     * results in submission order.
+     *
+     * @throws TimeoutException if some task is not done in time
+     */
+    public List<T> get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<T> results = new ArrayList<T>(futures.size());
+        for (Future<T> f : futures)
+            results.add(f.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+        return results;
+    }
+}
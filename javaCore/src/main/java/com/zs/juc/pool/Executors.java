@@ -231,6 +231,55 @@ public class Executors {
                                       threadFactory);
     }
 
+    /**
+     * Creates an Executor that starts a new thread for each task.
+     * The number of threads created by the Executor is unbounded.
+     * Invoking {@link Future#cancel(boolean) cancel(true)} on a
+     * {@link Future Future} of a submitted task interrupts its thread.
+     *
+     * @param threadFactory the factory to use when creating new threads
+     * @return a new executor that creates a new thread for each task
+     * @throws NullPointerException if threadFactory is null
+     */
+    public static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+        return new ThreadPerTaskExecutor(threadFactory, 0);
+    }
+
+    /**
+     * Creates an Executor that starts a new virtual thread for each
+     * task. The number of threads created by the Executor is
+     * unbounded. Use it instead of a large platform-thread pool for
+     * tasks that spend most of their time blocked on I/O.
+     *
+     * 每个任务启动一个虚拟线程，适合大量阻塞IO的扇出场景。
+     *
+     * @return a new executor that creates a new virtual thread for each task
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        return newThreadPerTaskExecutor(virtualThreadFactory());
+    }
+
+    /**
+     * Creates an Executor that starts a new virtual thread for each
+     * task but lets at most {@code maxConcurrency} tasks run at once.
+     * The others wait for a permit of a fair {@link
+     * java.util.concurrent.Semaphore} in their own virtual thread, in
+     * submission order, so {@code execute} never blocks and never
+     * rejects while the executor is running. Use it to cap fan-out to
+     * a downstream service without sizing a pool.
+     *
+     * 有界的虚拟线程执行器：基于信号量限制同时运行的任务数量。
+     *
+     * @param maxConcurrency the most tasks running at the same time
+     * @return a new executor that creates a new virtual thread for each task
+     * @throws IllegalArgumentException if {@code maxConcurrency <= 0}
+     */
+    public static ExecutorService newBoundedVirtualThreadExecutor(int maxConcurrency) {
+        if (maxConcurrency <= 0)
+            throw new IllegalArgumentException();
+        return new ThreadPerTaskExecutor(virtualThreadFactory(), maxConcurrency);
+    }
+
     /**
      * Creates a single-threaded executor that can schedule commands
      * to run after a given delay, or to execute periodically.
@@ -298,6 +347,28 @@ public class Executors {
         return new ScheduledThreadPoolExecutor(corePoolSize, threadFactory);
     }
 
+    /**
+     * Creates a scheduled executor backed by a hierarchical timing
+     * wheel, which schedules and cancels tasks in constant time
+     * without a shared lock, at the cost of running each task up to
+     * one tick late. Suited to large numbers of short timeouts that
+     * are mostly cancelled before they fire.
+     *
+     * 基于时间轮的定时调度器，适合大量且多数会被取消的超时任务。
+     *
+     * @param poolSize the number of threads running due tasks
+     * @param tickDuration the precision of the scheduler
+     * @param unit the unit of {@code tickDuration}
+     * @return a newly created timing-wheel scheduler
+     * @throws IllegalArgumentException if {@code poolSize <= 0} or
+     * {@code tickDuration} is less than a nanosecond
+     * @see TimingWheelScheduler
+     */
+    public static ScheduledExecutorService newTimingWheelScheduler(
+            int poolSize, long tickDuration, TimeUnit unit) {
+        return new TimingWheelScheduler(poolSize, tickDuration, unit);
+    }
+
     /**
      * Returns an object that delegates all defined {@link
      * ExecutorService} methods to the given executor, but not any
@@ -350,6 +421,19 @@ public class Executors {
         return new DefaultThreadFactory();
     }
 
+    /**
+     * Returns a thread factory that creates virtual threads named
+     * <em>virtual-M</em>, where <em>M</em> is the sequence number of
+     * the thread created by this factory. It can also be passed to
+     * {@link ThreadPoolExecutor} constructors, although pooling virtual
+     * threads brings nothing over {@link #newVirtualThreadPerTaskExecutor}.
+     *
+     * @return a thread factory
+     */
+    public static ThreadFactory virtualThreadFactory() {
+        return Thread.ofVirtual().name("virtual-", 0).factory();
+    }
+
     /**
      * Returns a thread factory used to create new threads that
      * have the same permissions as the current thread.
@@ -72,6 +72,11 @@ import java.util.concurrent.locks.LockSupport;
  * {@code protected} functionality that may be useful when creating
  * customized task classes.
  *
+ * <p>A task may carry a priority and a deadline, used by
+ * {@link PriorityThreadPoolExecutor} to order its queue and to drop
+ * tasks that did not start in time. Other executors ignore them.
+ * 任务可携带优先级和截止时间，供PriorityThreadPoolExecutor排序及丢弃过期任务。
+ *
  * @since 1.5
  * @author Doug Lea
  * @param <V> The result type returned by this FutureTask's {@code get} methods
@@ -87,6 +92,14 @@ public class FutureTask<V> implements RunnableFuture<V> {
      *
      * Style note: As usual, we bypass overhead of using
      * AtomicXFieldUpdaters and instead directly use Unsafe intrinsics.
+     *
+     * Most tasks have at most one thread blocked in get(), so the
+     * first waiter claims the "waiter" slot by CAS and parks without
+     * allocating a WaitNode; only further concurrent waiters go on the
+     * stack.  The completer sets state before reading the slot and the
+     * waiter claims the slot before rereading state, so one of them
+     * always sees the other.
+     * 单个等待线程直接占用waiter字段，不再分配WaitNode。
      */
 
     /**
@@ -120,9 +133,23 @@ public class FutureTask<V> implements RunnableFuture<V> {
     private Object outcome; // non-volatile, protected by state reads/writes
     /** The thread running the callable; CASed during run() */
     private volatile Thread runner;
-    /** Treiber stack of waiting threads */
+    /** The first waiting thread, parked without a WaitNode */
+    private volatile Thread waiter;
+    /** Treiber stack of further waiting threads */
     private volatile WaitNode waiters;
 
+    /** The priority a task gets unless one is given */
+    public static final int NORM_PRIORITY = 0;
+
+    /** Higher runs first in a PriorityThreadPoolExecutor */
+    private final int priority;
+    /** Whether deadline is set */
+    private final boolean hasDeadline;
+    /** System.nanoTime() after which the task should not start */
+    private final long deadline;
+    /** FIFO tie-breaker, assigned by PriorityThreadPoolExecutor on submission */
+    long sequenceNumber;
+
     /**
      * Returns result or throws exception for completed task.
      *
@@ -146,9 +173,59 @@ public class FutureTask<V> implements RunnableFuture<V> {
      * @throws NullPointerException if the callable is null
      */
     public FutureTask(Callable<V> callable) {
+        this(callable, NORM_PRIORITY, false, 0L);
+    }
+
+    /**
+     * Creates a {@code FutureTask} with the given priority and no
+     * deadline.
+     *
+     * @param  callable the callable task
+     * @param  priority the priority; higher values run first
+     * @throws NullPointerException if the callable is null
+     */
+    public FutureTask(Callable<V> callable, int priority) {
+        this(callable, priority, false, 0L);
+    }
+
+    /**
+     * Creates a {@code FutureTask} with the given priority that should
+     * start within the given time from now.
+     *
+     * @param  callable the callable task
+     * @param  priority the priority; higher values run first
+     * @param  timeout the time from now by which the task should start
+     * @param  unit the unit of the timeout argument
+     * @throws NullPointerException if the callable or unit is null
+     */
+    public FutureTask(Callable<V> callable, int priority, long timeout, TimeUnit unit) {
+        this(callable, priority, true, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Creates a {@code FutureTask} with the given priority that should
+     * start within the given time from now, and that will return the
+     * given result on successful completion.
+     *
+     * @param  runnable the runnable task
+     * @param  result the result to return on successful completion
+     * @param  priority the priority; higher values run first
+     * @param  timeout the time from now by which the task should start
+     * @param  unit the unit of the timeout argument
+     * @throws NullPointerException if the runnable or unit is null
+     */
+    public FutureTask(Runnable runnable, V result, int priority, long timeout, TimeUnit unit) {
+        this(Executors.callable(runnable, result), priority, true,
+             System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    private FutureTask(Callable<V> callable, int priority, boolean hasDeadline, long deadline) {
         if (callable == null)
             throw new NullPointerException();
         this.callable = callable;
+        this.priority = priority;
+        this.hasDeadline = hasDeadline;
+        this.deadline = deadline;
         this.state = NEW;       // ensure visibility of callable
     }
 
@@ -165,8 +242,45 @@ public class FutureTask<V> implements RunnableFuture<V> {
      * @throws NullPointerException if the runnable is null
      */
     public FutureTask(Runnable runnable, V result) {
-        this.callable = Executors.callable(runnable, result);
-        this.state = NEW;       // ensure visibility of callable
+        this(Executors.callable(runnable, result), NORM_PRIORITY, false, 0L);
+    }
+
+    /**
+     * Returns the priority of this task; higher values run first.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns whether this task has a deadline.
+     */
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    /**
+     * Returns the time left until the deadline, negative once it has
+     * passed, or {@code Long.MAX_VALUE} if there is no deadline.
+     *
+     * @param unit the time unit of the result
+     */
+    public long getDelay(TimeUnit unit) {
+        return hasDeadline ? unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+            : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns true if this task has a deadline, has passed it and has
+     * not started.
+     */
+    public boolean isExpired() {
+        return hasDeadline && state == NEW && runner == null && System.nanoTime() - deadline > 0L;
+    }
+
+    /** Returns the deadline as a System.nanoTime() value; valid if hasDeadline */
+    long deadlineNanos() {
+        return deadline;
     }
 
     public boolean isCancelled() {
@@ -379,6 +493,9 @@ public class FutureTask<V> implements RunnableFuture<V> {
      */
     private void finishCompletion() {
         // assert state > COMPLETING;
+        Thread w = waiter;
+        if (w != null && UNSAFE.compareAndSwapObject(this, waiterOffset, w, null))
+            LockSupport.unpark(w);
         for (WaitNode q; (q = waiters) != null;) {
             if (UNSAFE.compareAndSwapObject(this, waitersOffset, q, null)) {
                 for (;;) {
@@ -414,28 +531,39 @@ public class FutureTask<V> implements RunnableFuture<V> {
         final long deadline = timed ? System.nanoTime() + nanos : 0L;
         WaitNode q = null;
         boolean queued = false;
+        boolean slotted = false;
         for (;;) {
             if (Thread.interrupted()) {
+                if (slotted)
+                    releaseSlot();
                 removeWaiter(q);
                 throw new InterruptedException();
             }
 
             int s = state;
             if (s > COMPLETING) {
+                if (slotted)
+                    releaseSlot();
                 if (q != null)
                     q.thread = null;
                 return s;
             }
             else if (s == COMPLETING) // cannot time out yet
                 Thread.yield();
-            else if (q == null)
-                q = new WaitNode();
-            else if (!queued)
+            else if (!slotted && q == null) {
+                // on success, state is rechecked before parking
+                if (!(slotted = UNSAFE.compareAndSwapObject(this, waiterOffset,
+                                                             null, Thread.currentThread())))
+                    q = new WaitNode();
+            }
+            else if (q != null && !queued)
                 queued = UNSAFE.compareAndSwapObject(this, waitersOffset,
                                                      q.next = waiters, q);
             else if (timed) {
                 nanos = deadline - System.nanoTime();
                 if (nanos <= 0L) {
+                    if (slotted)
+                        releaseSlot();
                     removeWaiter(q);
                     return state;
                 }
@@ -446,6 +574,14 @@ public class FutureTask<V> implements RunnableFuture<V> {
         }
     }
 
+    /**
+     * Gives up the waiter slot held by the current thread, unless the
+     * completer already cleared it.
+     */
+    private void releaseSlot() {
+        UNSAFE.compareAndSwapObject(this, waiterOffset, Thread.currentThread(), null);
+    }
+
     /**
      * Tries to unlink a timed-out or interrupted wait node to avoid
      * accumulating garbage.  Internal nodes are simply unspliced
@@ -483,6 +619,7 @@ public class FutureTask<V> implements RunnableFuture<V> {
     private static final sun.misc.Unsafe UNSAFE;
     private static final long stateOffset;
     private static final long runnerOffset;
+    private static final long waiterOffset;
     private static final long waitersOffset;
     static {
         try {
@@ -492,6 +629,8 @@ public class FutureTask<V> implements RunnableFuture<V> {
                 (k.getDeclaredField("state"));
             runnerOffset = UNSAFE.objectFieldOffset
                 (k.getDeclaredField("runner"));
+            waiterOffset = UNSAFE.objectFieldOffset
+                (k.getDeclaredField("waiter"));
             waitersOffset = UNSAFE.objectFieldOffset
                 (k.getDeclaredField("waiters"));
         } catch (Exception e) {
@@ -0,0 +1,150 @@
+package com.zs.juc.pool;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative durations in nanoseconds, with
+ * log-linear buckets in the style of HdrHistogram: values below 16 have a
+ * bucket each, and every power-of-two range above is split into 16 equal
+ * buckets, so any recorded value is reported within 1/16 (about 6%) of its
+ * true size. The whole {@code long} range fits in 960 buckets.
+ *
+ * <p>
+ * {@link #record} is a single atomic increment plus a {@link LongAdder}
+ * update and can be called from any number of threads. {@link #snapshot()}
+ * copies the buckets without blocking writers; a snapshot taken while values
+ * are being recorded may miss some of them but is internally consistent (its
+ * count is the sum of its buckets).
+ *
+ * 无锁的HDR风格直方图：按2的幂分段，每段再线性分为16个桶，记录和快照都不需要加锁。
+ */
+public final class LatencyHistogram {
+
+    /** log2 of the number of buckets per power of two. */
+    private static final int SUB_BITS = 4;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value. Negative values are recorded as 0.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0L)
+            nanos = 0L;
+        counts.getAndIncrement(bucketFor(nanos));
+        sum.add(nanos);
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos))
+            ;
+    }
+
+    /** Returns a copy of the current counts. */
+    public Snapshot snapshot() {
+        long[] c = new long[BUCKETS];
+        long n = 0L;
+        for (int i = 0; i < BUCKETS; i++)
+            n += (c[i] = counts.get(i));
+        return new Snapshot(c, n, sum.sum(), max.get());
+    }
+
+    static int bucketFor(long v) {
+        if (v < SUB_COUNT)
+            return (int) v;
+        int e = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (e - SUB_BITS)) & (SUB_COUNT - 1);
+        return (e - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /** The smallest value that falls into bucket i. */
+    static long lowestValue(int i) {
+        if (i < SUB_COUNT)
+            return i;
+        int e = i / SUB_COUNT + SUB_BITS - 1;
+        return (long) (SUB_COUNT + (i & (SUB_COUNT - 1))) << (e - SUB_BITS);
+    }
+
+    /** The largest value that falls into bucket i. */
+    static long highestValue(int i) {
+        return i == BUCKETS - 1 ? Long.MAX_VALUE : lowestValue(i + 1) - 1;
+    }
+
+    /**
+     * An immutable copy of a {@link LatencyHistogram}.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+
+        private final long count;
+
+        private final long sum;
+
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /** Number of recorded values. */
+        public long count() {
+            return count;
+        }
+
+        /** Sum of the recorded values in nanoseconds. */
+        public long sum() {
+            return sum;
+        }
+
+        /** Mean of the recorded values in nanoseconds, 0 if there are none. */
+        public double mean() {
+            return count == 0L ? 0.0 : (double) sum / count;
+        }
+
+        /** Largest recorded value in nanoseconds, exact. */
+        public long max() {
+            return max;
+        }
+
+        /**
+         * Returns the value at the given percentile: the upper bound of the
+         * bucket holding that rank, capped at {@link #max()}.
+         *
+         * @param percentile between 0 and 100
+         * @return the value in nanoseconds, 0 if nothing was recorded
+         * @throws IllegalArgumentException if percentile is out of range
+         */
+        public long percentile(double percentile) {
+            if (!(percentile >= 0.0 && percentile <= 100.0))
+                throw new IllegalArgumentException();
+            if (count == 0L)
+                return 0L;
+            long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                if ((seen += counts[i]) >= rank)
+                    return Math.min(highestValue(i), max);
+            }
+            return max;
+        }
+
+        public String toString() {
+            return "count=" + count + ", mean=" + (long) mean() + "ns, p50=" + percentile(50) + "ns, p99="
+                    + percentile(99) + "ns, p999=" + percentile(99.9) + "ns, max=" + max + "ns";
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.zs.juc.pool;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Function;
+
+/**
+ * A {@link FutureTask} that runs listeners when it completes, so that work
+ * depending on its result can be chained instead of blocking a thread in
+ * {@code get()}.
+ *
+ * <p>
+ * {@link #addListener} registers a {@code Runnable} and the executor to run it
+ * with; listeners run once, in registration order, when the task completes
+ * normally, exceptionally or by cancellation, or at once if it already has.
+ * With {@link #directExecutor()} they run in the thread that completes the
+ * task, which suits short continuations and costs no thread hand-off.
+ * {@link #thenApply} and {@link #thenCompose} build on this to derive new
+ * futures; the derived future fails with the same cause as this one, or is
+ * cancelled if this one is. Cancelling a derived future does not cancel this
+ * one.
+ *
+ * <pre>
+ * ListenableFutureTask&lt;User&gt; user = new ListenableFutureTask&lt;User&gt;(loadUser);
+ * executor.execute(user);
+ * ListenableFutureTask&lt;String&gt; name = user.thenApply(new Function&lt;User, String&gt;() {
+ *     public String apply(User u) {
+ *         return u.getName();
+ *     }
+ * });
+ * </pre>
+ *
+ * 可注册完成回调的FutureTask：任务完成时执行监听器，支持thenApply/thenCompose链式组合，无需阻塞线程等待结果。
+ *
+ * @param <V> the result type returned by this task's {@code get} methods
+ */
+public class ListenableFutureTask<V> extends FutureTask<V> {
+
+    /** Placeholder callable of derived futures, which are completed by their source. */
+    private static final Callable<Object> DERIVED = new Callable<Object>() {
+        public Object call() {
+            throw new IllegalStateException("derived future is completed by its source");
+        }
+    };
+
+    private static final Executor DIRECT = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        public String toString() {
+            return "DirectExecutor";
+        }
+    };
+
+    /** Marks the listener stack once the listeners have been run. */
+    private static final Listener DONE = new Listener(null, null);
+
+    /**
+     * Treiber stack of listeners, newest first; DONE once the task completed.
+     */
+    private volatile Listener listeners;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ListenableFutureTask, Listener> LISTENERS =
+            AtomicReferenceFieldUpdater.newUpdater(ListenableFutureTask.class, Listener.class, "listeners");
+
+    /**
+     * @param callable the callable task
+     * @throws NullPointerException if the callable is null
+     */
+    public ListenableFutureTask(Callable<V> callable) {
+        super(callable);
+    }
+
+    /**
+     * @param runnable the runnable task
+     * @param result the result to return on successful completion
+     * @throws NullPointerException if the runnable is null
+     */
+    public ListenableFutureTask(Runnable runnable, V result) {
+        super(runnable, result);
+    }
+
+    /**
+     * Returns an executor that runs each command in the calling thread.
+     */
+    public static Executor directExecutor() {
+        return DIRECT;
+    }
+
+    /**
+     * Registers a listener to be run by the given executor when this task
+     * completes, or at once if it already has. Exceptions thrown by the
+     * executor, for example on rejection, are reported to the uncaught
+     * exception handler of the thread that runs the listeners and do not
+     * prevent the other listeners from running.
+     *
+     * @param listener the listener to run
+     * @param executor the executor to run it with
+     * @throws NullPointerException if the listener or executor is null
+     */
+    public void addListener(Runnable listener, Executor executor) {
+        if (listener == null || executor == null)
+            throw new NullPointerException();
+        Listener node = new Listener(listener, executor);
+        for (Listener h; (h = listeners) != DONE;) {
+            node.next = h;
+            if (LISTENERS.compareAndSet(this, h, node))
+                return;
+        }
+        execute(node);
+    }
+
+    /**
+     * Runs the listeners. Subclasses overriding this method must call it.
+     */
+    @Override
+    protected void done() {
+        Listener h = LISTENERS.getAndSet(this, DONE);
+        // reverse to registration order
+        Listener reversed = null;
+        while (h != null) {
+            Listener next = h.next;
+            h.next = reversed;
+            reversed = h;
+            h = next;
+        }
+        for (Listener l = reversed; l != null; l = l.next)
+            execute(l);
+    }
+
+    private static void execute(Listener l) {
+        try {
+            l.executor.execute(l.listener);
+        } catch (RuntimeException e) {
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, e);
+        }
+    }
+
+    /**
+     * Returns a future completed with the result of applying {@code fn} to the
+     * result of this task. {@code fn} runs in the thread that completes this
+     * task, or in the caller if it already has.
+     *
+     * @param fn the function computing the derived result
+     * @param <U> the type of the derived result
+     * @return a future for the derived result, failing with the cause of this
+     *         task's failure or with the exception thrown by {@code fn}
+     */
+    public <U> ListenableFutureTask<U> thenApply(final Function<? super V, ? extends U> fn) {
+        return thenApply(fn, DIRECT);
+    }
+
+    /**
+     * Like {@link #thenApply(Function)}, but runs {@code fn} with the given
+     * executor. If the executor rejects it, the derived future fails with the
+     * rejection.
+     */
+    public <U> ListenableFutureTask<U> thenApply(final Function<? super V, ? extends U> fn,
+            final Executor executor) {
+        if (fn == null || executor == null)
+            throw new NullPointerException();
+        final ListenableFutureTask<U> derived = derived();
+        final Runnable apply = new Runnable() {
+            public void run() {
+                V v;
+                try {
+                    v = getDone();
+                } catch (Throwable failure) {
+                    derived.fail(failure);
+                    return;
+                }
+                try {
+                    derived.set(fn.apply(v));
+                } catch (Throwable e) {
+                    derived.setException(e);
+                }
+            }
+        };
+        addListener(new Runnable() {
+            public void run() {
+                try {
+                    executor.execute(apply);
+                } catch (RuntimeException e) {
+                    derived.setException(e);
+                }
+            }
+        }, DIRECT);
+        return derived;
+    }
+
+    /**
+     * Returns a future completed with the outcome of the future {@code fn}
+     * returns for the result of this task, without blocking a thread on it.
+     * {@code fn} runs in the thread that completes this task, or in the caller
+     * if it already has.
+     *
+     * @param fn the function starting the dependent computation
+     * @param <U> the type of the derived result
+     * @return a future for the derived result
+     */
+    public <U> ListenableFutureTask<U> thenCompose(
+            final Function<? super V, ? extends ListenableFutureTask<U>> fn) {
+        if (fn == null)
+            throw new NullPointerException();
+        final ListenableFutureTask<U> derived = derived();
+        addListener(new Runnable() {
+            public void run() {
+                final ListenableFutureTask<U> next;
+                try {
+                    next = fn.apply(getDone());
+                    if (next == null)
+                        throw new NullPointerException("thenCompose function returned null");
+                } catch (Throwable failure) {
+                    derived.fail(failure);
+                    return;
+                }
+                next.addListener(new Runnable() {
+                    public void run() {
+                        try {
+                            derived.set(next.getDone());
+                        } catch (Throwable failure) {
+                            derived.fail(failure);
+                        }
+                    }
+                }, DIRECT);
+            }
+        }, DIRECT);
+        return derived;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <U> ListenableFutureTask<U> derived() {
+        return new ListenableFutureTask<U>((Callable<U>) DERIVED);
+    }
+
+    /**
+     * Returns the result of this completed task, throwing the cause of its
+     * failure as is.
+     */
+    private V getDone() throws Throwable {
+        try {
+            return get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Completes this derived future from a failure of its source: cancelled if
+     * the source was, failed with the same cause otherwise.
+     */
+    private void fail(Throwable failure) {
+        if (failure instanceof CancellationException)
+            cancel(false);
+        else
+            setException(failure);
+    }
+
+    static final class Listener {
+        final Runnable listener;
+
+        final Executor executor;
+
+        Listener next;
+
+        Listener(Runnable listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.zs.juc.pool;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A point-in-time view of a {@link ThreadPoolExecutor}, returned by
+ * {@link ThreadPoolExecutor#metrics()}.
+ *
+ * <p>
+ * Pool size, queue length and rejections are always available. The latency
+ * histograms and the per-worker busy time are only recorded after
+ * {@link ThreadPoolExecutor#enableMetrics()} and are empty otherwise.
+ *
+ * <p>
+ * Queue wait is measured from the call to {@code execute} until a worker takes
+ * the task, just before {@code beforeExecute}; execution time covers
+ * {@code run} only, not the hooks. Tasks already queued when recording was
+ * enabled have no queue wait recorded.
+ *
+ * 线程池指标快照：排队等待时间、执行时间、拒绝次数以及每个工作线程的忙碌/空闲比例。
+ */
+public final class PoolMetrics {
+
+    private final boolean recording;
+
+    private final int poolSize;
+
+    private final int activeCount;
+
+    private final int queueSize;
+
+    private final long completedTaskCount;
+
+    private final long rejectedCount;
+
+    private final LatencyHistogram.Snapshot queueWait;
+
+    private final LatencyHistogram.Snapshot execution;
+
+    private final List<WorkerMetrics> workers;
+
+    PoolMetrics(boolean recording, int poolSize, int activeCount, int queueSize, long completedTaskCount,
+            long rejectedCount, LatencyHistogram.Snapshot queueWait, LatencyHistogram.Snapshot execution,
+            List<WorkerMetrics> workers) {
+        this.recording = recording;
+        this.poolSize = poolSize;
+        this.activeCount = activeCount;
+        this.queueSize = queueSize;
+        this.completedTaskCount = completedTaskCount;
+        this.rejectedCount = rejectedCount;
+        this.queueWait = queueWait;
+        this.execution = execution;
+        this.workers = Collections.unmodifiableList(workers);
+    }
+
+    /** Whether latencies and busy time were being recorded. */
+    public boolean isRecording() {
+        return recording;
+    }
+
+    public int poolSize() {
+        return poolSize;
+    }
+
+    /** Workers running a task when the snapshot was taken. */
+    public int activeCount() {
+        return activeCount;
+    }
+
+    /** Tasks waiting to run, including those in work-stealing deques. */
+    public int queueSize() {
+        return queueSize;
+    }
+
+    public long completedTaskCount() {
+        return completedTaskCount;
+    }
+
+    /** Tasks handed to the {@code RejectedExecutionHandler}. */
+    public long rejectedCount() {
+        return rejectedCount;
+    }
+
+    /** Time from submission until a worker took the task. */
+    public LatencyHistogram.Snapshot queueWait() {
+        return queueWait;
+    }
+
+    /** Time spent in the task's {@code run} method. */
+    public LatencyHistogram.Snapshot execution() {
+        return execution;
+    }
+
+    /** One entry per live worker. */
+    public List<WorkerMetrics> workers() {
+        return workers;
+    }
+
+    /**
+     * Mean busy ratio over all live workers, 0 if there are none. A value near
+     * 1 with a growing queue wait means the pool is too small; a low value with
+     * long queue waits points at the queue or the submitters instead.
+     */
+    public double busyRatio() {
+        if (workers.isEmpty())
+            return 0.0;
+        double r = 0.0;
+        for (WorkerMetrics w : workers)
+            r += w.busyRatio();
+        return r / workers.size();
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("PoolMetrics{poolSize=").append(poolSize).append(", active=")
+                .append(activeCount).append(", queued=").append(queueSize).append(", completed=")
+                .append(completedTaskCount).append(", rejected=").append(rejectedCount);
+        if (recording)
+            sb.append(", queueWait=[").append(queueWait).append("], execution=[").append(execution)
+                    .append("], busyRatio=").append(String.format("%.3f", busyRatio()));
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Busy and idle time of one worker thread, counted from when it started or
+     * from when recording was enabled, whichever is later.
+     */
+    public static final class WorkerMetrics {
+
+        private final String threadName;
+
+        private final long completedTasks;
+
+        private final long busyNanos;
+
+        private final long elapsedNanos;
+
+        WorkerMetrics(String threadName, long completedTasks, long busyNanos, long elapsedNanos) {
+            this.threadName = threadName;
+            this.completedTasks = completedTasks;
+            this.busyNanos = busyNanos;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public String threadName() {
+            return threadName;
+        }
+
+        public long completedTasks() {
+            return completedTasks;
+        }
+
+        /** Time spent running tasks, including the one in progress. */
+        public long busyNanos() {
+            return busyNanos;
+        }
+
+        /** Time spent waiting for a task (or in the hooks). */
+        public long idleNanos() {
+            return Math.max(0L, elapsedNanos - busyNanos);
+        }
+
+        /** Fraction of the measured time spent running tasks. */
+        public double busyRatio() {
+            return elapsedNanos <= 0L ? 0.0 : Math.min(1.0, (double) busyNanos / elapsedNanos);
+        }
+
+        public String toString() {
+            return threadName + "{completed=" + completedTasks + ", busyRatio=" + String.format("%.3f", busyRatio())
+                    + "}";
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.zs.juc.pool;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resizes a {@link ThreadPoolExecutor} from periodic samples of its
+ * {@link ThreadPoolExecutor#metrics() metrics}: completed tasks per second,
+ * queue length and the time tasks spend running.
+ *
+ * <p>
+ * Each sample computes, for the interval since the previous one, the
+ * throughput and the average number of threads busy running tasks (the sum of
+ * execution times divided by the interval, which by Little's law is the
+ * concurrency the offered load actually needs). The {@link Policy} turns these
+ * into a new core pool size, which is clamped to the configured bounds and
+ * applied with {@link ThreadPoolExecutor#setCorePoolSize}; the maximum pool
+ * size is raised when the target exceeds it, but never lowered. Workers above
+ * a reduced core size leave after the pool's keep-alive time.
+ *
+ * <p>
+ * Samples are taken by {@link #start()} on a private daemon thread, or by
+ * calling {@link #sample()} from an existing scheduler. The controller enables
+ * metrics on the pool and stops itself once the pool is shut down.
+ *
+ * 线程池自适应调节器：周期性采样吞吐量、队列长度和任务执行时间，使用爬山算法或利特尔法则调整核心线程数。
+ */
+public final class PoolSizeController {
+
+    /** How a sample is turned into a pool size. */
+    public enum Policy {
+        /**
+         * Moves the pool size one step at a time and keeps going in the same
+         * direction while throughput improves, reversing when it drops, in the
+         * manner of the CLR thread pool. Shrinks whenever there is no backlog
+         * and less than half the threads are busy. Suited to workloads whose
+         * best size depends on contention the controller cannot see.
+         */
+        HILL_CLIMBING,
+
+        /**
+         * Sizes the pool so the measured busy concurrency uses 85% of it,
+         * growing by at least one step while tasks are queued. Converges in one
+         * or two samples; suited to I/O-bound tasks whose running time is mostly
+         * blocking.
+         */
+        LITTLES_LAW
+    }
+
+    /** Relative throughput change treated as noise by hill climbing. */
+    private static final double TOLERANCE = 0.05;
+
+    /** Share of the pool Little's law aims to keep busy. */
+    private static final double TARGET_UTILIZATION = 0.85;
+
+    /** Below this share of busy threads, with an empty queue, the pool shrinks. */
+    private static final double SHRINK_UTILIZATION = 0.5;
+
+    private final ThreadPoolExecutor pool;
+
+    private final int minPoolSize;
+
+    private final int maxPoolSize;
+
+    private final long intervalNanos;
+
+    private final Policy policy;
+
+    // Sampling state, guarded by this
+
+    private long lastNanos;
+
+    private long lastCompleted;
+
+    private long lastExecNanos;
+
+    private int lastSize;
+
+    private int direction = 1;
+
+    private double lastThroughputSample = -1.0;
+
+    private ScheduledExecutorService scheduler;
+
+    private ScheduledFuture<?> sampling;
+
+    // Published for monitoring
+
+    private volatile double throughput;
+
+    private volatile double utilization;
+
+    /**
+     * Creates a controller for the given pool. Nothing is resized until
+     * {@link #start()} or {@link #sample()} is called.
+     *
+     * @param pool the pool to resize
+     * @param minPoolSize the smallest core pool size to set
+     * @param maxPoolSize the largest core pool size to set
+     * @param interval time between samples taken by {@link #start()}
+     * @param unit the unit of {@code interval}
+     * @param policy how samples are turned into a pool size
+     * @throws IllegalArgumentException if {@code minPoolSize < 1},
+     *             {@code maxPoolSize < minPoolSize} or {@code interval <= 0}
+     * @throws NullPointerException if {@code pool}, {@code unit} or
+     *             {@code policy} is null
+     */
+    public PoolSizeController(ThreadPoolExecutor pool, int minPoolSize, int maxPoolSize, long interval,
+            TimeUnit unit, Policy policy) {
+        if (pool == null || unit == null || policy == null)
+            throw new NullPointerException();
+        if (minPoolSize < 1 || maxPoolSize < minPoolSize || interval <= 0)
+            throw new IllegalArgumentException();
+        this.pool = pool;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.intervalNanos = unit.toNanos(interval);
+        this.policy = policy;
+        pool.enableMetrics();
+    }
+
+    /**
+     * Starts sampling every interval on a daemon thread. Has no effect if
+     * already started.
+     */
+    public synchronized void start() {
+        if (sampling != null)
+            return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "pool-size-controller");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        sampling = scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                sample();
+            }
+        }, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops sampling started by {@link #start()}. The pool keeps its current
+     * size.
+     */
+    public synchronized void stop() {
+        if (sampling != null) {
+            sampling.cancel(false);
+            scheduler.shutdown();
+            sampling = null;
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Takes one sample and resizes the pool if the policy asks for it. The
+     * first call only records a baseline.
+     *
+     * @return the core pool size after this sample
+     */
+    public synchronized int sample() {
+        if (pool.isShutdown()) {
+            stop();
+            return pool.getCorePoolSize();
+        }
+        long now = System.nanoTime();
+        PoolMetrics m = pool.metrics();
+        long completed = m.completedTaskCount();
+        long execNanos = m.execution().sum();
+        int size = pool.getCorePoolSize();
+        int target = size;
+        if (lastNanos != 0L && now != lastNanos) {
+            long elapsed = now - lastNanos;
+            double x = (completed - lastCompleted) * 1e9 / elapsed;
+            double busy = (double) (execNanos - lastExecNanos) / elapsed;
+            double u = size == 0 ? 1.0 : busy / size;
+            target = (policy == Policy.HILL_CLIMBING) ? climb(size, x, m.queueSize(), u)
+                    : littlesLaw(size, busy, m.queueSize());
+            target = Math.max(minPoolSize, Math.min(maxPoolSize, target));
+            if (target != size)
+                resize(target);
+            lastThroughputSample = x;
+            throughput = x;
+            utilization = u;
+        }
+        lastNanos = now;
+        lastCompleted = completed;
+        lastExecNanos = execNanos;
+        lastSize = size;
+        return target;
+    }
+
+    private int climb(int size, double x, int queued, double u) {
+        int step = Math.max(1, size >>> 3);
+        if (queued == 0 && u < SHRINK_UTILIZATION) {
+            direction = -1;
+            return size - step;
+        }
+        if (size != lastSize && lastThroughputSample >= 0.0) {
+            // judge the move made by the previous sample
+            if (x > lastThroughputSample * (1.0 + TOLERANCE))
+                return size + direction * step;
+            if (x < lastThroughputSample * (1.0 - TOLERANCE)) {
+                direction = -direction;
+                return size + direction * step;
+            }
+            return size; // no measurable effect, settle here
+        }
+        if (queued > 0) {
+            direction = 1;
+            return size + step;
+        }
+        return size;
+    }
+
+    private static int littlesLaw(int size, double busy, int queued) {
+        int target = (int) Math.ceil(busy / TARGET_UTILIZATION);
+        if (queued > 0 && target <= size)
+            target = size + Math.max(1, size >>> 3); // throughput is capped by the pool, so busy underestimates
+        return Math.max(target, size >>> 1); // shrink at most by half per sample
+    }
+
+    private void resize(int target) {
+        if (target > pool.getMaximumPoolSize())
+            pool.setMaximumPoolSize(target);
+        pool.setCorePoolSize(target);
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /** Completed tasks per second over the last sampled interval. */
+    public double lastThroughput() {
+        return throughput;
+    }
+
+    /** Average share of the core threads busy running tasks over the last sampled interval. */
+    public double lastUtilization() {
+        return utilization;
+    }
+
+    public String toString() {
+        return "PoolSizeController{policy=" + policy + ", bounds=[" + minPoolSize + ", " + maxPoolSize
+                + "], corePoolSize=" + pool.getCorePoolSize() + ", throughput=" + (long) throughput
+                + "/s, utilization=" + String.format("%.2f", utilization) + "}";
+    }
+}
@@ -0,0 +1,271 @@
+package com.zs.juc.pool;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link ThreadPoolExecutor} whose queue runs the most urgent task first and
+ * which does not run tasks that missed their deadline.
+ *
+ * <p>
+ * Every task is a {@link FutureTask} carrying a priority and, optionally, a
+ * deadline by which it should start. The queue orders tasks by priority,
+ * higher first, then by deadline, earliest first, with tasks without a
+ * deadline last, then in submission order. Tasks given to {@code submit},
+ * {@code invokeAll} and the like get {@link FutureTask#NORM_PRIORITY} and no
+ * deadline; use {@link #submit(Callable, int, long, TimeUnit)} or
+ * {@link #execute} with a {@code FutureTask} built with a priority and a
+ * deadline. Like {@code ScheduledThreadPoolExecutor}, {@link #execute} wraps
+ * any other {@code Runnable} in a {@code FutureTask}, so exceptions it throws
+ * are captured rather than reaching {@link #afterExecute}, and
+ * {@link #remove} no longer finds it.
+ *
+ * <p>
+ * When a worker takes a task whose deadline has passed, the task is not run:
+ * it is handed to the {@link RejectedExecutionHandler}, which may cancel it,
+ * log it or reroute it to another executor; what becomes of the task is up to
+ * the handler, so one that drops it should cancel it, or callers waiting in
+ * {@code get} wait forever. If the handler throws, as the default
+ * {@link AbortPolicy} does, the task is cancelled, so that those callers see a
+ * {@link java.util.concurrent.CancellationException}, and a
+ * {@link RejectedExecutionException} is swallowed since there is no caller to
+ * receive it. Under overload the backlog thus sheds stale work instead of
+ * spending threads on answers nobody waits for any more.
+ * {@link DiscardOldestPolicy} must not be used: it would discard the most
+ * urgent task in favour of the expired one. Deadlines are only checked when a
+ * task is taken from the queue; a task handed directly to a new worker always
+ * runs.
+ *
+ * <p>
+ * The queue is unbounded, so the pool never grows beyond
+ * {@code corePoolSize}, as with {@code ScheduledThreadPoolExecutor}.
+ *
+ * 按优先级和截止时间排序的线程池：高优先级先执行，出队时已过截止时间的任务交给拒绝策略并取消。
+ */
+public class PriorityThreadPoolExecutor extends ThreadPoolExecutor {
+
+    /**
+     * Queue order: priority descending, deadline ascending with no deadline
+     * last, then sequence number. Elements that are not a FutureTask, only
+     * found if the queue is fed directly, come after all tasks and are ordered
+     * among themselves by a sequence number drawn on first comparison.
+     */
+    static final Comparator<Runnable> ORDER = new Comparator<Runnable>() {
+        public int compare(Runnable x, Runnable y) {
+            FutureTask<?> a = task(x), b = task(y);
+            if (a == null || b == null) {
+                if (a != null)
+                    return -1;
+                if (b != null)
+                    return 1;
+                return Long.compare(foreignSequence(x), foreignSequence(y));
+            }
+            if (a == b)
+                return 0;
+            if (a.getPriority() != b.getPriority())
+                return (a.getPriority() > b.getPriority()) ? -1 : 1;
+            if (a.hasDeadline() != b.hasDeadline())
+                return a.hasDeadline() ? -1 : 1;
+            if (a.hasDeadline()) {
+                long d = a.deadlineNanos() - b.deadlineNanos();
+                if (d != 0L)
+                    return (d < 0L) ? -1 : 1;
+            }
+            return (a.sequenceNumber < b.sequenceNumber) ? -1 : (a.sequenceNumber == b.sequenceNumber) ? 0 : 1;
+        }
+    };
+
+    /**
+     * Sequence numbers of queued elements that are not a FutureTask, held
+     * weakly so that they go once the element is gone. Guarded by itself.
+     */
+    private static final Map<Runnable, Long> FOREIGN_SEQUENCES = new WeakHashMap<Runnable, Long>();
+
+    private static final AtomicLong FOREIGN_SEQUENCER = new AtomicLong();
+
+    private static long foreignSequence(Runnable r) {
+        synchronized (FOREIGN_SEQUENCES) {
+            Long s = FOREIGN_SEQUENCES.get(r);
+            if (s == null)
+                FOREIGN_SEQUENCES.put(r, s = FOREIGN_SEQUENCER.getAndIncrement());
+            return s;
+        }
+    }
+
+    private static final int INITIAL_QUEUE_CAPACITY = 16;
+
+    /** Assigns FIFO order among tasks of equal priority and deadline. */
+    private final AtomicLong sequencer = new AtomicLong();
+
+    private final LongAdder expiredCount = new LongAdder();
+
+    public PriorityThreadPoolExecutor(int corePoolSize) {
+        super(corePoolSize, corePoolSize, 0L, TimeUnit.NANOSECONDS, newQueue());
+    }
+
+    public PriorityThreadPoolExecutor(int corePoolSize, ThreadFactory threadFactory) {
+        super(corePoolSize, corePoolSize, 0L, TimeUnit.NANOSECONDS, newQueue(), threadFactory);
+    }
+
+    public PriorityThreadPoolExecutor(int corePoolSize, RejectedExecutionHandler handler) {
+        super(corePoolSize, corePoolSize, 0L, TimeUnit.NANOSECONDS, newQueue(), handler);
+    }
+
+    /**
+     * @param corePoolSize the number of threads
+     * @param threadFactory the factory to use when the executor creates a new
+     *            thread
+     * @param handler receives tasks rejected on submission and tasks that
+     *            expired in the queue
+     * @throws IllegalArgumentException if {@code corePoolSize <= 0}
+     * @throws NullPointerException if {@code threadFactory} or {@code handler}
+     *             is null
+     */
+    public PriorityThreadPoolExecutor(int corePoolSize, ThreadFactory threadFactory,
+            RejectedExecutionHandler handler) {
+        super(corePoolSize, corePoolSize, 0L, TimeUnit.NANOSECONDS, newQueue(), threadFactory, handler);
+    }
+
+    private static PriorityBlockingQueue<Runnable> newQueue() {
+        return new PriorityBlockingQueue<Runnable>(INITIAL_QUEUE_CAPACITY, ORDER);
+    }
+
+    private static FutureTask<?> task(Runnable r) {
+        r = unwrap(r);
+        return (r instanceof FutureTask) ? (FutureTask<?>) r : null;
+    }
+
+    /**
+     * Wraps {@code command} in a {@code FutureTask} unless it is one, and
+     * stamps its submission order.
+     */
+    private Runnable prepare(Runnable command) {
+        if (command == null)
+            throw new NullPointerException();
+        FutureTask<?> t = (command instanceof FutureTask) ? (FutureTask<?>) command
+                : new FutureTask<Void>(command, null);
+        t.sequenceNumber = sequencer.getAndIncrement();
+        return t;
+    }
+
+    /**
+     * Executes the command at the priority and deadline it carries if it is a
+     * {@link FutureTask}, otherwise at {@link FutureTask#NORM_PRIORITY} with no
+     * deadline.
+     */
+    @Override
+    public void execute(Runnable command) {
+        super.execute(prepare(command));
+    }
+
+    @Override
+    public void executeBatch(Collection<? extends Runnable> commands) {
+        if (commands == null)
+            throw new NullPointerException();
+        Runnable[] tasks = commands.toArray(new Runnable[0]);
+        for (int i = 0; i < tasks.length; i++)
+            tasks[i] = prepare(tasks[i]);
+        super.executeBatch(Arrays.asList(tasks));
+    }
+
+    /**
+     * Submits a task with the given priority and no deadline.
+     *
+     * @param task the task to submit
+     * @param priority the priority; higher values run first
+     * @return a Future representing pending completion of the task
+     * @throws RejectedExecutionException if the task cannot be scheduled for
+     *             execution
+     * @throws NullPointerException if the task is null
+     */
+    public <T> Future<T> submit(Callable<T> task, int priority) {
+        FutureTask<T> f = new FutureTask<T>(task, priority);
+        execute(f);
+        return f;
+    }
+
+    /**
+     * Submits a task with the given priority that must start within the given
+     * time, or be handed to the rejection handler instead.
+     *
+     * @param task the task to submit
+     * @param priority the priority; higher values run first
+     * @param timeout the time from now by which the task must start
+     * @param unit the unit of {@code timeout}
+     * @return a Future representing pending completion of the task; cancelled
+     *         if the task expires
+     * @throws RejectedExecutionException if the task cannot be scheduled for
+     *             execution
+     * @throws NullPointerException if the task or unit is null
+     */
+    public <T> Future<T> submit(Callable<T> task, int priority, long timeout, TimeUnit unit) {
+        FutureTask<T> f = new FutureTask<T>(task, priority, timeout, unit);
+        execute(f);
+        return f;
+    }
+
+    /**
+     * Submits a task with the given priority that must start within the given
+     * time, or be handed to the rejection handler instead.
+     *
+     * @see #submit(Callable, int, long, TimeUnit)
+     */
+    public Future<?> submit(Runnable task, int priority, long timeout, TimeUnit unit) {
+        FutureTask<Void> f = new FutureTask<Void>(task, null, priority, timeout, unit);
+        execute(f);
+        return f;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new FutureTask<T>(runnable, value);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new FutureTask<T>(callable);
+    }
+
+    /**
+     * Hands tasks whose deadline has passed to the rejection handler instead of
+     * letting a worker run them.
+     */
+    @Override
+    boolean admit(Runnable r) {
+        FutureTask<?> t = task(r);
+        if (t == null || !t.isExpired())
+            return true;
+        expiredCount.increment();
+        try {
+            reject(t);
+        } catch (RejectedExecutionException ignore) {
+            // AbortPolicy: nobody to throw to
+            t.cancel(false);
+        } catch (RuntimeException | Error e) {
+            t.cancel(false);
+            throw e;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of tasks that were not run because their deadline had
+     * passed when a worker took them.
+     */
+    public long getExpiredCount() {
+        return expiredCount.sum();
+    }
+}
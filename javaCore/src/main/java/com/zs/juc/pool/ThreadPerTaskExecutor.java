@@ -0,0 +1,197 @@
+package com.zs.juc.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An executor that starts a new thread for every task, created by
+ * {@link Executors#newThreadPerTaskExecutor},
+ * {@link Executors#newVirtualThreadPerTaskExecutor} and
+ * {@link Executors#newBoundedVirtualThreadExecutor}. With virtual threads there
+ * is nothing worth pooling: a blocked task parks its virtual thread and frees
+ * the carrier, so thousands of blocking calls can be in flight at once.
+ *
+ * <p>
+ * When bounded, every task still gets its own thread at once, but the thread
+ * waits for a permit of a fair {@link Semaphore} before running the task, so
+ * at most {@code maxConcurrency} tasks run at a time (typically to protect a
+ * downstream resource) while callers of {@code execute} never block.
+ *
+ * <p>
+ * {@link #shutdownNow} interrupts every thread and returns the tasks that
+ * were still waiting for a permit, which then never run. A waiting task
+ * abandoned because its thread was interrupted otherwise is cancelled if it is
+ * a {@link Future}, so that callers of {@code get} do not wait forever.
+ *
+ * 每个任务一个线程的执行器，配合虚拟线程使用；可选用信号量限制同时运行的任务数。
+ */
+final class ThreadPerTaskExecutor extends AbstractExecutorService {
+
+    private static final int RUNNING = 0;
+
+    private static final int SHUTDOWN = 1;
+
+    private static final int TERMINATED = 2;
+
+    private final ThreadFactory factory;
+
+    /** Caps concurrently running tasks; null if unbounded. */
+    private final Semaphore permits;
+
+    /** Threads started and not yet finished. */
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    /** Tasks whose thread is waiting for a permit; drained by shutdownNow. */
+    private final Set<TaskRunner> waiting = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+
+    private final CountDownLatch termination = new CountDownLatch(1);
+
+    /**
+     * @param factory creates one thread per task
+     * @param maxConcurrency the most tasks running at once, 0 for no limit
+     */
+    ThreadPerTaskExecutor(ThreadFactory factory, int maxConcurrency) {
+        if (factory == null)
+            throw new NullPointerException();
+        if (maxConcurrency < 0)
+            throw new IllegalArgumentException();
+        this.factory = factory;
+        this.permits = (maxConcurrency == 0) ? null : new Semaphore(maxConcurrency, true);
+    }
+
+    public void execute(Runnable command) {
+        if (command == null)
+            throw new NullPointerException();
+        Thread t = factory.newThread(new TaskRunner(command));
+        if (t == null)
+            throw new RejectedExecutionException("thread factory returned null");
+        // Register before checking the state, so that a shutdown racing with
+        // us either makes us reject or waits for t.
+        threads.add(t);
+        if (state.get() != RUNNING) {
+            threads.remove(t);
+            tryTerminate();
+            throw new RejectedExecutionException("executor is shut down");
+        }
+        try {
+            t.start();
+        } catch (Throwable e) {
+            threads.remove(t);
+            tryTerminate();
+            throw new RejectedExecutionException(e);
+        }
+    }
+
+    private void tryTerminate() {
+        if (state.get() == SHUTDOWN && threads.isEmpty() && state.compareAndSet(SHUTDOWN, TERMINATED))
+            termination.countDown();
+    }
+
+    public void shutdown() {
+        state.compareAndSet(RUNNING, SHUTDOWN);
+        tryTerminate();
+    }
+
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for (TaskRunner r : waiting) {
+            if (r.claim())
+                tasks.add(r.task);
+        }
+        for (Thread t : threads)
+            t.interrupt();
+        return tasks;
+    }
+
+    public boolean isShutdown() {
+        return state.get() != RUNNING;
+    }
+
+    public boolean isTerminated() {
+        return state.get() == TERMINATED;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return termination.await(timeout, unit);
+    }
+
+    /**
+     * Number of tasks started and not finished, including those waiting for a
+     * permit.
+     */
+    int threadCount() {
+        return threads.size();
+    }
+
+    public String toString() {
+        int s = state.get();
+        return super.toString() + "[" + (s == RUNNING ? "Running" : s == SHUTDOWN ? "Shutting down" : "Terminated")
+                + ", threads = " + threads.size()
+                + (permits == null ? "" : ", waiting for a permit = " + permits.getQueueLength()) + "]";
+    }
+
+    /**
+     * Runs a task in its own thread. When bounded, the task is claimed either
+     * by the runner once it holds a permit, or by shutdownNow, which returns
+     * it instead; the inherited flag is set by whoever claimed it.
+     */
+    @SuppressWarnings("serial")
+    private final class TaskRunner extends AtomicBoolean implements Runnable {
+        final Runnable task;
+
+        TaskRunner(Runnable task) {
+            this.task = task;
+        }
+
+        boolean claim() {
+            return compareAndSet(false, true);
+        }
+
+        public void run() {
+            try {
+                if (permits == null)
+                    task.run();
+                else {
+                    waiting.add(this);
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        // unless shutdownNow took the task, nobody will run it
+                        if (claim() && task instanceof Future)
+                            ((Future<?>) task).cancel(false);
+                        return;
+                    } finally {
+                        waiting.remove(this);
+                    }
+                    if (!claim()) { // returned by shutdownNow
+                        permits.release();
+                        return;
+                    }
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                }
+            } finally {
+                threads.remove(Thread.currentThread());
+                if (state.get() != RUNNING)
+                    tryTerminate();
+            }
+        }
+    }
+}
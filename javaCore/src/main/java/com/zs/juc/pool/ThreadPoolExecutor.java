@@ -1,27 +1,38 @@
 package com.zs.juc.pool;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.AbstractQueuedSynchronizer;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
+import com.zs.juc.queue.BulkBlockingQueue;
+
 /**
  * An {@link ExecutorService} that executes each submitted task using one of
  * possibly several pooled threads, normally configured using {@link Executors}
@@ -246,6 +257,39 @@ import java.util.concurrent.locks.ReentrantLock;
  * {@link #purge} are available to assist in storage reclamation when large
  * numbers of queued tasks become cancelled.</dd>
  *
+ * <dt>Work stealing</dt>
+ *
+ * <dd>A pool constructed with {@code workStealing} set gives every worker a
+ * local deque. A task submitted by a worker thread of the pool itself is
+ * pushed onto that worker's deque instead of the shared work queue, as long as
+ * no other worker is idle, the deque holds fewer than 256 tasks, and the work
+ * queue would have accepted the task. Otherwise the task goes the usual way,
+ * so that it may start a non-core worker or be rejected; with a bounded work
+ * queue, tasks held in local deques count against its capacity. The owner
+ * takes its newest task first, and a worker that finds both its own deque and
+ * the work queue empty steals the oldest task of a random peer before blocking.
+ * Submissions from outside the pool always go through the work queue, and the
+ * core/maximum pool size, keep-alive and rejection rules are unchanged. Tasks
+ * in local deques are not visible through {@link #getQueue()}, but are
+ * counted, drained by {@link #shutdownNow} and reached by
+ * {@link #remove(Runnable)} and {@link #purge}. No ordering is guaranteed
+ * between tasks submitted from different threads.
+ * 工作窃取模式：工作线程自己提交的任务放入本地双端队列，空闲线程从其他线程的队列头部窃取任务，减少共享队列的锁竞争。</dd>
+ *
+ * <dt>Metrics</dt>
+ *
+ * <dd>{@link #metrics()} returns a {@link PoolMetrics} snapshot that can be
+ * taken at any time without pausing the workers. After
+ * {@link #enableMetrics()} it includes histograms of the time tasks wait in
+ * the queue and the time they run, and the share of time each worker spends
+ * running tasks. While recording, each submitted task is wrapped together with
+ * its submission time before it is queued, so {@link #getQueue()} shows the
+ * wrappers; the hooks, {@link #remove(Runnable)}, {@link #purge} and
+ * {@link #shutdownNow} still see the original tasks. Queues that order tasks by
+ * their own type, such as a {@code PriorityBlockingQueue} of
+ * {@code Comparable} tasks, cannot be used with recording enabled.
+ * 指标采集：排队等待时间、执行时间、拒绝次数和线程忙碌比例，默认关闭。</dd>
+ *
  * <dt>Finalization</dt>
  *
  * <dd>A pool that is no longer referenced in a program <em>AND</em> has no
@@ -544,6 +588,66 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      */
     private volatile int maximumPoolSize;
 
+    /**
+     * Whether workers keep the tasks they submit in a local deque that idle
+     * peers steal from. Fixed at construction.
+     */
+    private final boolean workStealing;
+
+    /**
+     * The worker running on the current thread, set by runWorker. Only used in
+     * work-stealing mode; null otherwise.
+     */
+    private final ThreadLocal<Worker> currentWorker;
+
+    /**
+     * Copy of the workers set scanned by stealing workers without taking
+     * mainLock. Replaced under mainLock whenever the set changes, and only
+     * maintained in work-stealing mode.
+     */
+    private volatile Worker[] stealTargets = new Worker[0];
+
+    /**
+     * Number of workers in work-stealing mode that have announced they are
+     * about to block on workQueue. A worker only keeps a submitted task local
+     * while this is zero, see pushLocal.
+     */
+    private final AtomicInteger idleWorkers = new AtomicInteger();
+
+    /**
+     * Tasks left in the local deque of a worker that exited. Polled before the
+     * deques of live peers.
+     */
+    private final ConcurrentLinkedQueue<Runnable> orphanedTasks = new ConcurrentLinkedQueue<Runnable>();
+
+    /**
+     * Whether workQueue had a capacity bound when the pool was constructed.
+     * Tasks held locally are only counted against the queue when it does.
+     */
+    private final boolean boundedQueue;
+
+    /**
+     * Number of tasks in local deques or orphaned, maintained only in
+     * work-stealing mode with a bounded workQueue, so that a submission can
+     * check the capacity left without scanning every deque. Incremented
+     * before a task is pushed and decremented after it is taken out, so it
+     * may briefly run ahead of the deques but never behind them.
+     */
+    private final AtomicInteger localTasksHeld = new AtomicInteger();
+
+    /**
+     * Local deque length at which a worker's submissions go to workQueue
+     * instead, so that a single producer cannot hide an unbounded backlog from
+     * the queue's capacity.
+     */
+    private static final int LOCAL_QUEUE_CAPACITY = 256;
+
+    /** Latency histograms and counters; null until {@link #enableMetrics}. */
+    private volatile TaskMetrics metrics;
+
+    /** Tasks handed to the rejected execution handler. */
+    private final LongAdder rejectedCount = new LongAdder();
+
     /**
      * The default rejected execution handler
      */
@@ -601,6 +705,24 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         /** Per-thread task counter */
         volatile long completedTasks;
 
+        /**
+         * Tasks submitted by this worker's thread, in work-stealing mode. The
+         * owner takes from the tail, thieves from the head. Null otherwise.
+         */
+        final LinkedBlockingDeque<Runnable> localTasks;
+
+        /** System.nanoTime() when runWorker started. */
+        volatile long startNanos;
+
+        /**
+         * Nanoseconds spent running tasks while metrics were enabled. Written
+         * only by the worker thread.
+         */
+        volatile long busyNanos;
+
+        /** Start of the timed task in progress, 0 if none. */
+        volatile long taskStartNanos;
+
         /**
          * Creates with given first task and thread from ThreadFactory.
          * @param firstTask the first task (null if none)
@@ -608,6 +730,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         Worker(Runnable firstTask) {
             setState(-1); // inhibit interrupts until runWorker
             this.firstTask = firstTask;
+            this.localTasks = workStealing ? new LinkedBlockingDeque<Runnable>() : null;
             this.thread = getThreadFactory().newThread(this);
         }
 
@@ -655,6 +778,19 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             return isHeldExclusively();
         }
 
+        long beginTask() {
+            long now = System.nanoTime();
+            taskStartNanos = now;
+            return now;
+        }
+
+        long endTask(long start) {
+            long d = System.nanoTime() - start;
+            taskStartNanos = 0L;
+            busyNanos += d;
+            return d;
+        }
+
         void interruptIfStarted() {
             Thread t;
             if (getState() >= 0 && (t = thread) != null && !t.isInterrupted()) {
@@ -697,7 +833,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
     final void tryTerminate() {
         for (;;) {
             int c = ctl.get();
-            if (isRunning(c) || runStateAtLeast(c, TIDYING) || (runStateOf(c) == SHUTDOWN && !workQueue.isEmpty()))
+            if (isRunning(c) || runStateAtLeast(c, TIDYING) || (runStateOf(c) == SHUTDOWN && !queuesEmpty()))
                 return;
             if (workerCountOf(c) != 0) { // Eligible to terminate
                 interruptIdleWorkers(ONLY_ONE);
@@ -824,6 +960,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * Package-protected for use by ScheduledThreadPoolExecutor.
      */
     final void reject(Runnable command) {
+        rejectedCount.increment();
         handler.rejectedExecution(command, this);
     }
 
@@ -846,6 +983,153 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         return rs == RUNNING || (rs == SHUTDOWN && shutdownOK);
     }
 
+    /**
+     * Returns true if the work queue and, in work-stealing mode, the local
+     * deques and the orphaned tasks are all empty. Used wherever the original
+     * code checks workQueue.isEmpty() to decide on termination.
+     */
+    private boolean queuesEmpty() {
+        if (!workQueue.isEmpty())
+            return false;
+        if (workStealing) {
+            if (!orphanedTasks.isEmpty())
+                return false;
+            for (Worker w : stealTargets)
+                if (!w.localTasks.isEmpty())
+                    return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of tasks held outside the work queue: in local deques
+     * or orphaned. Always 0 unless work-stealing.
+     */
+    private int localTaskCount() {
+        if (!workStealing)
+            return 0;
+        int n = orphanedTasks.size();
+        for (Worker w : stealTargets)
+            n += w.localTasks.size();
+        return n;
+    }
+
+    /**
+     * Republishes stealTargets after a change to workers. Call only while
+     * holding mainLock.
+     */
+    private void updateStealTargets() {
+        if (workStealing)
+            stealTargets = workers.toArray(new Worker[0]);
+    }
+
+    /**
+     * Tries to keep a task submitted by worker w in its local deque. Fails if
+     * another worker is idle, because that worker is blocked on workQueue and
+     * would not see the task, if the deque is full, or if workQueue would not
+     * have accepted the task: with a bounded queue, local tasks count against
+     * its capacity, and a full queue (always the case for a SynchronousQueue)
+     * must still lead execute to add a worker or reject.
+     *
+     * A worker increments idleWorkers before its last steal scan (see
+     * awaitTask), and this method re-reads idleWorkers after the push, so
+     * either the scan sees the task or we see the idle worker and take the
+     * task back for workQueue. If it was stolen in between, it was handled.
+     */
+    private boolean pushLocal(Worker w, Runnable command) {
+        LinkedBlockingDeque<Runnable> q = w.localTasks;
+        if (idleWorkers.get() != 0 || q.size() >= LOCAL_QUEUE_CAPACITY)
+            return false;
+        if (boundedQueue && localTasksHeld.incrementAndGet() > workQueue.remainingCapacity()) {
+            localTasksHeld.decrementAndGet();
+            return false;
+        }
+        q.offerLast(command);
+        if (idleWorkers.get() == 0 || !q.removeLastOccurrence(command))
+            return true;
+        localTasksTaken(1);
+        return false;
+    }
+
+    /**
+     * Records that n tasks were taken out of local deques or orphanedTasks.
+     */
+    private void localTasksTaken(int n) {
+        if (boundedQueue && n != 0)
+            localTasksHeld.addAndGet(-n);
+    }
+
+    /**
+     * Returns how many more tasks workQueue and the local deques may hold
+     * together: in work-stealing mode, tasks held locally count against the
+     * capacity of a bounded workQueue. Integer.MAX_VALUE if unbounded or not
+     * in work-stealing mode. Approximate under concurrent submissions, like
+     * any capacity check made before an offer.
+     */
+    private int queueRoom() {
+        if (!workStealing || !boundedQueue)
+            return Integer.MAX_VALUE;
+        return workQueue.remainingCapacity() - localTasksHeld.get();
+    }
+
+    /**
+     * Whether tasks held in local deques take up what is left of the capacity
+     * of a bounded workQueue, so that execute must treat the queue as full
+     * even though it would accept the task.
+     */
+    private boolean localTasksFillQueue() {
+        if (!workStealing || !boundedQueue)
+            return false;
+        int n = localTasksHeld.get();
+        return n > 0 && workQueue.remainingCapacity() <= n;
+    }
+
+    /**
+     * Takes the oldest orphaned task, or else the oldest task from the local
+     * deque of some other worker, starting at a random one.
+     *
+     * @return the stolen task, or null if none was found
+     */
+    private Runnable steal(Worker self) {
+        Runnable r = orphanedTasks.poll();
+        if (r != null) {
+            localTasksTaken(1);
+            return r;
+        }
+        Worker[] ws = stealTargets;
+        int n = ws.length;
+        if (n > 1) {
+            int i = ThreadLocalRandom.current().nextInt(n);
+            for (int k = 0; k < n; k++) {
+                Worker v = ws[i];
+                if (v != self && (r = v.localTasks.pollFirst()) != null) {
+                    localTasksTaken(1);
+                    return r;
+                }
+                if (++i == n)
+                    i = 0;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Blocking or timed wait on workQueue for a work-stealing worker whose
+     * local deque and workQueue were empty. Announces the worker as idle first
+     * and then rescans the peers, see pushLocal.
+     */
+    private Runnable awaitTask(Worker w, boolean timed) throws InterruptedException {
+        idleWorkers.incrementAndGet();
+        try {
+            Runnable r = steal(w);
+            if (r == null)
+                r = timed ? workQueue.poll(keepAliveTime, TimeUnit.NANOSECONDS) : workQueue.take();
+            return r;
+        } finally {
+            idleWorkers.decrementAndGet();
+        }
+    }
+
     /**
      * Drains the task queue into a new list, normally using drainTo. But if the
      * queue is a DelayQueue or any other kind of queue for which poll or
@@ -861,6 +1145,17 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                     taskList.add(r);
             }
         }
+        if (workStealing) {
+            int n = taskList.size();
+            for (Worker w : workers)
+                w.localTasks.drainTo(taskList);
+            Runnable r;
+            while ((r = orphanedTasks.poll()) != null)
+                taskList.add(r);
+            localTasksTaken(taskList.size() - n);
+        }
+        for (int i = 0; i < taskList.size(); i++)
+            taskList.set(i, unwrap(taskList.get(i)));
         return taskList;
     }
 
@@ -899,7 +1194,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
 
             // Check if queue empty only if necessary.
             // 池处于非运行状态 && ...
-            if (rs >= SHUTDOWN && !(rs == SHUTDOWN && firstTask == null && !workQueue.isEmpty()))
+            if (rs >= SHUTDOWN && !(rs == SHUTDOWN && firstTask == null && !queuesEmpty()))
                 return false;
 
             for (;;) {
@@ -935,6 +1230,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                         if (t.isAlive()) // precheck that t is startable
                             throw new IllegalThreadStateException();
                         workers.add(w);
+                        updateStealTargets();
                         int s = workers.size();
                         if (s > largestPoolSize)
                             largestPoolSize = s;
@@ -964,8 +1260,8 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         final ReentrantLock mainLock = this.mainLock;
         mainLock.lock();
         try {
-            if (w != null)
-                workers.remove(w);
+            if (w != null && workers.remove(w))
+                updateStealTargets();
             decrementWorkerCount();
             tryTerminate();
         } finally {
@@ -993,7 +1289,14 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         mainLock.lock();
         try {
             completedTaskCount += w.completedTasks;
+            if (workStealing) {
+                // hand leftovers to the peers before w stops being scanned
+                Runnable r;
+                while ((r = w.localTasks.pollFirst()) != null)
+                    orphanedTasks.offer(r);
+            }
             workers.remove(w);
+            updateStealTargets();
         } finally {
             mainLock.unlock();
         }
@@ -1004,7 +1307,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         if (runStateLessThan(c, STOP)) {
             if (!completedAbruptly) {
                 int min = allowCoreThreadTimeOut ? 0 : corePoolSize;
-                if (min == 0 && !workQueue.isEmpty())
+                if (min == 0 && !queuesEmpty())
                     min = 1;
                 if (workerCountOf(c) >= min)
                     return; // replacement not needed
@@ -1024,10 +1327,14 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * and after the timed wait, and if the queue is non-empty, this worker is
      * not the last thread in the pool.
      *
+     * In work-stealing mode the worker's own deque, workQueue and its peers'
+     * deques are polled in that order before waiting.
+     *
+     * @param w the worker
      * @return task, or null if the worker must exit, in which case workerCount
      *         is decremented
      */
-    private Runnable getTask() {
+    private Runnable getTask(Worker w) {
         boolean timedOut = false; // Did the last poll() time out?
 
         for (;;) {
@@ -1035,7 +1342,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             int rs = runStateOf(c);
 
             // Check if queue empty only if necessary.
-            if (rs >= SHUTDOWN && (rs >= STOP || workQueue.isEmpty())) {
+            if (rs >= SHUTDOWN && (rs >= STOP || queuesEmpty())) {
                 decrementWorkerCount();
                 return null;
             }
@@ -1045,17 +1352,27 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             // Are workers subject to culling?
             boolean timed = allowCoreThreadTimeOut || wc > corePoolSize;
 
-            if ((wc > maximumPoolSize || (timed && timedOut)) && (wc > 1 || workQueue.isEmpty())) {
+            if ((wc > maximumPoolSize || (timed && timedOut)) && (wc > 1 || queuesEmpty())) {
                 if (compareAndDecrementWorkerCount(c))
                     return null;
                 continue;
             }
 
             try {//从队列头部获取元素
-                Runnable r = timed ? workQueue.poll(keepAliveTime, TimeUnit.NANOSECONDS) : workQueue.take();
-                if (r != null)
+                Runnable r;
+                if (workStealing) {
+                    if ((r = w.localTasks.pollLast()) != null)
+                        localTasksTaken(1);
+                    else if ((r = workQueue.poll()) == null && (r = steal(w)) == null)
+                        r = awaitTask(w, timed);
+                } else
+                    r = timed ? workQueue.poll(keepAliveTime, TimeUnit.NANOSECONDS) : workQueue.take();
+                if (r == null)
+                    timedOut = true;
+                else if (admit(r))
                     return r;
-           nm     timedOut = true;
+                else
+                    timedOut = false; // dropped, not idle
             } catch (InterruptedException retry) {
                 timedOut = false;
             }
@@ -1107,9 +1424,12 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         w.firstTask = null;
       //默认state==-1，为-1的时候阻塞线程中断。此次将-1设置为0,运行线程在执行期间响应中断ts
         w.unlock(); 
+        w.startNanos = System.nanoTime();
+        if (workStealing)
+            currentWorker.set(w);
         boolean completedAbruptly = true;
         try {
-            while (task != null || (task = getTask()) != null) {//从队列中循环获取任务
+            while (task != null || (task = getTask(w)) != null) {//从队列中循环获取任务
                 w.lock();
                 // If pool is stopping, ensure thread is interrupted;
                 // if not, ensure thread is not interrupted. This
@@ -1119,10 +1439,18 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                         && !wt.isInterrupted())
                     wt.interrupt();
                 try {
-                    beforeExecute(wt, task);//hook befoer TaksExecute
+                    TaskMetrics m = metrics;
+                    Runnable r = task;
+                    if (task instanceof TimedTask) { // only created once metrics is set
+                        TimedTask t = (TimedTask) task;
+                        r = t.task;
+                        m.queueWait.record(System.nanoTime() - t.submitNanos);
+                    }
+                    beforeExecute(wt, r);//hook befoer TaksExecute
                     Throwable thrown = null;
+                    long started = (m != null) ? w.beginTask() : 0L;
                     try {
-                        task.run();//FutureTask.run—>Callable.run——>Runnable.run
+                        r.run();//FutureTask.run—>Callable.run——>Runnable.run
                     } catch (RuntimeException x) {
                         thrown = x;
                         throw x;
@@ -1133,7 +1461,9 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                         thrown = x;
                         throw new Error(x);
                     } finally {
-                        afterExecute(task, thrown);
+                        if (m != null)
+                            m.execution.record(w.endTask(started));
+                        afterExecute(r, thrown);
                     }
                 } finally {
                     task = null;
@@ -1143,6 +1473,8 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             }
             completedAbruptly = false;
         } finally {
+            if (workStealing)
+                currentWorker.remove();
             processWorkerExit(w, completedAbruptly);
         }
     }
@@ -1271,6 +1603,41 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      */
     public ThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
             BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler, false);
+    }
+
+    /**
+     * Creates a new {@code ThreadPoolExecutor} with the given initial
+     * parameters, optionally in work-stealing mode (see the class
+     * documentation).
+     *
+     * @param corePoolSize the number of threads to keep in the pool, even if
+     *            they are idle, unless {@code allowCoreThreadTimeOut} is set
+     * @param maximumPoolSize the maximum number of threads to allow in the pool
+     * @param keepAliveTime when the number of threads is greater than the core,
+     *            this is the maximum time that excess idle threads will wait
+     *            for new tasks before terminating.
+     * @param unit the time unit for the {@code keepAliveTime} argument
+     * @param workQueue the queue to use for holding tasks submitted from
+     *            outside the pool before they are executed
+     * @param threadFactory the factory to use when the executor creates a new
+     *            thread
+     * @param handler the handler to use when execution is blocked because the
+     *            thread bounds and queue capacities are reached
+     * @param workStealing if true, tasks submitted by the pool's own workers
+     *            are kept in per-worker deques that idle workers steal from
+     *            是否开启工作窃取模式
+     * @throws IllegalArgumentException if one of the following holds:<br>
+     *             {@code corePoolSize < 0}<br>
+     *             {@code keepAliveTime < 0}<br>
+     *             {@code maximumPoolSize <= 0}<br>
+     *             {@code maximumPoolSize < corePoolSize}
+     * @throws NullPointerException if {@code workQueue} or
+     *             {@code threadFactory} or {@code handler} is null
+     */
+    public ThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+            BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler,
+            boolean workStealing) {
         if (corePoolSize < 0 || maximumPoolSize <= 0 || maximumPoolSize < corePoolSize || keepAliveTime < 0)
             throw new IllegalArgumentException();
         if (workQueue == null || threadFactory == null || handler == null)
@@ -1281,6 +1648,10 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         this.keepAliveTime = unit.toNanos(keepAliveTime);
         this.threadFactory = threadFactory;
         this.handler = handler;
+        this.workStealing = workStealing;
+        this.currentWorker = workStealing ? new ThreadLocal<Worker>() : null;
+        // unbounded queues report Integer.MAX_VALUE, less the elements they hold
+        this.boundedQueue = (long) workQueue.remainingCapacity() + workQueue.size() < Integer.MAX_VALUE;
     }
 
     /**
@@ -1300,23 +1671,37 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
     public void execute(Runnable command) {
         if (command == null)
             throw new NullPointerException();
+        // 开启指标采集时包装任务以记录提交时间，拒绝时仍交给handler原始任务
+        Runnable task = (metrics != null) ? new TimedTask(command, System.nanoTime()) : command;
 
         // 获取ctl的大小.ctl中包装了workerCount、runState两个变量
         int c = ctl.get();
         // Step1
         // 如果池中的线程数少于corePoolSize，尝试创建一个新的线程去执行这个command.
         if (workerCountOf(c) < corePoolSize) {// 通过位运算获取workerCount。如果workerCount<coreSize
-            if (addWorker(command, true))// 创新新的线程执行command任务。
+            if (addWorker(task, true))// 创新新的线程执行command任务。
                 return;
             c = ctl.get();
         }
+        // 工作窃取模式：池内线程提交的任务优先放入自己的本地队列
+        if (workStealing && isRunning(c)) {
+            Worker w = currentWorker.get();
+            if (w != null && pushLocal(w, task)) {
+                if (!isRunning(ctl.get()) && w.localTasks.removeLastOccurrence(task)) {
+                    localTasksTaken(1);
+                    reject(command);
+                }
+                return;
+            }
+        }
         // Step2
         // 如果这个任务可以成功入队,再次对线程池运行状态检查：
-        if (isRunning(c) && workQueue.offer(command)) {// 任务入队
+        // 工作窃取模式下本地队列中的任务也占用有界队列的容量
+        if (isRunning(c) && !localTasksFillQueue() && workQueue.offer(task)) {// 任务入队
             int recheck = ctl.get();
             // 如果线程池已经处于非运行状态,
             // 那么移除并使用handler处理这个任务
-            if (!isRunning(recheck) && remove(command))
+            if (!isRunning(recheck) && remove(task))
                 reject(command);
             else if (workerCountOf(recheck) == 0)
                 addWorker(null, false);
@@ -1324,10 +1709,141 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         // Step3
         // 如果入队失败，那么我们尝试新增一个线程。
         // 如果新增失败,那么应该是线程池关闭了或者已经饱和了。那么我们最终拒绝这个任务。
-        else if (!addWorker(command, false))
+        else if (!addWorker(task, false))
             reject(command);
     }
 
+    /**
+     * Executes the given tasks, with the same rules as calling
+     * {@link #execute} for each of them in iteration order, but at the cost of
+     * one submission: while the pool has fewer than {@code corePoolSize}
+     * threads the first tasks start new workers directly, the rest are
+     * inserted into the work queue together, and the pool state is rechecked
+     * once for the whole batch. If the work queue is a
+     * {@link BulkBlockingQueue} (such as the {@code com.zs.juc.queue}
+     * {@code LinkedBlockingQueue} and {@code ArrayBlockingQueue}) the
+     * insertion takes its lock once; other queues get one {@code offer} per
+     * task. Tasks that do not fit start non-core workers or are rejected one
+     * by one. A batch always goes through the work queue, also in
+     * work-stealing mode.
+     * 批量提交：一次入队、一次状态检查，而不是每个任务一次。
+     *
+     * <p>
+     * If the rejected execution handler throws, the exception propagates and
+     * the remaining tasks of the batch are not submitted.
+     *
+     * @param commands the tasks to execute
+     * @throws RejectedExecutionException at discretion of
+     *             {@code RejectedExecutionHandler}, if a task cannot be
+     *             accepted for execution
+     * @throws NullPointerException if {@code commands} or any of its elements
+     *             is null, in which case nothing is submitted
+     */
+    public void executeBatch(Collection<? extends Runnable> commands) {
+        if (commands == null)
+            throw new NullPointerException();
+        Runnable[] cmds = commands.toArray(new Runnable[0]);
+        for (Runnable r : cmds)
+            if (r == null)
+                throw new NullPointerException();
+        final int n = cmds.length;
+        Runnable[] tasks = cmds;
+        if (metrics != null) {
+            long now = System.nanoTime();
+            tasks = new Runnable[n];
+            for (int k = 0; k < n; k++)
+                tasks[k] = new TimedTask(cmds[k], now);
+        }
+        int i = 0;
+        int c = ctl.get();
+        // Step1: 核心线程未满时，前面的任务直接交给新线程
+        while (i < n && workerCountOf(c) < corePoolSize) {
+            if (addWorker(tasks[i], true))
+                ++i;
+            c = ctl.get();
+            if (!isRunning(c))
+                break;
+        }
+        // Step2: 其余任务一次性入队，只做一次状态复查
+        int queued = 0;
+        if (i < n && isRunning(c)) {
+            queued = offerAll(tasks, i);
+            if (queued > 0) {
+                int recheck = ctl.get();
+                if (!isRunning(recheck)) {
+                    for (int k = i; k < i + queued; k++)
+                        if (remove(tasks[k]))
+                            reject(cmds[k]);
+                } else if (workerCountOf(recheck) == 0)
+                    addWorker(null, false);
+            }
+        }
+        // Step3: 队列放不下的任务逐个尝试新增线程，失败则拒绝
+        for (int k = i + queued; k < n; k++)
+            if (!addWorker(tasks[k], false))
+                reject(cmds[k]);
+    }
+
+    /**
+     * Inserts tasks[from..] into workQueue, in bulk when it supports it.
+     *
+     * @return the number of leading tasks inserted
+     */
+    @SuppressWarnings("unchecked")
+    private int offerAll(Runnable[] tasks, int from) {
+        int to = tasks.length;
+        int room = queueRoom();
+        if (room < to - from)
+            to = from + Math.max(room, 0);
+        List<Runnable> rest = Arrays.asList(tasks).subList(from, to);
+        if (workQueue instanceof BulkBlockingQueue<?>)
+            return ((BulkBlockingQueue<Runnable>) workQueue).offerAll(rest);
+        int k = 0;
+        for (Runnable r : rest) {
+            if (!workQueue.offer(r))
+                break;
+            ++k;
+        }
+        return k;
+    }
+
+    /**
+     * Submits the given tasks as one batch through {@link #executeBatch} and
+     * returns a future over all their results. If submission fails part way,
+     * every task of the batch is cancelled before the exception propagates.
+     *
+     * @param tasks the tasks to submit
+     * @param <T> the type of the tasks' results
+     * @return a future completing when every task is done, with their results
+     *         in iteration order
+     * @throws RejectedExecutionException if a task cannot be accepted for
+     *             execution
+     * @throws NullPointerException if {@code tasks} or any of its elements is
+     *             null
+     */
+    public <T> BatchFuture<T> submitAll(Collection<? extends Callable<T>> tasks) {
+        if (tasks == null)
+            throw new NullPointerException();
+        List<RunnableFuture<T>> futures = new ArrayList<RunnableFuture<T>>(tasks.size());
+        for (Callable<T> t : tasks) {
+            if (t == null)
+                throw new NullPointerException();
+            futures.add(newTaskFor(t));
+        }
+        try {
+            executeBatch(futures);
+        } catch (RuntimeException ex) {
+            for (RunnableFuture<T> f : futures)
+                f.cancel(true);
+            throw ex;
+        } catch (Error ex) {
+            for (RunnableFuture<T> f : futures)
+                f.cancel(true);
+            throw ex;
+        }
+        return new BatchFuture<T>(futures);
+    }
+
     /**
      * Initiates an orderly shutdown in which previously submitted tasks are
      * executed, but no new tasks will be accepted. Invocation has no additional
@@ -1700,7 +2216,17 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * @return {@code true} if the task was removed
      */
     public boolean remove(Runnable task) {
-        boolean removed = workQueue.remove(task);
+        boolean removed = workQueue.remove(task) || (metrics != null && removeWrapped(workQueue, task));
+        if (!removed && workStealing) {
+            removed = removeWrapped(orphanedTasks, task);
+            for (Worker w : stealTargets) {
+                if (removed)
+                    break;
+                removed = removeWrapped(w.localTasks, task);
+            }
+            if (removed)
+                localTasksTaken(1);
+        }
         tryTerminate(); // In case SHUTDOWN and now empty
         return removed;
     }
@@ -1719,7 +2245,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         try {
             Iterator<Runnable> it = q.iterator();
             while (it.hasNext()) {
-                Runnable r = it.next();
+                Runnable r = unwrap(it.next());
                 if (r instanceof Future<?> && ((Future<?>) r).isCancelled())
                     it.remove();
             }
@@ -1727,14 +2253,57 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             // Take slow path if we encounter interference during traversal.
             // Make copy for traversal and call remove for cancelled entries.
             // The slow path is more likely to be O(N*N).
-            for (Object r : q.toArray())
-                if (r instanceof Future<?> && ((Future<?>) r).isCancelled())
+            for (Runnable r : q.toArray(new Runnable[0])) {
+                Runnable t = unwrap(r);
+                if (t instanceof Future<?> && ((Future<?>) t).isCancelled())
                     q.remove(r);
+            }
+        }
+        if (workStealing) {
+            int n = purgeCancelled(orphanedTasks);
+            for (Worker w : stealTargets)
+                n += purgeCancelled(w.localTasks);
+            localTasksTaken(n);
         }
 
         tryTerminate(); // In case SHUTDOWN and now empty
     }
 
+    /**
+     * Removes task, or the TimedTask wrapping it, from q.
+     */
+    private static boolean removeWrapped(Queue<Runnable> q, Runnable task) {
+        if (q.remove(task))
+            return true;
+        for (Iterator<Runnable> it = q.iterator(); it.hasNext();) {
+            Runnable r = it.next();
+            if (r instanceof TimedTask && ((TimedTask) r).task == task) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes cancelled Futures from a local deque or the orphaned tasks. The
+     * iterators of both are weakly consistent, so no fallback is needed.
+     *
+     * @return the number of tasks removed
+     */
+    private static int purgeCancelled(Queue<Runnable> q) {
+        int n = 0;
+        Iterator<Runnable> it = q.iterator();
+        while (it.hasNext()) {
+            Runnable r = unwrap(it.next());
+            if (r instanceof Future<?> && ((Future<?>) r).isCancelled()) {
+                it.remove();
+                ++n;
+            }
+        }
+        return n;
+    }
+
     /* Statistics */
 
     /**
@@ -1808,7 +2377,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                 if (w.isLocked())
                     ++n;
             }
-            return n + workQueue.size();
+            return n + workQueue.size() + localTaskCount();
         } finally {
             mainLock.unlock();
         }
@@ -1862,7 +2431,122 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         String rs = (runStateLessThan(c, SHUTDOWN) ? "Running"
                 : (runStateAtLeast(c, TERMINATED) ? "Terminated" : "Shutting down"));
         return super.toString() + "[" + rs + ", pool size = " + nworkers + ", active threads = " + nactive
-                + ", queued tasks = " + workQueue.size() + ", completed tasks = " + ncompleted + "]";
+                + ", queued tasks = " + (workQueue.size() + localTaskCount()) + ", completed tasks = " + ncompleted + "]";
+    }
+
+    /**
+     * Starts recording queue-wait and execution latencies and per-worker busy
+     * time, as reported by {@link #metrics()}. While disabled the pool pays one
+     * volatile read per submitted and per executed task. Recording cannot be
+     * turned off again.
+     */
+    public void enableMetrics() {
+        if (metrics == null) {
+            final ReentrantLock mainLock = this.mainLock;
+            mainLock.lock();
+            try {
+                if (metrics == null)
+                    metrics = new TaskMetrics();
+            } finally {
+                mainLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the pool's metrics. Only the worker list is read
+     * under the main lock, as for {@link #getActiveCount()}; the histograms
+     * are copied without blocking the workers, so this can be polled by a
+     * monitoring thread while the pool is busy.
+     *
+     * @return the current metrics
+     */
+    public PoolMetrics metrics() {
+        TaskMetrics m = metrics;
+        long now = System.nanoTime();
+        List<PoolMetrics.WorkerMetrics> ws = new ArrayList<PoolMetrics.WorkerMetrics>();
+        int size, active = 0;
+        long completed;
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            size = workers.size();
+            completed = completedTaskCount;
+            for (Worker w : workers) {
+                completed += w.completedTasks;
+                if (w.isLocked())
+                    ++active;
+                long since = w.startNanos;
+                if (since == 0L)
+                    continue; // not started yet
+                long busy = 0L;
+                if (m != null) {
+                    if (since - m.sinceNanos < 0L)
+                        since = m.sinceNanos;
+                    long t = w.taskStartNanos;
+                    busy = w.busyNanos + (t != 0L ? now - t : 0L);
+                }
+                ws.add(new PoolMetrics.WorkerMetrics(w.thread.getName(), w.completedTasks, busy, now - since));
+            }
+        } finally {
+            mainLock.unlock();
+        }
+        int queued = workQueue.size() + localTaskCount();
+        if (m == null)
+            return new PoolMetrics(false, size, active, queued, completed, rejectedCount.sum(),
+                    EMPTY_HISTOGRAM.snapshot(), EMPTY_HISTOGRAM.snapshot(), ws);
+        return new PoolMetrics(true, size, active, queued, completed, rejectedCount.sum(),
+                m.queueWait.snapshot(), m.execution.snapshot(), ws);
+    }
+
+    private static final LatencyHistogram EMPTY_HISTOGRAM = new LatencyHistogram();
+
+    /**
+     * Histograms behind {@link PoolMetrics}. Created once by enableMetrics and
+     * never replaced, so a TimedTask found in a queue implies it is set.
+     */
+    static final class TaskMetrics {
+        final LatencyHistogram queueWait = new LatencyHistogram();
+
+        final LatencyHistogram execution = new LatencyHistogram();
+
+        final long sinceNanos = System.nanoTime();
+    }
+
+    /**
+     * A submitted task paired with its submission time, queued in place of the
+     * task while metrics are enabled. Unwrapped before the hooks run.
+     */
+    static final class TimedTask implements Runnable {
+        final Runnable task;
+
+        final long submitNanos;
+
+        TimedTask(Runnable task, long submitNanos) {
+            this.task = task;
+            this.submitNanos = submitNanos;
+        }
+
+        public void run() {
+            task.run();
+        }
+    }
+
+    static Runnable unwrap(Runnable r) {
+        return (r instanceof TimedTask) ? ((TimedTask) r).task : r;
+    }
+
+    /**
+     * Called by getTask for every task taken from a queue, before it is
+     * returned to the worker. Returning false drops the task; the worker
+     * then takes the next one. Overridden by PriorityThreadPoolExecutor to
+     * hand expired tasks to the rejection handler.
+     * 任务出队时的检查钩子，返回false则丢弃该任务。
+     *
+     * @param r the task as queued, possibly wrapped for metrics
+     */
+    boolean admit(Runnable r) {
+        return true;
     }
 
     /* Extension hooks */
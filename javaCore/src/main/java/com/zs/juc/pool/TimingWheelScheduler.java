@@ -0,0 +1,574 @@
+package com.zs.juc.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link ScheduledExecutorService} that keeps delayed tasks in a
+ * hierarchical timing wheel instead of a heap, so that scheduling and
+ * cancelling a task take constant time whatever the number of pending tasks.
+ *
+ * <p>
+ * Time is cut into ticks of a configurable duration. The wheel has several
+ * levels of {@code wheelSize} buckets each: a bucket of level 0 holds the tasks
+ * due in one tick, a bucket of level {@code l} those due in
+ * {@code wheelSize^l} ticks. A task goes to the lowest level that can tell its
+ * deadline from the current tick, in the bucket its deadline hashes to. When
+ * the lower levels have gone round once, the tasks of the next bucket of the
+ * level above are redistributed over them, so each task moves down at most
+ * once per level and a level-0 bucket, once reached, holds exactly the tasks
+ * due in that tick.
+ *
+ * <p>
+ * The wheel belongs to a single timer thread. {@code schedule} only appends
+ * the task to a lock-free queue, and {@code cancel} only marks it and appends
+ * it to another; the timer thread drains both every tick, links new tasks
+ * into their bucket and unlinks cancelled ones from theirs, both in constant
+ * time. Callers therefore never contend on a lock, and the memory held by
+ * cancelled timeouts is released within a tick instead of when their deadline
+ * comes, which matters when almost every timeout is cancelled. Due tasks are
+ * handed to an internal {@link ThreadPoolExecutor}, so a slow task does not
+ * delay the timer.
+ *
+ * <p>
+ * The price is precision: a task runs at the first tick at or after its
+ * deadline, so up to one tick late, never early. Tasks due in the same tick
+ * run in no particular order. The timer thread wakes up every tick even when
+ * there is nothing to do, so choose the coarsest tick the timeouts allow.
+ *
+ * <p>
+ * As with {@link java.util.concurrent.ScheduledThreadPoolExecutor}'s
+ * defaults, {@link #shutdown} lets delayed tasks still run but cancels
+ * periodic ones, and a periodic task whose run throws is not rescheduled.
+ * {@link #shutdownNow} returns the tasks that were not run, without cancelling
+ * them.
+ *
+ * 基于分层时间轮的定时任务调度器：调度与取消都是O(1)，由单个计时线程推进时间轮，到期任务交给工作线程池执行，精度为一个tick。
+ */
+public class TimingWheelScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+    /** Default number of buckets per level. */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final long DEFAULT_TICK_MILLIS = 1L;
+
+    // Scheduler states, in order
+    private static final int RUNNING = 0;
+
+    private static final int SHUTDOWN = 1;
+
+    private static final int STOP = 2;
+
+    // Where a task is, as seen by the timer thread
+    private static final int PENDING = 0;
+
+    private static final int IN_WHEEL = 1;
+
+    private static final int DISPATCHED = 2;
+
+    /** Delays are capped so that deadlines do not overflow. */
+    private static final long MAX_DELAY_NANOS = Long.MAX_VALUE >>> 2;
+
+    private final long tickNanos;
+
+    /** log2 of the wheel size. */
+    private final int wheelBits;
+
+    private final int mask;
+
+    /** buckets[level][index]; touched by the timer thread only. */
+    private final Bucket[][] buckets;
+
+    /** Origin of the ticks. */
+    private final long startNanos;
+
+    /** Tasks scheduled or rescheduled, not yet in the wheel. */
+    private final ConcurrentLinkedQueue<ScheduledTask<?>> pending = new ConcurrentLinkedQueue<ScheduledTask<?>>();
+
+    /** Tasks cancelled since the last tick. */
+    private final ConcurrentLinkedQueue<ScheduledTask<?>> cancelled = new ConcurrentLinkedQueue<ScheduledTask<?>>();
+
+    /** Tasks scheduled and neither handed to a worker nor dropped yet. */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+
+    /** Breaks ties between tasks with the same deadline in compareTo. */
+    private final AtomicLong sequencer = new AtomicLong();
+
+    private final ThreadPoolExecutor workers;
+
+    private final Thread timer;
+
+    private final CountDownLatch timerExited = new CountDownLatch(1);
+
+    /** Tasks left in the wheel when stopped, for shutdownNow. */
+    private volatile List<Runnable> unrun;
+
+    /**
+     * Creates a scheduler with a tick of one millisecond and
+     * {@link #DEFAULT_WHEEL_SIZE} buckets per level.
+     *
+     * @param poolSize the number of threads running due tasks
+     * @throws IllegalArgumentException if {@code poolSize <= 0}
+     */
+    public TimingWheelScheduler(int poolSize) {
+        this(poolSize, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public TimingWheelScheduler(int poolSize, long tickDuration, TimeUnit unit) {
+        this(poolSize, tickDuration, unit, DEFAULT_WHEEL_SIZE, Executors.defaultThreadFactory());
+    }
+
+    /**
+     * @param poolSize the number of threads running due tasks
+     * @param tickDuration the duration of a tick, which is the precision of
+     *            the scheduler
+     * @param unit the unit of {@code tickDuration}
+     * @param wheelSize the number of buckets per level, rounded up to a power
+     *            of two; larger wheels cascade less often
+     * @param threadFactory the factory creating the timer thread and the
+     *            worker threads
+     * @throws IllegalArgumentException if {@code poolSize <= 0},
+     *             {@code tickDuration} is less than a nanosecond or
+     *             {@code wheelSize} is not in [2, 2^30]
+     * @throws NullPointerException if {@code unit} or {@code threadFactory}
+     *             is null
+     */
+    public TimingWheelScheduler(int poolSize, long tickDuration, TimeUnit unit, int wheelSize,
+            ThreadFactory threadFactory) {
+        if (unit == null || threadFactory == null)
+            throw new NullPointerException();
+        long tick = unit.toNanos(tickDuration);
+        if (poolSize <= 0 || tick <= 0L || wheelSize < 2 || wheelSize > (1 << 30))
+            throw new IllegalArgumentException();
+        this.tickNanos = tick;
+        this.wheelBits = 32 - Integer.numberOfLeadingZeros(wheelSize - 1);
+        this.mask = (1 << wheelBits) - 1;
+        // enough levels to cover any tick count
+        int levels = (63 + wheelBits - 1) / wheelBits;
+        this.buckets = new Bucket[levels][1 << wheelBits];
+        for (Bucket[] level : buckets)
+            for (int i = 0; i < level.length; i++)
+                level[i] = new Bucket();
+        this.workers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory);
+        this.startNanos = System.nanoTime();
+        this.timer = threadFactory.newThread(new Runnable() {
+            public void run() {
+                runTimer();
+            }
+        });
+        if (timer == null)
+            throw new IllegalStateException("thread factory returned null");
+        timer.start();
+    }
+
+    // ------------------------------------------------------------ scheduling
+
+    private long deadline(long delay, TimeUnit unit) {
+        long d = unit.toNanos(delay);
+        return System.nanoTime() + Math.max(0L, Math.min(d, MAX_DELAY_NANOS));
+    }
+
+    private <V> ScheduledTask<V> enqueue(ScheduledTask<V> task) {
+        if (state.get() != RUNNING)
+            throw new RejectedExecutionException("Scheduler " + this + " is shut down");
+        outstanding.incrementAndGet();
+        pending.offer(task);
+        if (state.get() != RUNNING && task.cancel(false))
+            throw new RejectedExecutionException("Scheduler " + this + " is shut down");
+        return task;
+    }
+
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        return enqueue(new ScheduledTask<Void>(command, null, deadline(delay, unit), 0L));
+    }
+
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        if (callable == null || unit == null)
+            throw new NullPointerException();
+        return enqueue(new ScheduledTask<V>(callable, deadline(delay, unit)));
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code period <= 0}
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        if (period <= 0L)
+            throw new IllegalArgumentException();
+        return enqueue(new ScheduledTask<Void>(command, null, deadline(initialDelay, unit),
+                Math.min(unit.toNanos(period), MAX_DELAY_NANOS)));
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code delay <= 0}
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        if (delay <= 0L)
+            throw new IllegalArgumentException();
+        return enqueue(new ScheduledTask<Void>(command, null, deadline(initialDelay, unit),
+                -Math.min(unit.toNanos(delay), MAX_DELAY_NANOS)));
+    }
+
+    /**
+     * Runs the command at the next tick.
+     */
+    public void execute(Runnable command) {
+        schedule(command, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Called by a worker after a periodic run that did not throw.
+     */
+    private void reschedule(ScheduledTask<?> task) {
+        if (state.get() != RUNNING) {
+            task.cancel(false);
+            return;
+        }
+        outstanding.incrementAndGet();
+        pending.offer(task);
+        if (state.get() != RUNNING)
+            task.cancel(false); // the timer thread drops it
+    }
+
+    // ------------------------------------------------------------ timer thread
+
+    private void runTimer() {
+        long tick = 0L; // every bucket up to this tick has been expired
+        boolean periodicCancelled = false;
+        try {
+            for (;;) {
+                long target = startNanos + (tick + 1) * tickNanos;
+                for (long nanos; (nanos = target - System.nanoTime()) > 0L && state.get() < STOP;)
+                    LockSupport.parkNanos(this, nanos);
+                int s = state.get();
+                if (s >= STOP)
+                    break;
+                if (s == SHUTDOWN && !periodicCancelled) {
+                    periodicCancelled = true;
+                    cancelPeriodicTasks();
+                }
+                transferPending(tick);
+                unlinkCancelled();
+                advance(++tick);
+                if (s == SHUTDOWN && outstanding.get() == 0)
+                    break;
+            }
+        } finally {
+            if (state.get() >= STOP)
+                unrun = drain();
+            workers.shutdown();
+            timerExited.countDown();
+        }
+    }
+
+    private void transferPending(long tick) {
+        for (ScheduledTask<?> t; (t = pending.poll()) != null;) {
+            if (t.isCancelled() || (t.isPeriodic() && state.get() != RUNNING)) {
+                t.where = DISPATCHED;
+                outstanding.decrementAndGet();
+                t.cancel(false);
+                continue;
+            }
+            long due = t.deadlineNanos - startNanos;
+            t.deadlineTick = (due <= 0L) ? 0L : (due + tickNanos - 1) / tickNanos;
+            place(t, tick);
+        }
+    }
+
+    private void unlinkCancelled() {
+        for (ScheduledTask<?> t; (t = cancelled.poll()) != null;) {
+            if (t.where == IN_WHEEL) {
+                t.bucket.remove(t);
+                t.where = DISPATCHED;
+                outstanding.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Links the task into the bucket for its deadline relative to
+     * {@code base}, the last tick expired, or hands it to a worker if it is
+     * due. The level is the highest digit in which the deadline differs from
+     * the next tick, so the bucket's turn to cascade is still to come.
+     */
+    private void place(ScheduledTask<?> t, long base) {
+        long next = base + 1;
+        if (t.deadlineTick < next) {
+            dispatch(t);
+            return;
+        }
+        long diff = t.deadlineTick ^ next;
+        int level = (diff == 0L) ? 0 : (63 - Long.numberOfLeadingZeros(diff)) / wheelBits;
+        int index = (int) ((t.deadlineTick >>> (level * wheelBits)) & mask);
+        buckets[level][index].add(t);
+        t.where = IN_WHEEL;
+    }
+
+    /**
+     * Moves to {@code tick}: redistributes the buckets of the upper levels
+     * whose turn has come, highest first, then runs the tasks of the level-0
+     * bucket.
+     */
+    private void advance(long tick) {
+        for (int level = buckets.length - 1; level > 0; level--) {
+            int shift = level * wheelBits;
+            if ((tick & ((1L << shift) - 1)) == 0L) {
+                Bucket b = buckets[level][(int) ((tick >>> shift) & mask)];
+                for (ScheduledTask<?> t; (t = b.poll()) != null;)
+                    place(t, tick - 1);
+            }
+        }
+        Bucket b = buckets[0][(int) (tick & mask)];
+        for (ScheduledTask<?> t; (t = b.poll()) != null;)
+            dispatch(t);
+    }
+
+    private void dispatch(ScheduledTask<?> t) {
+        t.where = DISPATCHED;
+        outstanding.decrementAndGet();
+        if (t.isCancelled())
+            return;
+        try {
+            workers.execute(t);
+        } catch (RejectedExecutionException e) {
+            t.cancel(false);
+        }
+    }
+
+    private void cancelPeriodicTasks() {
+        for (Bucket[] level : buckets)
+            for (Bucket b : level)
+                for (ScheduledTask<?> t = b.head; t != null; t = t.next)
+                    if (t.isPeriodic())
+                        t.cancel(false);
+    }
+
+    /** Empties the wheel and the pending queue into a list. */
+    private List<Runnable> drain() {
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for (Bucket[] level : buckets)
+            for (Bucket b : level)
+                for (ScheduledTask<?> t; (t = b.poll()) != null;)
+                    if (!t.isCancelled())
+                        tasks.add(t);
+        for (ScheduledTask<?> t; (t = pending.poll()) != null;)
+            if (!t.isCancelled())
+                tasks.add(t);
+        cancelled.clear();
+        outstanding.set(0);
+        return tasks;
+    }
+
+    // ------------------------------------------------------------ lifecycle
+
+    public void shutdown() {
+        state.compareAndSet(RUNNING, SHUTDOWN);
+    }
+
+    public List<Runnable> shutdownNow() {
+        for (int s; (s = state.get()) < STOP;)
+            if (state.compareAndSet(s, STOP))
+                break;
+        LockSupport.unpark(timer);
+        boolean interrupted = false;
+        while (timerExited.getCount() != 0L) {
+            try {
+                timerExited.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        List<Runnable> left = unrun;
+        if (left != null)
+            tasks.addAll(left);
+        tasks.addAll(workers.shutdownNow());
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        return tasks;
+    }
+
+    public boolean isShutdown() {
+        return state.get() != RUNNING;
+    }
+
+    public boolean isTerminated() {
+        return timerExited.getCount() == 0L && workers.isTerminated();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!timerExited.await(timeout, unit))
+            return false;
+        return workers.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    // ------------------------------------------------------------ monitoring
+
+    /**
+     * Returns the tick duration in nanoseconds.
+     */
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * Returns the number of buckets per level.
+     */
+    public int getWheelSize() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the number of tasks waiting for their deadline, including
+     * cancelled ones the timer thread has not unlinked yet.
+     */
+    public int getScheduledCount() {
+        return Math.max(0, outstanding.get());
+    }
+
+    public String toString() {
+        int s = state.get();
+        return super.toString() + "[" + (s == RUNNING ? "Running" : isTerminated() ? "Terminated" : "Shutting down")
+                + ", tick = " + tickNanos + "ns, wheel = " + buckets.length + " x " + (mask + 1) + ", scheduled = "
+                + getScheduledCount() + ", workers = " + workers.getPoolSize() + "]";
+    }
+
+    // ------------------------------------------------------------ internals
+
+    /**
+     * Doubly linked list of the tasks of one bucket; timer thread only.
+     */
+    static final class Bucket {
+        ScheduledTask<?> head;
+
+        void add(ScheduledTask<?> t) {
+            t.bucket = this;
+            t.prev = null;
+            t.next = head;
+            if (head != null)
+                head.prev = t;
+            head = t;
+        }
+
+        void remove(ScheduledTask<?> t) {
+            if (t.prev != null)
+                t.prev.next = t.next;
+            else
+                head = t.next;
+            if (t.next != null)
+                t.next.prev = t.prev;
+            t.prev = t.next = null;
+            t.bucket = null;
+        }
+
+        ScheduledTask<?> poll() {
+            ScheduledTask<?> t = head;
+            if (t != null)
+                remove(t);
+            return t;
+        }
+    }
+
+    final class ScheduledTask<V> extends java.util.concurrent.FutureTask<V> implements RunnableScheduledFuture<V> {
+
+        /** Nanosecond deadline of the next run. */
+        volatile long deadlineNanos;
+
+        /**
+         * Zero for a one-shot task, positive for a fixed rate, negative for a
+         * fixed delay.
+         */
+        final long period;
+
+        final long sequenceNumber = sequencer.getAndIncrement();
+
+        // Timer thread only
+        int where = PENDING;
+
+        long deadlineTick;
+
+        Bucket bucket;
+
+        ScheduledTask<?> prev, next;
+
+        ScheduledTask(Runnable r, V result, long deadlineNanos, long period) {
+            super(r, result);
+            this.deadlineNanos = deadlineNanos;
+            this.period = period;
+        }
+
+        ScheduledTask(Callable<V> callable, long deadlineNanos) {
+            super(callable);
+            this.deadlineNanos = deadlineNanos;
+            this.period = 0L;
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        public int compareTo(Delayed other) {
+            if (other == this)
+                return 0;
+            if (other instanceof ScheduledTask) {
+                ScheduledTask<?> x = (ScheduledTask<?>) other;
+                long diff = deadlineNanos - x.deadlineNanos;
+                if (diff != 0L)
+                    return (diff < 0L) ? -1 : 1;
+                return (sequenceNumber < x.sequenceNumber) ? -1 : 1;
+            }
+            long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+            return (diff < 0L) ? -1 : (diff > 0L) ? 1 : 0;
+        }
+
+        public boolean isPeriodic() {
+            return period != 0L;
+        }
+
+        /**
+         * Tells the timer thread to unlink this task, so that a cancelled
+         * timeout does not stay in the wheel until its deadline.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean c = super.cancel(mayInterruptIfRunning);
+            if (c)
+                cancelled.offer(this);
+            return c;
+        }
+
+        @Override
+        public void run() {
+            if (!isPeriodic())
+                super.run();
+            else if (super.runAndReset()) {
+                deadlineNanos = (period > 0L) ? deadlineNanos + period : System.nanoTime() - period;
+                reschedule(this);
+            }
+        }
+    }
+}
@@ -82,7 +82,7 @@ import java.util.concurrent.locks.ReentrantLock;
  * @param <E> the type of elements held in this collection
  */
 public class ArrayBlockingQueue<E> extends AbstractQueue<E>
-        implements BlockingQueue<E>, java.io.Serializable {
+        implements BulkBlockingQueue<E>, java.io.Serializable {
 
     /**
      * Serialization ID. This class relies on default serialization
@@ -339,6 +339,42 @@ public class ArrayBlockingQueue<E> extends AbstractQueue<E>
         }
     }
 
+    /**
+     * Inserts as many leading elements of the collection as fit, under one
+     * acquisition of the lock, and signals one waiting consumer per
+     * element inserted.
+     *
+     * @throws NullPointerException {@inheritDoc}
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public int offerAll(Collection<? extends E> c) {
+        checkNotNull(c);
+        if (c == this)
+            throw new IllegalArgumentException();
+        Object[] a = c.toArray();
+        for (Object e : a)
+            checkNotNull(e);
+        final Object[] items = this.items;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            int n = Math.min(a.length, items.length - count);
+            int put = putIndex;
+            for (int i = 0; i < n; i++) {
+                items[put] = a[i];
+                if (++put == items.length)
+                    put = 0;
+            }
+            putIndex = put;
+            count += n;
+            for (int i = n; i > 0 && lock.hasWaiters(notEmpty); i--)
+                notEmpty.signal();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Inserts the specified element at the tail of this queue, waiting
      * for space to become available if the queue is full.
@@ -0,0 +1,108 @@
+package com.zs.juc.queue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs an {@link EventHandler} over a {@link RingBufferQueue}: takes every
+ * element available at once, up to a batch size, hands them to the handler,
+ * and waits through the queue's {@link WaitStrategy} when there are none.
+ * Several processors, and other consumers, may share one queue; each element
+ * goes to exactly one of them.
+ *
+ * <pre>
+ * RingBufferQueue&lt;Event&gt; queue = new RingBufferQueue&lt;Event&gt;(1024, ProducerType.SINGLE,
+ *         WaitStrategy.yielding());
+ * BatchEventProcessor&lt;Event&gt; processor = new BatchEventProcessor&lt;Event&gt;(queue, handler);
+ * new Thread(processor).start();
+ * ...
+ * processor.halt();
+ * </pre>
+ *
+ * <p>
+ * An exception thrown by the handler stops the processor and propagates out
+ * of {@link #run}; the rest of the batch it was handling is discarded.
+ *
+ * 在线程中循环批量消费环形队列的事件处理器。
+ *
+ * @param <E> the type of the events
+ */
+public final class BatchEventProcessor<E> implements Runnable {
+
+    private final RingBufferQueue<E> queue;
+
+    private final EventHandler<? super E> handler;
+
+    private final int maxBatchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final BooleanSupplier readyOrHalted = new BooleanSupplier() {
+        public boolean getAsBoolean() {
+            return !running.get() || queue.notEmpty.getAsBoolean();
+        }
+    };
+
+    /**
+     * Creates a processor that takes every element available at once.
+     *
+     * @throws NullPointerException if {@code queue} or {@code handler} is null
+     */
+    public BatchEventProcessor(RingBufferQueue<E> queue, EventHandler<? super E> handler) {
+        this(queue, handler, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a processor that hands at most {@code maxBatchSize} elements to
+     * the handler per batch.
+     *
+     * @throws NullPointerException if {@code queue} or {@code handler} is null
+     * @throws IllegalArgumentException if {@code maxBatchSize < 1}
+     */
+    public BatchEventProcessor(RingBufferQueue<E> queue, EventHandler<? super E> handler, int maxBatchSize) {
+        if (queue == null || handler == null)
+            throw new NullPointerException();
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException();
+        this.queue = queue;
+        this.handler = handler;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Processes elements until {@link #halt} is called or the thread is
+     * interrupted, in which case the interrupt status is kept.
+     *
+     * @throws IllegalStateException if the processor is already running
+     */
+    public void run() {
+        if (!running.compareAndSet(false, true))
+            throw new IllegalStateException("Already running");
+        try {
+            final RingBufferQueue<E> queue = this.queue;
+            final WaitStrategy waitStrategy = queue.waitStrategy;
+            while (running.get()) {
+                if (queue.drainTo(handler, maxBatchSize) == 0)
+                    waitStrategy.awaitNanos(readyOrHalted, Long.MAX_VALUE);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Makes a running processor return from {@link #run} once the batch in
+     * hand is handled. Elements still queued stay in the queue.
+     */
+    public void halt() {
+        running.set(false);
+        queue.waitStrategy.signalAll();
+    }
+
+    /** Returns true while the processor is running. */
+    public boolean isRunning() {
+        return running.get();
+    }
+}
@@ -0,0 +1,32 @@
+package com.zs.juc.queue;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A {@link BlockingQueue} that can insert a batch of elements under a single
+ * acquisition of its lock, the counterpart of
+ * {@link BlockingQueue#drainTo(Collection, int) drainTo}. Used by
+ * {@code com.zs.juc.pool.ThreadPoolExecutor#executeBatch} when the pool's work
+ * queue supports it.
+ *
+ * 支持批量入队的阻塞队列：一次加锁插入多个元素。
+ *
+ * @param <E> the type of elements held in this queue
+ */
+public interface BulkBlockingQueue<E> extends BlockingQueue<E> {
+
+    /**
+     * Inserts the elements of the given collection, in iteration order, as long
+     * as they fit without exceeding the capacity, without blocking. Waiting
+     * consumers are signalled once for the batch.
+     *
+     * @param c the elements to insert
+     * @return the number of leading elements of {@code c} that were inserted;
+     *         the rest were not
+     * @throws NullPointerException if {@code c} or any of its elements is null,
+     *             in which case nothing is inserted
+     * @throws IllegalArgumentException if {@code c} is this queue
+     */
+    int offerAll(Collection<? extends E> c);
+}
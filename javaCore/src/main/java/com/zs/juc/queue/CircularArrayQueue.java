@@ -0,0 +1,112 @@
+package com.zs.juc.queue;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Base of the bounded array queues specialized for a number of producers and
+ * consumers. Elements live in a power-of-two ring indexed by two ever-growing
+ * counters, each on a cache line of its own: the producer index, the next
+ * sequence to fill, and the consumer index, the next sequence to take. A slot
+ * is empty when it holds null. Subclasses implement {@code offer} and
+ * {@code poll} for their threading contract; the rest only reads the
+ * counters, and may be called from any thread.
+ *
+ * 按生产者/消费者数量特化的有界数组队列的基类。
+ *
+ * @param <E> the type of elements held in this queue
+ */
+abstract class CircularArrayQueue<E> extends AbstractQueue<E> {
+
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    final AtomicReferenceArray<E> items;
+
+    final int capacity;
+
+    final int mask;
+
+    /** Next sequence to fill. */
+    final Sequence producerIndex = new Sequence(0L);
+
+    /** Next sequence to take. */
+    final Sequence consumerIndex = new Sequence(0L);
+
+    CircularArrayQueue(int capacity) {
+        if (capacity < 1 || capacity > MAXIMUM_CAPACITY)
+            throw new IllegalArgumentException();
+        int n = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.items = new AtomicReferenceArray<E>(n);
+        this.capacity = n;
+        this.mask = n - 1;
+    }
+
+    final int index(long sequence) {
+        return (int) sequence & mask;
+    }
+
+    /**
+     * Returns the capacity of this queue, the requested one rounded up to a
+     * power of two.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of elements in this queue. Under concurrent
+     * insertions and removals, only an estimate.
+     */
+    public int size() {
+        long after = consumerIndex.get();
+        for (;;) {
+            long before = after;
+            long p = producerIndex.get();
+            after = consumerIndex.get();
+            if (before == after) { // consistent pair
+                long n = p - after;
+                return n <= 0L ? 0 : (int) Math.min(n, capacity);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return consumerIndex.get() >= producerIndex.get();
+    }
+
+    public E peek() {
+        for (;;) {
+            long c = consumerIndex.get();
+            if (c >= producerIndex.get())
+                return null;
+            E e = items.get(index(c));
+            // null while a producer that claimed c has not stored yet
+            if (e != null && consumerIndex.get() == c)
+                return e;
+        }
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the elements in this queue, in
+     * proper sequence. The iterator does not support {@code remove}, so
+     * neither does {@link #remove(Object)}.
+     *
+     * @return an iterator over the elements in this queue in proper sequence
+     */
+    public Iterator<E> iterator() {
+        List<E> list = new ArrayList<E>();
+        long c = consumerIndex.get();
+        long p = producerIndex.get();
+        for (long s = Math.max(c, p - capacity); s < p; s++) {
+            E e = items.get(index(s));
+            // not taken meanwhile, so e is the element of s, not of a later lap
+            if (e != null && consumerIndex.get() <= s)
+                list.add(e);
+        }
+        return Collections.unmodifiableList(list).iterator();
+    }
+}
@@ -0,0 +1,73 @@
+package com.zs.juc.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CircularArrayQueueTest {
+
+    static final int PER_PRODUCER = 2000000;
+
+    public static void main(String[] args) throws InterruptedException {
+        // 单生产者单消费者
+        handOff(new SpscArrayQueue<Long>(1024), 1, 1);
+        // 多生产者单消费者
+        handOff(new MpscArrayQueue<Long>(1024), 3, 1);
+        // 单生产者多消费者
+        handOff(new SpmcArrayQueue<Long>(1024), 1, 3);
+
+        SpscArrayQueue<Long> queue = new SpscArrayQueue<Long>(5);
+        for (long i = 0; queue.offer(i); i++)
+            ;
+        System.out.println("capacity " + queue.capacity() + ", size " + queue.size() + " " + queue);
+        queue.poll();
+        System.out.println("after poll: peek " + queue.peek() + " " + queue);
+    }
+
+    static void handOff(final Queue<Long> queue, int producers, int consumers) throws InterruptedException {
+        final long total = (long) producers * PER_PRODUCER;
+        final long expected = (long) producers * PER_PRODUCER * (PER_PRODUCER + 1) / 2;
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong count = new AtomicLong();
+
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int c = 0; c < consumers; c++) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    long local = 0;
+                    while (count.get() < total) {
+                        Long e = queue.poll();
+                        if (e == null) {
+                            Thread.yield();
+                            continue;
+                        }
+                        local += e;
+                        count.incrementAndGet();
+                    }
+                    sum.addAndGet(local);
+                }
+            }));
+        }
+        for (int p = 0; p < producers; p++) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    for (long i = 1; i <= PER_PRODUCER; i++) {
+                        while (!queue.offer(i))
+                            Thread.yield();
+                    }
+                }
+            }));
+        }
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        long elapsed = System.nanoTime() - start;
+        System.out.println(queue.getClass().getSimpleName() + ": " + producers + " producers, " + consumers
+                + " consumers, " + total + " elements in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms, sum "
+                + (sum.get() == expected ? "ok" : "WRONG " + sum.get()) + ", left " + queue.size());
+    }
+}
@@ -0,0 +1,25 @@
+package com.zs.juc.queue;
+
+/**
+ * Receives the elements of a {@link RingBufferQueue} in batches, through
+ * {@link RingBufferQueue#drainTo(EventHandler, int)} or a
+ * {@link BatchEventProcessor}. The end-of-batch flag lets a handler defer
+ * expensive work, such as flushing output, until it has seen every element
+ * that was available at once.
+ *
+ * 环形队列的批量事件处理器。
+ *
+ * @param <E> the type of the events
+ */
+public interface EventHandler<E> {
+
+    /**
+     * Handles one element taken from the queue.
+     *
+     * @param event the element
+     * @param sequence the sequence number the element was published at; the
+     *            sequences handed to one handler by one call increase by one
+     * @param endOfBatch true for the last element of the batch
+     */
+    void onEvent(E event, long sequence, boolean endOfBatch);
+}
@@ -77,7 +77,7 @@ import java.util.function.Consumer;
  * @author Doug Lea
  * @param <E> the type of elements held in this collection
  */
-public class LinkedBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>, java.io.Serializable {
+public class LinkedBlockingQueue<E> extends AbstractQueue<E> implements BulkBlockingQueue<E>, java.io.Serializable {
     private static final long serialVersionUID = -6903933977591709194L;
 
     /*
@@ -429,6 +429,61 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E> implements Blocking
         return c >= 0;
     }
 
+    /**
+     * Inserts as many leading elements of the collection as fit, under one
+     * acquisition of putLock. The nodes are built and linked before the lock
+     * is taken, so the critical section only splices the chain onto last.
+     * 批量入队：在加锁前构造好节点链表，加锁后一次性挂到队尾。
+     *
+     * @throws NullPointerException {@inheritDoc}
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public int offerAll(Collection<? extends E> c) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+        Node<E> first = null, tail = null;
+        int k = 0;
+        for (E e : c) {
+            if (e == null)
+                throw new NullPointerException();
+            Node<E> node = new Node<E>(e);
+            if (first == null)
+                first = node;
+            else
+                tail.next = node;
+            tail = node;
+            ++k;
+        }
+        final AtomicInteger count = this.count;
+        if (k == 0 || count.get() == capacity)
+            return 0;
+        int n = 0, prev = -1;
+        final ReentrantLock putLock = this.putLock;
+        putLock.lock();
+        try {
+            int room = capacity - count.get();
+            if (room > 0) {
+                n = Math.min(room, k);
+                Node<E> end = first;
+                for (int i = 1; i < n; ++i)
+                    end = end.next;
+                end.next = null;
+                last.next = first;
+                last = end;
+                prev = count.getAndAdd(n);
+                if (prev + n < capacity)
+                    notFull.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (prev == 0)
+            signalNotEmpty(); // takers cascade the signal while count > 1
+        return n;
+    }
+
     public E take() throws InterruptedException {
         E x;
         int c = -1;
@@ -0,0 +1,89 @@
+package com.zs.juc.queue;
+
+/**
+ * A bounded, non-blocking queue for any number of producer threads and
+ * exactly one consumer thread at a time. Producers claim a slot with a CAS on
+ * the producer index and then store their element with an ordered store; they
+ * check the claim against a shared, cached bound and only read the consumer
+ * index when that bound is reached. The consumer needs no CAS: it finds the
+ * next element in its slot, frees the slot and advances its index with
+ * ordered stores.
+ *
+ * <p>
+ * A producer that has claimed a slot but not stored yet holds up the consumer,
+ * which spins until the element shows up rather than report an empty queue
+ * with elements behind the gap. Calling {@link #poll} from two threads at
+ * once corrupts the queue.
+ *
+ * 多生产者单消费者的有界无锁数组队列。
+ *
+ * @param <E> the type of elements held in this queue
+ */
+public class MpscArrayQueue<E> extends CircularArrayQueue<E> {
+
+    /**
+     * Producers' cached bound: the consumer index plus capacity, as last read
+     * by any producer. May lag behind, which only costs an extra read.
+     */
+    final Sequence producerLimit;
+
+    /**
+     * Creates a queue of at least the given capacity.
+     *
+     * @throws IllegalArgumentException if {@code capacity < 1} or
+     *             {@code capacity > 2^30}
+     */
+    public MpscArrayQueue(int capacity) {
+        super(capacity);
+        producerLimit = new Sequence(this.capacity);
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue if it is not
+     * full. Any thread may call this method.
+     *
+     * @return {@code true} if the element was added, {@code false} if this
+     *         queue is full
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        long limit = producerLimit.get();
+        long p;
+        do {
+            p = producerIndex.get();
+            if (p >= limit) {
+                limit = consumerIndex.get() + capacity;
+                if (p >= limit)
+                    return false;
+                producerLimit.setOrdered(limit);
+            }
+        } while (!producerIndex.compareAndSet(p, p + 1));
+        items.lazySet(index(p), e);
+        return true;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue. Only the consumer thread
+     * may call this method.
+     *
+     * @return the head of this queue, or {@code null} if it is empty
+     */
+    public E poll() {
+        long c = consumerIndex.get();
+        int i = index(c);
+        E e = items.get(i);
+        if (e == null) {
+            if (c >= producerIndex.get())
+                return null;
+            // claimed but not stored yet
+            do {
+                Thread.onSpinWait();
+            } while ((e = items.get(i)) == null);
+        }
+        items.lazySet(i, null);
+        consumerIndex.setOrdered(c + 1);
+        return e;
+    }
+}
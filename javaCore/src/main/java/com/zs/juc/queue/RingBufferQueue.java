@@ -0,0 +1,431 @@
+package com.zs.juc.queue;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A bounded {@linkplain BlockingQueue blocking queue} over a pre-allocated
+ * ring of slots addressed by ever-increasing sequence numbers, in the manner
+ * of the LMAX Disruptor. Where {@link ArrayBlockingQueue} serializes producers
+ * and consumers on one lock, here producers claim sequences from a tail
+ * counter and consumers from a head counter, each padded to a cache line of
+ * its own, and the two sides only meet on the slot they hand over.
+ *
+ * <p>
+ * Every slot records the sequence it is waiting for. A producer that claimed
+ * sequence {@code s} may fill slot {@code s & (capacity - 1)} once the slot
+ * reads {@code s}, and publishes the element by storing {@code s + 1}; a
+ * consumer that claimed {@code s} takes the element and frees the slot for the
+ * next lap by storing {@code s + capacity}. The slot stores are ordered
+ * stores rather than volatile writes.
+ *
+ * <p>
+ * Producers claim according to the {@link ProducerType} given at
+ * construction: {@link ProducerType#SINGLE} claims with plain increments and
+ * is only correct while one thread at a time inserts, {@link ProducerType#MULTI}
+ * claims with CAS. Any number of threads may remove. Operations that have to
+ * wait, such as {@link #put} and {@link #take}, wait through the queue's
+ * {@link WaitStrategy}, which decides between latency and idle CPU.
+ *
+ * <p>
+ * Consumers can take every element that is available in one claim:
+ * {@link #drainTo(Collection, int)} and {@link #drainTo(EventHandler, int)} pay
+ * one CAS for the whole batch, and a {@link BatchEventProcessor} runs a
+ * handler over the queue the way a Disruptor event processor does.
+ *
+ * <p>
+ * The capacity is rounded up to a power of two. Iterators work on a snapshot
+ * of the queue and do not support removal, so neither does
+ * {@link #remove(Object)}.
+ *
+ * 基于序号环形数组的Disruptor风格有界阻塞队列：生产者与消费者无锁交接。
+ *
+ * @param <E> the type of elements held in this queue
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    /** How producers claim sequences. */
+    public enum ProducerType {
+        /** One producer thread at a time; claims without CAS. */
+        SINGLE,
+        /** Any number of producer threads; claims with CAS. */
+        MULTI
+    }
+
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /** The elements, indexed by sequence & mask. */
+    final Object[] items;
+
+    /** Per slot, the sequence the slot waits for; see the class comment. */
+    final AtomicLongArray sequences;
+
+    final int mask;
+
+    final boolean singleProducer;
+
+    /** Next sequence producers claim. */
+    final Sequence tail = new Sequence(0L);
+
+    /** Next sequence consumers claim. */
+    final Sequence head = new Sequence(0L);
+
+    final WaitStrategy waitStrategy;
+
+    /** Whether the slot at the head is published; waited for by consumers. */
+    final BooleanSupplier notEmpty = new BooleanSupplier() {
+        public boolean getAsBoolean() {
+            long h = head.get();
+            return sequences.get(index(h)) > h;
+        }
+    };
+
+    /** Whether the slot at the tail is free; waited for by producers. */
+    final BooleanSupplier notFull = new BooleanSupplier() {
+        public boolean getAsBoolean() {
+            long t = tail.get();
+            return sequences.get(index(t)) >= t;
+        }
+    };
+
+    /**
+     * Creates a queue for any number of producers that blocks waiting threads
+     * on a lock condition.
+     *
+     * @param capacity the minimum capacity of this queue
+     * @throws IllegalArgumentException if {@code capacity < 1} or
+     *             {@code capacity > 2^30}
+     */
+    public RingBufferQueue(int capacity) {
+        this(capacity, ProducerType.MULTI, WaitStrategy.blocking());
+    }
+
+    /**
+     * Creates a queue with the given claim and wait strategies.
+     *
+     * @param capacity the minimum capacity of this queue
+     * @param producerType how producers claim slots
+     * @param waitStrategy how threads wait for a slot
+     * @throws IllegalArgumentException if {@code capacity < 1} or
+     *             {@code capacity > 2^30}
+     * @throws NullPointerException if {@code producerType} or
+     *             {@code waitStrategy} is null
+     */
+    public RingBufferQueue(int capacity, ProducerType producerType, WaitStrategy waitStrategy) {
+        if (capacity < 1 || capacity > MAXIMUM_CAPACITY)
+            throw new IllegalArgumentException();
+        if (producerType == null || waitStrategy == null)
+            throw new NullPointerException();
+        int n = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.items = new Object[n];
+        this.sequences = new AtomicLongArray(n);
+        for (int i = 0; i < n; i++)
+            sequences.set(i, i);
+        this.mask = n - 1;
+        this.singleProducer = producerType == ProducerType.SINGLE;
+        this.waitStrategy = waitStrategy;
+    }
+
+    final int index(long sequence) {
+        return (int) sequence & mask;
+    }
+
+    /**
+     * Claims the tail slot and publishes {@code e} in it.
+     *
+     * @return false if the queue is full
+     */
+    private boolean tryPublish(E e) {
+        final AtomicLongArray sequences = this.sequences;
+        if (singleProducer) {
+            long t = tail.get();
+            int i = index(t);
+            if (sequences.get(i) != t)
+                return false;
+            items[i] = e;
+            sequences.lazySet(i, t + 1);
+            tail.setOrdered(t + 1);
+            return true;
+        }
+        for (;;) {
+            long t = tail.get();
+            int i = index(t);
+            long s = sequences.get(i);
+            if (s == t) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    items[i] = e;
+                    sequences.lazySet(i, t + 1);
+                    return true;
+                }
+            } else if (s < t) // still holds the element of the previous lap
+                return false;
+            // else another producer claimed t; retry at the new tail
+        }
+    }
+
+    /**
+     * Claims the head slot and takes its element.
+     *
+     * @return null if the queue is empty
+     */
+    private E tryTake() {
+        final AtomicLongArray sequences = this.sequences;
+        for (;;) {
+            long h = head.get();
+            long s = sequences.get(index(h));
+            if (s == h + 1) {
+                if (head.compareAndSet(h, h + 1))
+                    return release(h);
+            } else if (s <= h) // not published yet
+                return null;
+            // else another consumer took h; retry at the new head
+        }
+    }
+
+    /**
+     * Takes the element of a claimed sequence and frees its slot for the
+     * producer one lap ahead.
+     */
+    @SuppressWarnings("unchecked")
+    private E release(long sequence) {
+        int i = index(sequence);
+        E e = (E) items[i];
+        items[i] = null;
+        sequences.lazySet(i, sequence + items.length);
+        return e;
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue if it is
+     * possible to do so immediately without exceeding the queue's capacity,
+     * returning {@code true} upon success and {@code false} if this queue is
+     * full.
+     *
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        if (!tryPublish(e))
+            return false;
+        waitStrategy.signalAll();
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue, waiting for
+     * space to become available if the queue is full.
+     *
+     * @throws InterruptedException {@inheritDoc}
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public void put(E e) throws InterruptedException {
+        if (e == null)
+            throw new NullPointerException();
+        while (!tryPublish(e))
+            waitStrategy.awaitNanos(notFull, Long.MAX_VALUE);
+        waitStrategy.signalAll();
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue, waiting up to
+     * the specified wait time for space to become available if the queue is
+     * full.
+     *
+     * @throws InterruptedException {@inheritDoc}
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null)
+            throw new NullPointerException();
+        long nanos = unit.toNanos(timeout);
+        while (!tryPublish(e)) {
+            if (nanos <= 0L)
+                return false;
+            nanos = waitStrategy.awaitNanos(notFull, nanos);
+        }
+        waitStrategy.signalAll();
+        return true;
+    }
+
+    public E poll() {
+        E e = tryTake();
+        if (e != null)
+            waitStrategy.signalAll();
+        return e;
+    }
+
+    public E take() throws InterruptedException {
+        E e;
+        while ((e = tryTake()) == null)
+            waitStrategy.awaitNanos(notEmpty, Long.MAX_VALUE);
+        waitStrategy.signalAll();
+        return e;
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        E e;
+        while ((e = tryTake()) == null) {
+            if (nanos <= 0L)
+                return null;
+            nanos = waitStrategy.awaitNanos(notEmpty, nanos);
+        }
+        waitStrategy.signalAll();
+        return e;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        for (;;) {
+            long h = head.get();
+            if (sequences.get(index(h)) <= h)
+                return null;
+            Object e = items[index(h)];
+            if (head.get() == h) // not taken while we read it
+                return (E) e;
+        }
+    }
+
+    /**
+     * Returns the number of elements in this queue. Elements whose slot has
+     * been claimed but not yet published are counted.
+     */
+    public int size() {
+        long h = head.get();
+        long n = tail.get() - h;
+        return n <= 0L ? 0 : (int) Math.min(n, items.length);
+    }
+
+    /**
+     * Returns the number of additional elements that this queue can ideally
+     * (in the absence of memory or resource constraints) accept without
+     * blocking.
+     */
+    public int remainingCapacity() {
+        return items.length - size();
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException {@inheritDoc}
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes at most the given number of available elements from this queue
+     * and adds them to the given collection, claiming them with a single CAS.
+     * Should adding an element fail, the rest of the claimed batch is
+     * discarded.
+     *
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException {@inheritDoc}
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public int drainTo(final Collection<? super E> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+        return drainTo(new EventHandler<E>() {
+            public void onEvent(E event, long sequence, boolean endOfBatch) {
+                c.add(event);
+            }
+        }, maxElements);
+    }
+
+    /**
+     * Removes at most the given number of elements that are available at once
+     * and hands them, in order, to the given handler. The elements are claimed
+     * with a single CAS, and each slot is freed before its element is handed
+     * over. Does not wait.
+     *
+     * <p>
+     * Should the handler throw, the rest of the claimed batch is discarded and
+     * the exception propagates.
+     *
+     * @param handler receives the elements
+     * @param maxElements the maximum number of elements to take
+     * @return the number of elements taken
+     * @throws NullPointerException if the handler is null
+     */
+    public int drainTo(EventHandler<? super E> handler, int maxElements) {
+        if (handler == null)
+            throw new NullPointerException();
+        final AtomicLongArray sequences = this.sequences;
+        final int limit = Math.min(maxElements, items.length);
+        long h;
+        int n;
+        do {
+            h = head.get();
+            for (n = 0; n < limit && sequences.get(index(h + n)) == h + n + 1; n++)
+                ;
+            if (n == 0)
+                return 0;
+        } while (!head.compareAndSet(h, h + n));
+        long s = h;
+        final long end = h + n;
+        try {
+            while (s < end) {
+                long seq = s++;
+                handler.onEvent(release(seq), seq, s == end);
+            }
+        } finally {
+            while (s < end)
+                release(s++);
+            waitStrategy.signalAll();
+        }
+        return n;
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the elements in this queue, in
+     * proper sequence. The iterator does not support {@code remove}.
+     *
+     * @return an iterator over the elements in this queue in proper sequence
+     */
+    public Iterator<E> iterator() {
+        return Collections.unmodifiableList(snapshot()).iterator();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<E> snapshot() {
+        final AtomicLongArray sequences = this.sequences;
+        List<E> list = new ArrayList<E>();
+        long h = head.get();
+        long t = tail.get();
+        for (long s = Math.max(h, t - items.length); s < t; s++) {
+            int i = index(s);
+            if (sequences.get(i) == s + 1) {
+                Object e = items[i];
+                // still published: e was not taken and replaced meanwhile
+                if (e != null && sequences.get(i) == s + 1)
+                    list.add((E) e);
+            }
+        }
+        return list;
+    }
+
+    /** Returns the producer type given at construction. */
+    public ProducerType getProducerType() {
+        return singleProducer ? ProducerType.SINGLE : ProducerType.MULTI;
+    }
+
+    /** Returns the wait strategy given at construction. */
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+}
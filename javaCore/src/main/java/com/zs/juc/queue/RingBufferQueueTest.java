@@ -0,0 +1,102 @@
+package com.zs.juc.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RingBufferQueueTest {
+
+    static final int PER_PRODUCER = 1000000;
+
+    public static void main(String[] args) throws InterruptedException {
+        WaitStrategy[] strategies = { WaitStrategy.busySpin(), WaitStrategy.yielding(), WaitStrategy.parking(),
+                WaitStrategy.blocking() };
+        int cpus = Runtime.getRuntime().availableProcessors();
+        for (WaitStrategy strategy : strategies) {
+            // 忙等需要每个线程独占一个核
+            if (strategy == WaitStrategy.busySpin() && cpus < 5)
+                continue;
+            // 单生产者，一个take线程和一个批量处理器
+            handOff(new RingBufferQueue<Long>(1024, RingBufferQueue.ProducerType.SINGLE, strategy), 1);
+            // 多生产者
+            handOff(new RingBufferQueue<Long>(1024, RingBufferQueue.ProducerType.MULTI, strategy), 3);
+        }
+
+        RingBufferQueue<Long> queue = new RingBufferQueue<Long>(5);
+        for (long i = 0; queue.offer(i); i++)
+            ;
+        System.out.println("capacity 5 rounded up: " + queue.size() + " " + queue);
+        List<Long> drained = new ArrayList<Long>();
+        queue.drainTo(drained, 3);
+        System.out.println("drained " + drained + ", left " + queue + ", peek " + queue.peek());
+        System.out.println("timed poll on empty: "
+                + new RingBufferQueue<Long>(4).poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    static void handOff(final RingBufferQueue<Long> queue, int producers) throws InterruptedException {
+        final long expected = (long) producers * PER_PRODUCER * (PER_PRODUCER + 1) / 2;
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong batches = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(1);
+        final long total = (long) producers * PER_PRODUCER;
+
+        BatchEventProcessor<Long> processor = new BatchEventProcessor<Long>(queue, new EventHandler<Long>() {
+            public void onEvent(Long event, long sequence, boolean endOfBatch) {
+                sum.addAndGet(event);
+                if (endOfBatch)
+                    batches.incrementAndGet();
+                if (count.incrementAndGet() == total)
+                    done.countDown();
+            }
+        });
+        Thread taker = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (;;) {
+                        sum.addAndGet(queue.take());
+                        if (count.incrementAndGet() == total)
+                            done.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    // 结束
+                }
+            }
+        });
+        Thread processorThread = new Thread(processor);
+        taker.start();
+        processorThread.start();
+
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            Thread t = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (long i = 1; i <= PER_PRODUCER; i++)
+                            queue.put(i);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads)
+            t.join();
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        processor.halt();
+        taker.interrupt();
+        processorThread.join();
+        taker.join();
+        System.out.println(queue.getProducerType() + "/" + queue.getWaitStrategy() + ": " + producers
+                + " producers, " + total + " elements in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms, "
+                + batches.get() + " batches, sum " + (sum.get() == expected ? "ok" : "WRONG " + sum.get())
+                + ", left " + queue.size());
+    }
+}
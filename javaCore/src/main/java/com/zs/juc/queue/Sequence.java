@@ -0,0 +1,57 @@
+package com.zs.juc.queue;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A {@code long} counter that sits alone on its cache line, so that a
+ * producer's counter and a consumer's counter never invalidate each other.
+ * The padding lives in superclasses because the JVM may reorder the fields of
+ * one class but always lays out a superclass's fields before its subclass's.
+ *
+ * 独占缓存行的序号计数器，避免生产者与消费者计数器的伪共享。
+ */
+final class Sequence extends SequenceRhsPadding {
+
+    private static final AtomicLongFieldUpdater<SequenceValue> VALUE = AtomicLongFieldUpdater
+            .newUpdater(SequenceValue.class, "value");
+
+    Sequence(long initialValue) {
+        value = initialValue;
+    }
+
+    long get() {
+        return value;
+    }
+
+    void set(long newValue) {
+        value = newValue;
+    }
+
+    /**
+     * Stores without the trailing store-load fence of a volatile write; enough
+     * when the writer is the only thread that updates the counter.
+     */
+    void setOrdered(long newValue) {
+        VALUE.lazySet(this, newValue);
+    }
+
+    boolean compareAndSet(long expect, long update) {
+        return VALUE.compareAndSet(this, expect, update);
+    }
+
+    public String toString() {
+        return Long.toString(value);
+    }
+}
+
+abstract class SequenceLhsPadding {
+    long p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class SequenceValue extends SequenceLhsPadding {
+    volatile long value;
+}
+
+abstract class SequenceRhsPadding extends SequenceValue {
+    long p11, p12, p13, p14, p15, p16, p17;
+}
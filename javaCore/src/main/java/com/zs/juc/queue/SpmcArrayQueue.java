@@ -0,0 +1,88 @@
+package com.zs.juc.queue;
+
+/**
+ * A bounded, non-blocking queue for exactly one producer thread and any
+ * number of consumer threads. The producer needs no CAS: it checks that its
+ * next slot is empty, stores the element and advances its index with ordered
+ * stores. Consumers claim a sequence with a CAS on the consumer index,
+ * checking it against a shared, cached copy of the producer index, and read
+ * the producer index itself only when that copy is used up.
+ *
+ * <p>
+ * A consumer that has claimed a slot but not cleared it yet holds up the
+ * producer once it comes round again, which then spins until the slot is
+ * cleared. Calling {@link #offer} from two threads at once corrupts the
+ * queue.
+ *
+ * 单生产者多消费者的有界无锁数组队列。
+ *
+ * @param <E> the type of elements held in this queue
+ */
+public class SpmcArrayQueue<E> extends CircularArrayQueue<E> {
+
+    /**
+     * Consumers' cached producer index, as last read by any consumer. May lag
+     * behind, which only costs an extra read.
+     */
+    final Sequence producerIndexCache = new Sequence(0L);
+
+    /**
+     * Creates a queue of at least the given capacity.
+     *
+     * @throws IllegalArgumentException if {@code capacity < 1} or
+     *             {@code capacity > 2^30}
+     */
+    public SpmcArrayQueue(int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue if it is not
+     * full. Only the producer thread may call this method.
+     *
+     * @return {@code true} if the element was added, {@code false} if this
+     *         queue is full
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        long p = producerIndex.get();
+        int i = index(p);
+        if (items.get(i) != null) {
+            if (p - consumerIndex.get() >= capacity)
+                return false;
+            // taken from the previous lap but not cleared yet
+            do {
+                Thread.onSpinWait();
+            } while (items.get(i) != null);
+        }
+        items.lazySet(i, e);
+        producerIndex.setOrdered(p + 1);
+        return true;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue. Any thread may call this
+     * method.
+     *
+     * @return the head of this queue, or {@code null} if it is empty
+     */
+    public E poll() {
+        long cache = producerIndexCache.get();
+        long c;
+        do {
+            c = consumerIndex.get();
+            if (c >= cache) {
+                long p = producerIndex.get();
+                if (c >= p)
+                    return null;
+                producerIndexCache.setOrdered(cache = p);
+            }
+        } while (!consumerIndex.compareAndSet(c, c + 1));
+        int i = index(c);
+        E e = items.get(i);
+        items.lazySet(i, null);
+        return e;
+    }
+}
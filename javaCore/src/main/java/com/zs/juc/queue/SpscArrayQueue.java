@@ -0,0 +1,83 @@
+package com.zs.juc.queue;
+
+/**
+ * A bounded, non-blocking queue for exactly one producer thread and one
+ * consumer thread at a time. Neither side ever uses a CAS or a full fence:
+ * each advances its own index with ordered stores, and reads the other side's
+ * index only when the copy it cached last time is used up, so a steady stream
+ * touches the opposite cache line about once per lap instead of once per
+ * element.
+ *
+ * <p>
+ * Calling {@link #offer} from two threads at once, or {@link #poll} from two
+ * threads at once, corrupts the queue. The other methods may be called from
+ * any thread. For waiting, or any other number of threads, see
+ * {@link RingBufferQueue}.
+ *
+ * 单生产者单消费者的有界无锁数组队列。
+ *
+ * @param <E> the type of elements held in this queue
+ */
+public class SpscArrayQueue<E> extends CircularArrayQueue<E> {
+
+    /** Producer's cached bound: the consumer index plus capacity, as last read. */
+    final Sequence producerLimit;
+
+    /** Consumer's cached producer index, as last read. */
+    final Sequence producerIndexCache = new Sequence(0L);
+
+    /**
+     * Creates a queue of at least the given capacity.
+     *
+     * @throws IllegalArgumentException if {@code capacity < 1} or
+     *             {@code capacity > 2^30}
+     */
+    public SpscArrayQueue(int capacity) {
+        super(capacity);
+        producerLimit = new Sequence(this.capacity);
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue if it is not
+     * full. Only the producer thread may call this method.
+     *
+     * @return {@code true} if the element was added, {@code false} if this
+     *         queue is full
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        long p = producerIndex.get();
+        if (p >= producerLimit.get()) {
+            long limit = consumerIndex.get() + capacity;
+            if (p >= limit)
+                return false;
+            producerLimit.setOrdered(limit);
+        }
+        items.lazySet(index(p), e);
+        producerIndex.setOrdered(p + 1);
+        return true;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue. Only the consumer thread
+     * may call this method.
+     *
+     * @return the head of this queue, or {@code null} if it is empty
+     */
+    public E poll() {
+        long c = consumerIndex.get();
+        if (c >= producerIndexCache.get()) {
+            long p = producerIndex.get();
+            if (c >= p)
+                return null;
+            producerIndexCache.setOrdered(p);
+        }
+        int i = index(c);
+        E e = items.get(i);
+        items.lazySet(i, null);
+        consumerIndex.setOrdered(c + 1);
+        return e;
+    }
+}
@@ -0,0 +1,163 @@
+package com.zs.juc.queue;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The {@link WaitStrategy} implementations.
+ *
+ * 等待策略的实现。
+ */
+final class WaitStrategies {
+
+    /** Checks spent spinning before the yielding and parking strategies back off. */
+    static final int SPIN_TRIES = 100;
+
+    /** Checks spent yielding before the parking strategy starts to park. */
+    static final int YIELD_TRIES = 100;
+
+    static final long DEFAULT_PARK_NANOS = 50000L;
+
+    private WaitStrategies() {
+    }
+
+    static final class BusySpin implements WaitStrategy {
+        static final BusySpin INSTANCE = new BusySpin();
+
+        public long awaitNanos(BooleanSupplier ready, long nanos) throws InterruptedException {
+            final long deadline = System.nanoTime() + nanos;
+            while (!ready.getAsBoolean()) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                if ((nanos = deadline - System.nanoTime()) <= 0L)
+                    return nanos;
+                Thread.onSpinWait();
+            }
+            return deadline - System.nanoTime();
+        }
+
+        public void signalAll() {
+        }
+
+        public String toString() {
+            return "busySpin";
+        }
+    }
+
+    static final class Yielding implements WaitStrategy {
+        static final Yielding INSTANCE = new Yielding();
+
+        public long awaitNanos(BooleanSupplier ready, long nanos) throws InterruptedException {
+            final long deadline = System.nanoTime() + nanos;
+            for (int tries = 0; !ready.getAsBoolean(); tries++) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                if ((nanos = deadline - System.nanoTime()) <= 0L)
+                    return nanos;
+                if (tries < SPIN_TRIES)
+                    Thread.onSpinWait();
+                else
+                    Thread.yield();
+            }
+            return deadline - System.nanoTime();
+        }
+
+        public void signalAll() {
+        }
+
+        public String toString() {
+            return "yielding";
+        }
+    }
+
+    static final class Parking implements WaitStrategy {
+        final long parkNanos;
+
+        Parking(long parkNanos) {
+            this.parkNanos = parkNanos;
+        }
+
+        public long awaitNanos(BooleanSupplier ready, long nanos) throws InterruptedException {
+            final long deadline = System.nanoTime() + nanos;
+            for (int tries = 0; !ready.getAsBoolean(); tries++) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                if ((nanos = deadline - System.nanoTime()) <= 0L)
+                    return nanos;
+                if (tries < SPIN_TRIES)
+                    Thread.onSpinWait();
+                else if (tries < SPIN_TRIES + YIELD_TRIES)
+                    Thread.yield();
+                else
+                    LockSupport.parkNanos(this, Math.min(parkNanos, nanos));
+            }
+            return deadline - System.nanoTime();
+        }
+
+        public void signalAll() {
+        }
+
+        public String toString() {
+            return "parking(" + parkNanos + "ns)";
+        }
+    }
+
+    /**
+     * Waiters register before checking their condition under the lock, and
+     * signallers only take the lock when someone is registered, so that an
+     * uncontended hand-off costs a fence rather than a lock acquisition.
+     */
+    static final class Blocking implements WaitStrategy {
+        final ReentrantLock lock = new ReentrantLock();
+
+        final Condition changed = lock.newCondition();
+
+        final AtomicInteger waiters = new AtomicInteger();
+
+        public long awaitNanos(BooleanSupplier ready, long nanos) throws InterruptedException {
+            if (ready.getAsBoolean())
+                return nanos;
+            waiters.incrementAndGet();
+            try {
+                final ReentrantLock lock = this.lock;
+                lock.lockInterruptibly();
+                try {
+                    while (!ready.getAsBoolean()) {
+                        if (nanos <= 0L)
+                            return nanos;
+                        nanos = changed.awaitNanos(nanos);
+                    }
+                    return nanos;
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                waiters.decrementAndGet();
+            }
+        }
+
+        public void signalAll() {
+            // the caller's publishing store may be an ordered one: keep it
+            // from passing the read of waiters, or a waiter that registered
+            // meanwhile could miss both the store and the signal
+            VarHandle.fullFence();
+            if (waiters.get() != 0) {
+                final ReentrantLock lock = this.lock;
+                lock.lock();
+                try {
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        public String toString() {
+            return "blocking";
+        }
+    }
+}
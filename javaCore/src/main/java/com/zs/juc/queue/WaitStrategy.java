@@ -0,0 +1,79 @@
+package com.zs.juc.queue;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * How a thread of a {@link RingBufferQueue} waits for a slot to be published
+ * or freed. The strategies trade CPU for hand-off latency:
+ * <ul>
+ * <li>{@link #busySpin()} never gives up the CPU; lowest latency, but only
+ * when every waiting thread has a core of its own.</li>
+ * <li>{@link #yielding()} spins briefly, then yields between checks.</li>
+ * <li>{@link #parking()} spins, yields, then parks for short fixed periods;
+ * costs little CPU when idle at the price of tens of microseconds of
+ * latency.</li>
+ * <li>{@link #blocking()} waits on a condition signalled by the other side,
+ * like {@link ArrayBlockingQueue}; the only one that costs nothing while
+ * idle.</li>
+ * </ul>
+ *
+ * 环形队列的等待策略：忙等、让出、定时park或阻塞。
+ */
+public interface WaitStrategy {
+
+    /**
+     * Waits until {@code ready} returns true or the time elapses. May also
+     * return early; callers re-check their condition and wait again.
+     *
+     * @param ready the condition waited for
+     * @param nanos the maximum time to wait; {@link Long#MAX_VALUE} for no
+     *            limit
+     * @return an estimate of the time left, {@code <= 0} once it elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    long awaitNanos(BooleanSupplier ready, long nanos) throws InterruptedException;
+
+    /**
+     * Called after every publish and every free so that waiting threads
+     * re-check their condition. A no-op for strategies that poll.
+     */
+    void signalAll();
+
+    /** Returns a strategy that spins on the condition. */
+    static WaitStrategy busySpin() {
+        return WaitStrategies.BusySpin.INSTANCE;
+    }
+
+    /** Returns a strategy that spins, then yields between checks. */
+    static WaitStrategy yielding() {
+        return WaitStrategies.Yielding.INSTANCE;
+    }
+
+    /**
+     * Returns a strategy that spins, yields, then parks for 50 microseconds
+     * between checks.
+     */
+    static WaitStrategy parking() {
+        return new WaitStrategies.Parking(WaitStrategies.DEFAULT_PARK_NANOS);
+    }
+
+    /**
+     * Returns a strategy that spins, yields, then parks for the given time
+     * between checks.
+     *
+     * @throws IllegalArgumentException if {@code parkNanos <= 0}
+     */
+    static WaitStrategy parking(long parkNanos) {
+        if (parkNanos <= 0L)
+            throw new IllegalArgumentException();
+        return new WaitStrategies.Parking(parkNanos);
+    }
+
+    /**
+     * Returns a strategy that blocks on a lock condition. Each call returns a
+     * new instance, with a lock of its own.
+     */
+    static WaitStrategy blocking() {
+        return new WaitStrategies.Blocking();
+    }
+}
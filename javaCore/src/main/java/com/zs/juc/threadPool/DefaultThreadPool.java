@@ -2,138 +2,384 @@
  * Copyright (C) 2014-2016 Omniprime All rights reserved
  * Author: zhangsh
  * Date: 2017年7月4日
- * Description:DefaultThreadPool.java 
+ * Description:DefaultThreadPool.java
  */
 package com.zs.juc.threadPool;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * @author zhangsh
+ * A {@link ThreadPool} whose workers take jobs from a lock-free
+ * {@link ConcurrentLinkedQueue} and park when there is nothing to do.
+ *
+ * <p>
+ * The pool keeps between {@code minWorkers} and {@code maxWorkers} threads.
+ * {@link #execute} wakes an idle worker if there is one, and otherwise starts
+ * a new worker while fewer than {@code maxWorkers} exist. Workers above
+ * {@code minWorkers} exit after staying idle for the keep-alive time.
+ * {@link #addWorkers} raises both bounds and {@link #removeWorker} lowers
+ * them below the current number of workers; a removed worker finishes its
+ * current job first.
+ *
+ * <p>
+ * Idle workers push themselves on a lock-free stack and
+ * {@link LockSupport#park park}; a producer pops one and unparks it, so
+ * neither side takes a lock. The most recently idle worker is woken first,
+ * which leaves the others to time out when the load drops.
  *
+ * <p>
+ * {@link #shutDown} is graceful: new jobs are ignored, as null ones always
+ * were, while the jobs already queued still run; the workers exit once the
+ * queue is empty. {@link #awaitTermination} waits for that. A job that throws
+ * is reported to the worker's uncaught exception handler and the worker goes
+ * on with the next job.
+ *
+ * 基于无锁队列的线程池：空闲线程park/unpark，线程数在最小值和最大值之间伸缩，shutDown后执行完已提交任务再退出。
+ *
+ * @author zhangsh
  */
 public class DefaultThreadPool<Job extends Runnable> implements ThreadPool<Job> {
-    private static final int MAX_WORKERS_NUMBERS = 10;
 
     private static final int DEFAULT_WORKER_NUMBERS = 5;
 
     private static final int MIN_WORKER_NUMBERS = 1;
 
-    private final LinkedList<Job> jobs = new LinkedList<Job>();
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = 60000L;
 
-    // not good
-    AtomicInteger id = new AtomicInteger(0);
+    // Worker states
+    private static final int RUNNING = 0;
 
-    private final List<Worker> workers = Collections.synchronizedList(new ArrayList<Worker>());
+    private static final int IDLE = 1;
+
+    private static final int EXITED = 2;
+
+    private final ConcurrentLinkedQueue<Job> jobs = new ConcurrentLinkedQueue<Job>();
+
+    /** Number of queued jobs, since the queue's size() is a traversal. */
+    private final AtomicInteger jobCount = new AtomicInteger();
+
+    /** Treiber stack of idle workers; may hold stale entries of busy or exited ones. */
+    private final AtomicReference<IdleNode> idle = new AtomicReference<IdleNode>();
+
+    private final AtomicInteger workerCount = new AtomicInteger();
+
+    private final AtomicInteger id = new AtomicInteger(0);
+
+    private final long keepAliveNanos;
+
+    private volatile int minWorkers;
+
+    private volatile int maxWorkers;
+
+    private volatile boolean running = true;
+
+    private final CountDownLatch termination = new CountDownLatch(1);
 
-    /**
-     * 
-     */
     public DefaultThreadPool() {
-        new DefaultThreadPool<Job>(DEFAULT_WORKER_NUMBERS);
+        this(DEFAULT_WORKER_NUMBERS);
     }
 
+    /**
+     * Creates a pool with a fixed number of workers.
+     *
+     * @param num the number of workers, at least 1
+     */
     public DefaultThreadPool(int num) {
-        num = num > MAX_WORKERS_NUMBERS ? MAX_WORKERS_NUMBERS : num < MIN_WORKER_NUMBERS ? MIN_WORKER_NUMBERS : num;
-
-        initializeWorkers(num);
+        this(num, num, DEFAULT_KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * @param num
+     * Creates a pool that starts {@code minWorkers} workers and grows up to
+     * {@code maxWorkers} under load.
+     *
+     * @param minWorkers the workers kept even when idle
+     * @param maxWorkers the most workers, at least 1
+     * @param keepAlive how long a worker above {@code minWorkers} stays idle
+     *            before it exits
+     * @param unit the unit of {@code keepAlive}
+     * @throws IllegalArgumentException if {@code minWorkers < 0},
+     *             {@code maxWorkers < Math.max(1, minWorkers)} or
+     *             {@code keepAlive <= 0}
      */
-    private void initializeWorkers(int num) {
-        for (int i = 0; i < num; i++) {
-            Worker w = new Worker();
-            workers.add(w);
-            new Thread(w, id.getAndIncrement() + "").start();
-        }
+    public DefaultThreadPool(int minWorkers, int maxWorkers, long keepAlive, TimeUnit unit) {
+        if (minWorkers < 0 || maxWorkers < Math.max(MIN_WORKER_NUMBERS, minWorkers) || keepAlive <= 0)
+            throw new IllegalArgumentException();
+        this.minWorkers = minWorkers;
+        this.maxWorkers = maxWorkers;
+        this.keepAliveNanos = unit.toNanos(keepAlive);
+        for (int i = 0; i < minWorkers; i++)
+            startWorker(Integer.MAX_VALUE);
     }
 
     @Override
     public void execute(Job job) {
-        if (null != job) {
-            synchronized (jobs) {
-                jobs.add(job);
-                jobs.notify();
-            }
+        if (null == job || !running)
+            return;
+        jobCount.incrementAndGet();
+        jobs.offer(job);
+        if (!running) {
+            // raced with shutDown: drop the job unless a worker already has it
+            if (jobs.remove(job))
+                jobCount.decrementAndGet();
+            return;
         }
-
+        signalWork();
     }
 
-    @Override
-    public void shutDown() {
+    /**
+     * Wakes an idle worker, or starts one if none is idle and the pool may
+     * grow. Called after a job is queued; if every worker is busy it will find
+     * the job when it next polls the queue.
+     */
+    private void signalWork() {
+        if (!wakeIdleWorker())
+            startWorker(maxWorkers);
+    }
 
-        for (Worker worker : workers) {
-            worker.shutDown();
+    private boolean wakeIdleWorker() {
+        for (IdleNode h; (h = idle.get()) != null;) {
+            if (idle.compareAndSet(h, h.next) && h.worker.state.compareAndSet(IDLE, RUNNING)) {
+                LockSupport.unpark(h.worker.thread);
+                return true;
+            }
         }
+        return false;
+    }
 
+    /**
+     * Wakes every worker idle now, so they recheck the pool state. The stack is
+     * detached at once since woken workers may push themselves again.
+     */
+    private void wakeAllIdleWorkers() {
+        for (IdleNode h = idle.getAndSet(null); h != null; h = h.next)
+            if (h.worker.state.compareAndSet(IDLE, RUNNING))
+                LockSupport.unpark(h.worker.thread);
     }
 
-    @Override
-    public void addWorkers(int num) {
-        synchronized (jobs) {
-            for (int i = 0; i < num; i++) {
-                if (workers.size() <= MAX_WORKERS_NUMBERS) {
-                    Worker w = new Worker();
-                    workers.add(w);
-                    new Thread(w, id.getAndIncrement() + "").start();
+    /** Starts a worker if fewer than {@code limit} exist. */
+    private boolean startWorker(int limit) {
+        for (int c; (c = workerCount.get()) < limit;) {
+            if (workerCount.compareAndSet(c, c + 1)) {
+                Worker w = new Worker();
+                Thread t = new Thread(w, "DefaultThreadPool-worker-" + id.getAndIncrement());
+                w.thread = t;
+                try {
+                    t.start();
+                } catch (Throwable e) {
+                    releaseSlot(0);
+                    tryTerminate();
+                    throw e;
                 }
+                return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * Gives up one worker slot if more than {@code limit} workers exist.
+     */
+    private boolean releaseSlot(int limit) {
+        for (int c; (c = workerCount.get()) > limit;)
+            if (workerCount.compareAndSet(c, c - 1))
+                return true;
+        return false;
+    }
 
+    private void tryTerminate() {
+        if (!running && workerCount.get() == 0)
+            termination.countDown();
+    }
+
+    private Job takeJob() {
+        Job job = jobs.poll();
+        if (job != null)
+            jobCount.decrementAndGet();
+        return job;
     }
 
     @Override
-    public void removeWorker(int num) {
-        synchronized (jobs) {
-            if (num <= workers.size()) {
-                for (int i = 0; i < num; i++) {
-                    Worker w = workers.get(0);
-                    workers.remove(w);
-                    w.shutDown();
-                }
-            }
-        }
+    public void shutDown() {
+        running = false;
+        wakeAllIdleWorkers();
+        tryTerminate();
+    }
+
+    /**
+     * Waits until the pool has shut down and every queued job has run.
+     *
+     * @return true if the pool terminated, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return termination.await(timeout, unit);
+    }
+
+    public boolean isShutDown() {
+        return !running;
+    }
+
+    public boolean isTerminated() {
+        return termination.getCount() == 0;
+    }
+
+    /**
+     * Raises both worker bounds by {@code num} and starts that many workers.
+     */
+    @Override
+    public synchronized void addWorkers(int num) {
+        if (num <= 0 || !running)
+            return;
+        minWorkers += num;
+        maxWorkers += num;
+        for (int i = 0; i < num; i++)
+            startWorker(maxWorkers);
     }
 
+    /**
+     * Retires {@code num} workers: {@code maxWorkers} drops to the current
+     * number of workers less {@code num}, but not below 1, and
+     * {@code minWorkers} no higher than that. Surplus workers exit once they
+     * finish their current job. Has no effect unless {@code num} is at most
+     * the number of workers.
+     */
     @Override
-    public synchronized int getJobSize() {
-        return jobs.size();
+    public synchronized void removeWorker(int num) {
+        int wc = workerCount.get();
+        if (num <= 0 || num > wc)
+            return;
+        maxWorkers = Math.max(MIN_WORKER_NUMBERS, Math.min(maxWorkers, wc) - num);
+        minWorkers = Math.min(Math.max(0, minWorkers - num), maxWorkers);
+        wakeAllIdleWorkers();
+    }
+
+    @Override
+    public int getJobSize() {
+        return jobCount.get();
+    }
+
+    public int getWorkerSize() {
+        return workerCount.get();
+    }
+
+    public int getMinWorkers() {
+        return minWorkers;
+    }
+
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    public String toString() {
+        return super.toString() + "[" + (running ? "Running" : isTerminated() ? "Terminated" : "Shutting down")
+                + ", workers = " + workerCount.get() + " in [" + minWorkers + ", " + maxWorkers + "], jobs = "
+                + jobCount.get() + "]";
+    }
+
+    final class IdleNode {
+        final Worker worker;
+
+        final IdleNode next;
+
+        IdleNode(Worker worker, IdleNode next) {
+            this.worker = worker;
+            this.next = next;
+        }
     }
 
     class Worker implements Runnable {
 
-        private volatile boolean running = true;
+        final AtomicInteger state = new AtomicInteger(RUNNING);
+
+        volatile Thread thread;
 
         @Override
         public void run() {
-            while (running) {
-                Job job = null;
-                synchronized (jobs) {
-                    while (jobs.isEmpty()) {
-                        try {
-                            jobs.wait();
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
+            try {
+                for (Job job; (job = getJob()) != null;) {
+                    Thread.interrupted(); // jobs never see an interrupt left by the previous one
+                    try {
+                        job.run();
+                    } catch (Throwable e) {
+                        Thread t = Thread.currentThread();
+                        t.getUncaughtExceptionHandler().uncaughtException(t, e);
                     }
-                    job = jobs.removeFirst();
-                }
-                if (null != job) {
-                    job.run();
                 }
+            } finally {
+                if (state.getAndSet(EXITED) != EXITED)
+                    releaseSlot(0); // abrupt exit, the slot is still held
+                // a job queued while we were leaving must not be stranded, also
+                // when shutting down; signal before terminating so that a
+                // worker started for it holds termination back
+                if (jobCount.get() > 0)
+                    signalWork();
+                tryTerminate();
             }
         }
 
-        public void shutDown() {
-            running = false;
+        /**
+         * Returns the next job, or null if this worker must exit: the pool is
+         * shut down and drained, there are more workers than
+         * {@code maxWorkers}, or it stayed idle for the keep-alive time while
+         * there were more than {@code minWorkers}.
+         */
+        private Job getJob() {
+            long deadline = 0L;
+            for (;;) {
+                // every exit path gives up its slot before setting EXITED
+                if (releaseSlot(maxWorkers)) {
+                    state.set(EXITED);
+                    return null;
+                }
+                Job job = takeJob();
+                if (job != null) {
+                    state.compareAndSet(IDLE, RUNNING);
+                    return job;
+                }
+                if (!running) {
+                    // a job queued after our poll but before shutDown must
+                    // still run: poll once more now that running reads false
+                    if ((job = takeJob()) != null) {
+                        state.compareAndSet(IDLE, RUNNING);
+                        return job;
+                    }
+                    releaseSlot(0);
+                    state.set(EXITED);
+                    return null;
+                }
+                if (state.get() == RUNNING) {
+                    // announce idleness, then recheck the queue before parking
+                    state.set(IDLE);
+                    push();
+                    deadline = System.nanoTime() + keepAliveNanos;
+                    continue;
+                }
+                long nanos = deadline - System.nanoTime();
+                if (nanos <= 0L) {
+                    if (releaseSlot(minWorkers)) {
+                        if (state.compareAndSet(IDLE, EXITED))
+                            return null;
+                        workerCount.incrementAndGet(); // woken meanwhile: keep the slot and the job
+                    }
+                    deadline = System.nanoTime() + keepAliveNanos;
+                    continue;
+                }
+                LockSupport.parkNanos(DefaultThreadPool.this, nanos);
+            }
         }
 
+        private void push() {
+            for (IdleNode h;;) {
+                h = idle.get();
+                if (idle.compareAndSet(h, new IdleNode(this, h)))
+                    return;
+            }
+        }
     }
 
 }
@@ -0,0 +1,103 @@
+package com.zs.juc.threadPool;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A {@link ThreadPool} backed by virtual threads: every job gets a virtual
+ * thread of its own, and the "workers" of the pool are permits. At most as many
+ * jobs as there are workers run at once; the others wait for a permit, in
+ * submission order, parked in their virtual threads, so {@link #execute} never
+ * blocks.
+ *
+ * <p>
+ * {@link #addWorkers} and {@link #removeWorker} change the number of permits;
+ * as in {@link DefaultThreadPool}, no more workers than exist can be removed,
+ * and a removal takes effect as running jobs finish. {@link #getJobSize} counts the
+ * jobs waiting for a permit. After {@link #shutDown} new jobs are ignored, as
+ * {@link DefaultThreadPool} ignores null ones, and jobs already submitted still
+ * run.
+ *
+ * 基于虚拟线程的ThreadPool实现：每个任务一个虚拟线程，工作线程数即信号量许可数。
+ */
+public class VirtualThreadPool<Job extends Runnable> implements ThreadPool<Job> {
+
+    private static final int DEFAULT_WORKER_NUMBERS = 5;
+
+    private final Permits permits;
+
+    /** Current number of permits handed out or available; guarded by this. */
+    private int workers;
+
+    private final ThreadFactory factory = Thread.ofVirtual().name("virtual-pool-", 0).factory();
+
+    private volatile boolean running = true;
+
+    public VirtualThreadPool() {
+        this(DEFAULT_WORKER_NUMBERS);
+    }
+
+    /**
+     * @param num the number of jobs allowed to run at once, at least 1
+     */
+    public VirtualThreadPool(int num) {
+        workers = Math.max(1, num);
+        permits = new Permits(workers);
+    }
+
+    @Override
+    public void execute(final Job job) {
+        if (null == job || !running)
+            return;
+        factory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                permits.acquireUninterruptibly();
+                try {
+                    job.run();
+                } finally {
+                    permits.release();
+                }
+            }
+        }).start();
+    }
+
+    @Override
+    public void shutDown() {
+        running = false;
+    }
+
+    @Override
+    public synchronized void addWorkers(int num) {
+        if (num > 0) {
+            workers += num;
+            permits.release(num);
+        }
+    }
+
+    @Override
+    public synchronized void removeWorker(int num) {
+        if (num > 0 && num <= workers) {
+            workers -= num;
+            permits.reducePermits(num);
+        }
+    }
+
+    @Override
+    public int getJobSize() {
+        return permits.getQueueLength();
+    }
+
+    /** Exposes {@link Semaphore#reducePermits}. */
+    @SuppressWarnings("serial")
+    static final class Permits extends Semaphore {
+        Permits(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
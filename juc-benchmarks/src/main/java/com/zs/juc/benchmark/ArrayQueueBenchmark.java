@@ -0,0 +1,150 @@
+package com.zs.juc.benchmark;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The bounded array queues specialized by producer and consumer count
+ * ({@code impl=fork}: {@code SpscArrayQueue}, {@code MpscArrayQueue},
+ * {@code SpmcArrayQueue}) against the general multi-producer multi-consumer
+ * queues used in their place: the {@code ArrayBlockingQueue} fork, the
+ * {@code RingBufferQueue} with the matching producer type, and
+ * {@code java.util.concurrent.ArrayBlockingQueue} as the baseline. Each
+ * thread group has its own queue and sticks to the queue's threading
+ * contract: one producer and one consumer, three producers and one consumer,
+ * or one producer and three consumers. As in {@link QueueBenchmark}, offers
+ * and polls do not block, and failed ones count as operations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArrayQueueBenchmark {
+
+    static final Integer ELEMENT = 1;
+
+    @State(Scope.Group)
+    public static class Spsc {
+        @Param({ "fork", "ArrayBlockingQueue", "RingBufferQueue", "jdk" })
+        public String impl;
+
+        @Param({ "1024" })
+        public int capacity;
+
+        Queue<Integer> q;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            q = "fork".equals(impl) ? new com.zs.juc.queue.SpscArrayQueue<Integer>(capacity)
+                    : newGeneralQueue(impl, true, capacity);
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Mpsc {
+        @Param({ "fork", "ArrayBlockingQueue", "RingBufferQueue", "jdk" })
+        public String impl;
+
+        @Param({ "1024" })
+        public int capacity;
+
+        Queue<Integer> q;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            q = "fork".equals(impl) ? new com.zs.juc.queue.MpscArrayQueue<Integer>(capacity)
+                    : newGeneralQueue(impl, false, capacity);
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Spmc {
+        @Param({ "fork", "ArrayBlockingQueue", "RingBufferQueue", "jdk" })
+        public String impl;
+
+        @Param({ "1024" })
+        public int capacity;
+
+        Queue<Integer> q;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            q = "fork".equals(impl) ? new com.zs.juc.queue.SpmcArrayQueue<Integer>(capacity)
+                    : newGeneralQueue(impl, true, capacity);
+        }
+    }
+
+    static Queue<Integer> newGeneralQueue(String impl, boolean singleProducer, int capacity) {
+        switch (impl) {
+        case "ArrayBlockingQueue":
+            return new com.zs.juc.queue.ArrayBlockingQueue<Integer>(capacity);
+        case "RingBufferQueue":
+            return new com.zs.juc.queue.RingBufferQueue<Integer>(capacity,
+                    singleProducer ? com.zs.juc.queue.RingBufferQueue.ProducerType.SINGLE
+                            : com.zs.juc.queue.RingBufferQueue.ProducerType.MULTI,
+                    com.zs.juc.queue.WaitStrategy.yielding());
+        case "jdk":
+            return new java.util.concurrent.ArrayBlockingQueue<Integer>(capacity);
+        default:
+            throw new IllegalArgumentException(impl);
+        }
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public boolean spscOffer(Spsc s) {
+        return s.q.offer(ELEMENT);
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public Integer spscPoll(Spsc s) {
+        return s.q.poll();
+    }
+
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(3)
+    public boolean mpscOffer(Mpsc s) {
+        return s.q.offer(ELEMENT);
+    }
+
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(1)
+    public Integer mpscPoll(Mpsc s) {
+        return s.q.poll();
+    }
+
+    @Benchmark
+    @Group("spmc")
+    @GroupThreads(1)
+    public boolean spmcOffer(Spmc s) {
+        return s.q.offer(ELEMENT);
+    }
+
+    @Benchmark
+    @Group("spmc")
+    @GroupThreads(3)
+    public Integer spmcPoll(Spmc s) {
+        return s.q.poll();
+    }
+}
@@ -0,0 +1,99 @@
+package com.zs.juc.benchmark;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of {@code benchmarks.jar}. Runs the selected benchmarks once per
+ * thread count and then prints every {@code com.zs.juc} result next to the
+ * {@code impl=jdk} result that shares its benchmark, thread count and
+ * parameters.
+ *
+ * <pre>
+ * java -jar juc-benchmarks/target/benchmarks.jar [regex] \
+ *      -Dthreads=1,2,4,8,16,32,64 -Dresult=jmh-result.csv
+ * </pre>
+ *
+ * <p>
+ * The forks obtain {@code sun.misc.Unsafe} through {@code Unsafe.getUnsafe()},
+ * which only succeeds for classes loaded by the boot loader, so every forked
+ * benchmark JVM gets this jar appended to its boot class path.
+ */
+public class BenchmarkRunner {
+
+    static final String BASELINE = "jdk";
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "com\\.zs\\.juc\\.benchmark\\..*";
+        String result = System.getProperty("result", "jmh-result.csv");
+        List<RunResult> all = new ArrayList<RunResult>();
+        for (String t : System.getProperty("threads", "1,2,4,8,16,32,64").split(",")) {
+            int threads = Integer.parseInt(t.trim());
+            ChainedOptionsBuilder opt = new OptionsBuilder().include(include).threads(threads)
+                    .jvmArgsPrepend("-Xbootclasspath/a:" + codeSource())
+                    .resultFormat(ResultFormatType.CSV).result(threads + "-" + result);
+            all.addAll(new Runner(opt.build()).run());
+        }
+        report(all);
+    }
+
+    static String codeSource() {
+        try {
+            return new File(BenchmarkRunner.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                    .getAbsolutePath();
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Prints one line per result; non-baseline lines carry their score as a
+     * multiple of the matching {@code jdk} score (higher is better for
+     * throughput, lower is better for average time).
+     */
+    static void report(Collection<RunResult> results) {
+        Map<String, Double> baseline = new LinkedHashMap<String, Double>();
+        for (RunResult r : results) {
+            BenchmarkParams p = r.getParams();
+            if (BASELINE.equals(p.getParam("impl")))
+                baseline.put(key(p), r.getPrimaryResult().getScore());
+        }
+        System.out.println();
+        System.out.printf("%-50s %4s %-60s %-24s %14s %8s%n", "Benchmark", "Thr", "Params", "impl", "Score",
+                "vs jdk");
+        for (RunResult r : results) {
+            BenchmarkParams p = r.getParams();
+            String impl = p.getParam("impl");
+            double score = r.getPrimaryResult().getScore();
+            Double base = BASELINE.equals(impl) ? null : baseline.get(key(p));
+            System.out.printf("%-50s %4d %-60s %-24s %14.3f %8s%n", p.getBenchmark(), p.getThreads(), others(p),
+                    impl, score, base == null || base == 0.0 ? "" : String.format("%.2fx", score / base));
+        }
+    }
+
+    static String key(BenchmarkParams p) {
+        return p.getBenchmark() + '|' + p.getThreads() + '|' + others(p);
+    }
+
+    static String others(BenchmarkParams p) {
+        Map<String, String> m = new TreeMap<String, String>();
+        for (String k : p.getParamsKeys())
+            if (!"impl".equals(k))
+                m.put(k, p.getParam(k));
+        return m.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package com.zs.juc.benchmark;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zs.juc.collection.ConcurrentHashMap8;
+
+/**
+ * Whole-map aggregations through the parallel bulk operations of
+ * {@link ConcurrentHashMap8} against {@link ConcurrentHashMap}. A
+ * {@code threshold} of {@code Long.MAX_VALUE} runs sequentially, {@code 1}
+ * splits for full parallelism; {@code pool=0} uses the common pool and any
+ * other value a dedicated pool of that size (for {@code ConcurrentHashMap8}
+ * only, the JDK map always uses the common pool).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class BulkOperationBenchmark {
+
+    @Param({ "ConcurrentHashMap8", "jdk" })
+    public String impl;
+
+    @Param({ "9223372036854775807", "1" })
+    public long threshold;
+
+    @Param({ "0" })
+    public int pool;
+
+    @Param({ "4194304" })
+    public int size;
+
+    ConcurrentHashMap8<Long, Long> map8;
+
+    ConcurrentHashMap<Long, Long> jdkMap;
+
+    ForkJoinPool bulkPool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("jdk".equals(impl)) {
+            jdkMap = new ConcurrentHashMap<Long, Long>(size);
+            for (long i = 0; i < size; i++)
+                jdkMap.put(i, i);
+        } else {
+            map8 = new ConcurrentHashMap8<Long, Long>(size);
+            for (long i = 0; i < size; i++)
+                map8.put(i, i);
+            if (pool > 0)
+                map8.setBulkPool(bulkPool = new ForkJoinPool(pool));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (bulkPool != null)
+            bulkPool.shutdown();
+    }
+
+    @Benchmark
+    public long reduceValuesToLong() {
+        if (map8 != null)
+            return map8.reduceValuesToLong(threshold, Long::longValue, 0L, Long::sum);
+        return jdkMap.reduceValuesToLong(threshold, Long::longValue, 0L, Long::sum);
+    }
+
+    @Benchmark
+    public Long search() {
+        final long target = size - 1;
+        if (map8 != null)
+            return map8.search(threshold, (k, v) -> k == target ? v : null);
+        return jdkMap.search(threshold, (k, v) -> k == target ? v : null);
+    }
+}
@@ -0,0 +1,83 @@
+package com.zs.juc.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zs.juc.collection.HashMap8;
+
+/**
+ * Single-threaded {@link HashMap8} against {@link HashMap}. {@code HashMap8}
+ * is not thread-safe, so this benchmark is pinned to one thread and only
+ * sweeps the read/write ratio and key distribution.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class HashMapBenchmark {
+
+    static final int KEY_STREAM = 1 << 16;
+
+    @Param({ "HashMap8", "jdk" })
+    public String impl;
+
+    @Param({ "100", "90", "50", "10" })
+    public int readPercent;
+
+    @Param({ "UNIFORM", "ZIPFIAN", "SEQUENTIAL" })
+    public KeyDistribution distribution;
+
+    @Param({ "65536" })
+    public int size;
+
+    Map<Integer, Integer> map;
+
+    Integer[] keys;
+
+    int[] indices;
+
+    boolean[] reads;
+
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = "jdk".equals(impl) ? new HashMap<Integer, Integer>() : new HashMap8<Integer, Integer>();
+        keys = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = i;
+            map.put(keys[i], keys[i]);
+        }
+        indices = distribution.indices(size, KEY_STREAM, 42L);
+        reads = new boolean[KEY_STREAM];
+        Random r = new Random(42L);
+        for (int i = 0; i < KEY_STREAM; i++)
+            reads[i] = r.nextInt(100) < readPercent;
+    }
+
+    @Benchmark
+    public Integer mixed() {
+        int i = next++ & (KEY_STREAM - 1);
+        Integer k = keys[indices[i]];
+        return reads[i] ? map.get(k) : map.put(k, k);
+    }
+}
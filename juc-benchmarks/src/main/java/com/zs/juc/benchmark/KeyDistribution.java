@@ -0,0 +1,76 @@
+package com.zs.juc.benchmark;
+
+import java.util.Random;
+
+/**
+ * Key access patterns used by the map benchmarks. Each distribution produces a
+ * pre-computed array of key indices in {@code [0, size)} so that generating
+ * the next key costs one array read inside the measured loop.
+ */
+public enum KeyDistribution {
+
+    /** Every key is equally likely. */
+    UNIFORM {
+        @Override
+        int[] indices(int size, int count, long seed) {
+            Random r = new Random(seed);
+            int[] a = new int[count];
+            for (int i = 0; i < count; i++)
+                a[i] = r.nextInt(size);
+            return a;
+        }
+    },
+
+    /**
+     * Zipf-distributed keys (skew 0.99, as in YCSB): a handful of hot keys take
+     * most of the traffic, so a few bins see almost all of the contention.
+     */
+    ZIPFIAN {
+        @Override
+        int[] indices(int size, int count, long seed) {
+            double[] cdf = new double[size];
+            double sum = 0.0;
+            for (int i = 0; i < size; i++)
+                cdf[i] = (sum += 1.0 / Math.pow(i + 1, SKEW));
+            Random r = new Random(seed);
+            int[] a = new int[count];
+            for (int i = 0; i < count; i++) {
+                double u = r.nextDouble() * sum;
+                int lo = 0, hi = size - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (cdf[mid] < u)
+                        lo = mid + 1;
+                    else
+                        hi = mid;
+                }
+                // scatter the ranks so hot keys do not share neighbouring bins
+                a[i] = (int) ((lo * 0x9E3779B97F4A7C15L >>> 1) % size);
+            }
+            return a;
+        }
+    },
+
+    /** Keys walked in order, the friendliest pattern for caches and bins. */
+    SEQUENTIAL {
+        @Override
+        int[] indices(int size, int count, long seed) {
+            int[] a = new int[count];
+            int start = new Random(seed).nextInt(size);
+            for (int i = 0; i < count; i++)
+                a[i] = (start + i) % size;
+            return a;
+        }
+    };
+
+    static final double SKEW = 0.99;
+
+    /**
+     * Returns {@code count} key indices drawn from {@code [0, size)}.
+     *
+     * @param size the number of distinct keys
+     * @param count the length of the returned array, a power of two
+     * @param seed the random seed, distinct per benchmark thread
+     */
+    abstract int[] indices(int size, int count, long seed);
+}
@@ -0,0 +1,69 @@
+package com.zs.juc.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.zs.juc.lock.ReentrantLock;
+
+/**
+ * Lock/unlock throughput of the {@link ReentrantLock} fork against
+ * {@link java.util.concurrent.locks.ReentrantLock}, with a configurable amount
+ * of work inside and outside the critical section.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LockBenchmark {
+
+    @Param({ "ReentrantLock", "jdk" })
+    public String impl;
+
+    @Param({ "false", "true" })
+    public boolean fair;
+
+    /** {@link Blackhole#consumeCPU} tokens spent holding the lock. */
+    @Param({ "0", "50" })
+    public int inside;
+
+    /** Tokens spent between acquisitions; larger means less contention. */
+    @Param({ "0", "200" })
+    public int outside;
+
+    Lock lock;
+
+    long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lock = "jdk".equals(impl) ? new java.util.concurrent.locks.ReentrantLock(fair) : new ReentrantLock(fair);
+    }
+
+    @Benchmark
+    public long lockUnlock() {
+        Blackhole.consumeCPU(outside);
+        lock.lock();
+        try {
+            Blackhole.consumeCPU(inside);
+            return ++counter;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
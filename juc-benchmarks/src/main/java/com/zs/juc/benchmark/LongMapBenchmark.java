@@ -0,0 +1,104 @@
+package com.zs.juc.benchmark;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zs.juc.collection.ConcurrentHashMap8;
+import com.zs.juc.collection.ConcurrentLongHashMap;
+
+/**
+ * {@code long}-keyed lookups and updates through {@link ConcurrentLongHashMap}
+ * against boxed {@code Long} keys in {@link ConcurrentHashMap8} and
+ * {@link ConcurrentHashMap}. Keys are spread over a range much larger than the
+ * {@code Long} cache, so the boxed variants allocate on every call; run with
+ * {@code -prof gc} to see the difference in {@code gc.alloc.rate.norm}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LongMapBenchmark {
+
+    static final int KEY_STREAM = 1 << 16;
+
+    static final Object VALUE = new Object();
+
+    @Param({ "ConcurrentLongHashMap", "ConcurrentHashMap8", "jdk" })
+    public String impl;
+
+    @Param({ "100", "90", "50" })
+    public int readPercent;
+
+    @Param({ "UNIFORM", "ZIPFIAN" })
+    public KeyDistribution distribution;
+
+    @Param({ "1048576" })
+    public int size;
+
+    ConcurrentLongHashMap<Object> longMap;
+
+    java.util.Map<Long, Object> boxedMap;
+
+    /** Session-id-like keys: large, sparse and well outside the Long cache. */
+    static long keyAt(int index) {
+        return 1000000000000L + index * 7919L;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("ConcurrentLongHashMap".equals(impl)) {
+            longMap = new ConcurrentLongHashMap<Object>(size);
+            for (int i = 0; i < size; i++)
+                longMap.put(keyAt(i), VALUE);
+        } else {
+            boxedMap = "jdk".equals(impl) ? new ConcurrentHashMap<Long, Object>(size)
+                    : new ConcurrentHashMap8<Long, Object>(size);
+            for (int i = 0; i < size; i++)
+                boxedMap.put(keyAt(i), VALUE);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Ops {
+        long[] keys;
+        boolean[] reads;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(LongMapBenchmark b) {
+            ThreadLocalRandom r = ThreadLocalRandom.current();
+            int[] indices = b.distribution.indices(b.size, KEY_STREAM, r.nextLong());
+            keys = new long[KEY_STREAM];
+            reads = new boolean[KEY_STREAM];
+            for (int i = 0; i < KEY_STREAM; i++) {
+                keys[i] = keyAt(indices[i]);
+                reads[i] = r.nextInt(100) < b.readPercent;
+            }
+        }
+    }
+
+    @Benchmark
+    public Object mixed(Ops ops) {
+        int i = ops.next++ & (KEY_STREAM - 1);
+        long k = ops.keys[i];
+        if (longMap != null)
+            return ops.reads[i] ? longMap.get(k) : longMap.put(k, VALUE);
+        return ops.reads[i] ? boxedMap.get(k) : boxedMap.put(k, VALUE);
+    }
+}
@@ -0,0 +1,103 @@
+package com.zs.juc.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zs.juc.collection.ConcurrentHashMap7;
+import com.zs.juc.collection.ConcurrentHashMap8;
+
+/**
+ * Mixed get/put throughput of the concurrent map forks against
+ * {@link ConcurrentHashMap}. The map is pre-filled to {@code size} entries;
+ * each operation picks the next key from the thread's distribution and does a
+ * {@code get} with probability {@code readPercent}, otherwise a {@code put}.
+ * Thread counts are swept by {@link BenchmarkRunner}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapBenchmark {
+
+    static final int KEY_STREAM = 1 << 16;
+
+    @Param({ "ConcurrentHashMap8", "ConcurrentHashMap7", "jdk" })
+    public String impl;
+
+    @Param({ "100", "90", "50", "10" })
+    public int readPercent;
+
+    @Param({ "UNIFORM", "ZIPFIAN", "SEQUENTIAL" })
+    public KeyDistribution distribution;
+
+    @Param({ "65536" })
+    public int size;
+
+    Map<Integer, Integer> map;
+
+    Integer[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = newMap(impl, size);
+        keys = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = i;
+            map.put(keys[i], keys[i]);
+        }
+    }
+
+    static Map<Integer, Integer> newMap(String impl, int size) {
+        switch (impl) {
+        case "ConcurrentHashMap8":
+            return new ConcurrentHashMap8<Integer, Integer>(size);
+        case "ConcurrentHashMap7":
+            return new ConcurrentHashMap7<Integer, Integer>(size);
+        case "jdk":
+            return new ConcurrentHashMap<Integer, Integer>(size);
+        default:
+            throw new IllegalArgumentException(impl);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Ops {
+        int[] indices;
+        boolean[] reads;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(MapBenchmark b) {
+            long seed = ThreadLocalRandom.current().nextLong();
+            indices = b.distribution.indices(b.size, KEY_STREAM, seed);
+            reads = new boolean[KEY_STREAM];
+            ThreadLocalRandom r = ThreadLocalRandom.current();
+            for (int i = 0; i < KEY_STREAM; i++)
+                reads[i] = r.nextInt(100) < b.readPercent;
+        }
+    }
+
+    @Benchmark
+    public Integer mixed(Ops ops) {
+        int i = ops.next++ & (KEY_STREAM - 1);
+        Integer k = keys[ops.indices[i]];
+        return ops.reads[i] ? map.get(k) : map.put(k, k);
+    }
+}
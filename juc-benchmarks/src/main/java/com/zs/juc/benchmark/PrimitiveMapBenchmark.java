@@ -0,0 +1,79 @@
+package com.zs.juc.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zs.juc.collection.HashMap8;
+import com.zs.juc.collection.IntIntHashMap;
+
+/**
+ * Request-scoped aggregation: counts a stream of int keys into a fresh map
+ * per invocation, then looks every key up once. {@link IntIntHashMap} against
+ * boxed {@link HashMap8} and {@link HashMap}; run with {@code -prof gc} to see
+ * the per-entry allocation the primitive map avoids.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class PrimitiveMapBenchmark {
+
+    static final int KEY_STREAM = 1 << 16;
+
+    @Param({ "IntIntHashMap", "HashMap8", "jdk" })
+    public String impl;
+
+    @Param({ "UNIFORM", "ZIPFIAN" })
+    public KeyDistribution distribution;
+
+    @Param({ "1024", "65536" })
+    public int size;
+
+    int[] stream;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stream = distribution.indices(size, KEY_STREAM, 42L);
+    }
+
+    @Benchmark
+    public long aggregate() {
+        if ("IntIntHashMap".equals(impl)) {
+            IntIntHashMap counts = new IntIntHashMap();
+            for (int k : stream)
+                counts.addTo(k, 1);
+            long sum = 0L;
+            for (int k : stream)
+                sum += counts.get(k);
+            return sum;
+        }
+        Map<Integer, Integer> counts = "jdk".equals(impl) ? new HashMap<Integer, Integer>()
+                : new HashMap8<Integer, Integer>();
+        for (int k : stream) {
+            Integer c = counts.get(k);
+            counts.put(k, c == null ? 1 : c + 1);
+        }
+        long sum = 0L;
+        for (int k : stream)
+            sum += counts.get(k);
+        return sum;
+    }
+}
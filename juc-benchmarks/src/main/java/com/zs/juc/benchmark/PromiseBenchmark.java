@@ -0,0 +1,120 @@
+package com.zs.juc.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zs.future_callback_promise.Promise;
+import com.zs.juc.pool.ThreadPoolExecutor;
+
+/**
+ * {@link Promise} against {@link CompletableFuture} on the same work.
+ * {@link #chain} attaches {@code depth} synchronous {@code map}/{@code thenApply}
+ * stages to an incomplete future and completes it, pricing continuation
+ * registration and firing. {@link #fanIn} joins {@code depth} futures with
+ * {@code allOf}. {@link #asyncPipeline} runs {@code depth} dependent
+ * asynchronous steps through {@code flatMap}/{@code thenCompose} on a
+ * {@link ThreadPoolExecutor}, so the score includes thread hand-offs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PromiseBenchmark {
+
+    @Param({ "Promise", "CompletableFuture" })
+    public String impl;
+
+    @Param({ "16" })
+    public int depth;
+
+    ThreadPoolExecutor pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ThreadPoolExecutor(4, 4, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Integer chain() throws InterruptedException, ExecutionException {
+        if ("Promise".equals(impl)) {
+            Promise<Integer> head = new Promise<Integer>();
+            Promise<Integer> p = head;
+            for (int i = 0; i < depth; i++)
+                p = p.map(x -> x + 1);
+            head.complete(0);
+            return p.get();
+        }
+        CompletableFuture<Integer> head = new CompletableFuture<Integer>();
+        CompletableFuture<Integer> f = head;
+        for (int i = 0; i < depth; i++)
+            f = f.thenApply(x -> x + 1);
+        head.complete(0);
+        return f.get();
+    }
+
+    @Benchmark
+    public int fanIn() throws InterruptedException, ExecutionException {
+        if ("Promise".equals(impl)) {
+            List<Promise<Integer>> ps = new ArrayList<Promise<Integer>>(depth);
+            for (int i = 0; i < depth; i++)
+                ps.add(new Promise<Integer>());
+            Promise<List<Integer>> all = Promise.allOf(ps);
+            for (int i = 0; i < depth; i++)
+                ps.get(i).complete(i);
+            return all.get().size();
+        }
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Integer>[] fs = new CompletableFuture[depth];
+        for (int i = 0; i < depth; i++)
+            fs[i] = new CompletableFuture<Integer>();
+        CompletableFuture<Void> all = CompletableFuture.allOf(fs);
+        for (int i = 0; i < depth; i++)
+            fs[i].complete(i);
+        all.get();
+        int n = 0;
+        for (CompletableFuture<Integer> f : fs)
+            if (f.join() != null)
+                n++;
+        return n;
+    }
+
+    @Benchmark
+    public Integer asyncPipeline() throws InterruptedException, ExecutionException {
+        if ("Promise".equals(impl)) {
+            Promise<Integer> p = Promise.async(() -> 0, pool);
+            for (int i = 0; i < depth; i++)
+                p = p.flatMap(x -> Promise.async(() -> x + 1, pool));
+            return p.get();
+        }
+        CompletableFuture<Integer> f = CompletableFuture.supplyAsync(() -> 0, pool);
+        for (int i = 0; i < depth; i++)
+            f = f.thenCompose(x -> CompletableFuture.supplyAsync(() -> x + 1, pool));
+        return f.get();
+    }
+}
@@ -0,0 +1,94 @@
+package com.zs.juc.benchmark;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Producer/consumer hand-off through the queue forks against their
+ * {@code java.util.concurrent} counterparts. Producers {@code offer} and
+ * consumers {@code poll} without blocking, so an iteration can always end even
+ * when one side is starved; a failed offer or an empty poll still counts as an
+ * operation, which is what a spinning caller would pay. Each thread group is
+ * one producer and one consumer sharing their own queue; the thread counts
+ * swept by {@link BenchmarkRunner} add more such groups rather than change the
+ * split. Uneven splits, on the queues that allow them, are measured by
+ * {@link ArrayQueueBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class QueueBenchmark {
+
+    static final Integer ELEMENT = 1;
+
+    @Param({ "ArrayBlockingQueue", "LinkedBlockingQueue", "ConcurrentLinkedQueue", "RingBufferQueue" })
+    public String queue;
+
+    @Param({ "fork", "jdk" })
+    public String impl;
+
+    @Param({ "1024" })
+    public int capacity;
+
+    Queue<Integer> q;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        q = newQueue(queue, "jdk".equals(impl), capacity);
+    }
+
+    static Queue<Integer> newQueue(String queue, boolean jdk, int capacity) {
+        switch (queue) {
+        case "ArrayBlockingQueue":
+            return jdk ? new java.util.concurrent.ArrayBlockingQueue<Integer>(capacity)
+                    : new com.zs.juc.queue.ArrayBlockingQueue<Integer>(capacity);
+        case "LinkedBlockingQueue":
+            return jdk ? new java.util.concurrent.LinkedBlockingQueue<Integer>(capacity)
+                    : new com.zs.juc.queue.LinkedBlockingQueue<Integer>(capacity);
+        case "ConcurrentLinkedQueue":
+            // unbounded: capacity only applies to the blocking queues
+            return jdk ? new java.util.concurrent.ConcurrentLinkedQueue<Integer>()
+                    : new com.zs.juc.queue.ConcurrentLinkedQueue<Integer>();
+        case "RingBufferQueue":
+            // no jdk counterpart: measured against the lock-based ArrayBlockingQueue it replaces
+            return jdk ? new java.util.concurrent.ArrayBlockingQueue<Integer>(capacity)
+                    : new com.zs.juc.queue.RingBufferQueue<Integer>(capacity,
+                            com.zs.juc.queue.RingBufferQueue.ProducerType.MULTI,
+                            com.zs.juc.queue.WaitStrategy.yielding());
+        default:
+            throw new IllegalArgumentException(queue);
+        }
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean offer() {
+        return q.offer(ELEMENT);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public Integer poll() {
+        return q.poll();
+    }
+}
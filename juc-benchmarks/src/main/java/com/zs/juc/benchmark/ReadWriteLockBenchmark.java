@@ -0,0 +1,88 @@
+package com.zs.juc.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.zs.juc.lock.ReentrantReadWriteLock;
+
+/**
+ * Read/write lock throughput of the {@link ReentrantReadWriteLock} fork
+ * against {@link java.util.concurrent.locks.ReentrantReadWriteLock}. Each
+ * operation takes the read lock with probability {@code readPercent},
+ * otherwise the write lock.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadWriteLockBenchmark {
+
+    static final int OP_STREAM = 1 << 12;
+
+    @Param({ "ReentrantReadWriteLock", "jdk" })
+    public String impl;
+
+    @Param({ "false", "true" })
+    public boolean fair;
+
+    @Param({ "100", "90", "50", "10" })
+    public int readPercent;
+
+    @Param({ "20" })
+    public int inside;
+
+    ReadWriteLock rwLock;
+
+    volatile long value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rwLock = "jdk".equals(impl) ? new java.util.concurrent.locks.ReentrantReadWriteLock(fair)
+                : new ReentrantReadWriteLock(fair);
+    }
+
+    @State(Scope.Thread)
+    public static class Ops {
+        boolean[] reads;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(ReadWriteLockBenchmark b) {
+            reads = new boolean[OP_STREAM];
+            ThreadLocalRandom r = ThreadLocalRandom.current();
+            for (int i = 0; i < OP_STREAM; i++)
+                reads[i] = r.nextInt(100) < b.readPercent;
+        }
+    }
+
+    @Benchmark
+    public long mixed(Ops ops) {
+        boolean read = ops.reads[ops.next++ & (OP_STREAM - 1)];
+        Lock l = read ? rwLock.readLock() : rwLock.writeLock();
+        l.lock();
+        try {
+            Blackhole.consumeCPU(inside);
+            return read ? value : ++value;
+        } finally {
+            l.unlock();
+        }
+    }
+}
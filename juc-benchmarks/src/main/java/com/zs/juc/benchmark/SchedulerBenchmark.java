@@ -0,0 +1,78 @@
+package com.zs.juc.benchmark;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zs.juc.pool.TimingWheelScheduler;
+
+/**
+ * The timeout pattern: schedule a task far in the future and cancel it before
+ * it fires. {@code TimingWheel} is {@link TimingWheelScheduler} with a
+ * one-millisecond tick; {@code jdk} is {@link ScheduledThreadPoolExecutor}
+ * with {@code removeOnCancelPolicy}, so that both release cancelled tasks.
+ * {@code backlog} timeouts are kept pending throughout, which sets the heap
+ * size the JDK pays O(log n) against, and every benchmark thread contends on
+ * the scheduler.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchedulerBenchmark {
+
+    static final Runnable NOOP = new Runnable() {
+        public void run() {
+        }
+    };
+
+    @Param({ "TimingWheel", "jdk" })
+    public String impl;
+
+    @Param({ "0", "100000" })
+    public int backlog;
+
+    ScheduledExecutorService scheduler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("jdk".equals(impl)) {
+            ScheduledThreadPoolExecutor stpe = new ScheduledThreadPoolExecutor(1);
+            stpe.setRemoveOnCancelPolicy(true);
+            scheduler = stpe;
+        } else {
+            scheduler = new TimingWheelScheduler(1, 1L, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < backlog; i++)
+            scheduler.schedule(NOOP, 1L + i % 3600, TimeUnit.SECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public boolean scheduleCancel() {
+        ScheduledFuture<?> f = scheduler.schedule(NOOP, 30L, TimeUnit.SECONDS);
+        return f.cancel(false);
+    }
+}
@@ -0,0 +1,159 @@
+package com.zs.juc.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.zs.juc.pool.ThreadPoolExecutor;
+
+/**
+ * Submission-to-completion cost of the {@link ThreadPoolExecutor} fork against
+ * {@link java.util.concurrent.ThreadPoolExecutor}. Each invocation submits
+ * {@code tasks} small tasks from every benchmark thread and waits for all of
+ * them, so the score includes queue contention between submitters and
+ * workers. {@code WorkStealing} is the fork with per-worker deques enabled;
+ * only {@link #submitFromWorkers} exercises them, since submissions from
+ * outside the pool always use the shared queue. {@code Metrics} is the fork
+ * with {@link ThreadPoolExecutor#enableMetrics()}, to price the recording.
+ * {@code BoundedVirtual} starts a virtual thread per task and lets
+ * {@code poolSize} of them run at once. {@code BulkQueue} is the fork over the
+ * {@code com.zs.juc.queue} {@link com.zs.juc.queue.LinkedBlockingQueue}, whose
+ * {@code offerAll} lets {@link #submitBatch} enqueue a whole batch under one
+ * lock acquisition.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThreadPoolBenchmark {
+
+    @Param({ "ThreadPoolExecutor", "WorkStealing", "Metrics", "BoundedVirtual", "BulkQueue", "jdk" })
+    public String impl;
+
+    @Param({ "4", "16", "64" })
+    public int poolSize;
+
+    @Param({ "1000" })
+    public int tasks;
+
+    /** {@link Blackhole#consumeCPU} tokens per task. */
+    @Param({ "0", "100" })
+    public int work;
+
+    ExecutorService pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("BoundedVirtual".equals(impl)) {
+            pool = com.zs.juc.pool.Executors.newBoundedVirtualThreadExecutor(poolSize);
+            return;
+        }
+        if ("BulkQueue".equals(impl)) {
+            pool = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                    new com.zs.juc.queue.LinkedBlockingQueue<Runnable>());
+            return;
+        }
+        pool = "jdk".equals(impl)
+                ? new java.util.concurrent.ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>())
+                : new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(), Executors.defaultThreadFactory(),
+                        new ThreadPoolExecutor.AbortPolicy(), "WorkStealing".equals(impl));
+        if ("Metrics".equals(impl))
+            ((ThreadPoolExecutor) pool).enableMetrics();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public void submitAndWait() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(tasks);
+        final int tokens = work;
+        Runnable task = new Runnable() {
+            public void run() {
+                Blackhole.consumeCPU(tokens);
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < tasks; i++)
+            pool.execute(task);
+        done.await();
+    }
+
+    /**
+     * {@code poolSize} seed tasks each submit their share of {@code tasks}
+     * from inside the pool, as a task splitting its work would.
+     */
+    @Benchmark
+    public void submitFromWorkers() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(tasks);
+        final int tokens = work;
+        final Runnable task = new Runnable() {
+            public void run() {
+                Blackhole.consumeCPU(tokens);
+                done.countDown();
+            }
+        };
+        final int share = tasks / poolSize;
+        for (int s = 0; s < poolSize; s++) {
+            final int n = s == 0 ? tasks - share * (poolSize - 1) : share;
+            pool.execute(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < n; i++)
+                        pool.execute(task);
+                }
+            });
+        }
+        done.await();
+    }
+
+    /**
+     * Submits {@code tasks} as one batch: {@link ThreadPoolExecutor#executeBatch}
+     * for the fork, one {@code execute} per task for the other executors.
+     */
+    @Benchmark
+    public void submitBatch() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(tasks);
+        final int tokens = work;
+        Runnable task = new Runnable() {
+            public void run() {
+                Blackhole.consumeCPU(tokens);
+                done.countDown();
+            }
+        };
+        List<Runnable> batch = new ArrayList<Runnable>(tasks);
+        for (int i = 0; i < tasks; i++)
+            batch.add(task);
+        if (pool instanceof ThreadPoolExecutor)
+            ((ThreadPoolExecutor) pool).executeBatch(batch);
+        else
+            for (Runnable r : batch)
+                pool.execute(r);
+        done.await();
+    }
+}